@@ -0,0 +1,34 @@
+package com.example.tradeengine;
+
+import com.example.tradeengine.controller.FeedReplayWebSocketHandler;
+import com.example.tradeengine.controller.MarketDataWebSocketHandler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Registers the WebSocket endpoints served by the engine.  Inbound
+ * market data from Binance uses the JDK client and needs none of this;
+ * `/ws/replay` can stand in for Binance by playing back a capture, and
+ * is only registered with `capture.replay.enabled`.
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+    private final MarketDataWebSocketHandler marketDataHandler;
+    private final ObjectProvider<FeedReplayWebSocketHandler> feedReplayHandler;
+
+    public WebSocketConfig(MarketDataWebSocketHandler marketDataHandler,
+                           ObjectProvider<FeedReplayWebSocketHandler> feedReplayHandler) {
+        this.marketDataHandler = marketDataHandler;
+        this.feedReplayHandler = feedReplayHandler;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(marketDataHandler, "/ws/marketdata").setAllowedOrigins("*");
+        feedReplayHandler.ifAvailable(handler -> registry.addHandler(handler, "/ws/replay"));
+    }
+}
@@ -1,18 +1,44 @@
 package com.example.tradeengine.controller;
 
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.engine.OrderBook;
+import com.example.tradeengine.service.BookHistoryService;
 import com.example.tradeengine.service.EventReplayService;
+import com.example.tradeengine.service.ReplayJob;
+import com.example.tradeengine.service.SettlementJob;
+import com.example.tradeengine.service.SettlementService;
 import com.example.tradeengine.service.SnapshotService;
+import com.example.tradeengine.service.StandbyReplicator;
 import com.example.tradeengine.model.OrderBookSnapshot;
+import com.example.tradeengine.model.SettlementPosition;
+import com.example.tradeengine.repository.SettlementPositionRepository;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.net.URI;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 /**
- * Administrative endpoints.  Currently exposes a replay operation
- * that rebuilds system state from the event log.  This endpoint
+ * Administrative endpoints.  Exposes an asynchronous replay job that
+ * rebuilds system state from the event log, plus snapshot and restore
+ * operations, and the end‑of‑day settlement batch.  This endpoint
  * should be protected by the API key filter to prevent
  * unauthorized use.
  */
@@ -21,33 +47,83 @@ import org.springframework.web.bind.annotation.RestController;
 public class AdminController {
     private final EventReplayService replayService;
     private final SnapshotService snapshotService;
+    private final ObjectProvider<StandbyReplicator> standbyReplicator;
+    private final BookHistoryService bookHistoryService;
+    private final MatchingEngine matchingEngine;
+    private final SettlementService settlementService;
+    private final SettlementPositionRepository settlementPositionRepo;
     @Autowired
-    public AdminController(EventReplayService replayService, SnapshotService snapshotService) {
+    public AdminController(EventReplayService replayService, SnapshotService snapshotService,
+                           ObjectProvider<StandbyReplicator> standbyReplicator,
+                           BookHistoryService bookHistoryService,
+                           MatchingEngine matchingEngine,
+                           SettlementService settlementService,
+                           SettlementPositionRepository settlementPositionRepo) {
         this.replayService = replayService;
         this.snapshotService = snapshotService;
+        this.standbyReplicator = standbyReplicator;
+        this.bookHistoryService = bookHistoryService;
+        this.matchingEngine = matchingEngine;
+        this.settlementService = settlementService;
+        this.settlementPositionRepo = settlementPositionRepo;
     }
     /**
-     * Trigger a full replay of events.  Returns a simple message once
-     * complete.  Note: this will drop existing orders and trades and
-     * rebuild them from the append‑only log.
+     * Start a full replay of events in the background and return 202
+     * with the job, whose progress can be polled at
+     * `/admin/replay/{id}`.  Returns 409 with the running job if a
+     * replay is already in progress, and 409 on a standby, which must
+     * not write to the primary's database.  Note: this will drop existing
+     * orders and trades and rebuild them from the append‑only log, and
+     * orders are refused with 503 until the job ends.
      */
     @PostMapping("/replay")
-    public ResponseEntity<String> replay() {
-        replayService.replay();
-        return ResponseEntity.ok("Replay complete");
+    public ResponseEntity<ReplayJob> replay() {
+        if (matchingEngine.isStandby()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        ReplayJob running = replayService.getRunningJob();
+        if (running != null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(running);
+        }
+        ReplayJob job = replayService.startReplay();
+        return ResponseEntity.accepted().location(URI.create("/admin/replay/" + job.getId())).body(job);
+    }
+
+    /**
+     * Progress of a replay job: events processed, rate and estimated
+     * seconds remaining.
+     */
+    @GetMapping("/replay/{id}")
+    public ResponseEntity<ReplayJob> replayStatus(@PathVariable String id) {
+        ReplayJob job = replayService.getJob(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    /**
+     * Cancel a replay job at its next chunk boundary.
+     */
+    @PostMapping("/replay/{id}/cancel")
+    public ResponseEntity<ReplayJob> cancelReplay(@PathVariable String id) {
+        ReplayJob job = replayService.cancel(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.accepted().body(job);
     }
 
     /**
      * Create a snapshot of the order book.  If an instrument is
      * specified as a query parameter (?instrument=BTC-USD), only that
      * instrument is snapshotted.  Otherwise all instruments are
-     * snapshotted.  Returns a message with snapshot details.
+     * snapshotted.  Instruments that already have a full snapshot get a
+     * delta snapshot.  Returns a message with snapshot details, or 409
+     * on a standby.
      */
     @PostMapping("/snapshot")
     public ResponseEntity<String> snapshot(@RequestParam(value = "instrument", required = false) String instrument) {
+        if (matchingEngine.isStandby()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Engine is in standby mode");
+        }
         if (instrument != null && !instrument.isEmpty()) {
             OrderBookSnapshot snap = snapshotService.createSnapshot(instrument);
-            return ResponseEntity.ok(snap == null ? "No orders to snapshot for " + instrument : "Snapshot created for " + instrument + " at " + snap.getTimestamp());
+            return ResponseEntity.ok(snap == null ? "Nothing to snapshot for " + instrument : snap.getKind() + " snapshot created for " + instrument + " at " + snap.getTimestamp());
         } else {
             snapshotService.createSnapshotsForAllInstruments();
             return ResponseEntity.ok("Snapshots created for all instruments");
@@ -58,10 +134,13 @@ public class AdminController {
      * Restore the order book state from the latest snapshot and merge
      * subsequent events.  If an instrument is specified, only that
      * instrument is restored; otherwise all instruments with
-     * snapshots are restored.
+     * snapshots are restored.  Returns 409 on a standby.
      */
     @PostMapping("/restore")
     public ResponseEntity<String> restore(@RequestParam(value = "instrument", required = false) String instrument) {
+        if (matchingEngine.isStandby()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Engine is in standby mode");
+        }
         if (instrument != null && !instrument.isEmpty()) {
             snapshotService.restoreLatestSnapshot(instrument);
             return ResponseEntity.ok("Restored " + instrument + " from latest snapshot and merged events");
@@ -70,4 +149,144 @@ public class AdminController {
             return ResponseEntity.ok("Restored all instruments from latest snapshots and merged events");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Replication state of a standby: last applied event ID and lag.
+     * Returns 404 on a process not started as a standby.
+     */
+    @GetMapping("/standby")
+    public ResponseEntity<Map<String, Object>> standby() {
+        StandbyReplicator replicator = standbyReplicator.getIfAvailable();
+        if (replicator == null) return ResponseEntity.notFound().build();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("lastAppliedEventId", replicator.getLastAppliedId());
+        status.put("lagEvents", replicator.getLagEvents());
+        status.put("lagSeconds", replicator.getLagSeconds());
+        status.put("checksumMismatches", replicator.getChecksumMismatches());
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * Promote a standby to primary: apply the remaining committed
+     * events and start accepting orders.  Only do this once the old
+     * primary is known to be down.
+     */
+    @PostMapping("/promote")
+    public ResponseEntity<String> promote() {
+        StandbyReplicator replicator = standbyReplicator.getIfAvailable();
+        if (replicator == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Not a standby");
+        }
+        long millis = replicator.promote();
+        return ResponseEntity.ok("Promoted at event " + replicator.getLastAppliedId() + " in " + millis + " ms");
+    }
+
+    /**
+     * Reconstruct an instrument's order book as it was at the given
+     * ISO‑8601 instant (?instrument=BTC-USD&ts=2024-05-01T14:03:07.250Z).
+     * Read only: the book is rebuilt detached from the live engine.
+     * Returns 422 if the rebuild would apply more events than
+     * `book-history.max-roll-forward-events`.
+     */
+    @GetMapping("/orderbook/at")
+    public ResponseEntity<?> orderBookAt(@RequestParam("instrument") String instrument,
+                                         @RequestParam("ts") String ts) {
+        Instant at;
+        try {
+            at = Instant.parse(ts);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("ts must be an ISO-8601 instant, e.g. 2024-05-01T14:03:07.250Z");
+        }
+        BookHistoryService.BookAtTime book;
+        try {
+            book = bookHistoryService.rebuild(instrument, at);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
+        }
+        if (book == null) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Snapshot for " + instrument + " before " + at + " is unreadable");
+        }
+        return ResponseEntity.ok(book);
+    }
+
+    /**
+     * The live order book checksum of an instrument, for comparing a
+     * primary with its standby or a restored book with the original.
+     * With verify=true the checksum is also recomputed from the resting
+     * orders on the matching thread, which costs O(n).
+     */
+    @GetMapping("/orderbook/checksum")
+    public ResponseEntity<?> orderBookChecksum(@RequestParam("instrument") String instrument,
+                                               @RequestParam(name = "verify", defaultValue = "false") boolean verify) throws ExecutionException, InterruptedException {
+        if (!matchingEngine.getInstrumentNames().contains(instrument)) return ResponseEntity.notFound().build();
+        OrderBook book = matchingEngine.getOrderBook(instrument);
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("instrument", instrument);
+        res.put("checksum", Long.toHexString(book.checksum()));
+        res.put("orders", book.size());
+        if (verify) {
+            CompletableFuture<Boolean> consistent = matchingEngine.verifyChecksum(instrument);
+            res.put("consistent", consistent.get());
+        }
+        return ResponseEntity.ok(res);
+    }
+
+    /**
+     * Settle a business day (?date=2024-05-01, UTC; default yesterday)
+     * in the background and return 202 with the job, whose progress can
+     * be polled at `/admin/settlement/{id}`.  Instruments already
+     * settled for that day are skipped, so repeating a failed run
+     * resumes it.  Returns 409 with the running job if a settlement is
+     * already in progress, and 409 on a standby, which must not write
+     * to the primary's database.
+     */
+    @PostMapping("/settlement")
+    public ResponseEntity<?> settle(@RequestParam(value = "date", required = false) String date) {
+        if (matchingEngine.isStandby()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Engine is in standby mode");
+        }
+        LocalDate businessDate;
+        try {
+            businessDate = date == null ? LocalDate.now(ZoneOffset.UTC).minusDays(1) : LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("date must be an ISO-8601 date, e.g. 2024-05-01");
+        }
+        SettlementJob running = settlementService.getRunningJob();
+        if (running != null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(running);
+        }
+        SettlementJob job = settlementService.startSettlement(businessDate);
+        return ResponseEntity.accepted().location(URI.create("/admin/settlement/" + job.getId())).body(job);
+    }
+
+    /**
+     * Progress of a settlement job: instruments settled and skipped,
+     * trades netted and positions written.
+     */
+    @GetMapping("/settlement/{id}")
+    public ResponseEntity<SettlementJob> settlementStatus(@PathVariable String id) {
+        SettlementJob job = settlementService.getJob(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    /**
+     * Settled positions of a business day, of one client
+     * (?date=2024-05-01&clientId=c1) or of all clients up to limit.
+     */
+    @GetMapping("/settlement/positions")
+    public ResponseEntity<?> settlementPositions(@RequestParam("date") String date,
+                                                 @RequestParam(value = "clientId", required = false) String clientId,
+                                                 @RequestParam(value = "limit", defaultValue = "1000") int limit) {
+        LocalDate businessDate;
+        try {
+            businessDate = LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("date must be an ISO-8601 date, e.g. 2024-05-01");
+        }
+        if (limit <= 0) return ResponseEntity.badRequest().body("limit must be positive");
+        List<SettlementPosition> positions = clientId != null
+            ? settlementPositionRepo.findByBusinessDateAndClientIdOrderByInstrument(businessDate, clientId)
+            : settlementPositionRepo.findByBusinessDateOrderByClientIdAscInstrumentAsc(businessDate, PageRequest.of(0, limit));
+        return ResponseEntity.ok(positions);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.tradeengine.controller;
+
+import com.example.tradeengine.service.CandleService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+@RestController
+public class CandleController {
+    private final CandleService candleService;
+    public CandleController(CandleService candleService) {
+        this.candleService = candleService;
+    }
+
+    /**
+     * OHLCV bars of an instrument (?instrument=BTC-USD&interval=1m)
+     * opened in [from, to), given as ISO‑8601 instants.  `to` defaults
+     * to now and `from` to `limit` intervals before it; at most `limit`
+     * bars are returned, oldest first, the last of which may still be
+     * open.
+     */
+    @GetMapping("/candles")
+    public ResponseEntity<?> getCandles(@RequestParam("instrument") String instrument,
+                                        @RequestParam(name = "interval", defaultValue = "1m") String interval,
+                                        @RequestParam(name = "from", required = false) String from,
+                                        @RequestParam(name = "to", required = false) String to,
+                                        @RequestParam(name = "limit", defaultValue = "500") int limit) {
+        int level;
+        try {
+            level = CandleService.level(interval);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        if (limit <= 0 || limit > candleService.getMaxQueryBars()) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + candleService.getMaxQueryBars());
+        }
+        Instant end;
+        Instant start;
+        try {
+            end = to == null ? Instant.now() : Instant.parse(to);
+            start = from == null ? end.minusMillis(CandleService.intervalMillis(level) * limit) : Instant.parse(from);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("from and to must be ISO-8601 instants, e.g. 2024-05-01T14:03:00Z");
+        }
+        return ResponseEntity.ok(candleService.candles(instrument, interval, start, end, limit));
+    }
+}
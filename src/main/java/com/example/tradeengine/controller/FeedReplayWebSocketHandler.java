@@ -0,0 +1,144 @@
+package com.example.tradeengine.controller;
+
+import com.example.tradeengine.service.FeedCapture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * WebSocket endpoint `/ws/replay?capture=btcusdt.cap&speed=10`, a
+ * local stand‑in for the Binance stream.  Plays back a
+ * {@link FeedCapture} from `capture.dir` to the session: `speed=1`
+ * (the default) keeps the recorded gaps, `speed=N` divides them by N
+ * and `speed=max` sends as fast as the session accepts.  Point
+ * `binance.websocket.url` here to benchmark ingestion and matching
+ * offline with real, repeatable order flow.  The session is closed
+ * normally at the end of the capture.
+ *
+ * <p>Each session is replayed by its own thread with blocking sends,
+ * so a receiver that applies backpressure slows its replay down rather
+ * than being buffered for.  At most `capture.replay.max-sessions`
+ * replays run at once; further sessions are closed as overloaded.  The
+ * endpoint exists only with `capture.replay.enabled`, as it is meant
+ * for benchmarking rather than production.
+ */
+@Component
+@ConditionalOnProperty(prefix = "capture.replay", name = "enabled", havingValue = "true")
+public class FeedReplayWebSocketHandler extends TextWebSocketHandler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeedReplayWebSocketHandler.class);
+    private final Path captureDir;
+    private final Map<String, Thread> replays = new ConcurrentHashMap<>();
+    /** One permit per replay thread, held until the thread ends. */
+    private final Semaphore slots;
+
+    @Autowired
+    public FeedReplayWebSocketHandler(@Value("${capture.dir:captures}") String captureDir,
+                                      @Value("${capture.replay.max-sessions:2}") int maxSessions) {
+        this.captureDir = Path.of(captureDir).toAbsolutePath().normalize();
+        this.slots = new Semaphore(Math.max(1, maxSessions));
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        String capture = param(session.getUri(), "capture");
+        String speedParam = param(session.getUri(), "speed");
+        if (capture == null || capture.isBlank()) {
+            session.close(CloseStatus.BAD_DATA.withReason("capture is required"));
+            return;
+        }
+        Path file = captureDir.resolve(capture).normalize();
+        if (!file.startsWith(captureDir) || !Files.isRegularFile(file)) {
+            session.close(CloseStatus.BAD_DATA.withReason("Unknown capture " + capture));
+            return;
+        }
+        double speed;
+        try {
+            speed = parseSpeed(speedParam);
+        } catch (IllegalArgumentException e) {
+            session.close(CloseStatus.BAD_DATA.withReason(e.getMessage()));
+            return;
+        }
+        if (!slots.tryAcquire()) {
+            session.close(CloseStatus.SERVICE_OVERLOAD.withReason("Too many replays"));
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                replay(session, file, speed);
+            } finally {
+                slots.release();
+            }
+        }, "feed-replay-" + session.getId());
+        thread.setDaemon(true);
+        replays.put(session.getId(), thread);
+        thread.start();
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Thread thread = replays.remove(session.getId());
+        if (thread != null) thread.interrupt();
+    }
+
+    private void replay(WebSocketSession session, Path file, double speed) {
+        LOGGER.info("Replaying {} to {} at {}", file.getFileName(), session.getId(), speed > 0 ? speed + "x" : "max speed");
+        long start = System.nanoTime();
+        try {
+            long sent = FeedCapture.replay(file, speed, message -> session.sendMessage(new TextMessage(message)));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            LOGGER.info("Replayed {} messages of {} to {} in {} s ({} messages/s)", sent, file.getFileName(), session.getId(),
+                Math.round(seconds * 1000) / 1000.0, seconds > 0 ? Math.round(sent / seconds) : sent);
+            if (session.isOpen()) session.close(CloseStatus.NORMAL);
+        } catch (IOException e) {
+            LOGGER.warn("Replay of {} to {} failed: {}", file.getFileName(), session.getId(), e.getMessage());
+            try {
+                if (session.isOpen()) session.close(CloseStatus.SERVER_ERROR);
+            } catch (IOException ignored) {
+                // already closing
+            }
+        } finally {
+            replays.remove(session.getId());
+        }
+    }
+
+    /** 1 when absent, 0 (unpaced) for `max`, otherwise a positive multiple such as `10` or `10x`. */
+    static double parseSpeed(String speed) {
+        if (speed == null || speed.isBlank()) return 1.0;
+        if ("max".equalsIgnoreCase(speed)) return 0.0;
+        try {
+            double v = Double.parseDouble(speed.endsWith("x") ? speed.substring(0, speed.length() - 1) : speed);
+            if (v > 0 && !Double.isInfinite(v)) return v;
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("speed must be a positive number or max");
+    }
+
+    private static String param(URI uri, String name) {
+        if (uri == null || uri.getRawQuery() == null) return null;
+        for (String param : uri.getRawQuery().split("&")) {
+            int eq = param.indexOf('=');
+            if (eq >= 0 && name.equals(param.substring(0, eq))) {
+                return URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+}
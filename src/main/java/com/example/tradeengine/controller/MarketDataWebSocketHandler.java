@@ -0,0 +1,105 @@
+package com.example.tradeengine.controller;
+
+import com.example.tradeengine.service.MarketDataService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket endpoint `/ws/marketdata?instruments=BTC-USD,ETH-USD`.
+ * Sends the binary feed described in {@link com.example.tradeengine.service.MarketDataCodec}
+ * for the given instruments, or all of them.  Clients send text
+ * commands as JSON; the only one is
+ * `{"type":"resync","instrument":"BTC-USD"}`, which asks for a new
+ * snapshot after a sequence gap.
+ *
+ * <p>Sessions get a bounded send buffer.  A client too slow to keep up
+ * loses its oldest buffered messages, notices the gap and resyncs; one
+ * whose writes block for `marketdata.send-time-limit-ms` is closed.
+ */
+@Component
+public class MarketDataWebSocketHandler extends TextWebSocketHandler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MarketDataWebSocketHandler.class);
+    private final MarketDataService marketDataService;
+    private final ObjectMapper objectMapper;
+    private final int sendTimeLimitMillis;
+    private final int bufferSizeLimit;
+    /** Decorated sessions by id, so commands reach the session the feed writes to. */
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MarketDataWebSocketHandler(MarketDataService marketDataService,
+                                      ObjectMapper objectMapper,
+                                      @Value("${marketdata.send-time-limit-ms:5000}") int sendTimeLimitMillis,
+                                      @Value("${marketdata.buffer-size-limit:1048576}") int bufferSizeLimit) {
+        this.marketDataService = marketDataService;
+        this.objectMapper = objectMapper;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimit = bufferSizeLimit;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMillis, bufferSizeLimit,
+            ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP);
+        sessions.put(session.getId(), decorated);
+        marketDataService.subscribe(decorated, instruments(session.getUri()));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        WebSocketSession decorated = sessions.get(session.getId());
+        if (decorated == null) return;
+        JsonNode command;
+        try {
+            command = objectMapper.readTree(message.getPayload());
+        } catch (IOException e) {
+            session.close(CloseStatus.BAD_DATA.withReason("Commands must be JSON"));
+            return;
+        }
+        String type = command.path("type").asText();
+        if ("resync".equals(type)) {
+            marketDataService.resync(decorated, command.path("instrument").asText());
+        } else {
+            LOGGER.debug("Ignoring unknown market data command {} from {}", type, session.getId());
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        WebSocketSession decorated = sessions.remove(session.getId());
+        if (decorated != null) marketDataService.unsubscribe(decorated);
+    }
+
+    /** The comma separated `instruments` query parameter, or an empty list. */
+    static List<String> instruments(URI uri) {
+        List<String> instruments = new ArrayList<>();
+        if (uri == null || uri.getRawQuery() == null) return instruments;
+        for (String param : uri.getRawQuery().split("&")) {
+            int eq = param.indexOf('=');
+            if (eq < 0 || !"instruments".equals(param.substring(0, eq))) continue;
+            for (String v : URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8).split(",")) {
+                if (!v.isBlank()) instruments.add(v.trim());
+            }
+        }
+        return instruments;
+    }
+}
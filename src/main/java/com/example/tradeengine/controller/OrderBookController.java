@@ -1,53 +1,67 @@
 package com.example.tradeengine.controller;
 
-import com.example.tradeengine.engine.OrderBook;
-import com.example.tradeengine.model.Order;
+import com.example.tradeengine.engine.DepthSnapshot;
+import com.example.tradeengine.engine.Signals;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.math.BigDecimal;
-import java.util.*;
-import java.util.stream.Collectors;
-
+/**
+ * Serves aggregated market depth from the depth snapshot the matching
+ * engine publishes, without touching the live order book.  Responses
+ * carry an ETag, and a request whose If-None-Match matches the current
+ * depth is answered with 304 and no body.
+ */
 @RestController
 public class OrderBookController {
     private final com.example.tradeengine.engine.MatchingEngine matchingEngine;
-    public OrderBookController(com.example.tradeengine.engine.MatchingEngine matchingEngine) {
+    private final ObjectMapper objectMapper;
+    public OrderBookController(com.example.tradeengine.engine.MatchingEngine matchingEngine, ObjectMapper objectMapper) {
         this.matchingEngine = matchingEngine;
+        this.objectMapper = objectMapper;
     }
     @GetMapping("/orderbook")
-    public Map<String, Object> getOrderBook(@RequestParam(name="instrument") String instrument,
-                                            @RequestParam(name="levels", defaultValue="20") int levels) {
-        OrderBook ob = matchingEngine.getOrderBook(instrument);
-        List<Order> bids = ob.getBids();
-        List<Order> asks = ob.getAsks();
-        List<Map<String, Object>> bidLevels = aggregateLevels(bids, true, levels);
-        List<Map<String, Object>> askLevels = aggregateLevels(asks, false, levels);
-        Map<String, Object> res = new HashMap<>();
-        res.put("bids", bidLevels);
-        res.put("asks", askLevels);
-        return res;
+    public ResponseEntity<byte[]> getOrderBook(@RequestParam(name="instrument") String instrument,
+                                               @RequestParam(name="levels", defaultValue="20") int levels,
+                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws JsonProcessingException {
+        int depth = Math.max(1, Math.min(levels, matchingEngine.getMaxDepthLevels()));
+        DepthSnapshot snapshot = matchingEngine.getDepth(instrument);
+        String etag = snapshot.etag(depth);
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.toJson(depth, objectMapper));
+    }
+    /**
+     * Best bid and ask, spread, mid, microprice, depth over the best
+     * `signals.depth-levels` levels, size and order‑flow imbalance of
+     * an instrument's book, as of its latest depth publication.  Served
+     * from what the engine maintains as the book changes, so it costs a
+     * volatile read.
+     */
+    @GetMapping("/signals")
+    public Signals getSignals(@RequestParam(name="instrument") String instrument) {
+        return matchingEngine.getSignals(instrument);
     }
-    private List<Map<String, Object>> aggregateLevels(List<Order> orders, boolean isBid, int levels) {
-        // sort by price
-        Map<BigDecimal, BigDecimal> agg = new LinkedHashMap<>();
-        List<Order> sorted = orders.stream()
-                .sorted((o1, o2) -> isBid ? o2.getPrice().compareTo(o1.getPrice()) : o1.getPrice().compareTo(o2.getPrice()))
-                .collect(Collectors.toList());
-        for (Order o : sorted) {
-            BigDecimal rem = o.getQuantity().subtract(o.getFilledQuantity());
-            if (rem.compareTo(BigDecimal.ZERO) <= 0) continue;
-            agg.put(o.getPrice(), agg.getOrDefault(o.getPrice(), BigDecimal.ZERO).add(rem));
-            if (agg.size() >= levels) break;
+    /** Weak comparison of an If-None-Match header against the current tag. */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        String opaque = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.equals("*") || c.equals(etag) || c.equals(opaque)) return true;
         }
-        List<Map<String, Object>> list = new ArrayList<>();
-        agg.forEach((price, qty) -> {
-            Map<String, Object> m = new HashMap<>();
-            m.put("price", price);
-            m.put("quantity", qty);
-            list.add(m);
-        });
-        return list;
+        return false;
     }
-}
\ No newline at end of file
+}
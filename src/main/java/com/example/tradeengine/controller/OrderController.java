@@ -4,7 +4,10 @@ import com.example.tradeengine.engine.MatchingEngine;
 import com.example.tradeengine.model.Order;
 import com.example.tradeengine.repository.OrderRepository;
 import com.example.tradeengine.dto.CreateOrderRequest;
+import com.example.tradeengine.exception.IdempotencyUnavailableException;
+import com.example.tradeengine.exception.OrderRejectedException;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.time.Instant;
@@ -24,7 +27,20 @@ public class OrderController {
 
     @PostMapping
     public ResponseEntity<?> createOrder(@Valid @RequestBody CreateOrderRequest req,
-                                         @RequestHeader(value = "Idempotency-Key", required = false) String idemKey) throws ExecutionException, InterruptedException {
+                                         @RequestHeader(value = "Idempotency-Key", required = false) String idemKey,
+                                         @RequestHeader(value = "X-Client-Id", required = false) String clientHeader) throws ExecutionException, InterruptedException {
+        if (engine.isStandby()) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("standby");
+        if (engine.isRecovering()) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("recovering");
+        if (engine.isInMaintenance()) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("maintenance");
+        // The rate limiter counts the request against the header's client
+        if (clientHeader != null && !clientHeader.isEmpty() && !clientHeader.equals(req.getClientId())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("X-Client-Id does not match clientId");
+        }
+        boolean stop = req.getType().equalsIgnoreCase("stop") || req.getType().equalsIgnoreCase("stop_limit");
+        if (stop && req.getStopPrice() == null) return ResponseEntity.badRequest().body("stopPrice is required for stop orders");
+        if (req.getType().equalsIgnoreCase("stop_limit") && req.getPrice() == null) {
+            return ResponseEntity.badRequest().body("price is required for stop_limit orders");
+        }
         // convert DTO to entity
         Order order = new Order();
         order.setClientId(req.getClientId());
@@ -32,16 +48,28 @@ public class OrderController {
         order.setSide(req.getSide());
         order.setType(req.getType());
         order.setPrice(req.getPrice());
+        order.setStopPrice(stop ? req.getStopPrice() : null);
         order.setQuantity(req.getQuantity());
         order.setCreatedAt(Instant.now());
         order.setUpdatedAt(order.getCreatedAt());
         order.setStatus("open");
-        Order processed = engine.submitOrder(order, idemKey).get();
+        Order processed;
+        try {
+            processed = engine.submitOrder(order, idemKey).get();
+        } catch (ExecutionException e) {
+            // Risk rejections are answered with 422 and unverifiable keys with 503 by GlobalExceptionHandler
+            if (e.getCause() instanceof OrderRejectedException) throw (OrderRejectedException) e.getCause();
+            if (e.getCause() instanceof IdempotencyUnavailableException) throw (IdempotencyUnavailableException) e.getCause();
+            throw e;
+        }
         return ResponseEntity.ok(processed);
     }
 
     @PostMapping("/{id}/cancel")
     public ResponseEntity<?> cancelOrder(@PathVariable UUID id) throws ExecutionException, InterruptedException {
+        if (engine.isStandby()) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("standby");
+        if (engine.isRecovering()) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("recovering");
+        if (engine.isInMaintenance()) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("maintenance");
         Order order = engine.cancelOrder(id).get();
         if (order == null) return ResponseEntity.notFound().build();
         return ResponseEntity.ok(order);
@@ -1,18 +1,53 @@
 package com.example.tradeengine.controller;
 
 import com.example.tradeengine.service.StreamService;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.List;
+
 @RestController
 public class StreamController {
     private final StreamService streamService;
     public StreamController(StreamService streamService) {
         this.streamService = streamService;
     }
+    /**
+     * Subscribe to order and trade events, optionally only those of some
+     * instruments (?instruments=BTC-USD,ETH-USD), of one client
+     * (?clientId=) and of some types (?types=order,trade).  The optional
+     * overflow parameter (conflate or disconnect) overrides
+     * `stream.overflow-policy` for this subscriber.  Every event carries
+     * the id of its event log record; a client reconnecting with the
+     * Last-Event-ID header first receives the events it missed, or a
+     * `reset` event if they can no longer be replayed.
+     */
     @GetMapping("/stream")
-    public SseEmitter stream() {
-        return streamService.addEmitter();
+    public ResponseEntity<SseEmitter> stream(@RequestParam(name = "instruments", required = false) List<String> instruments,
+                                             @RequestParam(name = "clientId", required = false) String clientId,
+                                             @RequestParam(name = "types", required = false) List<String> types,
+                                             @RequestParam(name = "overflow", required = false) String overflow,
+                                             @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        StreamService.OverflowPolicy policy = null;
+        if (overflow != null) {
+            try {
+                policy = StreamService.parsePolicy(overflow);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        Long resumeAfter = null;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                resumeAfter = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        return ResponseEntity.ok(streamService.addEmitter(StreamService.Filter.of(instruments, clientId, types), policy, resumeAfter));
     }
-}
\ No newline at end of file
+}
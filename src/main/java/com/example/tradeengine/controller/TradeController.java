@@ -2,19 +2,35 @@ package com.example.tradeengine.controller;
 
 import com.example.tradeengine.model.Trade;
 import com.example.tradeengine.repository.TradeRepository;
+import com.example.tradeengine.service.TradeColumnStore;
+import com.example.tradeengine.service.VwapService;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 @RestController
 public class TradeController {
     private final TradeRepository tradeRepo;
-    public TradeController(TradeRepository tradeRepo) {
+    private final VwapService vwapService;
+    private final TradeColumnStore columnStore;
+    public TradeController(TradeRepository tradeRepo, VwapService vwapService, TradeColumnStore columnStore) {
         this.tradeRepo = tradeRepo;
+        this.vwapService = vwapService;
+        this.columnStore = columnStore;
     }
     @GetMapping("/trades")
     public List<Trade> getTrades(@RequestParam(name="limit", defaultValue="50") int limit) {
@@ -22,29 +38,105 @@ public class TradeController {
         return tradeRepo.findAll(page).getContent();
     }
 
+    /**
+     * Rolling VWAP of one instrument over one configured window
+     * (?window=5m, or the legacy ?minutes=5) or, without either, over
+     * every configured window.  Served from {@link VwapService}'s
+     * buckets, never from the trades table.
+     */
     @GetMapping("/analytics/vwap")
-    public java.util.Map<String, Object> getVWAP(@RequestParam(name="minutes", defaultValue="5") int minutes) {
-        java.time.Instant cutoff = java.time.Instant.now().minusSeconds(minutes * 60L);
-        List<Trade> trades = tradeRepo.findAll();
-        java.math.BigDecimal totalPriceVolume = java.math.BigDecimal.ZERO;
-        java.math.BigDecimal totalVolume = java.math.BigDecimal.ZERO;
-        for (Trade t : trades) {
-            if (t.getTimestamp().isAfter(cutoff)) {
-                java.math.BigDecimal price = t.getPrice();
-                java.math.BigDecimal qty = t.getQuantity();
-                totalPriceVolume = totalPriceVolume.add(price.multiply(qty));
-                totalVolume = totalVolume.add(qty);
+    public ResponseEntity<?> getVWAP(@RequestParam(name="instrument") String instrument,
+                                     @RequestParam(name="window", required=false) String window,
+                                     @RequestParam(name="minutes", required=false) Integer minutes) {
+        List<VwapService.Window> windows;
+        if (window == null && minutes == null) {
+            windows = vwapService.getWindows();
+        } else {
+            VwapService.Window w;
+            try {
+                w = vwapService.findWindow(window != null ? window : minutes + "m");
+            } catch (IllegalArgumentException e) {
+                w = null;
             }
+            if (w == null) {
+                return ResponseEntity.badRequest().body("window must be one of " + vwapService.getWindows().stream()
+                    .map(VwapService.Window::getName).collect(Collectors.joining(", ")));
+            }
+            windows = List.of(w);
+        }
+        List<Map<String, Object>> res = new ArrayList<>();
+        for (VwapService.Window w : windows) {
+            VwapService.Result r = vwapService.vwap(instrument, w);
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("instrument", instrument);
+            map.put("window", r.getWindow());
+            map.put("minutes", w.getLength().toMinutes());
+            map.put("trade_count", r.getTradeCount());
+            map.put("total_volume", r.getTotalVolume());
+            map.put("vwap", r.getVwap());
+            res.add(map);
+        }
+        return ResponseEntity.ok(res.size() == 1 ? res.get(0) : res);
+    }
+
+    /**
+     * Ad‑hoc aggregate over the trades held by {@link TradeColumnStore}:
+     * count, volume, notional, VWAP and price range of the trades in
+     * [from, to) matching the optional instrument, orderId and quantity
+     * filters, grouped by instrument (largest volume first), by time
+     * (?groupBy=time&bucket=1m) or by quantity (?groupBy=size&bucket=0.5),
+     * or as one row.  Trades older than the store's retention are not
+     * included.
+     */
+    @GetMapping("/analytics/query")
+    public ResponseEntity<?> query(@RequestParam(name="instrument", required=false) String instrument,
+                                   @RequestParam(name="from", required=false) String from,
+                                   @RequestParam(name="to", required=false) String to,
+                                   @RequestParam(name="orderId", required=false) UUID orderId,
+                                   @RequestParam(name="minQuantity", required=false) BigDecimal minQuantity,
+                                   @RequestParam(name="maxQuantity", required=false) BigDecimal maxQuantity,
+                                   @RequestParam(name="groupBy", defaultValue="none") String groupBy,
+                                   @RequestParam(name="bucket", required=false) String bucket,
+                                   @RequestParam(name="limit", defaultValue="1000") int limit) {
+        TradeColumnStore.Query q = new TradeColumnStore.Query()
+            .instrument(instrument).orderId(orderId).minQuantity(minQuantity).maxQuantity(maxQuantity).limit(limit);
+        try {
+            if (from != null) q.from(Instant.parse(from));
+            if (to != null) q.to(Instant.parse(to));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("from and to must be ISO-8601 instants, e.g. 2024-05-01T14:03:00Z");
+        }
+        try {
+            TradeColumnStore.GroupBy g = TradeColumnStore.GroupBy.valueOf(groupBy.toUpperCase(Locale.ROOT));
+            q.groupBy(g);
+            if (bucket != null && g == TradeColumnStore.GroupBy.TIME) q.timeBucket(VwapService.parseDuration(bucket));
+            if (bucket != null && g == TradeColumnStore.GroupBy.SIZE) q.sizeBucket(new BigDecimal(bucket));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("groupBy must be one of none, instrument, time (bucket=1m) or size (bucket=1)");
+        }
+        TradeColumnStore.Result r;
+        try {
+            r = columnStore.query(q);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
-        java.math.BigDecimal vwap = java.math.BigDecimal.ZERO;
-        if (totalVolume.compareTo(java.math.BigDecimal.ZERO) > 0) {
-            vwap = totalPriceVolume.divide(totalVolume, java.math.MathContext.DECIMAL64);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (TradeColumnStore.Row row : r.getRows()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            if (row.getKey() != null) map.put("key", row.getKey());
+            map.put("trade_count", row.getCount());
+            map.put("total_volume", row.getVolume());
+            map.put("notional", row.getNotional());
+            map.put("vwap", row.getVwap());
+            map.put("min_price", row.getMinPrice());
+            map.put("max_price", row.getMaxPrice());
+            rows.add(map);
         }
-        java.util.Map<String, Object> map = new java.util.HashMap<>();
-        map.put("minutes", minutes);
-        map.put("trade_count", trades.size());
-        map.put("total_volume", totalVolume);
-        map.put("vwap", vwap);
-        return map;
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("scanned", r.getScanned());
+        res.put("matched", r.getMatched());
+        res.put("elapsed_micros", r.getElapsedMicros());
+        res.put("rows", rows);
+        return ResponseEntity.ok(res);
     }
-}
\ No newline at end of file
+}
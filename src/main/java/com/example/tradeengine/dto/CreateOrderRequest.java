@@ -19,6 +19,9 @@ public class CreateOrderRequest {
     private String type;
     @DecimalMin(value = "0.0", inclusive = false, message = "price must be positive")
     private BigDecimal price;
+    /** Trigger price; required for stop and stop_limit orders. */
+    @DecimalMin(value = "0.0", inclusive = false, message = "stopPrice must be positive")
+    private BigDecimal stopPrice;
     @NotNull
     @DecimalMin(value = "0.0", inclusive = false, message = "quantity must be positive")
     private BigDecimal quantity;
@@ -33,6 +36,8 @@ public class CreateOrderRequest {
     public void setType(String type) { this.type = type; }
     public BigDecimal getPrice() { return price; }
     public void setPrice(BigDecimal price) { this.price = price; }
+    public BigDecimal getStopPrice() { return stopPrice; }
+    public void setStopPrice(BigDecimal stopPrice) { this.stopPrice = stopPrice; }
     public BigDecimal getQuantity() { return quantity; }
     public void setQuantity(BigDecimal quantity) { this.quantity = quantity; }
 }
\ No newline at end of file
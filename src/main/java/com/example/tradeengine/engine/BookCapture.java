@@ -0,0 +1,61 @@
+package com.example.tradeengine.engine;
+
+import com.example.tradeengine.model.Order;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copies of one instrument's resting orders taken on its matching
+ * thread between two commands, together with the ID of the last event
+ * the book reflects.  Unlike {@link OrderBook#getBids()} the copies are
+ * never mutated by matching, so a snapshot written from them describes
+ * a state the book was actually in, and replaying the events after
+ * {@link #getLastEventId()} brings it up to date.
+ */
+public final class BookCapture {
+    private final String instrument;
+    private final long lastEventId;
+    private final Instant timestamp;
+    private final List<Order> bids;
+    private final List<Order> asks;
+
+    BookCapture(String instrument, long lastEventId, List<Order> bids, List<Order> asks) {
+        this.instrument = instrument;
+        this.lastEventId = lastEventId;
+        this.timestamp = Instant.now();
+        this.bids = copies(bids);
+        this.asks = copies(asks);
+    }
+
+    private static List<Order> copies(List<Order> orders) {
+        List<Order> copies = new ArrayList<>(orders.size());
+        for (Order o : orders) {
+            Order c = new Order();
+            c.setOrderId(o.getOrderId());
+            c.setClientId(o.getClientId());
+            c.setInstrument(o.getInstrument());
+            c.setSide(o.getSide());
+            c.setType(o.getType());
+            c.setPrice(o.getPrice());
+            c.setStopPrice(o.getStopPrice());
+            c.setQuantity(o.getQuantity());
+            c.setFilledQuantity(o.getFilledQuantity());
+            c.setStatus(o.getStatus());
+            c.setCreatedAt(o.getCreatedAt());
+            c.setUpdatedAt(o.getUpdatedAt());
+            c.setVersion(o.getVersion());
+            copies.add(c);
+        }
+        return Collections.unmodifiableList(copies);
+    }
+
+    public String getInstrument() { return instrument; }
+    /** ID of the last event applied to the book when it was captured; 0 if it has none. */
+    public long getLastEventId() { return lastEventId; }
+    public Instant getTimestamp() { return timestamp; }
+    public List<Order> getBids() { return bids; }
+    public List<Order> getAsks() { return asks; }
+}
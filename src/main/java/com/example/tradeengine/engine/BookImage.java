@@ -0,0 +1,381 @@
+package com.example.tradeengine.engine;
+
+import com.example.tradeengine.model.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Memory‑mapped image of one instrument's resting orders in a fixed
+ * binary layout.  The matching engine updates the image in place as
+ * orders rest, fill and leave the book, and stamps it with the id of
+ * the last event it recorded.  After a restart the image can be mapped
+ * and read straight back into an {@link OrderBook} without touching
+ * the database, provided its sequence equals the event log high‑water
+ * mark for the instrument.
+ *
+ * <p>Layout: a {@value #HEADER_SIZE}-byte header (magic, format version,
+ * sequence, dirty flag, slot capacity, slots in use, instrument name)
+ * followed by {@value #SLOT_SIZE}-byte order slots.  Decimals are
+ * stored as unscaled long plus scale.  A slot keeps the order's type,
+ * limit or a triggered stop_limit, and its stop price, so an order read
+ * back is saved unchanged.  Images of an older format version are
+ * rejected at recovery and rewritten.  The dirty flag is raised before
+ * the first write of an engine event and cleared together with the new
+ * sequence once the event is complete, so an image left behind by a
+ * process that died mid‑event is rejected.  Writes go to the page
+ * cache and survive a process crash; they are only forced to disk on
+ * close, so a host crash may lose the image (recovery then falls back
+ * to snapshots).
+ *
+ * <p>Instances are not thread‑safe; each is owned by the worker thread
+ * of its instrument.  An order that cannot be encoded (for example a
+ * client ID longer than {@value #MAX_CLIENT_ID_BYTES} bytes) makes the
+ * image unusable until it is rewritten.
+ */
+public class BookImage implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookImage.class);
+    static final int HEADER_SIZE = 128;
+    static final int SLOT_SIZE = 128;
+    private static final int MAGIC = 0x54454249;
+    private static final int FORMAT_VERSION = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_INSTRUMENT_BYTES = 64;
+    private static final int MAX_CLIENT_ID_BYTES = 40;
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    // Header offsets
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_SEQUENCE = 8;
+    private static final int H_DIRTY = 16;
+    private static final int H_CAPACITY = 20;
+    private static final int H_USED = 24;
+    private static final int H_INSTRUMENT_LEN = 28;
+    private static final int H_INSTRUMENT = 32;
+
+    // Slot offsets
+    private static final int S_STATE = 0;
+    private static final int S_SIDE = 1;
+    private static final int S_PRICE_SCALE = 2;
+    private static final int S_QTY_SCALE = 3;
+    private static final int S_FILLED_SCALE = 4;
+    private static final int S_CLIENT_LEN = 5;
+    private static final int S_TYPE = 6;
+    private static final int S_STOP_SCALE = 7;
+    private static final int S_ID_MSB = 8;
+    private static final int S_ID_LSB = 16;
+    private static final int S_PRICE = 24;
+    private static final int S_QTY = 32;
+    private static final int S_FILLED = 40;
+    private static final int S_CREATED_SEC = 48;
+    private static final int S_UPDATED_SEC = 56;
+    private static final int S_VERSION = 64;
+    private static final int S_CREATED_NANO = 72;
+    private static final int S_UPDATED_NANO = 76;
+    private static final int S_CLIENT = 80;
+    private static final int S_STOP_PRICE = 120;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+
+    // Order types of resting orders
+    private static final byte LIMIT = 0;
+    private static final byte STOP_LIMIT = 1;
+
+    private final Path file;
+    private final String instrument;
+    private final FileChannel channel;
+    private MappedByteBuffer buf;
+    private int capacity;
+    private int used;
+    private boolean usable = true;
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+
+    private BookImage(Path file, String instrument, FileChannel channel) {
+        this.file = file;
+        this.instrument = instrument;
+        this.channel = channel;
+    }
+
+    /**
+     * Open or create the image for an instrument inside the directory.
+     */
+    public static BookImage open(Path dir, String instrument) throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(fileName(instrument));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        BookImage image = new BookImage(file, instrument, channel);
+        if (channel.size() < HEADER_SIZE) {
+            image.initialise(INITIAL_CAPACITY);
+        } else {
+            image.buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            image.capacity = (int) ((channel.size() - HEADER_SIZE) / SLOT_SIZE);
+            image.used = Math.min(image.buf.getInt(H_USED), image.capacity);
+        }
+        return image;
+    }
+
+    /**
+     * Read the instrument name stored in an image file's header, or null
+     * if the file is not a valid image.
+     */
+    public static String readInstrument(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) < HEADER_SIZE || header.getInt(H_MAGIC) != MAGIC) return null;
+            int len = header.getInt(H_INSTRUMENT_LEN);
+            if (len <= 0 || len > MAX_INSTRUMENT_BYTES) return null;
+            byte[] name = new byte[len];
+            header.get(H_INSTRUMENT, name);
+            return new String(name, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static String fileName(String instrument) {
+        return instrument.replaceAll("[^A-Za-z0-9._-]", "_") + ".img";
+    }
+
+    /**
+     * Event sequence the image was last committed at.
+     */
+    public long sequence() {
+        return buf.getLong(H_SEQUENCE);
+    }
+
+    /**
+     * Decode the image into orders if it is complete and belongs to this
+     * instrument, otherwise return null.  Orders are returned in slot
+     * order, not book order.
+     */
+    public List<Order> load() {
+        byte[] name = instrument.getBytes(StandardCharsets.UTF_8);
+        int len = buf.getInt(H_INSTRUMENT_LEN);
+        byte[] stored = new byte[Math.max(0, Math.min(len, MAX_INSTRUMENT_BYTES))];
+        buf.get(H_INSTRUMENT, stored);
+        if (buf.getInt(H_MAGIC) != MAGIC || buf.getInt(H_VERSION) != FORMAT_VERSION
+                || buf.getInt(H_DIRTY) != 0 || !Arrays.equals(name, stored)) {
+            LOGGER.warn("Book image {} is incomplete or not for {}", file, instrument);
+            return null;
+        }
+        List<Order> orders = new ArrayList<>();
+        slots.clear();
+        freeSlots.clear();
+        for (int slot = 0; slot < used; slot++) {
+            int base = HEADER_SIZE + slot * SLOT_SIZE;
+            if (buf.get(base + S_STATE) != USED) {
+                freeSlots.add(slot);
+                continue;
+            }
+            Order o = decode(base);
+            slots.put(o.getOrderId(), slot);
+            orders.add(o);
+        }
+        return orders;
+    }
+
+    /**
+     * Mark the image as being modified.  Must precede the writes of an
+     * engine event.
+     */
+    public void begin() {
+        if (usable) buf.putInt(H_DIRTY, 1);
+    }
+
+    /**
+     * Write or overwrite the slot of a resting order.
+     */
+    public void put(Order order) {
+        if (!usable) return;
+        Integer slot = slots.get(order.getOrderId());
+        if (slot == null) {
+            slot = allocate();
+            if (slot < 0) return;
+            slots.put(order.getOrderId(), slot);
+        }
+        if (!encode(HEADER_SIZE + slot * SLOT_SIZE, order)) {
+            markUnusable("order " + order.getOrderId() + " cannot be encoded");
+        }
+    }
+
+    /**
+     * Free the slot of an order that left the book.
+     */
+    public void remove(UUID orderId) {
+        if (!usable) return;
+        Integer slot = slots.remove(orderId);
+        if (slot == null) return;
+        buf.put(HEADER_SIZE + slot * SLOT_SIZE + S_STATE, FREE);
+        freeSlots.add(slot);
+    }
+
+    /**
+     * Complete an engine event: record the sequence and clear the dirty
+     * flag.  The sequence is written first so a reader never sees a
+     * clean image with an old sequence.
+     */
+    public void commit(long sequence) {
+        if (!usable) return;
+        buf.putLong(H_SEQUENCE, sequence);
+        buf.putInt(H_DIRTY, 0);
+    }
+
+    /**
+     * Replace the image contents with the given orders and commit it at
+     * the given sequence.  Also makes an unusable image usable again.
+     */
+    public void rewrite(Collection<Order> orders, long sequence) {
+        usable = true;
+        begin();
+        buf.putInt(H_VERSION, FORMAT_VERSION);
+        for (int slot = 0; slot < used; slot++) {
+            buf.put(HEADER_SIZE + slot * SLOT_SIZE + S_STATE, FREE);
+        }
+        slots.clear();
+        freeSlots.clear();
+        used = 0;
+        buf.putInt(H_USED, 0);
+        for (Order o : orders) {
+            put(o);
+        }
+        commit(sequence);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buf != null) buf.force();
+        channel.close();
+    }
+
+    private void initialise(int slotCapacity) throws IOException {
+        capacity = slotCapacity;
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        byte[] name = instrument.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_INSTRUMENT_BYTES) {
+            throw new IOException("Instrument name too long for book image: " + instrument);
+        }
+        buf.putInt(H_MAGIC, MAGIC);
+        buf.putInt(H_VERSION, FORMAT_VERSION);
+        buf.putLong(H_SEQUENCE, 0L);
+        buf.putInt(H_DIRTY, 0);
+        buf.putInt(H_CAPACITY, capacity);
+        buf.putInt(H_USED, 0);
+        buf.putInt(H_INSTRUMENT_LEN, name.length);
+        buf.put(H_INSTRUMENT, name);
+    }
+
+    private int allocate() {
+        Integer free = freeSlots.poll();
+        if (free != null) return free;
+        if (used == capacity) {
+            try {
+                capacity *= 2;
+                buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+                buf.putInt(H_CAPACITY, capacity);
+            } catch (IOException e) {
+                markUnusable("cannot grow file: " + e.getMessage());
+                return -1;
+            }
+        }
+        int slot = used++;
+        buf.putInt(H_USED, used);
+        return slot;
+    }
+
+    private boolean encode(int base, Order o) {
+        byte[] client = o.getClientId() == null ? new byte[0] : o.getClientId().getBytes(StandardCharsets.UTF_8);
+        if (client.length > MAX_CLIENT_ID_BYTES || o.getPrice() == null
+                || !fits(o.getPrice()) || !fits(o.getQuantity()) || !fits(o.getFilledQuantity())) {
+            return false;
+        }
+        boolean stopLimit = "stop_limit".equalsIgnoreCase(o.getType());
+        if (!stopLimit && !"limit".equalsIgnoreCase(o.getType())) return false;
+        BigDecimal stopPrice = o.getStopPrice();
+        if (stopPrice != null && !fits(stopPrice)) return false;
+        Instant created = o.getCreatedAt();
+        Instant updated = o.getUpdatedAt() == null ? created : o.getUpdatedAt();
+        buf.put(base + S_SIDE, (byte) ("buy".equalsIgnoreCase(o.getSide()) ? 0 : 1));
+        buf.put(base + S_PRICE_SCALE, (byte) o.getPrice().scale());
+        buf.put(base + S_QTY_SCALE, (byte) o.getQuantity().scale());
+        buf.put(base + S_FILLED_SCALE, (byte) o.getFilledQuantity().scale());
+        buf.put(base + S_CLIENT_LEN, (byte) client.length);
+        buf.put(base + S_TYPE, stopLimit ? STOP_LIMIT : LIMIT);
+        // A scale below zero with an unscaled value of zero stands for no stop price
+        buf.put(base + S_STOP_SCALE, stopPrice == null ? Byte.MIN_VALUE : (byte) stopPrice.scale());
+        buf.putLong(base + S_STOP_PRICE, stopPrice == null ? 0L : stopPrice.unscaledValue().longValue());
+        buf.putLong(base + S_ID_MSB, o.getOrderId().getMostSignificantBits());
+        buf.putLong(base + S_ID_LSB, o.getOrderId().getLeastSignificantBits());
+        buf.putLong(base + S_PRICE, o.getPrice().unscaledValue().longValue());
+        buf.putLong(base + S_QTY, o.getQuantity().unscaledValue().longValue());
+        buf.putLong(base + S_FILLED, o.getFilledQuantity().unscaledValue().longValue());
+        buf.putLong(base + S_CREATED_SEC, created.getEpochSecond());
+        buf.putInt(base + S_CREATED_NANO, created.getNano());
+        buf.putLong(base + S_UPDATED_SEC, updated.getEpochSecond());
+        buf.putInt(base + S_UPDATED_NANO, updated.getNano());
+        buf.putLong(base + S_VERSION, o.getVersion() == null ? -1L : o.getVersion());
+        buf.put(base + S_CLIENT, client);
+        // Publish the slot last so a half written slot is never marked used
+        buf.put(base + S_STATE, USED);
+        return true;
+    }
+
+    private Order decode(int base) {
+        Order o = new Order();
+        o.setOrderId(new UUID(buf.getLong(base + S_ID_MSB), buf.getLong(base + S_ID_LSB)));
+        byte[] client = new byte[buf.get(base + S_CLIENT_LEN)];
+        buf.get(base + S_CLIENT, client);
+        o.setClientId(new String(client, StandardCharsets.UTF_8));
+        o.setInstrument(instrument);
+        o.setSide(buf.get(base + S_SIDE) == 0 ? "buy" : "sell");
+        o.setType(buf.get(base + S_TYPE) == STOP_LIMIT ? "stop_limit" : "limit");
+        o.setPrice(BigDecimal.valueOf(buf.getLong(base + S_PRICE), buf.get(base + S_PRICE_SCALE)));
+        o.setQuantity(BigDecimal.valueOf(buf.getLong(base + S_QTY), buf.get(base + S_QTY_SCALE)));
+        o.setFilledQuantity(BigDecimal.valueOf(buf.getLong(base + S_FILLED), buf.get(base + S_FILLED_SCALE)));
+        byte stopScale = buf.get(base + S_STOP_SCALE);
+        long stopPrice = buf.getLong(base + S_STOP_PRICE);
+        o.setStopPrice(stopScale == Byte.MIN_VALUE && stopPrice == 0 ? null : BigDecimal.valueOf(stopPrice, stopScale));
+        o.setStatus(o.getFilledQuantity().signum() > 0 ? "partially_filled" : "open");
+        o.setCreatedAt(Instant.ofEpochSecond(buf.getLong(base + S_CREATED_SEC), buf.getInt(base + S_CREATED_NANO)));
+        o.setUpdatedAt(Instant.ofEpochSecond(buf.getLong(base + S_UPDATED_SEC), buf.getInt(base + S_UPDATED_NANO)));
+        long version = buf.getLong(base + S_VERSION);
+        o.setVersion(version < 0 ? null : version);
+        return o;
+    }
+
+    private static boolean fits(BigDecimal value) {
+        if (value == null || value.scale() < Byte.MIN_VALUE || value.scale() > Byte.MAX_VALUE) return false;
+        BigInteger unscaled = value.unscaledValue();
+        return unscaled.compareTo(LONG_MIN) >= 0 && unscaled.compareTo(LONG_MAX) <= 0;
+    }
+
+    private void markUnusable(String reason) {
+        usable = false;
+        // Leave the dirty flag raised so a restart does not trust this image
+        buf.putInt(H_DIRTY, 1);
+        LOGGER.warn("Book image {} disabled until rewritten: {}", file, reason);
+    }
+}
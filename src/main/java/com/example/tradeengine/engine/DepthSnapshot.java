@@ -0,0 +1,117 @@
+package com.example.tradeengine.engine;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable top‑of‑book depth (L2) for one instrument, as published by
+ * the matching engine after each batch of events that changed a price
+ * level.  Readers get it through a volatile reference and never touch
+ * the live book.  The sequence increases with every publication of the
+ * instrument's depth.
+ *
+ * <p>The JSON served by `GET /orderbook` is rendered at most once per
+ * snapshot and requested depth and then reused, so repeated requests
+ * between two book changes cost a map lookup.
+ */
+public final class DepthSnapshot {
+    private final String instrument;
+    private final long sequence;
+    private final long checksum;
+    private final Instant timestamp;
+    private final List<Level> bids;
+    private final List<Level> asks;
+    private final ConcurrentMap<Integer, byte[]> json = new ConcurrentHashMap<>();
+
+    /** One aggregated price level. */
+    public static final class Level {
+        private final BigDecimal price;
+        private final BigDecimal quantity;
+        private final int orders;
+        Level(BigDecimal price, BigDecimal quantity, int orders) {
+            this.price = price;
+            this.quantity = quantity;
+            this.orders = orders;
+        }
+        public BigDecimal getPrice() { return price; }
+        public BigDecimal getQuantity() { return quantity; }
+        public int getOrders() { return orders; }
+    }
+
+    private DepthSnapshot(String instrument, long sequence, long checksum, List<Level> bids, List<Level> asks) {
+        this.instrument = instrument;
+        this.sequence = sequence;
+        this.checksum = checksum;
+        this.timestamp = Instant.now();
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    /**
+     * Copy the best levels of a book.  Must run on the thread that
+     * changes the book.
+     */
+    public static DepthSnapshot of(String instrument, long sequence, OrderBook book, int maxLevels) {
+        return new DepthSnapshot(instrument, sequence, book.checksum(),
+            top(book.getBidLevels(), maxLevels), top(book.getAskLevels(), maxLevels));
+    }
+
+    static DepthSnapshot empty(String instrument) {
+        return new DepthSnapshot(instrument, 0L, 0L, List.of(), List.of());
+    }
+
+    private static List<Level> top(NavigableMap<BigDecimal, OrderBook.PriceLevel> levels, int maxLevels) {
+        List<Level> top = new ArrayList<>(Math.min(levels.size(), maxLevels));
+        for (Map.Entry<BigDecimal, OrderBook.PriceLevel> e : levels.entrySet()) {
+            if (top.size() >= maxLevels) break;
+            top.add(new Level(e.getKey(), e.getValue().getQuantity(), e.getValue().getOrders()));
+        }
+        return Collections.unmodifiableList(top);
+    }
+
+    public String getInstrument() { return instrument; }
+    public long getSequence() { return sequence; }
+    /** {@link OrderBook#checksum()} of the book the levels were taken from. */
+    public long getChecksum() { return checksum; }
+    public Instant getTimestamp() { return timestamp; }
+    public List<Level> getBids() { return bids; }
+    public List<Level> getAsks() { return asks; }
+
+    /**
+     * Weak entity tag for the given depth.  Derived from the book
+     * checksum rather than the sequence, so it stays valid across
+     * restarts and between a primary and its standby; the levels are
+     * the same whenever the checksum is, though the sequence may not be.
+     */
+    public String etag(int levels) {
+        return "W/\"" + Long.toHexString(checksum) + '-' + levels + "\"";
+    }
+
+    /**
+     * The `/orderbook` response body for the best `levels` levels per
+     * side, rendered on first use.
+     */
+    public byte[] toJson(int levels, ObjectMapper objectMapper) throws JsonProcessingException {
+        byte[] body = json.get(levels);
+        if (body != null) return body;
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("instrument", instrument);
+        res.put("sequence", sequence);
+        res.put("bids", bids.subList(0, Math.min(levels, bids.size())));
+        res.put("asks", asks.subList(0, Math.min(levels, asks.size())));
+        body = objectMapper.writeValueAsBytes(res);
+        json.putIfAbsent(levels, body);
+        return body;
+    }
+}
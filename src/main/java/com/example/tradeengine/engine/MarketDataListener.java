@@ -0,0 +1,20 @@
+package com.example.tradeengine.engine;
+
+import com.example.tradeengine.model.Trade;
+
+/**
+ * Receives the market data produced by the matching engine.  Callbacks
+ * run on the thread that produced the data – usually an instrument's
+ * matching thread – so implementations must only hand the data off and
+ * return; anything slower delays matching.
+ */
+public interface MarketDataListener {
+    /** A newly published depth of an instrument; publications of one instrument never overlap. */
+    default void onDepth(DepthSnapshot depth) {}
+
+    /** The signals of an instrument's book, published right after each of its depths. */
+    default void onSignals(Signals signals) {}
+
+    /** A trade, after it has been persisted and recorded in the event log. */
+    default void onTrade(String instrument, Trade trade) {}
+}
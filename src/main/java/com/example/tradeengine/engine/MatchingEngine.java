@@ -1,64 +1,128 @@
 package com.example.tradeengine.engine;
 
+import com.example.tradeengine.model.EventRecord;
 import com.example.tradeengine.model.Order;
 import com.example.tradeengine.model.Trade;
 import com.example.tradeengine.repository.OrderRepository;
 import com.example.tradeengine.repository.TradeRepository;
 import com.example.tradeengine.service.StreamService;
 import com.example.tradeengine.service.EventService;
+import com.example.tradeengine.service.IdempotencyService;
+import com.example.tradeengine.service.RiskService;
+import com.example.tradeengine.exception.OrderRejectedException;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Timer;
-import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Matching engine that supports multiple instruments.  Each instrument
  * has its own OrderBook, queue and worker thread.  Submissions are
  * partitioned by instrument so that matching for different instruments
  * proceeds concurrently.
+ *
+ * <p>Each worker takes whatever has queued up as one batch and, after
+ * the batch, publishes a {@link DepthSnapshot} of the best
+ * `orderbook.depth.max-levels` price levels if any level changed.
+ * Readers of market depth use {@link #getDepth(String)} and never read
+ * the live book.  Components that follow market data, such as
+ * streaming feeds, register a {@link MarketDataListener} to be told
+ * about every depth publication and trade.  Each depth publication
+ * comes with the book's {@link Signals}; order‑flow imbalance, which
+ * depends on every change of the best quotes, is updated after each
+ * event rather than per batch.
+ *
+ * <p>Stop and stop_limit orders wait as "pending" in the instrument's
+ * {@link StopBook} until a trade reaches their stop price, then execute
+ * as market and limit orders respectively.  Stops triggered by an
+ * event are executed within that event, before the next one is taken
+ * from the queue.
  */
 @Service
 public class MatchingEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MatchingEngine.class);
+    /** Most queued events handled before depth is published again. */
+    private static final int MAX_BATCH = 256;
+    /** Longest {@link #beginMaintenance()} waits for queued commands. */
+    private static final long DRAIN_TIMEOUT_SECONDS = 10;
     private final OrderRepository orderRepo;
     private final TradeRepository tradeRepo;
-    private final RedisTemplate<String, Order> redisTemplate;
+    private final IdempotencyService idempotencyService;
+    private final RiskService riskService;
     private final MeterRegistry meterRegistry;
     private final StreamService streamService;
     private final EventService eventService;
     private final Counter ordersReceived;
     private final Counter ordersMatched;
     private final Counter ordersRejected;
+    private final Counter stopsTriggered;
     private final Timer orderLatency;
     private final Gauge orderBookDepth;
     private final ConcurrentMap<String, InstrumentEngine> instrumentEngines = new ConcurrentHashMap<>();
+    private final List<MarketDataListener> listeners = new CopyOnWriteArrayList<>();
+    private final boolean bookImageEnabled;
+    private final Path bookImageDir;
+    private final int maxDepthLevels;
+    private final int signalLevels;
+    private final int orderFlowWindowSeconds;
+    private volatile boolean standby;
+    private volatile boolean recovering;
+    private volatile boolean maintenance;
 
     @Autowired
     public MatchingEngine(OrderRepository orderRepo,
                           TradeRepository tradeRepo,
-                          RedisTemplate<String, Order> redisTemplate,
+                          IdempotencyService idempotencyService,
+                          RiskService riskService,
                           MeterRegistry meterRegistry,
                           StreamService streamService,
-                          EventService eventService) {
+                          EventService eventService,
+                          @Value("${bookimage.enabled:false}") boolean bookImageEnabled,
+                          @Value("${bookimage.dir:data/book-images}") String bookImageDir,
+                          @Value("${standby.enabled:false}") boolean standby,
+                          @Value("${orderbook.depth.max-levels:50}") int maxDepthLevels,
+                          @Value("${signals.depth-levels:5}") int signalLevels,
+                          @Value("${signals.ofi-window-seconds:10}") int orderFlowWindowSeconds) {
         this.orderRepo = orderRepo;
         this.tradeRepo = tradeRepo;
-        this.redisTemplate = redisTemplate;
+        this.idempotencyService = idempotencyService;
+        this.riskService = riskService;
         this.meterRegistry = meterRegistry;
         this.streamService = streamService;
         this.eventService = eventService;
+        this.bookImageEnabled = bookImageEnabled;
+        this.bookImageDir = Paths.get(bookImageDir);
+        this.standby = standby;
+        this.maxDepthLevels = Math.max(1, maxDepthLevels);
+        this.signalLevels = Math.max(1, signalLevels);
+        this.orderFlowWindowSeconds = Math.max(1, orderFlowWindowSeconds);
         this.ordersReceived = meterRegistry.counter("orders_received_total");
         this.ordersMatched = meterRegistry.counter("orders_matched_total");
         this.ordersRejected = meterRegistry.counter("orders_rejected_total");
+        this.stopsTriggered = meterRegistry.counter("stop_orders_triggered_total");
         this.orderLatency = meterRegistry.timer("order_latency_seconds");
         // Gauge for current order book depth (sum of bids and asks across all instruments)
         this.orderBookDepth = Gauge.builder("current_orderbook_depth", instrumentEngines,
@@ -68,30 +132,151 @@ public class MatchingEngine {
             .register(meterRegistry);
     }
 
-    @PostConstruct
-    public void init() {
-        // On startup, load open orders grouped by instrument into their respective engines
-        orderRepo.findAll().stream()
-            .filter(o -> "open".equals(o.getStatus()) || "partially_filled".equals(o.getStatus()))
-            .forEach(o -> {
-                InstrumentEngine eng = instrumentEngines.computeIfAbsent(o.getInstrument(), this::createEngine);
-                eng.loadOpenOrder(o);
-            });
+    /**
+     * Replace an instrument's order book with the given open orders.
+     * Called during startup recovery, which loads open orders per
+     * instrument instead of scanning the whole orders table here.
+     */
+    public void loadOpenOrders(String instrument, List<Order> orders) {
+        List<Order> bids = new ArrayList<>();
+        List<Order> asks = new ArrayList<>();
+        for (Order o : orders) {
+            (o.getSide().equalsIgnoreCase("buy") ? bids : asks).add(o);
+        }
+        InstrumentEngine eng = instrumentEngines.computeIfAbsent(instrument, this::createEngine);
+        eng.getOrderBook().loadSorted(bids, asks);
+        eng.publishDepth();
+    }
+
+    /**
+     * Replace an instrument's pending stop and stop_limit orders, given
+     * oldest first.  Called during startup recovery and on promotion;
+     * stops are not part of book snapshots or images and are always
+     * loaded from the orders table.
+     */
+    public void loadStops(String instrument, List<Order> stops) {
+        instrumentEngines.computeIfAbsent(instrument, this::createEngine).stopBook.load(stops);
+    }
+
+    /** Number of pending stop orders of an instrument. */
+    public int getStopCount(String instrument) {
+        InstrumentEngine eng = instrumentEngines.get(instrument);
+        return eng == null ? 0 : eng.stopBook.size();
+    }
+
+    /**
+     * The latest published depth of an instrument; an empty snapshot
+     * if the instrument is unknown.  Wait‑free.
+     */
+    public DepthSnapshot getDepth(String instrument) {
+        InstrumentEngine eng = instrumentEngines.get(instrument);
+        return eng == null ? DepthSnapshot.empty(instrument) : eng.depth;
+    }
+
+    /**
+     * The signals published with an instrument's latest depth; empty
+     * signals if the instrument is unknown.  Wait‑free.
+     */
+    public Signals getSignals(String instrument) {
+        InstrumentEngine eng = instrumentEngines.get(instrument);
+        return eng == null ? Signals.empty(instrument, signalLevels, orderFlowWindowSeconds) : eng.signals;
+    }
+
+    /** Register a listener for depth publications, signals and trades of all instruments. */
+    public void addListener(MarketDataListener listener) {
+        listeners.add(listener);
+    }
+
+    /** Number of price levels per side kept in published depth. */
+    public int getMaxDepthLevels() {
+        return maxDepthLevels;
+    }
+
+    /**
+     * Publish fresh depth for every instrument whose book changed since
+     * its last publication.  The matching threads do this themselves;
+     * this is for code that changes books outside them, such as
+     * recovery, replay and the standby replicator.
+     */
+    public void publishDepth() {
+        instrumentEngines.values().forEach(InstrumentEngine::publishDepth);
     }
 
     /**
-     * Submit a new order.  Partitions by instrument.
+     * Publish fresh depth for one instrument if its book changed since
+     * its last publication.  For code that rebuilds one instrument's
+     * book, such as a replay worker, which must not publish books
+     * another thread is still changing.
+     */
+    public void publishDepth(String instrument) {
+        InstrumentEngine eng = instrumentEngines.get(instrument);
+        if (eng != null) eng.publishDepth();
+    }
+
+    /**
+     * Submit a new order.  Partitions by instrument.  A keyed submission
+     * is deduplicated by the {@link IdempotencyService} before it is
+     * queued, so the instrument thread never looks keys up itself.  The
+     * order then passes the {@link RiskService} checks, or the future
+     * fails with an {@link OrderRejectedException}.
      */
     public CompletableFuture<Order> submitOrder(Order order, String idempotencyKey) {
+        String refused = refusal();
+        if (refused != null) return CompletableFuture.failedFuture(new IllegalStateException(refused));
         ordersReceived.increment();
         InstrumentEngine eng = instrumentEngines.computeIfAbsent(order.getInstrument(), this::createEngine);
-        return eng.submitOrder(order, idempotencyKey);
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) return checkAndSubmit(eng, order);
+        return idempotencyService.submit(idempotencyKey, () -> checkAndSubmit(eng, order));
+    }
+
+    private CompletableFuture<Order> checkAndSubmit(InstrumentEngine eng, Order order) {
+        long reserved;
+        try {
+            reserved = riskService.check(order, eng.referencePrice());
+        } catch (OrderRejectedException e) {
+            ordersRejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+        return eng.submitOrder(order, reserved);
     }
 
     /**
-     * Cancel an existing order.  Looks up the order to determine its instrument.
+     * Submit several orders without idempotency keys or risk checks;
+     * their notional still counts towards their client's exposure while
+     * they are queued or resting.  The orders of each
+     * instrument are appended to its queue in one operation, so its
+     * matching thread takes them in as few batches as possible.
+     *
+     * @return a future completing once every order has been processed,
+     *     whether it filled, rested or failed
+     */
+    public CompletableFuture<Void> submitOrders(List<Order> orders) {
+        String refused = refusal();
+        if (refused != null) return CompletableFuture.failedFuture(new IllegalStateException(refused));
+        ordersReceived.increment(orders.size());
+        Map<String, List<Order>> byInstrument = new LinkedHashMap<>();
+        for (Order order : orders) {
+            byInstrument.computeIfAbsent(order.getInstrument(), i -> new ArrayList<>()).add(order);
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[orders.size()];
+        int n = 0;
+        for (Map.Entry<String, List<Order>> e : byInstrument.entrySet()) {
+            InstrumentEngine eng = instrumentEngines.computeIfAbsent(e.getKey(), this::createEngine);
+            for (CompletableFuture<Order> fut : eng.submitOrders(e.getValue())) {
+                futures[n++] = fut.exceptionally(t -> null);
+            }
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Cancel an existing order.  Looks up the order to determine its
+     * instrument; whether it is still open is decided on the matching
+     * thread, and an order that is no longer is returned as stored.
      */
     public CompletableFuture<Order> cancelOrder(UUID orderId) {
+        String refused = refusal();
+        if (refused != null) return CompletableFuture.failedFuture(new IllegalStateException(refused));
         CompletableFuture<Order> fut = new CompletableFuture<>();
         orderRepo.findById(orderId).ifPresentOrElse(order -> {
             InstrumentEngine eng = instrumentEngines.computeIfAbsent(order.getInstrument(), this::createEngine);
@@ -100,6 +285,129 @@ public class MatchingEngine {
         return fut;
     }
 
+    /**
+     * Recompute an instrument's book checksum from its resting orders on
+     * the instrument's matching thread, between commands, and compare it
+     * with the incrementally maintained one.
+     *
+     * @return a future completing with whether the two agree, or null if the instrument is unknown
+     */
+    public CompletableFuture<Boolean> verifyChecksum(String instrument) {
+        InstrumentEngine eng = instrumentEngines.get(instrument);
+        if (eng == null) return null;
+        CompletableFuture<Boolean> fut = new CompletableFuture<>();
+        eng.verifyChecksum(fut);
+        return fut;
+    }
+
+    /**
+     * Copy an instrument's resting orders on the instrument's matching
+     * thread, between commands, so the copy is never torn by a match in
+     * progress.  The capture carries the ID of the last event the book
+     * reflects.
+     *
+     * @return a future completing with the capture, or null if the instrument is unknown
+     */
+    public CompletableFuture<BookCapture> captureBook(String instrument) {
+        InstrumentEngine eng = instrumentEngines.get(instrument);
+        if (eng == null) return null;
+        CompletableFuture<BookCapture> fut = new CompletableFuture<>();
+        eng.capture(fut);
+        return fut;
+    }
+
+    /**
+     * Whether this engine is a standby (`standby.enabled`).  A standby
+     * rejects submissions and cancels; its books are kept up to date
+     * from the primary's event log until it is promoted.
+     */
+    public boolean isStandby() {
+        return standby;
+    }
+
+    /**
+     * Whether startup recovery is still rebuilding the books.  Recovery
+     * loads books outside the matching threads and then recounts every
+     * client's exposure, so submissions and cancels are rejected until
+     * it has finished, like a standby's.
+     */
+    public boolean isRecovering() {
+        return recovering;
+    }
+
+    /** Called by startup recovery before it touches a book and once it is done. */
+    public void setRecovering(boolean recovering) {
+        this.recovering = recovering;
+    }
+
+    /**
+     * Whether the books are being rebuilt by a maintenance job such as a
+     * full event replay.  Submissions and cancels are rejected meanwhile.
+     */
+    public boolean isInMaintenance() {
+        return maintenance;
+    }
+
+    /**
+     * Reject submissions and cancels and wait until every matching
+     * thread has finished the commands queued before, so a job may
+     * rebuild the books and the tables behind them.  Must be followed
+     * by {@link #endMaintenance()}.
+     */
+    public void beginMaintenance() {
+        maintenance = true;
+        List<CompletableFuture<Void>> drained = new ArrayList<>();
+        for (InstrumentEngine eng : instrumentEngines.values()) {
+            CompletableFuture<Void> fut = new CompletableFuture<>();
+            eng.drain(fut);
+            drained.add(fut);
+        }
+        try {
+            CompletableFuture.allOf(drained.toArray(new CompletableFuture<?>[0])).get(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.warn("Matching threads did not drain within {} s; continuing", DRAIN_TIMEOUT_SECONDS);
+        }
+    }
+
+    /** Accept submissions and cancels again. */
+    public void endMaintenance() {
+        maintenance = false;
+    }
+
+    /** Why submissions and cancels are rejected at the moment, or null if they are accepted. */
+    private String refusal() {
+        if (standby) return "Engine is in standby mode";
+        if (recovering) return "Engine is recovering";
+        if (maintenance) return "Engine is under maintenance";
+        return null;
+    }
+
+    /**
+     * Start accepting orders.  Called once the standby's books have
+     * caught up with the last events the primary committed.
+     */
+    public void promote() {
+        rebuildExposure();
+        standby = false;
+    }
+
+    /**
+     * Recount every client's open notional from the resting orders and
+     * pending stops of all books.  Called once books have been rebuilt outside the
+     * matching threads, by recovery, replication, a replay or a snapshot
+     * restore, and before orders are accepted again.
+     */
+    public void rebuildExposure() {
+        List<Order> resting = new ArrayList<>();
+        for (InstrumentEngine eng : instrumentEngines.values()) {
+            resting.addAll(eng.getOrderBook().getAllOrders());
+            resting.addAll(eng.stopBook.getAllOrders());
+        }
+        riskService.reset(resting);
+    }
+
     /**
      * Get the order book for a specific instrument.  Creates one if absent.
      */
@@ -107,147 +415,424 @@ public class MatchingEngine {
         return instrumentEngines.computeIfAbsent(instrument, this::createEngine).getOrderBook();
     }
 
+    /** Whether an order matches only at its limit price and rests what is left. */
+    private static boolean isLimitPriced(Order order) {
+        return order.getType().equalsIgnoreCase("limit") || order.getType().equalsIgnoreCase("stop_limit");
+    }
+
     private InstrumentEngine createEngine(String instrument) {
         return new InstrumentEngine(instrument);
     }
 
+    public boolean isBookImageEnabled() {
+        return bookImageEnabled;
+    }
+
+    /**
+     * Instruments that have a book image on disk.  Empty when book
+     * images are disabled.
+     */
+    public Set<String> getImageInstruments() {
+        Set<String> instruments = new HashSet<>();
+        if (!bookImageEnabled || !Files.isDirectory(bookImageDir)) return instruments;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(bookImageDir, "*.img")) {
+            for (Path file : files) {
+                String instrument = BookImage.readInstrument(file);
+                if (instrument != null) instruments.add(instrument);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot list book images in {}: {}", bookImageDir, e.getMessage());
+        }
+        return instruments;
+    }
+
+    /**
+     * Load an instrument's order book from its memory‑mapped image if the
+     * image is complete and was committed at exactly the given event log
+     * high‑water mark.  Returns the number of orders loaded, or -1 if the
+     * image is missing, incomplete or stale and another recovery path
+     * must be used.
+     */
+    public int restoreFromImage(String instrument, long eventHighWater) {
+        InstrumentEngine eng = instrumentEngines.computeIfAbsent(instrument, this::createEngine);
+        return eng.restoreFromImage(eventHighWater);
+    }
+
+    /**
+     * Rewrite an instrument's book image from its in‑memory order book
+     * after it was rebuilt by another recovery path, and continue
+     * stamping the image from the given event log high‑water mark.  Does
+     * nothing when book images are disabled.
+     */
+    public void syncImage(String instrument, long eventHighWater) {
+        InstrumentEngine eng = instrumentEngines.computeIfAbsent(instrument, this::createEngine);
+        eng.syncImage(eventHighWater);
+    }
+
+    @PreDestroy
+    public void closeImages() {
+        instrumentEngines.values().forEach(InstrumentEngine::closeImage);
+    }
+
     /**
      * Inner class handling matching for a single instrument.
      */
     private class InstrumentEngine {
         private final String instrument;
         private final OrderBook orderBook;
+        private final StopBook stopBook = new StopBook();
         private final BlockingQueue<InstrumentEvent> queue;
         private final Thread worker;
+        private final AtomicLong eventCount = new AtomicLong();
+        private final BookImage image;
+        private volatile long lastEventId;
+        private volatile DepthSnapshot depth;
+        private volatile Signals signals;
+        private volatile BigDecimal lastTradePrice;
+        /** Lowest and highest price traded by the order last executed; null if it did not trade. */
+        private BigDecimal tradeLow;
+        private BigDecimal tradeHigh;
+        private final OrderFlow orderFlow;
+        private long depthSequence;
+        private long publishedLevelsVersion = -1;
         InstrumentEngine(String instrument) {
             this.instrument = instrument;
-            this.orderBook = new OrderBook();
+            this.orderBook = new OrderBook(signalLevels);
             this.queue = new LinkedBlockingQueue<>();
+            this.depth = DepthSnapshot.empty(instrument);
+            this.orderFlow = new OrderFlow(orderFlowWindowSeconds);
+            this.signals = Signals.empty(instrument, signalLevels, orderFlowWindowSeconds);
+            this.image = bookImageEnabled ? openImage(instrument) : null;
             this.worker = new Thread(this::processLoop, "matching-engine-" + instrument);
             this.worker.setDaemon(true);
             this.worker.start();
         }
 
+        private BookImage openImage(String instrument) {
+            try {
+                return BookImage.open(bookImageDir, instrument);
+            } catch (IOException e) {
+                LOGGER.warn("Book image disabled for {}: {}", instrument, e.getMessage());
+                return null;
+            }
+        }
+
+        int restoreFromImage(long eventHighWater) {
+            if (image == null || image.sequence() != eventHighWater) return -1;
+            List<Order> orders = image.load();
+            if (orders == null) return -1;
+            loadOpenOrders(instrument, orders);
+            lastEventId = eventHighWater;
+            return orders.size();
+        }
+
+        void syncImage(long eventHighWater) {
+            lastEventId = eventHighWater;
+            if (image != null) image.rewrite(orderBook.getAllOrders(), eventHighWater);
+        }
+
+        void closeImage() {
+            if (image == null) return;
+            try {
+                image.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close book image for {}: {}", instrument, e.getMessage());
+            }
+        }
+
+        // Book image maintenance; every engine event is bracketed by
+        // imageBegin() and imageCommit() so a torn image is detectable.
+        private void imageBegin() {
+            if (image != null) image.begin();
+        }
+        private void imagePut(Order order) {
+            if (image != null) image.put(order);
+        }
+        private void imageRemove(Order order) {
+            if (image != null) image.remove(order.getOrderId());
+        }
+        private void imageCommit() {
+            if (image != null) image.commit(lastEventId);
+        }
+
         /**
-         * Clear this instrument's in‑memory order book.  Used during
-         * recovery to reset state.
+         * Clear this instrument's in‑memory order book and pending stops.
+         * Used during recovery to reset state.
          */
         void clearOrderBook() {
             this.orderBook.clear();
+            this.stopBook.clear();
+            publishDepth();
         }
-        void loadOpenOrder(Order order) {
-            // Insert into order book for this instrument
-            orderBook.addLimitOrder(order);
+
+        /**
+         * Publish the book's depth if a price level changed since the
+         * last publication.  Order flow is not updated here, as callers
+         * other than the matching thread publish books they rebuilt;
+         * the matching thread updates it after each event, under the
+         * same lock, so signals never read it mid‑update.
+         */
+        synchronized void publishDepth() {
+            long version = orderBook.levelsVersion();
+            if (version == publishedLevelsVersion) return;
+            publishedLevelsVersion = version;
+            depth = DepthSnapshot.of(instrument, ++depthSequence, orderBook, maxDepthLevels);
+            signals = Signals.of(instrument, depthSequence, orderBook, orderFlow);
+            for (MarketDataListener l : listeners) {
+                try {
+                    l.onDepth(depth);
+                    l.onSignals(signals);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Market data listener failed on depth of {}: {}", instrument, e.getMessage());
+                }
+            }
+        }
+        private void notifyTrade(Trade trade) {
+            for (MarketDataListener l : listeners) {
+                try {
+                    l.onTrade(instrument, trade);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Market data listener failed on trade of {}: {}", instrument, e.getMessage());
+                }
+            }
         }
         OrderBook getOrderBook() {
             return orderBook;
         }
-        CompletableFuture<Order> submitOrder(Order order, String idempotencyKey) {
+        long getEventCount() {
+            return eventCount.get();
+        }
+        /**
+         * Append an event to the event log and count it towards this
+         * instrument's total, which drives adaptive snapshot scheduling.
+         * Returns the id of the logged event, which streamed events
+         * carry so reconnecting clients can resume after it.
+         */
+        private Long recordEvent(String eventType, String aggregateId, Object payload) {
+            return recordEvent(eventType, aggregateId, payload, null);
+        }
+        /**
+         * Variant for the last event of a command, which carries the book
+         * checksum after the command so replicas and replays can verify
+         * their books against it.
+         */
+        private Long recordEvent(String eventType, String aggregateId, Object payload, Long bookChecksum) {
+            EventRecord record = eventService.recordEvent(eventType, aggregateId, instrument, payload, bookChecksum);
+            eventCount.incrementAndGet();
+            if (record == null || record.getId() == null) return null;
+            lastEventId = record.getId();
+            return record.getId();
+        }
+        /**
+         * Price the risk checks compare orders with: the mid of the
+         * published depth, else the last trade, else whichever side of
+         * the book exists; null for an empty book that never traded.
+         */
+        BigDecimal referencePrice() {
+            DepthSnapshot d = depth;
+            BigDecimal bid = d.getBids().isEmpty() ? null : d.getBids().get(0).getPrice();
+            BigDecimal ask = d.getAsks().isEmpty() ? null : d.getAsks().get(0).getPrice();
+            if (bid != null && ask != null) return bid.add(ask).divide(BigDecimal.valueOf(2));
+            if (lastTradePrice != null) return lastTradePrice;
+            return bid != null ? bid : ask;
+        }
+        CompletableFuture<Order> submitOrder(Order order, long reserved) {
             CompletableFuture<Order> fut = new CompletableFuture<>();
-            queue.add(new SubmitEvent(order, idempotencyKey, fut));
+            queue.add(new SubmitEvent(order, reserved, fut));
             return fut;
         }
+        List<CompletableFuture<Order>> submitOrders(List<Order> orders) {
+            List<CompletableFuture<Order>> futures = new ArrayList<>(orders.size());
+            List<InstrumentEvent> events = new ArrayList<>(orders.size());
+            BigDecimal reference = referencePrice();
+            for (Order order : orders) {
+                CompletableFuture<Order> fut = new CompletableFuture<>();
+                futures.add(fut);
+                events.add(new SubmitEvent(order, riskService.reserve(order, reference), fut));
+            }
+            queue.addAll(events);
+            return futures;
+        }
         void cancelOrder(Order order, CompletableFuture<Order> fut) {
             queue.add(new CancelEvent(order, fut));
         }
+        void verifyChecksum(CompletableFuture<Boolean> fut) {
+            queue.add(new VerifyEvent(fut));
+        }
+        void drain(CompletableFuture<Void> fut) {
+            queue.add(new DrainEvent(fut));
+        }
+        void capture(CompletableFuture<BookCapture> fut) {
+            queue.add(new CaptureEvent(fut));
+        }
         private void processLoop() {
+            List<InstrumentEvent> batch = new ArrayList<>();
             while (true) {
                 try {
-                    InstrumentEvent ev = queue.take();
-                    ev.run();
+                    batch.add(queue.take());
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (InstrumentEvent ev : batch) {
+                        ev.run();
+                        synchronized (this) {
+                            orderFlow.update(orderBook, System.currentTimeMillis());
+                        }
+                    }
+                    batch.clear();
+                    publishDepth();
                 } catch (InterruptedException e) {
                     // ignore
                 }
             }
         }
+        /**
+         * Match an order against the book, rest what a limit‑priced order
+         * has left and record its resulting state.  The range of prices it
+         * traded at is left in {@link #tradeLow} and {@link #tradeHigh}
+         * for {@link #triggerStops()}.
+         *
+         * @return the order as saved after matching
+         */
+        private Order execute(Order order, UUID orderId, long reserved) {
+            tradeLow = null;
+            tradeHigh = null;
+            // Matching logic
+            List<Order> opposite = order.getSide().equalsIgnoreCase("buy") ? orderBook.getAsks() : orderBook.getBids();
+            BigDecimal remaining = order.getQuantity();
+            while (remaining.compareTo(BigDecimal.ZERO) > 0 && !opposite.isEmpty()) {
+                Order best = opposite.get(0);
+                // Price check for limit orders
+                boolean priceOk = true;
+                if (isLimitPriced(order)) {
+                    if (order.getSide().equalsIgnoreCase("buy") && order.getPrice().compareTo(best.getPrice()) < 0) {
+                        priceOk = false;
+                    }
+                    if (order.getSide().equalsIgnoreCase("sell") && order.getPrice().compareTo(best.getPrice()) > 0) {
+                        priceOk = false;
+                    }
+                }
+                if (!priceOk) break;
+                BigDecimal bestRem = best.getQuantity().subtract(best.getFilledQuantity());
+                BigDecimal tradeQty = remaining.min(bestRem);
+                Trade trade = new Trade(
+                    order.getSide().equalsIgnoreCase("buy") ? orderId : best.getOrderId(),
+                    order.getSide().equalsIgnoreCase("buy") ? best.getOrderId() : orderId,
+                    best.getPrice(),
+                    tradeQty,
+                    Instant.now()
+                );
+                trade.setInstrument(instrument);
+                trade.setBuyClientId(order.getSide().equalsIgnoreCase("buy") ? order.getClientId() : best.getClientId());
+                trade.setSellClientId(order.getSide().equalsIgnoreCase("buy") ? best.getClientId() : order.getClientId());
+                tradeRepo.save(trade);
+                // Record trade event
+                Long tradeEventId = recordEvent("TRADE_EXECUTED", trade.getTradeId().toString(), trade);
+                ordersMatched.increment();
+                streamService.sendEvent(tradeEventId, instrument, trade, order.getClientId(), best.getClientId());
+                notifyTrade(trade);
+                remaining = remaining.subtract(tradeQty);
+                order.setFilledQuantity(order.getFilledQuantity().add(tradeQty));
+                orderBook.applyFill(best, tradeQty);
+                riskService.release(best, tradeQty);
+                lastTradePrice = best.getPrice();
+                if (tradeLow == null || best.getPrice().compareTo(tradeLow) < 0) tradeLow = best.getPrice();
+                if (tradeHigh == null || best.getPrice().compareTo(tradeHigh) > 0) tradeHigh = best.getPrice();
+                if (best.getFilledQuantity().compareTo(best.getQuantity()) >= 0) {
+                    best.setStatus("filled");
+                    orderBook.cancelOrder(best);
+                } else {
+                    best.setStatus("partially_filled");
+                }
+                if (order.getFilledQuantity().compareTo(order.getQuantity()) >= 0) {
+                    order.setStatus("filled");
+                } else {
+                    order.setStatus("partially_filled");
+                }
+                best.setUpdatedAt(Instant.now());
+                Order persistedBest = orderRepo.save(best);
+                if ("filled".equals(best.getStatus())) {
+                    imageRemove(best);
+                } else {
+                    imagePut(best);
+                }
+                // Record best order update event
+                Long bestEventId = recordEvent("ORDER_UPDATED", persistedBest.getOrderId().toString(), persistedBest);
+                streamService.sendEvent(persistedBest, bestEventId);
+            }
+            boolean rests = isLimitPriced(order) && order.getFilledQuantity().compareTo(order.getQuantity()) < 0;
+            if (rests) {
+                orderBook.addLimitOrder(order);
+            }
+            Order saved = orderRepo.save(order);
+            if (rests) imagePut(order);
+            riskService.release(order.getClientId(), reserved - (rests
+                ? RiskService.notional(order.getPrice(), order.getQuantity().subtract(order.getFilledQuantity())) : 0));
+            Long updateEventId = recordEvent("ORDER_UPDATED", saved.getOrderId().toString(), saved, orderBook.checksum());
+            streamService.sendEvent(saved, updateEventId);
+            return saved;
+        }
+
+        /**
+         * Execute every stop triggered by the trades just made, and the
+         * stops those trigger in turn, before anything else queued for
+         * this instrument.  Triggered stops run one after another in
+         * {@link StopBook} order, so the sequence of events, and hence a
+         * replay of it, does not depend on timing.
+         */
+        private void triggerStops() {
+            if (tradeLow == null || stopBook.size() == 0) return;
+            List<Order> triggered = new ArrayList<>();
+            stopBook.popTriggered(tradeLow, tradeHigh, triggered);
+            for (int i = 0; i < triggered.size(); i++) {
+                Order stop = triggered.get(i);
+                stop.setStatus("open");
+                stop.setUpdatedAt(Instant.now());
+                Order saved = orderRepo.save(stop);
+                Long triggerEventId = recordEvent("ORDER_UPDATED", saved.getOrderId().toString(), saved);
+                streamService.sendEvent(saved, triggerEventId);
+                stopsTriggered.increment();
+                long reserved = RiskService.notional(RiskService.valuationPrice(stop, null),
+                    stop.getQuantity().subtract(stop.getFilledQuantity()));
+                execute(stop, saved.getOrderId(), reserved);
+                stopBook.popTriggered(tradeLow, tradeHigh, triggered);
+            }
+        }
         private abstract class InstrumentEvent { abstract void run(); }
         private class SubmitEvent extends InstrumentEvent {
             final Order order;
-            final String idKey;
+            /** Notional reserved by the risk checks, released as the order stops being open. */
+            final long reserved;
             final CompletableFuture<Order> fut;
-            SubmitEvent(Order order, String idKey, CompletableFuture<Order> fut) {
+            SubmitEvent(Order order, long reserved, CompletableFuture<Order> fut) {
                 this.order = order;
-                this.idKey = idKey;
+                this.reserved = reserved;
                 this.fut = fut;
             }
             @Override
             void run() {
                 long start = System.nanoTime();
-                // Idempotency check in Redis
-                if (idKey != null && !idKey.isEmpty()) {
-                    Order cached = redisTemplate.opsForValue().get(idKey);
-                    if (cached != null) {
-                        fut.complete(cached);
-                        return;
-                    }
-                }
-                // Persist order
-                order.setStatus("open");
+                imageBegin();
+                // Persist order; stops wait for their trigger as "pending"
+                boolean stop = StopBook.isStop(order);
+                order.setStatus(stop ? "pending" : "open");
                 order.setFilledQuantity(BigDecimal.ZERO);
                 order.setCreatedAt(Instant.now());
                 order.setUpdatedAt(order.getCreatedAt());
                 Order saved = orderRepo.save(order);
-                // Record creation event
-                eventService.recordEvent("ORDER_CREATED", saved.getOrderId().toString(), saved);
-                // Matching logic
-                List<Order> opposite = order.getSide().equalsIgnoreCase("buy") ? orderBook.getAsks() : orderBook.getBids();
-                BigDecimal remaining = order.getQuantity();
-                while (remaining.compareTo(BigDecimal.ZERO) > 0 && !opposite.isEmpty()) {
-                    Order best = opposite.get(0);
-                    // Price check for limit orders
-                    boolean priceOk = true;
-                    if (order.getType().equalsIgnoreCase("limit")) {
-                        if (order.getSide().equalsIgnoreCase("buy") && order.getPrice().compareTo(best.getPrice()) < 0) {
-                            priceOk = false;
-                        }
-                        if (order.getSide().equalsIgnoreCase("sell") && order.getPrice().compareTo(best.getPrice()) > 0) {
-                            priceOk = false;
-                        }
-                    }
-                    if (!priceOk) break;
-                    BigDecimal bestRem = best.getQuantity().subtract(best.getFilledQuantity());
-                    BigDecimal tradeQty = remaining.min(bestRem);
-                    Trade trade = new Trade(
-                        order.getSide().equalsIgnoreCase("buy") ? saved.getOrderId() : best.getOrderId(),
-                        order.getSide().equalsIgnoreCase("buy") ? best.getOrderId() : saved.getOrderId(),
-                        best.getPrice(),
-                        tradeQty,
-                        Instant.now()
-                    );
-                    tradeRepo.save(trade);
-                    // Record trade event
-                    eventService.recordEvent("TRADE_EXECUTED", trade.getTradeId().toString(), trade);
-                    ordersMatched.increment();
-                    streamService.sendEvent(trade);
-                    remaining = remaining.subtract(tradeQty);
-                    order.setFilledQuantity(order.getFilledQuantity().add(tradeQty));
-                    best.setFilledQuantity(best.getFilledQuantity().add(tradeQty));
-                    if (best.getFilledQuantity().compareTo(best.getQuantity()) >= 0) {
-                        best.setStatus("filled");
-                        orderBook.cancelOrder(best);
-                    } else {
-                        best.setStatus("partially_filled");
-                    }
-                    if (order.getFilledQuantity().compareTo(order.getQuantity()) >= 0) {
-                        order.setStatus("filled");
-                    } else {
-                        order.setStatus("partially_filled");
-                    }
-                    best.setUpdatedAt(Instant.now());
-                    Order persistedBest = orderRepo.save(best);
-                    // Record best order update event
-                    eventService.recordEvent("ORDER_UPDATED", persistedBest.getOrderId().toString(), persistedBest);
-                    streamService.sendEvent(persistedBest);
-                }
-                if (order.getType().equalsIgnoreCase("limit") && order.getFilledQuantity().compareTo(order.getQuantity()) < 0) {
-                    orderBook.addLimitOrder(order);
-                }
-                saved = orderRepo.save(order);
-                eventService.recordEvent("ORDER_UPDATED", saved.getOrderId().toString(), saved);
-                streamService.sendEvent(saved);
-                if (idKey != null && !idKey.isEmpty()) {
-                    redisTemplate.opsForValue().set(idKey, saved);
+                if (stop && !StopBook.triggers(order, lastTradePrice, lastTradePrice)) {
+                    // A pending stop leaves the book as it was, so its creation
+                    // is the command's last event and carries the checksum
+                    stopBook.add(order);
+                    Long createEventId = recordEvent("ORDER_CREATED", saved.getOrderId().toString(), saved, orderBook.checksum());
+                    streamService.sendEvent(saved, createEventId);
+                } else {
+                    // Record creation event
+                    recordEvent("ORDER_CREATED", saved.getOrderId().toString(), saved);
+                    // A stop whose price the market has already passed triggers at once
+                    if (stop) order.setStatus("open");
+                    saved = execute(order, saved.getOrderId(), reserved);
+                    triggerStops();
                 }
+                imageCommit();
                 long end = System.nanoTime();
                 orderLatency.record((end - start), TimeUnit.NANOSECONDS);
                 fut.complete(saved);
@@ -262,18 +847,64 @@ public class MatchingEngine {
             }
             @Override
             void run() {
-                if ("open".equals(order.getStatus()) || "partially_filled".equals(order.getStatus())) {
-                    order.setStatus("cancelled");
-                    order.setUpdatedAt(Instant.now());
-                    Order persisted = orderRepo.save(order);
-                    // Record cancellation event
-                    eventService.recordEvent("ORDER_CANCELLED", persisted.getOrderId().toString(), persisted);
-                    orderBook.cancelOrder(order);
-                    streamService.sendEvent(order);
-                    fut.complete(order);
-                } else {
-                    fut.complete(order);
+                // The order was loaded before this event ran, so its status and
+                // fills may be stale: only an instance still held by the stop
+                // book or the order book is open, and one held by neither has
+                // since filled, triggered and finished, or been cancelled.
+                UUID orderId = order.getOrderId();
+                if (stopBook.getOrder(orderId) == null && orderBook.getOrder(orderId) == null) {
+                    fut.complete(orderRepo.findById(orderId).orElse(order));
+                    return;
+                }
+                imageBegin();
+                Order live = stopBook.remove(orderId);
+                if (live == null) live = orderBook.cancelOrder(order);
+                live.setStatus("cancelled");
+                live.setUpdatedAt(Instant.now());
+                Order persisted = orderRepo.save(live);
+                riskService.release(live, live.getQuantity().subtract(live.getFilledQuantity()));
+                imageRemove(live);
+                // Record cancellation event
+                Long cancelEventId = recordEvent("ORDER_CANCELLED", persisted.getOrderId().toString(), persisted, orderBook.checksum());
+                imageCommit();
+                streamService.sendEvent(live, cancelEventId);
+                fut.complete(live);
+            }
+        }
+        private class VerifyEvent extends InstrumentEvent {
+            final CompletableFuture<Boolean> fut;
+            VerifyEvent(CompletableFuture<Boolean> fut) {
+                this.fut = fut;
+            }
+            @Override
+            void run() {
+                long recomputed = orderBook.recomputeChecksum();
+                if (recomputed != orderBook.checksum()) {
+                    LOGGER.error("Order book checksum for {} is {} but its orders sum to {}", instrument,
+                        Long.toHexString(orderBook.checksum()), Long.toHexString(recomputed));
                 }
+                fut.complete(recomputed == orderBook.checksum());
+            }
+        }
+        private class CaptureEvent extends InstrumentEvent {
+            final CompletableFuture<BookCapture> fut;
+            CaptureEvent(CompletableFuture<BookCapture> fut) {
+                this.fut = fut;
+            }
+            @Override
+            void run() {
+                fut.complete(new BookCapture(instrument, lastEventId, orderBook.getBids(), orderBook.getAsks()));
+            }
+        }
+        /** Completes once every command queued before it has run. */
+        private class DrainEvent extends InstrumentEvent {
+            final CompletableFuture<Void> fut;
+            DrainEvent(CompletableFuture<Void> fut) {
+                this.fut = fut;
+            }
+            @Override
+            void run() {
+                fut.complete(null);
             }
         }
     }
@@ -288,10 +919,20 @@ public class MatchingEngine {
     }
 
     /**
-     * Clear all in‑memory order books and instrument queues.  This should
+     * Number of events this process has recorded for the instrument
+     * since startup, or 0 if the instrument is unknown.  Unlike
+     * {@link #getOrderBook(String)} this does not create an engine.
+     */
+    public long getEventCount(String instrument) {
+        InstrumentEngine eng = instrumentEngines.get(instrument);
+        return eng == null ? 0 : eng.getEventCount();
+    }
+
+    /**
+     * Clear all in‑memory order books and pending stops.  This should
      * only be called during recovery scenarios when the database is
-     * being rebuilt from an event log.  Existing instrument engines
-     * remain but their order books are emptied.
+     * being rebuilt from an event log, with the engine in maintenance.
+     * Existing instrument engines remain but their books are emptied.
      */
     public void resetOrderBooks() {
         instrumentEngines.forEach((instr, eng) -> eng.clearOrderBook());
@@ -3,16 +3,85 @@ package com.example.tradeengine.engine;
 import com.example.tradeengine.model.Order;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
 
 /**
  * In‑memory order book maintaining bids and asks for a single instrument.
+ *
+ * <p>The book keeps an order‑independent checksum of its resting orders:
+ * the sum of a 64‑bit hash of (orderId, price, remaining quantity,
+ * side) per order.  Adding, filling and removing an order adjust it in
+ * O(1), so two books hold the same orders exactly when their checksums
+ * match (up to hash collisions), however they were built.  Fills must
+ * go through {@link #applyFill(Order, BigDecimal)} to keep it current.
+ *
+ * <p>The same hooks keep aggregated price levels per side – total
+ * remaining quantity and order count by price – so market depth is
+ * read from the first few levels instead of by sorting and summing the
+ * orders, and {@link #levelsVersion()} tells whether any level changed.
+ * Totals over the best `signalLevels` levels of each side are kept in
+ * step with the levels as well, for {@link Signals}.
  */
 public class OrderBook {
+    /** Price–time priority for bids: highest price first, then oldest. */
+    public static final Comparator<Order> BID_PRIORITY =
+        Comparator.comparing(Order::getPrice).reversed().thenComparing(Order::getCreatedAt);
+    /** Price–time priority for asks: lowest price first, then oldest. */
+    public static final Comparator<Order> ASK_PRIORITY =
+        Comparator.comparing(Order::getPrice).thenComparing(Order::getCreatedAt);
+    /** Default number of levels per side the signal totals cover. */
+    public static final int DEFAULT_SIGNAL_LEVELS = 5;
+
     private final List<Order> bids = new LinkedList<>();
     private final List<Order> asks = new LinkedList<>();
+    /** Resting orders by ID, so lookups and misses do not scan a side. */
+    private final Map<UUID, Order> byId = new HashMap<>();
+    /** What each resting order contributed to the checksum and its level when last changed. */
+    private final Map<UUID, Tracked> tracked = new HashMap<>();
+    private final TreeMap<BigDecimal, PriceLevel> bidLevels = new TreeMap<>(Comparator.reverseOrder());
+    private final TreeMap<BigDecimal, PriceLevel> askLevels = new TreeMap<>();
+    private final TopLevels bidTop;
+    private final TopLevels askTop;
+    private volatile long checksum;
+    private long levelsVersion;
+
+    public OrderBook() {
+        this(DEFAULT_SIGNAL_LEVELS);
+    }
+
+    public OrderBook(int signalLevels) {
+        this.bidTop = new TopLevels(bidLevels, signalLevels);
+        this.askTop = new TopLevels(askLevels, signalLevels);
+    }
+
+    /** Aggregate of the resting orders at one price. */
+    public static final class PriceLevel {
+        private BigDecimal quantity = BigDecimal.ZERO;
+        private int orders;
+        public BigDecimal getQuantity() { return quantity; }
+        public int getOrders() { return orders; }
+    }
+
+    private static final class Tracked {
+        final long hash;
+        final BigDecimal price;
+        final BigDecimal remaining;
+        final boolean bid;
+        Tracked(long hash, BigDecimal price, BigDecimal remaining, boolean bid) {
+            this.hash = hash;
+            this.price = price;
+            this.remaining = remaining;
+            this.bid = bid;
+        }
+    }
 
     public void addLimitOrder(Order order) {
         List<Order> side = order.getSide().equalsIgnoreCase("buy") ? bids : asks;
@@ -31,23 +100,221 @@ public class OrderBook {
             index++;
         }
         side.add(index, order);
+        byId.put(order.getOrderId(), order);
+        track(order);
+    }
+
+    /** Remove a resting order; returns the instance that rested, or null if it is not here. */
+    public Order cancelOrder(Order order) {
+        // Match by ID: cancels carry a freshly loaded entity, not the
+        // instance resting in the book.
+        UUID id = order.getOrderId();
+        Order resting = byId.remove(id);
+        if (resting == null) return null;
+        untrack(id);
+        List<Order> side = resting.getSide().equalsIgnoreCase("buy") ? bids : asks;
+        side.removeIf(o -> o.getOrderId().equals(id));
+        return resting;
+    }
+
+    /**
+     * Record a fill against a resting order, keeping the checksum in
+     * step.  The caller still removes the order once it is fully filled.
+     */
+    public void applyFill(Order resting, BigDecimal quantity) {
+        resting.setFilledQuantity(resting.getFilledQuantity().add(quantity));
+        if (byId.get(resting.getOrderId()) == resting) {
+            untrack(resting.getOrderId());
+            track(resting);
+        }
     }
 
-    public boolean cancelOrder(Order order) {
-        if (bids.remove(order)) return true;
-        if (asks.remove(order)) return true;
-        return false;
+    /** The order‑independent checksum of the resting orders. */
+    public long checksum() {
+        return checksum;
+    }
+
+    /** The resting order with the given ID, or null. */
+    public Order getOrder(UUID orderId) {
+        return byId.get(orderId);
+    }
+
+    /**
+     * Bring the book in line with a persisted order state, as found in
+     * an ORDER_UPDATED event.  A resting order is updated in place so
+     * it keeps its queue position; an order that is no longer open is
+     * removed; an open limit or triggered stop_limit order not yet in
+     * the book is added.
+     */
+    public void applyState(Order state) {
+        boolean open = "open".equals(state.getStatus()) || "partially_filled".equals(state.getStatus());
+        Order resting = byId.get(state.getOrderId());
+        if (resting == null) {
+            if (open && ("limit".equalsIgnoreCase(state.getType()) || "stop_limit".equalsIgnoreCase(state.getType()))) addLimitOrder(state);
+        } else if (!open) {
+            cancelOrder(resting);
+        } else {
+            if (resting != state) {
+                resting.setFilledQuantity(state.getFilledQuantity());
+                resting.setStatus(state.getStatus());
+                resting.setUpdatedAt(state.getUpdatedAt());
+                resting.setVersion(state.getVersion());
+            }
+            untrack(resting.getOrderId());
+            track(resting);
+        }
     }
 
     public List<Order> getBids() { return bids; }
     public List<Order> getAsks() { return asks; }
 
+    /** Bid levels, best (highest) price first.  Read on the thread that changes the book. */
+    public NavigableMap<BigDecimal, PriceLevel> getBidLevels() { return bidLevels; }
+    /** Ask levels, best (lowest) price first.  Read on the thread that changes the book. */
+    public NavigableMap<BigDecimal, PriceLevel> getAskLevels() { return askLevels; }
+
+    /** Totals over the best bid levels. */
+    TopLevels getBidTop() { return bidTop; }
+    /** Totals over the best ask levels. */
+    TopLevels getAskTop() { return askTop; }
+
+    /** Incremented whenever a price level changes. */
+    public long levelsVersion() {
+        return levelsVersion;
+    }
+
+    /** Number of resting orders. */
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Recompute the checksum from the resting orders, in O(n), to check
+     * the incrementally maintained {@link #checksum()}.
+     */
+    public long recomputeChecksum() {
+        return checksumOf(bids) + checksumOf(asks);
+    }
+
     public List<Order> getAllOrders() {
         List<Order> all = new ArrayList<>(bids);
         all.addAll(asks);
         return all;
     }
 
+    /**
+     * Replace the contents of this book with orders that are already in
+     * price–time priority, such as the sides of a snapshot.  Sorted
+     * input is appended in linear time instead of going through
+     * {@link #addLimitOrder(Order)} per order; input found to be out of
+     * order is sorted first.
+     */
+    public void loadSorted(List<Order> sortedBids, List<Order> sortedAsks) {
+        clear();
+        bids.addAll(isSorted(sortedBids, BID_PRIORITY) ? sortedBids : sorted(sortedBids, BID_PRIORITY));
+        asks.addAll(isSorted(sortedAsks, ASK_PRIORITY) ? sortedAsks : sorted(sortedAsks, ASK_PRIORITY));
+        for (Order o : bids) {
+            byId.put(o.getOrderId(), o);
+            track(o);
+        }
+        for (Order o : asks) {
+            byId.put(o.getOrderId(), o);
+            track(o);
+        }
+    }
+
+    private void track(Order order) {
+        BigDecimal filled = order.getFilledQuantity() == null ? BigDecimal.ZERO : order.getFilledQuantity();
+        BigDecimal remaining = order.getQuantity().subtract(filled);
+        boolean bid = "buy".equalsIgnoreCase(order.getSide());
+        long h = orderHash(order.getOrderId(), order.getPrice(), remaining, order.getSide());
+        tracked.put(order.getOrderId(), new Tracked(h, order.getPrice(), remaining, bid));
+        checksum += h;
+        if (order.getPrice() != null) {
+            TreeMap<BigDecimal, PriceLevel> levels = bid ? bidLevels : askLevels;
+            TopLevels top = bid ? bidTop : askTop;
+            PriceLevel level = levels.get(order.getPrice());
+            if (level == null) {
+                level = new PriceLevel();
+                levels.put(order.getPrice(), level);
+                top.levelAdded(order.getPrice());
+            }
+            level.quantity = level.quantity.add(remaining);
+            level.orders++;
+            top.quantityChanged(order.getPrice(), remaining);
+            levelsVersion++;
+        }
+    }
+
+    private void untrack(UUID orderId) {
+        Tracked t = tracked.remove(orderId);
+        if (t == null) return;
+        checksum -= t.hash;
+        if (t.price == null) return;
+        TreeMap<BigDecimal, PriceLevel> levels = t.bid ? bidLevels : askLevels;
+        TopLevels top = t.bid ? bidTop : askTop;
+        PriceLevel level = levels.get(t.price);
+        if (level == null) return;
+        if (--level.orders == 0) {
+            top.quantityChanged(t.price, level.quantity.negate());
+            levels.remove(t.price);
+            top.levelRemoved(t.price);
+        } else {
+            level.quantity = level.quantity.subtract(t.remaining);
+            top.quantityChanged(t.price, t.remaining.negate());
+        }
+        levelsVersion++;
+    }
+
+    /**
+     * Checksum of an arbitrary collection of resting orders, equal to
+     * {@link #checksum()} of a book holding exactly those orders.
+     */
+    public static long checksumOf(Iterable<Order> orders) {
+        long sum = 0;
+        for (Order o : orders) sum += orderHash(o);
+        return sum;
+    }
+
+    public static long orderHash(Order order) {
+        BigDecimal filled = order.getFilledQuantity() == null ? BigDecimal.ZERO : order.getFilledQuantity();
+        return orderHash(order.getOrderId(), order.getPrice(), order.getQuantity().subtract(filled), order.getSide());
+    }
+
+    /**
+     * 64‑bit hash of one resting order's contribution to the checksum.
+     * Decimals are normalised first, so 1.50 and 1.5 hash alike.
+     */
+    public static long orderHash(UUID orderId, BigDecimal price, BigDecimal remaining, String side) {
+        long h = mix64(orderId.getMostSignificantBits());
+        h = mix64(h ^ orderId.getLeastSignificantBits());
+        h = mix64(h ^ (price == null ? 0 : price.stripTrailingZeros().hashCode()));
+        h = mix64(h ^ remaining.stripTrailingZeros().hashCode());
+        return mix64(h ^ ("buy".equalsIgnoreCase(side) ? 1 : 2));
+    }
+
+    /** SplitMix64 finaliser. */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static boolean isSorted(List<Order> orders, Comparator<Order> priority) {
+        Order prev = null;
+        for (Order o : orders) {
+            if (prev != null && priority.compare(prev, o) > 0) return false;
+            prev = o;
+        }
+        return true;
+    }
+
+    private static List<Order> sorted(List<Order> orders, Comparator<Order> priority) {
+        List<Order> copy = new ArrayList<>(orders);
+        copy.sort(priority);
+        return copy;
+    }
+
     /**
      * Remove all orders from this order book.  This is used during
      * event replay to reset in‑memory state before rebuilding from
@@ -56,5 +323,13 @@ public class OrderBook {
     public void clear() {
         bids.clear();
         asks.clear();
+        byId.clear();
+        tracked.clear();
+        bidLevels.clear();
+        askLevels.clear();
+        bidTop.clear();
+        askTop.clear();
+        checksum = 0;
+        levelsVersion++;
     }
 }
\ No newline at end of file
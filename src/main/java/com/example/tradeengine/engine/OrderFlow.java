@@ -0,0 +1,91 @@
+package com.example.tradeengine.engine;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Order‑flow imbalance of one book, after Cont, Kukanov and Stoikov:
+ * each change of the best quotes adds the bid size that arrived at or
+ * above the previous best bid, less the bid size that left it, and
+ * subtracts the same for the ask.  Positive values mean net buying
+ * pressure.  Kept as a running total and in one‑second buckets covering
+ * the last `signals.ofi-window-seconds`.  Updated only by the book's
+ * matching thread, under the lock its depth is published with.
+ */
+final class OrderFlow {
+    private final long[] bucketSecond;
+    private final BigDecimal[] bucketFlow;
+    private BigDecimal total = BigDecimal.ZERO;
+    private BigDecimal bidPrice;
+    private BigDecimal bidQuantity = BigDecimal.ZERO;
+    private BigDecimal askPrice;
+    private BigDecimal askQuantity = BigDecimal.ZERO;
+    private long levelsVersion = -1;
+
+    OrderFlow(int windowSeconds) {
+        int n = Math.max(1, windowSeconds);
+        this.bucketSecond = new long[n];
+        Arrays.fill(bucketSecond, Long.MIN_VALUE);
+        this.bucketFlow = new BigDecimal[n];
+    }
+
+    int getWindowSeconds() { return bucketSecond.length; }
+
+    /** Account for the best quotes of the book now, if any level changed since the last call. */
+    void update(OrderBook book, long nowMillis) {
+        long version = book.levelsVersion();
+        if (version == levelsVersion) return;
+        levelsVersion = version;
+        Map.Entry<BigDecimal, OrderBook.PriceLevel> bid = book.getBidLevels().firstEntry();
+        Map.Entry<BigDecimal, OrderBook.PriceLevel> ask = book.getAskLevels().firstEntry();
+        BigDecimal bp = bid == null ? null : bid.getKey();
+        BigDecimal bq = bid == null ? BigDecimal.ZERO : bid.getValue().getQuantity();
+        BigDecimal ap = ask == null ? null : ask.getKey();
+        BigDecimal aq = ask == null ? BigDecimal.ZERO : ask.getValue().getQuantity();
+        // A missing bid is priced at minus infinity, a missing ask at plus infinity
+        int bidMove = compare(bp, bidPrice, -1);
+        int askMove = compare(ap, askPrice, 1);
+        BigDecimal e = BigDecimal.ZERO;
+        if (bidMove >= 0) e = e.add(bq);
+        if (bidMove <= 0) e = e.subtract(bidQuantity);
+        if (askMove <= 0) e = e.subtract(aq);
+        if (askMove >= 0) e = e.add(askQuantity);
+        bidPrice = bp;
+        bidQuantity = bq;
+        askPrice = ap;
+        askQuantity = aq;
+        if (e.signum() == 0) return;
+        total = total.add(e);
+        long second = Math.floorDiv(nowMillis, 1000L);
+        int slot = (int) Math.floorMod(second, (long) bucketSecond.length);
+        if (bucketSecond[slot] != second) {
+            bucketSecond[slot] = second;
+            bucketFlow[slot] = BigDecimal.ZERO;
+        }
+        bucketFlow[slot] = bucketFlow[slot].add(e);
+    }
+
+    /** Imbalance accumulated since the book was created. */
+    BigDecimal total() {
+        return total;
+    }
+
+    /** Imbalance accumulated over the window ending at the given time. */
+    BigDecimal window(long nowMillis) {
+        long newest = Math.floorDiv(nowMillis, 1000L);
+        long oldest = newest - bucketSecond.length + 1;
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i < bucketSecond.length; i++) {
+            if (bucketSecond[i] >= oldest && bucketSecond[i] <= newest) sum = sum.add(bucketFlow[i]);
+        }
+        return sum;
+    }
+
+    private static int compare(BigDecimal price, BigDecimal previous, int missing) {
+        if (price == null && previous == null) return 0;
+        if (price == null) return missing;
+        if (previous == null) return -missing;
+        return price.compareTo(previous);
+    }
+}
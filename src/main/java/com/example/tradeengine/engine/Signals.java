@@ -0,0 +1,138 @@
+package com.example.tradeengine.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Immutable microstructure signals of one instrument's book, published
+ * by the matching engine together with each {@link DepthSnapshot}.
+ * Built from the best level of each side and the running totals the
+ * book keeps over its best `signals.depth-levels` levels, so producing
+ * one never walks the book.  Prices derived from both sides are null
+ * while either side is empty.
+ */
+public final class Signals {
+    private static final MathContext MC = MathContext.DECIMAL64;
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+    private final String instrument;
+    private final long sequence;
+    private final Instant timestamp;
+    private final int depthLevels;
+    private final BigDecimal bestBid;
+    private final BigDecimal bestBidQuantity;
+    private final BigDecimal bestAsk;
+    private final BigDecimal bestAskQuantity;
+    private final BigDecimal bidDepth;
+    private final BigDecimal askDepth;
+    private final BigDecimal spread;
+    private final BigDecimal mid;
+    private final BigDecimal microprice;
+    private final BigDecimal depthWeightedMid;
+    private final BigDecimal imbalance;
+    private final BigDecimal depthImbalance;
+    private final BigDecimal orderFlowImbalance;
+    private final BigDecimal orderFlowImbalanceTotal;
+    private final int orderFlowWindowSeconds;
+
+    private Signals(String instrument, long sequence, Instant timestamp, int depthLevels,
+                    BigDecimal bestBid, BigDecimal bestBidQuantity, BigDecimal bestAsk, BigDecimal bestAskQuantity,
+                    BigDecimal bidDepth, BigDecimal bidNotional, BigDecimal askDepth, BigDecimal askNotional,
+                    BigDecimal orderFlowImbalance, BigDecimal orderFlowImbalanceTotal, int orderFlowWindowSeconds) {
+        this.instrument = instrument;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.depthLevels = depthLevels;
+        this.bestBid = bestBid;
+        this.bestBidQuantity = bestBidQuantity;
+        this.bestAsk = bestAsk;
+        this.bestAskQuantity = bestAskQuantity;
+        this.bidDepth = bidDepth;
+        this.askDepth = askDepth;
+        this.imbalance = imbalance(bestBidQuantity, bestAskQuantity);
+        this.depthImbalance = imbalance(bidDepth, askDepth);
+        this.orderFlowImbalance = orderFlowImbalance;
+        this.orderFlowImbalanceTotal = orderFlowImbalanceTotal;
+        this.orderFlowWindowSeconds = orderFlowWindowSeconds;
+        if (bestBid != null && bestAsk != null) {
+            this.spread = bestAsk.subtract(bestBid);
+            this.mid = bestBid.add(bestAsk).divide(TWO, MC);
+            this.microprice = weightedMid(bestBid, bestBidQuantity, bestAsk, bestAskQuantity);
+            this.depthWeightedMid = weightedMid(bidDepth.signum() > 0 ? bidNotional.divide(bidDepth, MC) : bestBid, bidDepth,
+                askDepth.signum() > 0 ? askNotional.divide(askDepth, MC) : bestAsk, askDepth);
+        } else {
+            this.spread = null;
+            this.mid = null;
+            this.microprice = null;
+            this.depthWeightedMid = null;
+        }
+    }
+
+    /**
+     * Signals of a book.  Must run on the thread that changes the book,
+     * after {@link OrderFlow#update} has seen its current state.
+     */
+    static Signals of(String instrument, long sequence, OrderBook book, OrderFlow flow) {
+        Instant now = Instant.now();
+        Map.Entry<BigDecimal, OrderBook.PriceLevel> bid = book.getBidLevels().firstEntry();
+        Map.Entry<BigDecimal, OrderBook.PriceLevel> ask = book.getAskLevels().firstEntry();
+        TopLevels bids = book.getBidTop();
+        TopLevels asks = book.getAskTop();
+        return new Signals(instrument, sequence, now, bids.getLevels(),
+            bid == null ? null : bid.getKey(), bid == null ? BigDecimal.ZERO : bid.getValue().getQuantity(),
+            ask == null ? null : ask.getKey(), ask == null ? BigDecimal.ZERO : ask.getValue().getQuantity(),
+            bids.getQuantity(), bids.getNotional(), asks.getQuantity(), asks.getNotional(),
+            flow.window(now.toEpochMilli()), flow.total(), flow.getWindowSeconds());
+    }
+
+    static Signals empty(String instrument, int depthLevels, int orderFlowWindowSeconds) {
+        return new Signals(instrument, 0L, Instant.now(), depthLevels, null, BigDecimal.ZERO, null, BigDecimal.ZERO,
+            BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
+            BigDecimal.ZERO, BigDecimal.ZERO, orderFlowWindowSeconds);
+    }
+
+    /** (bid − ask) / (bid + ask), in [−1, 1]; zero when both are empty. */
+    private static BigDecimal imbalance(BigDecimal bid, BigDecimal ask) {
+        BigDecimal sum = bid.add(ask);
+        return sum.signum() == 0 ? BigDecimal.ZERO : bid.subtract(ask).divide(sum, MC);
+    }
+
+    /** Each side's price weighted by the other side's quantity. */
+    private static BigDecimal weightedMid(BigDecimal bid, BigDecimal bidQuantity, BigDecimal ask, BigDecimal askQuantity) {
+        BigDecimal sum = bidQuantity.add(askQuantity);
+        if (sum.signum() == 0) return bid.add(ask).divide(TWO, MC);
+        return bid.multiply(askQuantity).add(ask.multiply(bidQuantity)).divide(sum, MC);
+    }
+
+    public String getInstrument() { return instrument; }
+    /** Sequence of the {@link DepthSnapshot} published with these signals. */
+    public long getSequence() { return sequence; }
+    public Instant getTimestamp() { return timestamp; }
+    /** Levels per side the depth figures cover. */
+    public int getDepthLevels() { return depthLevels; }
+    public BigDecimal getBestBid() { return bestBid; }
+    public BigDecimal getBestBidQuantity() { return bestBidQuantity; }
+    public BigDecimal getBestAsk() { return bestAsk; }
+    public BigDecimal getBestAskQuantity() { return bestAskQuantity; }
+    /** Quantity on the best {@link #getDepthLevels()} bid levels. */
+    public BigDecimal getBidDepth() { return bidDepth; }
+    /** Quantity on the best {@link #getDepthLevels()} ask levels. */
+    public BigDecimal getAskDepth() { return askDepth; }
+    public BigDecimal getSpread() { return spread; }
+    public BigDecimal getMid() { return mid; }
+    /** Best bid and ask weighted by the opposite side's size at the best level. */
+    public BigDecimal getMicroprice() { return microprice; }
+    /** As the microprice, with each side's VWAP and size over the depth levels. */
+    public BigDecimal getDepthWeightedMid() { return depthWeightedMid; }
+    /** Size imbalance at the best level. */
+    public BigDecimal getImbalance() { return imbalance; }
+    /** Size imbalance over the depth levels. */
+    public BigDecimal getDepthImbalance() { return depthImbalance; }
+    /** Order‑flow imbalance over the last {@link #getOrderFlowWindowSeconds()} seconds. */
+    public BigDecimal getOrderFlowImbalance() { return orderFlowImbalance; }
+    /** Order‑flow imbalance since the engine started. */
+    public BigDecimal getOrderFlowImbalanceTotal() { return orderFlowImbalanceTotal; }
+    public int getOrderFlowWindowSeconds() { return orderFlowWindowSeconds; }
+}
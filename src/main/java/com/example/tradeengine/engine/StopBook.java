@@ -0,0 +1,129 @@
+package com.example.tradeengine.engine;
+
+import com.example.tradeengine.model.Order;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Pending stop and stop‑limit orders of one instrument, indexed by
+ * trigger price.  A buy stop triggers once the market trades at or
+ * above its stop price, a sell stop once it trades at or below, so
+ * each side is a {@link TreeMap} ordered with the next stop to trigger
+ * first: buys lowest stop price first, sells highest first.  Finding
+ * what a trade triggers compares the trade with the first key of each
+ * side and stops at the first stop that does not trigger, so popping k
+ * stops out of n costs O(k log n) and a trade that triggers nothing
+ * costs two comparisons.
+ *
+ * <p>Stops at the same price are kept in arrival order, so triggered
+ * stops come out in a deterministic order: buys by stop price then
+ * arrival, then sells likewise.  Not thread safe; used only by the
+ * instrument's matching thread, and by recovery before it runs.
+ */
+public class StopBook {
+    /** Buy stops, lowest stop price first. */
+    private final TreeMap<BigDecimal, LinkedHashMap<UUID, Order>> buys = new TreeMap<>();
+    /** Sell stops, highest stop price first. */
+    private final TreeMap<BigDecimal, LinkedHashMap<UUID, Order>> sells = new TreeMap<>(Comparator.reverseOrder());
+    private final Map<UUID, Order> byId = new HashMap<>();
+
+    /** Whether an order is of a type that waits for a trigger. */
+    public static boolean isStop(Order order) {
+        return "stop".equalsIgnoreCase(order.getType()) || "stop_limit".equalsIgnoreCase(order.getType());
+    }
+
+    /**
+     * Whether a trade range of [low, high] triggers a stop: a buy stop
+     * at or below high, a sell stop at or above low.  False without trades.
+     */
+    public static boolean triggers(Order stop, BigDecimal low, BigDecimal high) {
+        if (low == null || high == null) return false;
+        return isBuy(stop) ? stop.getStopPrice().compareTo(high) <= 0 : stop.getStopPrice().compareTo(low) >= 0;
+    }
+
+    public void add(Order stop) {
+        side(stop).computeIfAbsent(stop.getStopPrice(), p -> new LinkedHashMap<>()).put(stop.getOrderId(), stop);
+        byId.put(stop.getOrderId(), stop);
+    }
+
+    /** Remove a pending stop; returns the instance held, or null if it is not here. */
+    public Order remove(UUID orderId) {
+        Order stop = byId.remove(orderId);
+        if (stop == null) return null;
+        TreeMap<BigDecimal, LinkedHashMap<UUID, Order>> side = side(stop);
+        LinkedHashMap<UUID, Order> level = side.get(stop.getStopPrice());
+        level.remove(orderId);
+        if (level.isEmpty()) side.remove(stop.getStopPrice());
+        return stop;
+    }
+
+    public Order getOrder(UUID orderId) {
+        return byId.get(orderId);
+    }
+
+    /**
+     * Remove every stop triggered by trades between low and high
+     * inclusive and append them to out in trigger order.
+     *
+     * @return the number of stops triggered
+     */
+    public int popTriggered(BigDecimal low, BigDecimal high, List<Order> out) {
+        if (low == null || high == null) return 0;
+        int n = 0;
+        while (!buys.isEmpty() && buys.firstKey().compareTo(high) <= 0) {
+            n += drain(buys.pollFirstEntry().getValue(), out);
+        }
+        while (!sells.isEmpty() && sells.firstKey().compareTo(low) >= 0) {
+            n += drain(sells.pollFirstEntry().getValue(), out);
+        }
+        return n;
+    }
+
+    /** Replace the contents with the given stops, in their order. */
+    public void load(List<Order> stops) {
+        clear();
+        for (Order stop : stops) add(stop);
+    }
+
+    public void clear() {
+        buys.clear();
+        sells.clear();
+        byId.clear();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /** Pending stops, buys then sells, each in trigger order. */
+    public List<Order> getAllOrders() {
+        List<Order> all = new ArrayList<>(byId.size());
+        for (LinkedHashMap<UUID, Order> level : buys.values()) all.addAll(level.values());
+        for (LinkedHashMap<UUID, Order> level : sells.values()) all.addAll(level.values());
+        return all;
+    }
+
+    private int drain(LinkedHashMap<UUID, Order> level, List<Order> out) {
+        for (Order stop : level.values()) {
+            byId.remove(stop.getOrderId());
+            out.add(stop);
+        }
+        return level.size();
+    }
+
+    private TreeMap<BigDecimal, LinkedHashMap<UUID, Order>> side(Order stop) {
+        return isBuy(stop) ? buys : sells;
+    }
+
+    private static boolean isBuy(Order order) {
+        return order.getSide().equalsIgnoreCase("buy");
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.tradeengine.engine;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.TreeMap;
+
+/**
+ * Running totals over the best n price levels of one side of a book:
+ * total quantity and price×quantity.  {@link OrderBook} reports every
+ * level change as it makes it, so the totals are current without the
+ * levels ever being walked; each change costs at most one O(log levels)
+ * neighbour lookup, when a level enters or leaves the best n.
+ */
+final class TopLevels {
+    private final TreeMap<BigDecimal, OrderBook.PriceLevel> levels;
+    private final Comparator<? super BigDecimal> order;
+    private final int n;
+    /** Price of the n‑th best level, or null while the side has fewer than n levels. */
+    private BigDecimal boundary;
+    private BigDecimal quantity = BigDecimal.ZERO;
+    private BigDecimal notional = BigDecimal.ZERO;
+
+    TopLevels(TreeMap<BigDecimal, OrderBook.PriceLevel> levels, int n) {
+        this.levels = levels;
+        this.order = levels.comparator() != null ? levels.comparator() : Comparator.naturalOrder();
+        this.n = Math.max(1, n);
+    }
+
+    int getLevels() { return n; }
+    /** Total quantity of the best n levels. */
+    BigDecimal getQuantity() { return quantity; }
+    /** Total price×quantity of the best n levels. */
+    BigDecimal getNotional() { return notional; }
+
+    /** A level was inserted at the given price, still without quantity. */
+    void levelAdded(BigDecimal price) {
+        if (boundary == null) {
+            if (levels.size() == n) boundary = levels.lastKey();
+            return;
+        }
+        if (order.compare(price, boundary) < 0) {
+            // The n-th level is pushed out; the one before it takes its place
+            subtract(boundary, levels.get(boundary).getQuantity());
+            boundary = levels.lowerKey(boundary);
+        }
+    }
+
+    /** The quantity at an existing level changed by delta. */
+    void quantityChanged(BigDecimal price, BigDecimal delta) {
+        if (boundary == null || order.compare(price, boundary) <= 0) {
+            quantity = quantity.add(delta);
+            notional = notional.add(price.multiply(delta));
+        }
+    }
+
+    /** The level at the given price, whose quantity was already taken off, was removed. */
+    void levelRemoved(BigDecimal price) {
+        if (boundary == null || order.compare(price, boundary) > 0) return;
+        // The best level beyond the old n-th moves in
+        boundary = levels.higherKey(boundary);
+        if (boundary != null) {
+            BigDecimal q = levels.get(boundary).getQuantity();
+            quantity = quantity.add(q);
+            notional = notional.add(boundary.multiply(q));
+        }
+    }
+
+    void clear() {
+        boundary = null;
+        quantity = BigDecimal.ZERO;
+        notional = BigDecimal.ZERO;
+    }
+
+    private void subtract(BigDecimal price, BigDecimal q) {
+        quantity = quantity.subtract(q);
+        notional = notional.subtract(price.multiply(q));
+    }
+}
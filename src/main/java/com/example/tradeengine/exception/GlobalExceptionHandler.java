@@ -22,6 +22,14 @@ public class GlobalExceptionHandler {
     public ResponseEntity<?> handleConstraintViolation(ConstraintViolationException ex) {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
     }
+    @ExceptionHandler(OrderRejectedException.class)
+    public ResponseEntity<?> handleOrderRejected(OrderRejectedException ex) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ex.getMessage());
+    }
+    @ExceptionHandler(IdempotencyUnavailableException.class)
+    public ResponseEntity<?> handleIdempotencyUnavailable(IdempotencyUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+    }
     @ExceptionHandler(Exception.class)
     public ResponseEntity<?> handleGeneric(Exception ex) {
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("internal error");
@@ -0,0 +1,13 @@
+package com.example.tradeengine.exception;
+
+/**
+ * A keyed submission that could not be checked for an earlier result
+ * because Redis was unreachable and the local filter could not rule
+ * the key out.  Mapped to 503 Service Unavailable, so the client
+ * retries with the same key instead of risking a duplicate order.
+ */
+public class IdempotencyUnavailableException extends RuntimeException {
+    public IdempotencyUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.tradeengine.exception;
+
+/**
+ * An order refused by the pre‑trade risk checks before it reached the
+ * matching engine.  Mapped to 422 Unprocessable Entity; the message
+ * names the limit that was exceeded.
+ */
+public class OrderRejectedException extends RuntimeException {
+    public OrderRejectedException(String message) {
+        super(message);
+    }
+}
@@ -5,6 +5,7 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -13,9 +14,13 @@ import java.io.IOException;
 /**
  * Simple API key authentication filter.  Requires an X-API-Key header
  * matching the configured key for all endpoints except /actuator.
+ * Runs before {@link RateLimitFilter}, so unauthenticated requests
+ * never reach the rate limiter's buckets.
  */
 @Component
+@Order(ApiKeyAuthFilter.ORDER)
 public class ApiKeyAuthFilter extends OncePerRequestFilter {
+    static final int ORDER = 0;
     @Value("${app.api-key:secret}")
     private String apiKey;
     @Override
@@ -4,41 +4,193 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.time.Instant;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Simple rate limiting filter.  Limits requests to the /orders endpoint
- * to a fixed number per second (aggregate across all clients).  If the
- * limit is exceeded, returns HTTP 429.
+ * Per‑client rate limiting of order submissions (`POST /orders`).
+ * Each client has its own token bucket, kept as a GCRA (generic cell
+ * rate algorithm) theoretical arrival time in one {@link AtomicLong}:
+ * a request is admitted by advancing that time by one emission
+ * interval with a compare‑and‑set, as long as it stays within the
+ * burst allowance of now.  Buckets live in a {@link ConcurrentHashMap},
+ * whose reads take no lock and whose bins spread clients over separate
+ * cache lines, so clients never contend with each other and a request
+ * costs a hash lookup and usually one CAS.  Over the limit the filter
+ * returns 429 with `Retry-After`.
+ *
+ * <p>Clients are identified by the `X-Client-Id` header, or by their
+ * API key without one.  The header is not authenticated by itself, so
+ * the order controller rejects submissions whose header names another
+ * client than the order; requests only get here once
+ * {@link ApiKeyAuthFilter} has accepted their key.  Limits come from tiers,
+ * `ratelimit.tiers: default:100/200,premium:2000/4000` (requests per
+ * second / burst), and `ratelimit.client-tiers: mm-1:premium` assigns
+ * clients to tiers; everyone else gets `default`.  A bucket whose
+ * arrival time is more than `ratelimit.idle-eviction-ms` in the past is
+ * full and indistinguishable from a new one, so it is evicted.  At
+ * most `ratelimit.max-clients` buckets are kept; while that many
+ * clients are active, new ones share a single bucket of the default
+ * tier, so made‑up client ids cannot grow the map without bound.
  */
 @Component
+@Order(ApiKeyAuthFilter.ORDER + 1)
 public class RateLimitFilter extends OncePerRequestFilter {
-    private static final int MAX_REQUESTS_PER_SECOND = 100;
-    private final AtomicLong windowStart = new AtomicLong(Instant.now().getEpochSecond());
-    private final AtomicInteger count = new AtomicInteger(0);
+    static final String DEFAULT_TIER = "default";
+    private static final String CLIENT_HEADER = "X-Client-Id";
+    private static final String API_KEY_HEADER = "X-API-Key";
+    private static final String ANONYMOUS = "";
+
+    private final Map<String, Tier> clientTiers;
+    private final Tier defaultTier;
+    private final long idleNanos;
+    private final int maxClients;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    /** Shared by clients that arrive while the map is full. */
+    private final Bucket overflow;
+
+    @Autowired
+    public RateLimitFilter(@Value("${ratelimit.tiers:default:100/200}") String tiers,
+                           @Value("${ratelimit.client-tiers:}") String clientTiers,
+                           @Value("${ratelimit.idle-eviction-ms:60000}") long idleEvictionMillis,
+                           @Value("${ratelimit.max-clients:100000}") int maxClients) {
+        Map<String, Tier> parsed = parseTiers(tiers);
+        this.defaultTier = parsed.get(DEFAULT_TIER);
+        if (defaultTier == null) throw new IllegalArgumentException("ratelimit.tiers must define a " + DEFAULT_TIER + " tier");
+        this.clientTiers = new HashMap<>();
+        for (String entry : clientTiers.split(",")) {
+            if (entry.isBlank()) continue;
+            int colon = entry.lastIndexOf(':');
+            Tier tier = colon < 0 ? null : parsed.get(entry.substring(colon + 1).trim());
+            if (tier == null) throw new IllegalArgumentException("Not a client:tier pair with a known tier: " + entry);
+            this.clientTiers.put(entry.substring(0, colon).trim(), tier);
+        }
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, idleEvictionMillis));
+        this.maxClients = Math.max(1, maxClients);
+        this.overflow = new Bucket(defaultTier, Long.MIN_VALUE);
+    }
+
+    /** A rate and burst; intervals in nanoseconds. */
+    static final class Tier {
+        final String name;
+        /** Nanoseconds between requests at the sustained rate. */
+        final long emissionInterval;
+        /** How far the arrival time may run ahead of now: the burst less one request. */
+        final long tolerance;
+
+        Tier(String name, double perSecond, int burst) {
+            if (perSecond <= 0 || burst < 1) throw new IllegalArgumentException("Tier " + name + " needs a positive rate and burst");
+            this.name = name;
+            this.emissionInterval = Math.max(1, Math.round(1e9 / perSecond));
+            this.tolerance = emissionInterval * (burst - 1);
+        }
+    }
+
+    /** GCRA state of one client. */
+    static final class Bucket {
+        final Tier tier;
+        final AtomicLong tat;
+
+        Bucket(Tier tier, long now) {
+            this.tier = tier;
+            this.tat = new AtomicLong(now);
+        }
+    }
+
+    /**
+     * Parse `name:rate/burst` entries separated by commas.
+     *
+     * @throws IllegalArgumentException if an entry is not of that form
+     */
+    static Map<String, Tier> parseTiers(String text) {
+        Map<String, Tier> parsed = new HashMap<>();
+        for (String entry : text.split(",")) {
+            if (entry.isBlank()) continue;
+            int colon = entry.indexOf(':');
+            int slash = entry.indexOf('/', colon + 1);
+            if (colon < 0 || slash < 0) throw new IllegalArgumentException("Not a name:rate/burst tier: " + entry);
+            String name = entry.substring(0, colon).trim();
+            try {
+                parsed.put(name, new Tier(name, Double.parseDouble(entry.substring(colon + 1, slash).trim()),
+                    Integer.parseInt(entry.substring(slash + 1).trim())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a name:rate/burst tier: " + entry);
+            }
+        }
+        return parsed;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-        String path = request.getRequestURI();
-        if (path.startsWith("/orders") && request.getMethod().equalsIgnoreCase("POST")) {
-            long now = Instant.now().getEpochSecond();
-            long start = windowStart.get();
-            if (now > start) {
-                // reset window
-                windowStart.set(now);
-                count.set(0);
-            }
-            if (count.incrementAndGet() > MAX_REQUESTS_PER_SECOND) {
+        if (request.getMethod().equalsIgnoreCase("POST") && request.getRequestURI().startsWith("/orders")) {
+            String client = request.getHeader(CLIENT_HEADER);
+            if (client == null || client.isEmpty()) client = request.getHeader(API_KEY_HEADER);
+            long wait = acquire(client == null ? ANONYMOUS : client, System.nanoTime());
+            if (wait > 0) {
                 response.setStatus(429);
+                response.setHeader("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999L))));
                 response.getWriter().write("Too Many Requests");
                 return;
             }
         }
         filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    /**
+     * Try to admit one request of a client at the given time.
+     *
+     * @return 0 if admitted, otherwise the nanoseconds until it would be
+     */
+    long acquire(String client, long now) {
+        Bucket bucket = buckets.get(client);
+        if (bucket == null) {
+            // The size is read racily, so the cap may be overshot by the number of concurrent requests
+            bucket = buckets.size() < maxClients ? buckets.computeIfAbsent(client, c -> new Bucket(tierOf(c), now)) : overflow;
+        }
+        long interval = bucket.tier.emissionInterval;
+        long tolerance = bucket.tier.tolerance;
+        AtomicLong tat = bucket.tat;
+        while (true) {
+            long current = tat.get();
+            long start = Math.max(current, now);
+            long ahead = start - now;
+            if (ahead > tolerance) return ahead - tolerance;
+            if (tat.compareAndSet(current, start + interval)) return 0;
+        }
+    }
+
+    Tier tierOf(String client) {
+        Tier tier = clientTiers.get(client);
+        return tier != null ? tier : defaultTier;
+    }
+
+    /**
+     * Drop buckets that have been full for the idle period.  A client
+     * evicted between looking its bucket up and updating it gets at
+     * most one extra request through.
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.idle-eviction-ms:60000}")
+    public void evictIdle() {
+        evictIdle(System.nanoTime());
+    }
+
+    void evictIdle(long now) {
+        long cutoff = now - idleNanos;
+        buckets.values().removeIf(b -> b.tat.get() - cutoff < 0);
+    }
+
+    int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.tradeengine.model;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * An OHLCV bar of one instrument over one interval (1s, 1m, 5m, 1h or
+ * 1d) starting at {@code openTime}.  Closed bars of every interval but
+ * 1s are written to the candles table; 1s bars and the bars still
+ * open live only in memory.
+ */
+@Entity
+@Table(name = "candles", uniqueConstraints = @UniqueConstraint(name = "uk_candles_instrument_interval_open_time",
+    columnNames = {"instrument", "bar_interval", "open_time"}))
+public class Candle {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "instrument", nullable = false)
+    private String instrument;
+    @Column(name = "bar_interval", nullable = false)
+    private String interval;
+    @Column(name = "open_time", nullable = false)
+    private Instant openTime;
+    @Column(name = "open", nullable = false)
+    private BigDecimal open;
+    @Column(name = "high", nullable = false)
+    private BigDecimal high;
+    @Column(name = "low", nullable = false)
+    private BigDecimal low;
+    @Column(name = "close", nullable = false)
+    private BigDecimal close;
+    @Column(name = "volume", nullable = false)
+    private BigDecimal volume;
+    @Column(name = "trade_count", nullable = false)
+    private long tradeCount;
+
+    public Candle() {}
+
+    public Candle(String instrument, String interval, Instant openTime) {
+        this.instrument = instrument;
+        this.interval = interval;
+        this.openTime = openTime;
+        this.volume = BigDecimal.ZERO;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getInstrument() { return instrument; }
+    public void setInstrument(String instrument) { this.instrument = instrument; }
+    public String getInterval() { return interval; }
+    public void setInterval(String interval) { this.interval = interval; }
+    public Instant getOpenTime() { return openTime; }
+    public void setOpenTime(Instant openTime) { this.openTime = openTime; }
+    public BigDecimal getOpen() { return open; }
+    public void setOpen(BigDecimal open) { this.open = open; }
+    public BigDecimal getHigh() { return high; }
+    public void setHigh(BigDecimal high) { this.high = high; }
+    public BigDecimal getLow() { return low; }
+    public void setLow(BigDecimal low) { this.low = low; }
+    public BigDecimal getClose() { return close; }
+    public void setClose(BigDecimal close) { this.close = close; }
+    public BigDecimal getVolume() { return volume; }
+    public void setVolume(BigDecimal volume) { this.volume = volume; }
+    public long getTradeCount() { return tradeCount; }
+    public void setTradeCount(long tradeCount) { this.tradeCount = tradeCount; }
+}
@@ -9,10 +9,14 @@ import java.time.Instant;
  * EventRecord represents a domain event stored in the append‑only event log.
  * Each event has a type, aggregate identifier (e.g. order ID), optional
  * payload encoded as JSON, and timestamp.  Events are ordered by their
- * generated ID and timestamp.
+ * generated ID and timestamp.  Events recorded by the matching engine
+ * also carry the instrument they belong to so recovery can replay a
+ * single instrument's tail without reading everyone else's events.
+ * The last event of each engine command carries the checksum of the
+ * instrument's order book after the command.
  */
 @Entity
-@Table(name = "events")
+@Table(name = "events", indexes = @Index(name = "idx_events_instrument_id", columnList = "instrument, id"))
 public class EventRecord {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -21,9 +25,13 @@ public class EventRecord {
     private String eventType;
     @Column(name = "aggregate_id", nullable = false)
     private String aggregateId;
+    @Column(name = "instrument")
+    private String instrument;
     @Lob
     @Column(name = "payload", columnDefinition = "TEXT")
     private String payload;
+    @Column(name = "book_checksum")
+    private Long bookChecksum;
     @CreationTimestamp
     @Column(name = "timestamp", nullable = false, updatable = false)
     private Instant timestamp;
@@ -33,14 +41,22 @@ public class EventRecord {
         this.aggregateId = aggregateId;
         this.payload = payload;
     }
+    public EventRecord(String eventType, String aggregateId, String instrument, String payload) {
+        this(eventType, aggregateId, payload);
+        this.instrument = instrument;
+    }
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
     public String getEventType() { return eventType; }
     public void setEventType(String eventType) { this.eventType = eventType; }
     public String getAggregateId() { return aggregateId; }
     public void setAggregateId(String aggregateId) { this.aggregateId = aggregateId; }
+    public String getInstrument() { return instrument; }
+    public void setInstrument(String instrument) { this.instrument = instrument; }
     public String getPayload() { return payload; }
     public void setPayload(String payload) { this.payload = payload; }
+    public Long getBookChecksum() { return bookChecksum; }
+    public void setBookChecksum(Long bookChecksum) { this.bookChecksum = bookChecksum; }
     public Instant getTimestamp() { return timestamp; }
     public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
 }
\ No newline at end of file
@@ -8,7 +8,7 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = @Index(name = "idx_orders_status_instrument", columnList = "status, instrument"))
 public class Order {
     @Id
     @GeneratedValue(generator = "uuid2")
@@ -31,6 +31,10 @@ public class Order {
     @Column(name = "price")
     private BigDecimal price;
 
+    /** Trigger price of a stop or stop_limit order; null for other types. */
+    @Column(name = "stop_price")
+    private BigDecimal stopPrice;
+
     @Column(name = "quantity", nullable = false)
     private BigDecimal quantity;
 
@@ -65,6 +69,8 @@ public class Order {
     public void setType(String type) { this.type = type; }
     public BigDecimal getPrice() { return price; }
     public void setPrice(BigDecimal price) { this.price = price; }
+    public BigDecimal getStopPrice() { return stopPrice; }
+    public void setStopPrice(BigDecimal stopPrice) { this.stopPrice = stopPrice; }
     public BigDecimal getQuantity() { return quantity; }
     public void setQuantity(BigDecimal quantity) { this.quantity = quantity; }
     public BigDecimal getFilledQuantity() { return filledQuantity; }
@@ -12,10 +12,29 @@ import java.util.UUID;
  * the system to load the latest snapshot and then apply events that
  * occurred after the snapshot timestamp.  Each snapshot is specific
  * to a single instrument.
+ *
+ * <p>Snapshots come in two kinds.  A {@code FULL} snapshot stores the
+ * complete book.  A {@code DELTA} snapshot stores only the orders
+ * added, changed or removed since the previous snapshot in its chain
+ * and references the full snapshot the chain starts from via
+ * {@code baseSnapshotId}.  Rows written before deltas existed have a
+ * null kind and are treated as full snapshots.
+ *
+ * <p>{@code checksum} is the order book checksum of the state the
+ * snapshot describes (for a delta, the merged chain), checked after a
+ * restore.  Older rows have none.
+ *
+ * <p>{@code lastEventId} is the ID of the last event applied to the
+ * book the snapshot was taken from; a restore replays the instrument's
+ * events after it.  Older rows have none and replay the events after
+ * the snapshot timestamp instead.
  */
 @Entity
 @Table(name = "orderbook_snapshots")
 public class OrderBookSnapshot {
+    public static final String KIND_FULL = "FULL";
+    public static final String KIND_DELTA = "DELTA";
+
     @Id
     @GeneratedValue(generator = "uuid2")
     @GenericGenerator(name = "uuid2", strategy = "uuid2")
@@ -32,6 +51,18 @@ public class OrderBookSnapshot {
     @Column(name = "data", nullable = false, columnDefinition = "TEXT")
     private String data;
 
+    @Column(name = "kind")
+    private String kind = KIND_FULL;
+
+    @Column(name = "base_snapshot_id")
+    private UUID baseSnapshotId;
+
+    @Column(name = "checksum")
+    private Long checksum;
+
+    @Column(name = "last_event_id")
+    private Long lastEventId;
+
     public OrderBookSnapshot() {}
 
     public OrderBookSnapshot(String instrument, Instant timestamp, String data) {
@@ -40,6 +71,12 @@ public class OrderBookSnapshot {
         this.data = data;
     }
 
+    public OrderBookSnapshot(String instrument, Instant timestamp, String data, String kind, UUID baseSnapshotId) {
+        this(instrument, timestamp, data);
+        this.kind = kind;
+        this.baseSnapshotId = baseSnapshotId;
+    }
+
     public UUID getSnapshotId() { return snapshotId; }
     public void setSnapshotId(UUID snapshotId) { this.snapshotId = snapshotId; }
     public String getInstrument() { return instrument; }
@@ -48,4 +85,17 @@ public class OrderBookSnapshot {
     public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
     public String getData() { return data; }
     public void setData(String data) { this.data = data; }
+    public String getKind() { return kind; }
+    public void setKind(String kind) { this.kind = kind; }
+    public UUID getBaseSnapshotId() { return baseSnapshotId; }
+    public void setBaseSnapshotId(UUID baseSnapshotId) { this.baseSnapshotId = baseSnapshotId; }
+    public Long getChecksum() { return checksum; }
+    public void setChecksum(Long checksum) { this.checksum = checksum; }
+    public Long getLastEventId() { return lastEventId; }
+    public void setLastEventId(Long lastEventId) { this.lastEventId = lastEventId; }
+
+    /**
+     * Whether this snapshot holds only changes relative to its chain.
+     */
+    public boolean isDelta() { return KIND_DELTA.equals(kind); }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.example.tradeengine.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Marks one instrument of one business day as settled.  Written in the
+ * same transaction as the instrument's positions, so a settlement run
+ * that stopped part way resumes with the instruments that have no
+ * checkpoint yet.
+ */
+@Entity
+@Table(name = "settlement_checkpoints", uniqueConstraints = @UniqueConstraint(name = "uk_settlement_checkpoints_date_instrument",
+    columnNames = {"business_date", "instrument"}))
+public class SettlementCheckpoint {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "business_date", nullable = false)
+    private LocalDate businessDate;
+    @Column(name = "instrument", nullable = false)
+    private String instrument;
+    @Column(name = "trade_count", nullable = false)
+    private long tradeCount;
+    @Column(name = "position_count", nullable = false)
+    private int positionCount;
+    @Column(name = "completed_at", nullable = false)
+    private Instant completedAt;
+
+    public SettlementCheckpoint() {}
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public LocalDate getBusinessDate() { return businessDate; }
+    public void setBusinessDate(LocalDate businessDate) { this.businessDate = businessDate; }
+    public String getInstrument() { return instrument; }
+    public void setInstrument(String instrument) { this.instrument = instrument; }
+    public long getTradeCount() { return tradeCount; }
+    public void setTradeCount(long tradeCount) { this.tradeCount = tradeCount; }
+    public int getPositionCount() { return positionCount; }
+    public void setPositionCount(int positionCount) { this.positionCount = positionCount; }
+    public Instant getCompletedAt() { return completedAt; }
+    public void setCompletedAt(Instant completedAt) { this.completedAt = completedAt; }
+}
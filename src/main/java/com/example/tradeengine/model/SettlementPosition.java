@@ -0,0 +1,84 @@
+package com.example.tradeengine.model;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * The netted position of one client in one instrument over one
+ * business day (UTC), as written by the settlement batch.  Net
+ * quantity is bought less sold; net notional is the cash the client
+ * receives, sold notional less bought notional, before fees.
+ */
+@Entity
+@Table(name = "settlement_positions", uniqueConstraints = @UniqueConstraint(name = "uk_settlement_positions_date_client_instrument",
+    columnNames = {"business_date", "client_id", "instrument"}))
+public class SettlementPosition {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "business_date", nullable = false)
+    private LocalDate businessDate;
+    @Column(name = "client_id", nullable = false)
+    private String clientId;
+    @Column(name = "instrument", nullable = false)
+    private String instrument;
+    @Column(name = "bought_quantity", nullable = false)
+    private BigDecimal boughtQuantity;
+    @Column(name = "sold_quantity", nullable = false)
+    private BigDecimal soldQuantity;
+    @Column(name = "net_quantity", nullable = false)
+    private BigDecimal netQuantity;
+    @Column(name = "bought_notional", nullable = false)
+    private BigDecimal boughtNotional;
+    @Column(name = "sold_notional", nullable = false)
+    private BigDecimal soldNotional;
+    @Column(name = "net_notional", nullable = false)
+    private BigDecimal netNotional;
+    @Column(name = "fees", nullable = false)
+    private BigDecimal fees;
+    /** Legs the client took part in; a trade between two of its own orders counts twice. */
+    @Column(name = "trade_count", nullable = false)
+    private long tradeCount;
+
+    public SettlementPosition() {}
+
+    public SettlementPosition(LocalDate businessDate, String clientId, String instrument) {
+        this.businessDate = businessDate;
+        this.clientId = clientId;
+        this.instrument = instrument;
+        this.boughtQuantity = BigDecimal.ZERO;
+        this.soldQuantity = BigDecimal.ZERO;
+        this.netQuantity = BigDecimal.ZERO;
+        this.boughtNotional = BigDecimal.ZERO;
+        this.soldNotional = BigDecimal.ZERO;
+        this.netNotional = BigDecimal.ZERO;
+        this.fees = BigDecimal.ZERO;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public LocalDate getBusinessDate() { return businessDate; }
+    public void setBusinessDate(LocalDate businessDate) { this.businessDate = businessDate; }
+    public String getClientId() { return clientId; }
+    public void setClientId(String clientId) { this.clientId = clientId; }
+    public String getInstrument() { return instrument; }
+    public void setInstrument(String instrument) { this.instrument = instrument; }
+    public BigDecimal getBoughtQuantity() { return boughtQuantity; }
+    public void setBoughtQuantity(BigDecimal boughtQuantity) { this.boughtQuantity = boughtQuantity; }
+    public BigDecimal getSoldQuantity() { return soldQuantity; }
+    public void setSoldQuantity(BigDecimal soldQuantity) { this.soldQuantity = soldQuantity; }
+    public BigDecimal getNetQuantity() { return netQuantity; }
+    public void setNetQuantity(BigDecimal netQuantity) { this.netQuantity = netQuantity; }
+    public BigDecimal getBoughtNotional() { return boughtNotional; }
+    public void setBoughtNotional(BigDecimal boughtNotional) { this.boughtNotional = boughtNotional; }
+    public BigDecimal getSoldNotional() { return soldNotional; }
+    public void setSoldNotional(BigDecimal soldNotional) { this.soldNotional = soldNotional; }
+    public BigDecimal getNetNotional() { return netNotional; }
+    public void setNetNotional(BigDecimal netNotional) { this.netNotional = netNotional; }
+    public BigDecimal getFees() { return fees; }
+    public void setFees(BigDecimal fees) { this.fees = fees; }
+    public long getTradeCount() { return tradeCount; }
+    public void setTradeCount(long tradeCount) { this.tradeCount = tradeCount; }
+}
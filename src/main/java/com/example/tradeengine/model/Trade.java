@@ -7,8 +7,13 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.UUID;
 
+/**
+ * An executed trade.  Trades recorded by the matching engine carry
+ * their instrument and the clients of both orders; rows written before
+ * those columns existed have none.
+ */
 @Entity
-@Table(name = "trades")
+@Table(name = "trades", indexes = @Index(name = "idx_trades_instrument_timestamp", columnList = "instrument, timestamp"))
 public class Trade {
     @Id
     @GeneratedValue(generator = "uuid2")
@@ -16,12 +21,21 @@ public class Trade {
     @Column(name = "trade_id", updatable = false, nullable = false)
     private UUID tradeId;
 
+    @Column(name = "instrument")
+    private String instrument;
+
     @Column(name = "buy_order_id", nullable = false)
     private UUID buyOrderId;
 
     @Column(name = "sell_order_id", nullable = false)
     private UUID sellOrderId;
 
+    @Column(name = "buy_client_id")
+    private String buyClientId;
+
+    @Column(name = "sell_client_id")
+    private String sellClientId;
+
     @Column(name = "price", nullable = false)
     private BigDecimal price;
 
@@ -44,10 +58,16 @@ public class Trade {
     // getters and setters
     public UUID getTradeId() { return tradeId; }
     public void setTradeId(UUID tradeId) { this.tradeId = tradeId; }
+    public String getInstrument() { return instrument; }
+    public void setInstrument(String instrument) { this.instrument = instrument; }
     public UUID getBuyOrderId() { return buyOrderId; }
     public void setBuyOrderId(UUID buyOrderId) { this.buyOrderId = buyOrderId; }
     public UUID getSellOrderId() { return sellOrderId; }
     public void setSellOrderId(UUID sellOrderId) { this.sellOrderId = sellOrderId; }
+    public String getBuyClientId() { return buyClientId; }
+    public void setBuyClientId(String buyClientId) { this.buyClientId = buyClientId; }
+    public String getSellClientId() { return sellClientId; }
+    public void setSellClientId(String sellClientId) { this.sellClientId = sellClientId; }
     public BigDecimal getPrice() { return price; }
     public void setPrice(BigDecimal price) { this.price = price; }
     public BigDecimal getQuantity() { return quantity; }
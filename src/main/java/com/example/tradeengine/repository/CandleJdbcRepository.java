@@ -0,0 +1,65 @@
+package com.example.tradeengine.repository;
+
+import com.example.tradeengine.model.Candle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * JDBC writes of closed candles.  Bars are written in batches, and a
+ * bar written again – as happens when open bars are rebuilt after a
+ * restart, or a bar in memory takes a late trade – replaces the stored
+ * one instead of failing on the unique index.  Late trades for bars no
+ * longer in memory are instead merged into the stored bar.
+ */
+@Repository
+public class CandleJdbcRepository {
+    private static final String UPSERT =
+        "insert into candles (instrument, bar_interval, open_time, open, high, low, close, volume, trade_count) " +
+        "values (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+        "on conflict (instrument, bar_interval, open_time) do update set open = excluded.open, high = excluded.high, " +
+        "low = excluded.low, close = excluded.close, volume = excluded.volume, trade_count = excluded.trade_count";
+    private static final String MERGE =
+        "insert into candles (instrument, bar_interval, open_time, open, high, low, close, volume, trade_count) " +
+        "values (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+        "on conflict (instrument, bar_interval, open_time) do update set high = greatest(candles.high, excluded.high), " +
+        "low = least(candles.low, excluded.low), volume = candles.volume + excluded.volume, " +
+        "trade_count = candles.trade_count + excluded.trade_count";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public CandleJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void upsert(List<Candle> candles) {
+        write(UPSERT, candles);
+    }
+
+    /**
+     * Fold bars of late trades into the stored bars of the same period,
+     * keeping their open and close, or store them if there are none.
+     */
+    public void merge(List<Candle> candles) {
+        write(MERGE, candles);
+    }
+
+    private void write(String sql, List<Candle> candles) {
+        if (candles.isEmpty()) return;
+        jdbcTemplate.batchUpdate(sql, candles, candles.size(), (ps, c) -> {
+            ps.setString(1, c.getInstrument());
+            ps.setString(2, c.getInterval());
+            ps.setTimestamp(3, Timestamp.from(c.getOpenTime()));
+            ps.setBigDecimal(4, c.getOpen());
+            ps.setBigDecimal(5, c.getHigh());
+            ps.setBigDecimal(6, c.getLow());
+            ps.setBigDecimal(7, c.getClose());
+            ps.setBigDecimal(8, c.getVolume());
+            ps.setLong(9, c.getTradeCount());
+        });
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.tradeengine.repository;
+
+import com.example.tradeengine.model.Candle;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository for persisted candles.  Reads go through the unique
+ * (instrument, bar_interval, open_time) index.
+ */
+@Repository
+public interface CandleRepository extends JpaRepository<Candle, Long> {
+    /**
+     * Candles of one instrument and interval opened in [from, to),
+     * oldest first.
+     */
+    List<Candle> findByInstrumentAndIntervalAndOpenTimeGreaterThanEqualAndOpenTimeLessThanOrderByOpenTime(
+        String instrument, String interval, Instant from, Instant to, Pageable page);
+
+    /**
+     * Candles of every instrument for one interval opened at or after
+     * the given time, by instrument and time.  Used to rebuild open
+     * bars at startup.
+     */
+    List<Candle> findByIntervalAndOpenTimeGreaterThanEqualOrderByInstrumentAscOpenTimeAsc(String interval, Instant from);
+}
@@ -1,9 +1,15 @@
 package com.example.tradeengine.repository;
 
 import com.example.tradeengine.model.EventRecord;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.List;
+
 /**
  * Repository for persisting domain events.  This append‑only log stores
  * all order and trade events for auditability and recovery.  Events
@@ -21,4 +27,85 @@ public interface EventRecordRepository extends JpaRepository<EventRecord, Long>
      * @return list of events after the timestamp
      */
     List<EventRecord> findByTimestampAfterOrderById(Instant timestamp);
-}
\ No newline at end of file
+
+    /**
+     * Fetch one instrument's events that occurred after the given
+     * timestamp ordered by ID.  Used to replay the tail after a
+     * per‑instrument snapshot restore.
+     */
+    List<EventRecord> findByInstrumentAndTimestampAfterOrderById(String instrument, Instant timestamp);
+
+    /**
+     * Count one instrument's events after the given timestamp, i.e. the
+     * replay tail a snapshot taken at that time would need.
+     */
+    long countByInstrumentAndTimestampAfter(String instrument, Instant timestamp);
+
+    /**
+     * Count one instrument's events after the given ID, i.e. the replay
+     * tail of a snapshot taken after that event.
+     */
+    long countByInstrumentAndIdGreaterThan(String instrument, Long id);
+
+    /**
+     * Highest event ID recorded for an instrument, or null if it has no
+     * events.  A book image is only trusted if it was committed at this
+     * exact sequence.
+     */
+    @Query("select max(e.id) from EventRecord e where e.instrument = :instrument")
+    Long findMaxIdByInstrument(@Param("instrument") String instrument);
+
+    /**
+     * Instruments that appear in the event log.  Events recorded before
+     * the instrument column existed are not included.
+     */
+    @Query("select distinct e.instrument from EventRecord e where e.instrument is not null")
+    List<String> findDistinctInstruments();
+
+    /**
+     * Next chunk of one instrument's events after the given ID (keyset
+     * paging).  Pass {@code PageRequest.of(0, chunkSize)}; served from
+     * the (instrument, id) index.
+     */
+    List<EventRecord> findByInstrumentAndIdGreaterThanOrderById(String instrument, Long id, Pageable page);
+
+    /**
+     * Next chunk of events without an instrument, i.e. recorded before
+     * the column existed, after the given ID.
+     */
+    List<EventRecord> findByInstrumentIsNullAndIdGreaterThanOrderById(Long id, Pageable page);
+
+    /**
+     * Next chunk of all events after the given ID, in ID order.  Used by
+     * a standby to tail the primary's log.
+     */
+    List<EventRecord> findByIdGreaterThanOrderById(Long id, Pageable page);
+
+    /** Highest event ID in the log, or null if it is empty. */
+    @Query("select max(e.id) from EventRecord e")
+    Long findMaxId();
+
+    /**
+     * Next chunk of one instrument's events after the given ID whose
+     * timestamps fall in (from, to], in ID order.  Used to roll a
+     * detached book forward to a point in time.
+     */
+    @Query("select e from EventRecord e where e.instrument = :instrument and e.id > :afterId " +
+           "and e.timestamp > :from and e.timestamp <= :to order by e.id")
+    List<EventRecord> findRange(@Param("instrument") String instrument,
+                                @Param("afterId") Long afterId,
+                                @Param("from") Instant from,
+                                @Param("to") Instant to,
+                                Pageable page);
+
+    /**
+     * Count the events {@link #findRange} would page through, so a
+     * rebuild that would read too many can be refused up front.
+     */
+    @Query("select count(e) from EventRecord e where e.instrument = :instrument and e.id > :afterId " +
+           "and e.timestamp > :from and e.timestamp <= :to")
+    long countRange(@Param("instrument") String instrument,
+                    @Param("afterId") Long afterId,
+                    @Param("from") Instant from,
+                    @Param("to") Instant to);
+}
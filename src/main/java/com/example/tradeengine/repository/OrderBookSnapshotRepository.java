@@ -3,6 +3,7 @@ package com.example.tradeengine.repository;
 import com.example.tradeengine.model.OrderBookSnapshot;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -24,11 +25,45 @@ public interface OrderBookSnapshotRepository extends JpaRepository<OrderBookSnap
      */
     Optional<OrderBookSnapshot> findTopByInstrumentOrderByTimestampDesc(String instrument);
 
+    /**
+     * Find the most recent snapshot for an instrument taken at or before
+     * the given time.
+     */
+    Optional<OrderBookSnapshot> findTopByInstrumentAndTimestampLessThanEqualOrderByTimestampDesc(String instrument, Instant timestamp);
+
+    /**
+     * Find the most recent snapshot of a kind for an instrument taken
+     * strictly before the given time.
+     */
+    Optional<OrderBookSnapshot> findTopByInstrumentAndKindAndTimestampLessThanOrderByTimestampDesc(String instrument, String kind, Instant timestamp);
+
     /**
      * Find all snapshots created after a given timestamp for an instrument.
      */
     List<OrderBookSnapshot> findByInstrumentAndTimestampAfter(String instrument, Instant timestamp);
 
+    /**
+     * Find the delta snapshots chained to a full snapshot in the order
+     * they were written.
+     */
+    List<OrderBookSnapshot> findByBaseSnapshotIdOrderByTimestampAsc(UUID baseSnapshotId);
+
+    /**
+     * Delete a full snapshot together with every delta chained to it.
+     * Used once the chain has been merged into a new full snapshot.
+     */
+    @Modifying
+    @Query("delete from OrderBookSnapshot s where s.snapshotId = :baseId or s.baseSnapshotId = :baseId")
+    int deleteChain(@Param("baseId") UUID baseId);
+
+    /**
+     * Delete the deltas chained to a full snapshot but keep the full
+     * snapshot itself, which is retained as a historical checkpoint.
+     */
+    @Modifying
+    @Query("delete from OrderBookSnapshot s where s.baseSnapshotId = :baseId")
+    int deleteDeltas(@Param("baseId") UUID baseId);
+
     /**
      * List distinct instruments that have at least one snapshot.
      */
@@ -0,0 +1,197 @@
+package com.example.tradeengine.repository;
+
+import com.example.tradeengine.model.Order;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access to the orders table for bulk paths where going through
+ * JPA one entity at a time is too slow.  Used when restoring snapshots,
+ * where most rows are usually already correct and only the differing
+ * ones need to be written, and when loading open orders at startup,
+ * where rows are streamed through a server‑side cursor instead of being
+ * materialised as one list.
+ */
+@Repository
+public class OrderJdbcRepository {
+    private static final String SELECT_STATE =
+        "select order_id, filled_quantity, status, version from orders where order_id = any(?)";
+    private static final String UPSERT =
+        "insert into orders (order_id, client_id, instrument, side, type, price, stop_price, quantity, filled_quantity, status, created_at, updated_at, version) " +
+        "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0) " +
+        "on conflict (order_id) do update set filled_quantity = excluded.filled_quantity, status = excluded.status, " +
+        "updated_at = excluded.updated_at, version = orders.version + 1";
+    private static final String SELECT_CLIENTS =
+        "select order_id, client_id from orders where order_id = any(?)";
+    private static final String OPEN_STATUSES = "('open', 'partially_filled')";
+    private static final String PENDING_STATUS = "'pending'";
+    private static final String SELECT_OPEN_INSTRUMENTS =
+        "select distinct instrument from orders where status in " + OPEN_STATUSES +
+        " union select distinct instrument from orders where status = " + PENDING_STATUS;
+    private static final String ORDER_COLUMNS =
+        "order_id, client_id, instrument, side, type, price, stop_price, quantity, filled_quantity, status, created_at, updated_at, version";
+    private static final String SELECT_OPEN_ORDERS =
+        "select " + ORDER_COLUMNS + " from orders where status in " + OPEN_STATUSES + " and instrument = ?";
+    private static final String SELECT_PENDING_STOPS =
+        "select " + ORDER_COLUMNS + " from orders where status = " + PENDING_STATUS + " and instrument = ? order by created_at";
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public OrderJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Instruments that have at least one open or partially filled
+     * order or pending stop.  Served from the (status, instrument) index.
+     */
+    public List<String> findOpenInstruments() {
+        return jdbcTemplate.queryForList(SELECT_OPEN_INSTRUMENTS, String.class);
+    }
+
+    /**
+     * Stream the open and partially filled orders of one instrument to
+     * the consumer, {@value #FETCH_SIZE} rows per round trip.  Postgres
+     * only uses a cursor when auto‑commit is off, so call this inside a
+     * transaction.
+     *
+     * @return number of rows read
+     */
+    public long forEachOpenOrder(String instrument, Consumer<Order> consumer) {
+        return forEachOrder(SELECT_OPEN_ORDERS, instrument, consumer);
+    }
+
+    /**
+     * Stream the pending stop and stop_limit orders of one instrument to
+     * the consumer, oldest first, like {@link #forEachOpenOrder}.
+     *
+     * @return number of rows read
+     */
+    public long forEachPendingStop(String instrument, Consumer<Order> consumer) {
+        return forEachOrder(SELECT_PENDING_STOPS, instrument, consumer);
+    }
+
+    private long forEachOrder(String sql, String instrument, Consumer<Order> consumer) {
+        long[] rows = new long[1];
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setString(1, instrument);
+            return ps;
+        }, rs -> {
+            Order o = new Order();
+            o.setOrderId(rs.getObject("order_id", UUID.class));
+            o.setClientId(rs.getString("client_id"));
+            o.setInstrument(rs.getString("instrument"));
+            o.setSide(rs.getString("side"));
+            o.setType(rs.getString("type"));
+            o.setPrice(rs.getBigDecimal("price"));
+            o.setStopPrice(rs.getBigDecimal("stop_price"));
+            o.setQuantity(rs.getBigDecimal("quantity"));
+            o.setFilledQuantity(rs.getBigDecimal("filled_quantity"));
+            o.setStatus(rs.getString("status"));
+            o.setCreatedAt(rs.getTimestamp("created_at").toInstant());
+            o.setUpdatedAt(rs.getTimestamp("updated_at").toInstant());
+            o.setVersion(rs.getLong("version"));
+            consumer.accept(o);
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    /**
+     * Client of each of the given orders that exists, in one query
+     * served by the primary key.
+     */
+    public Map<UUID, String> findClientIds(Collection<UUID> orderIds) {
+        Map<UUID, String> clients = new HashMap<>(orderIds.size() * 4 / 3 + 1);
+        if (orderIds.isEmpty()) return clients;
+        UUID[] ids = orderIds.toArray(new UUID[0]);
+        jdbcTemplate.query(SELECT_CLIENTS, ps -> {
+            Array array = ps.getConnection().createArrayOf("uuid", ids);
+            ps.setArray(1, array);
+        }, rs -> {
+            clients.put(rs.getObject("order_id", UUID.class), rs.getString("client_id"));
+        });
+        return clients;
+    }
+
+    private static class RowState {
+        BigDecimal filledQuantity;
+        String status;
+        long version;
+    }
+
+    /**
+     * Insert or update the given orders in one batch, skipping those
+     * whose stored filled quantity and status already match.  The
+     * version of every order is set to the value now stored so the
+     * entities can later be saved through JPA without conflicts.  The
+     * caller controls the transaction and chunk size.
+     *
+     * @return number of rows written
+     */
+    public int upsertChanged(List<Order> orders) {
+        if (orders.isEmpty()) return 0;
+        UUID[] ids = new UUID[orders.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = orders.get(i).getOrderId();
+        Map<UUID, RowState> existing = new HashMap<>(ids.length * 4 / 3 + 1);
+        jdbcTemplate.query(SELECT_STATE, ps -> {
+            Array array = ps.getConnection().createArrayOf("uuid", ids);
+            ps.setArray(1, array);
+        }, rs -> {
+            RowState row = new RowState();
+            row.filledQuantity = rs.getBigDecimal("filled_quantity");
+            row.status = rs.getString("status");
+            row.version = rs.getLong("version");
+            existing.put(rs.getObject("order_id", UUID.class), row);
+        });
+        List<Order> changed = new ArrayList<>();
+        for (Order order : orders) {
+            RowState row = existing.get(order.getOrderId());
+            if (row == null) {
+                order.setVersion(0L);
+                changed.add(order);
+            } else if (!Objects.equals(row.status, order.getStatus())
+                    || row.filledQuantity == null
+                    || row.filledQuantity.compareTo(order.getFilledQuantity()) != 0) {
+                order.setVersion(row.version + 1);
+                changed.add(order);
+            } else {
+                order.setVersion(row.version);
+            }
+        }
+        if (changed.isEmpty()) return 0;
+        jdbcTemplate.batchUpdate(UPSERT, changed, changed.size(), (ps, o) -> {
+            ps.setObject(1, o.getOrderId());
+            ps.setString(2, o.getClientId());
+            ps.setString(3, o.getInstrument());
+            ps.setString(4, o.getSide());
+            ps.setString(5, o.getType());
+            ps.setBigDecimal(6, o.getPrice());
+            ps.setBigDecimal(7, o.getStopPrice());
+            ps.setBigDecimal(8, o.getQuantity());
+            ps.setBigDecimal(9, o.getFilledQuantity());
+            ps.setString(10, o.getStatus());
+            ps.setTimestamp(11, Timestamp.from(o.getCreatedAt()));
+            ps.setTimestamp(12, Timestamp.from(o.getUpdatedAt()));
+        });
+        return changed.size();
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.tradeengine.repository;
+
+import com.example.tradeengine.model.SettlementCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Instruments already settled for a business day.
+ */
+@Repository
+public interface SettlementCheckpointRepository extends JpaRepository<SettlementCheckpoint, Long> {
+    List<SettlementCheckpoint> findByBusinessDate(LocalDate businessDate);
+}
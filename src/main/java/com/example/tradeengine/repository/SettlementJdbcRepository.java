@@ -0,0 +1,64 @@
+package com.example.tradeengine.repository;
+
+import com.example.tradeengine.model.SettlementPosition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * JDBC writes of the settlement batch: an instrument's netted
+ * positions in batches of {@value #BATCH_SIZE}, and its checkpoint.
+ * The caller runs both in one transaction.
+ */
+@Repository
+public class SettlementJdbcRepository {
+    private static final int BATCH_SIZE = 500;
+    private static final String DELETE_POSITIONS =
+        "delete from settlement_positions where business_date = ? and instrument = ?";
+    private static final String INSERT_POSITION =
+        "insert into settlement_positions (business_date, client_id, instrument, bought_quantity, sold_quantity, net_quantity, " +
+        "bought_notional, sold_notional, net_notional, fees, trade_count) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_CHECKPOINT =
+        "insert into settlement_checkpoints (business_date, instrument, trade_count, position_count, completed_at) " +
+        "values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public SettlementJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Replace an instrument's positions for a business day, so a run
+     * that failed before its checkpoint can simply be repeated.
+     */
+    public void replacePositions(LocalDate businessDate, String instrument, List<SettlementPosition> positions) {
+        jdbcTemplate.update(DELETE_POSITIONS, Date.valueOf(businessDate), instrument);
+        if (positions.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_POSITION, positions, BATCH_SIZE, (ps, p) -> {
+            ps.setDate(1, Date.valueOf(p.getBusinessDate()));
+            ps.setString(2, p.getClientId());
+            ps.setString(3, p.getInstrument());
+            ps.setBigDecimal(4, p.getBoughtQuantity());
+            ps.setBigDecimal(5, p.getSoldQuantity());
+            ps.setBigDecimal(6, p.getNetQuantity());
+            ps.setBigDecimal(7, p.getBoughtNotional());
+            ps.setBigDecimal(8, p.getSoldNotional());
+            ps.setBigDecimal(9, p.getNetNotional());
+            ps.setBigDecimal(10, p.getFees());
+            ps.setLong(11, p.getTradeCount());
+        });
+    }
+
+    public void insertCheckpoint(LocalDate businessDate, String instrument, long trades, int positions) {
+        jdbcTemplate.update(INSERT_CHECKPOINT, Date.valueOf(businessDate), instrument, trades, positions,
+            Timestamp.from(Instant.now()));
+    }
+}
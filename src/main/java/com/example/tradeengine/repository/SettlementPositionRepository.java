@@ -0,0 +1,20 @@
+package com.example.tradeengine.repository;
+
+import com.example.tradeengine.model.SettlementPosition;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Reads settled positions.  They are written in batches by
+ * {@link SettlementJdbcRepository}.
+ */
+@Repository
+public interface SettlementPositionRepository extends JpaRepository<SettlementPosition, Long> {
+    List<SettlementPosition> findByBusinessDateAndClientIdOrderByInstrument(LocalDate businessDate, String clientId);
+
+    List<SettlementPosition> findByBusinessDateOrderByClientIdAscInstrumentAsc(LocalDate businessDate, Pageable page);
+}
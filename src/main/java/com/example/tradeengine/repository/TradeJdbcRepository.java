@@ -0,0 +1,85 @@
+package com.example.tradeengine.repository;
+
+import com.example.tradeengine.model.Trade;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access to the trades table for analytics that read many trades
+ * at once, such as rebuilding rolling aggregates at startup.  Rows are
+ * streamed through a server‑side cursor instead of being materialised
+ * as entities.
+ */
+@Repository
+public class TradeJdbcRepository {
+    private static final String COLUMNS =
+        "select trade_id, instrument, buy_order_id, sell_order_id, buy_client_id, sell_client_id, price, quantity, timestamp from trades ";
+    private static final String SELECT_BETWEEN =
+        COLUMNS + "where timestamp >= ? and timestamp < ? and instrument is not null order by timestamp";
+    private static final String SELECT_INSTRUMENT_BETWEEN =
+        COLUMNS + "where instrument = ? and timestamp >= ? and timestamp < ?";
+    private static final String SELECT_INSTRUMENTS_BETWEEN =
+        "select distinct instrument from trades where timestamp >= ? and timestamp < ? and instrument is not null";
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public TradeJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Stream the trades executed in [from, to) that carry an
+     * instrument to the consumer, oldest first, {@value #FETCH_SIZE}
+     * rows per round trip.  Postgres only uses a cursor when auto‑commit
+     * is off, so call this inside a transaction.
+     *
+     * @return number of rows read
+     */
+    public long forEachTradeBetween(Instant from, Instant to, Consumer<Trade> consumer) {
+        return stream(SELECT_BETWEEN, consumer, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    /**
+     * As {@link #forEachTradeBetween}, for the trades of one
+     * instrument, in no particular order.  Served by the
+     * (instrument, timestamp) index.
+     */
+    public long forEachTradeBetween(String instrument, Instant from, Instant to, Consumer<Trade> consumer) {
+        return stream(SELECT_INSTRUMENT_BETWEEN, consumer, instrument, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    /** Instruments with at least one trade executed in [from, to). */
+    public List<String> findInstrumentsBetween(Instant from, Instant to) {
+        return jdbcTemplate.queryForList(SELECT_INSTRUMENTS_BETWEEN, String.class, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    private long stream(String sql, Consumer<Trade> consumer, Object... params) {
+        long[] rows = new long[1];
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+            return ps;
+        }, rs -> {
+            Trade t = new Trade(rs.getObject("buy_order_id", UUID.class), rs.getObject("sell_order_id", UUID.class),
+                rs.getBigDecimal("price"), rs.getBigDecimal("quantity"), rs.getTimestamp("timestamp").toInstant());
+            t.setTradeId(rs.getObject("trade_id", UUID.class));
+            t.setInstrument(rs.getString("instrument"));
+            t.setBuyClientId(rs.getString("buy_client_id"));
+            t.setSellClientId(rs.getString("sell_client_id"));
+            consumer.accept(t);
+            rows[0]++;
+        });
+        return rows[0];
+    }
+}
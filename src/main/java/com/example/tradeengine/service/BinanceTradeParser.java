@@ -0,0 +1,235 @@
+package com.example.tradeengine.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Streaming tokenizer for Binance trade messages, either bare
+ * (`{"e":"trade","s":"BTCUSDT","t":12345,"p":"0.001","q":"100","m":true,...}`)
+ * or wrapped by a combined stream (`{"stream":...,"data":{...}}`).
+ * Aggregate trades are accepted too, but carry no trade id `t`, so they
+ * are not checked for gaps.  It
+ * walks the characters once and keeps only the fields it needs
+ * in reusable fields, so parsing a message allocates nothing but the
+ * quantity handed to the engine.  Symbols are resolved to instruments
+ * through a small table compared in place, which also holds each
+ * symbol's last trade id for gap detection.  Not thread safe: one
+ * parser per connection.
+ */
+final class BinanceTradeParser {
+    /** Digits a long holds without overflow. */
+    private static final int MAX_DIGITS = 18;
+
+    private Symbol[] symbols = new Symbol[16];
+    private int symbolCount;
+
+    private Symbol symbol;
+    private long tradeId;
+    private long quantityUnscaled;
+    private int quantityScale;
+    private boolean hasQuantity;
+    private boolean buyerIsMaker;
+    private boolean isTrade;
+
+    /** One symbol of the feed; the last trade id is only touched by the parsing thread. */
+    static final class Symbol {
+        private final String symbol;
+        private final String instrument;
+        private final int hash;
+        private long lastTradeId = -1;
+
+        Symbol(String symbol, String instrument, int hash) {
+            this.symbol = symbol;
+            this.instrument = instrument;
+            this.hash = hash;
+        }
+
+        String getSymbol() { return symbol; }
+        String getInstrument() { return instrument; }
+        long getLastTradeId() { return lastTradeId; }
+
+        /**
+         * Record a trade id.
+         *
+         * @return how many trade ids were skipped since the previous one, or 0
+         */
+        long advance(long tradeId) {
+            long previous = lastTradeId;
+            if (tradeId <= previous) return 0;
+            lastTradeId = tradeId;
+            return previous < 0 ? 0 : tradeId - previous - 1;
+        }
+    }
+
+    /**
+     * Parse one complete message.
+     *
+     * @return true if it is a trade with a symbol and a positive quantity
+     */
+    boolean parse(CharSequence s) {
+        symbol = null;
+        tradeId = -1;
+        hasQuantity = false;
+        buyerIsMaker = false;
+        isTrade = true;
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            if (s.charAt(i) != '"') {
+                i++;
+                continue;
+            }
+            int keyStart = i + 1;
+            int keyEnd = indexOf(s, '"', keyStart);
+            if (keyEnd < 0) return false;
+            int v = skipWhitespace(s, keyEnd + 1);
+            if (v >= n || s.charAt(v) != ':') {
+                // A string value of a field we skipped
+                i = keyEnd + 1;
+                continue;
+            }
+            v = skipWhitespace(s, v + 1);
+            i = keyEnd - keyStart == 1 ? field(s, s.charAt(keyStart), v) : v;
+            if (i < 0) return false;
+        }
+        return isTrade && symbol != null && hasQuantity && quantityUnscaled > 0;
+    }
+
+    /** Read the value at position v of a one‑letter key; returns the position after it. */
+    private int field(CharSequence s, char key, int v) {
+        switch (key) {
+            case 'e': {
+                int end = stringEnd(s, v);
+                if (end < 0) return -1;
+                isTrade = regionEquals(s, v + 1, end, "trade") || regionEquals(s, v + 1, end, "aggTrade");
+                return end + 1;
+            }
+            case 's': {
+                int end = stringEnd(s, v);
+                if (end < 0) return -1;
+                symbol = symbol(s, v + 1, end);
+                return end + 1;
+            }
+            case 't': {
+                int end = v;
+                long id = 0;
+                while (end < s.length() && Character.isDigit(s.charAt(end))) {
+                    id = id * 10 + (s.charAt(end++) - '0');
+                }
+                if (end > v) tradeId = id;
+                return end;
+            }
+            case 'q': {
+                int end = stringEnd(s, v);
+                if (end < 0) return -1;
+                hasQuantity = decimal(s, v + 1, end);
+                return end + 1;
+            }
+            case 'm':
+                buyerIsMaker = regionEquals(s, v, Math.min(s.length(), v + 4), "true");
+                return v + 1;
+            default:
+                return v;
+        }
+    }
+
+    /** Parse an unsigned decimal into quantityUnscaled and quantityScale, ignoring insignificant trailing zeros. */
+    private boolean decimal(CharSequence s, int start, int end) {
+        long unscaled = 0;
+        int scale = 0;
+        int digits = 0;
+        int pendingZeros = 0;
+        boolean fraction = false;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                if (fraction) return false;
+                fraction = true;
+                continue;
+            }
+            if (c < '0' || c > '9') return false;
+            if (fraction && c == '0') {
+                pendingZeros++;
+                continue;
+            }
+            for (; pendingZeros > 0; pendingZeros--) {
+                unscaled *= 10;
+                scale++;
+                digits++;
+            }
+            if (unscaled != 0 || c != '0') digits++;
+            if (digits > MAX_DIGITS) return false;
+            unscaled = unscaled * 10 + (c - '0');
+            if (fraction) scale++;
+        }
+        quantityUnscaled = unscaled;
+        quantityScale = scale;
+        return true;
+    }
+
+    private Symbol symbol(CharSequence s, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) hash = 31 * hash + s.charAt(i);
+        for (int k = 0; k < symbolCount; k++) {
+            Symbol sym = symbols[k];
+            if (sym.hash == hash && regionEquals(s, start, end, sym.symbol)) return sym;
+        }
+        String name = s.subSequence(start, end).toString();
+        Symbol sym = new Symbol(name, instrument(name), hash);
+        if (symbolCount == symbols.length) symbols = Arrays.copyOf(symbols, symbolCount * 2);
+        symbols[symbolCount++] = sym;
+        return sym;
+    }
+
+    Symbol getSymbol() { return symbol; }
+    /** Binance trade id, or -1 if the message had none. */
+    long getTradeId() { return tradeId; }
+    /** Whether the buyer was the maker, i.e. the taker sold. */
+    boolean isBuyerMaker() { return buyerIsMaker; }
+
+    BigDecimal getQuantity() {
+        return BigDecimal.valueOf(quantityUnscaled, quantityScale);
+    }
+
+    /**
+     * Convert a Binance symbol (e.g. BTCUSDT) to this service's
+     * instrument format: the base asset joined with the quote asset by a
+     * dash, with USDT quoted as USD, so BTCUSDT becomes BTC-USD.
+     */
+    static String instrument(String symbol) {
+        if (symbol.length() >= 6) {
+            String base = symbol.substring(0, symbol.length() - 4);
+            String quote = symbol.substring(symbol.length() - 4);
+            if (quote.equalsIgnoreCase("USDT")) {
+                quote = "USD";
+            }
+            return base + "-" + quote;
+        }
+        return symbol;
+    }
+
+    private static int stringEnd(CharSequence s, int v) {
+        if (v >= s.length() || s.charAt(v) != '"') return -1;
+        return indexOf(s, '"', v + 1);
+    }
+
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(CharSequence s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+
+    private static boolean regionEquals(CharSequence s, int start, int end, String expected) {
+        if (end - start != expected.length()) return false;
+        for (int i = 0; i < expected.length(); i++) {
+            if (s.charAt(start + i) != expected.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -2,23 +2,35 @@ package com.example.tradeengine.service;
 
 import com.example.tradeengine.engine.MatchingEngine;
 import com.example.tradeengine.model.Order;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.WebSocket;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * BinanceWebSocketClient connects to Binance's public WebSocket trade stream
@@ -26,97 +38,317 @@ import java.util.concurrent.CompletionStage;
  * This integration enables the service to consume live market data and
  * exercise the matching engine under real‑time load.  The stream and
  * instrument mapping are configurable via application.yml.
+ *
+ * <p>Fragments are assembled into one reused buffer and complete
+ * messages are read by {@link BinanceTradeParser} without building a
+ * JSON tree.  Orders are collected into batches of
+ * `binance.websocket.batch-size`, or whatever arrived within
+ * `batch-linger-ms`, and handed to the engine in one
+ * {@link MatchingEngine#submitOrders} call.  Flow control uses the
+ * WebSocket's own demand: at most `max-in-flight` frames are requested
+ * ahead, and a batch's frames are only requested again once the engine
+ * has processed its orders, so a slow engine slows the socket instead
+ * of queueing without bound.  A dropped or idle connection is reopened
+ * with exponential backoff, and skipped Binance trade ids are counted
+ * in `binance_feed_missed_trades_total`.
+ *
+ * <p>With `binance.websocket.capture-file` set, every message received
+ * is also appended to a {@link FeedCapture}, which the `/ws/replay`
+ * endpoint can play back to this client for offline benchmarks.
+ * `binance.websocket.api-key` is sent as `X-API-Key`, as that endpoint
+ * requires.
  */
 @Service
 @ConditionalOnProperty(prefix = "binance.websocket", name = "enabled", havingValue = "true")
 public class BinanceWebSocketClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(BinanceWebSocketClient.class);
+    private static final String CLIENT_ID = "binance-stream";
     private final MatchingEngine matchingEngine;
-    private final ObjectMapper objectMapper;
     private final String wsUrl;
+    private final String apiKey;
+    private final String captureFile;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final int maxInFlight;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long idleTimeoutMillis;
+    private final Counter messages;
+    private final Counter gaps;
+    private final Counter missedTrades;
+    private final Counter reconnects;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "binance-feed");
+        t.setDaemon(true);
+        return t;
+    });
+    /** Outlives connections so gaps across a reconnect are detected; guarded by this. */
+    private final BinanceTradeParser parser = new BinanceTradeParser();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private volatile FeedCapture.Writer capture;
+    private volatile boolean running;
+    private volatile Connection connection;
 
     @Autowired
     public BinanceWebSocketClient(MatchingEngine matchingEngine,
-                                  ObjectMapper objectMapper,
-                                  @Value("${binance.websocket.url}") String wsUrl) {
+                                  MeterRegistry meterRegistry,
+                                  @Value("${binance.websocket.url}") String wsUrl,
+                                  @Value("${binance.websocket.batch-size:256}") int batchSize,
+                                  @Value("${binance.websocket.batch-linger-ms:5}") long lingerMillis,
+                                  @Value("${binance.websocket.max-in-flight:1024}") int maxInFlight,
+                                  @Value("${binance.websocket.reconnect.initial-backoff-ms:500}") long initialBackoffMillis,
+                                  @Value("${binance.websocket.reconnect.max-backoff-ms:30000}") long maxBackoffMillis,
+                                  @Value("${binance.websocket.idle-timeout-ms:60000}") long idleTimeoutMillis,
+                                  @Value("${binance.websocket.api-key:}") String apiKey,
+                                  @Value("${binance.websocket.capture-file:}") String captureFile) {
         this.matchingEngine = matchingEngine;
-        this.objectMapper = objectMapper;
         this.wsUrl = wsUrl;
+        this.apiKey = apiKey;
+        this.captureFile = captureFile;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMillis = Math.max(0, lingerMillis);
+        this.maxInFlight = Math.max(this.batchSize, maxInFlight);
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.messages = meterRegistry.counter("binance_feed_messages_total");
+        this.gaps = meterRegistry.counter("binance_feed_gaps_total");
+        this.missedTrades = meterRegistry.counter("binance_feed_missed_trades_total");
+        this.reconnects = meterRegistry.counter("binance_feed_reconnects_total");
     }
 
-    @PostConstruct
+    /**
+     * Connect once the application is ready, after startup recovery, so
+     * no trade reaches a book that is still being loaded.
+     */
+    @EventListener(ApplicationReadyEvent.class)
     public void start() {
+        if (!captureFile.isBlank()) {
+            try {
+                capture = FeedCapture.Writer.create(Path.of(captureFile));
+                LOGGER.info("Capturing Binance feed to {}", captureFile);
+                scheduler.scheduleWithFixedDelay(this::flushCapture, 1, 1, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                LOGGER.warn("Feed capture to {} disabled: {}", captureFile, e.getMessage());
+            }
+        }
+        running = true;
+        connect();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Connection c = connection;
+        if (c != null) c.close();
+        scheduler.shutdownNow();
+        FeedCapture.Writer w = capture;
+        if (w != null) {
+            capture = null;
+            try {
+                w.close();
+                LOGGER.info("Captured {} Binance messages to {}", w.getMessages(), captureFile);
+            } catch (IOException e) {
+                LOGGER.warn("Could not close feed capture {}: {}", captureFile, e.getMessage());
+            }
+        }
+    }
+
+    private void flushCapture() {
+        FeedCapture.Writer w = capture;
+        if (w == null) return;
+        try {
+            w.flush();
+        } catch (IOException e) {
+            capture = null;
+            LOGGER.warn("Feed capture to {} stopped: {}", captureFile, e.getMessage());
+        }
+    }
+
+    private void connect() {
+        if (!running) return;
         LOGGER.info("Starting Binance WebSocket client connecting to {}", wsUrl);
-        HttpClient client = HttpClient.newHttpClient();
-        client.newWebSocketBuilder().buildAsync(URI.create(wsUrl), new Listener());
+        Connection c = new Connection();
+        connection = c;
+        WebSocket.Builder builder = httpClient.newWebSocketBuilder();
+        if (!apiKey.isBlank()) builder.header("X-API-Key", apiKey);
+        builder.buildAsync(URI.create(wsUrl), c).whenComplete((ws, error) -> {
+            if (error != null) {
+                LOGGER.warn("Could not connect to Binance WebSocket: {}", error.getMessage());
+                c.closed();
+            }
+        });
+    }
+
+    /** Reconnect after a full‑jitter exponential backoff. */
+    private void scheduleReconnect() {
+        if (!running) return;
+        int attempt = attempts.getAndIncrement();
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt, 20));
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        reconnects.increment();
+        LOGGER.info("Reconnecting to Binance WebSocket in {} ms (attempt {})", delay, attempt + 1);
+        scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /** Turn a parsed trade into a market order for the batch; caller holds the lock. */
+    private Order toOrder() {
+        BinanceTradeParser.Symbol symbol = parser.getSymbol();
+        long tradeId = parser.getTradeId();
+        if (tradeId >= 0) {
+            long missed = symbol.advance(tradeId);
+            if (missed > 0) {
+                gaps.increment();
+                missedTrades.increment(missed);
+                LOGGER.warn("Gap in {} trades: {} missed before trade id {}", symbol.getSymbol(), missed, tradeId);
+            }
+        }
+        Order order = new Order();
+        order.setOrderId(UUID.randomUUID());
+        order.setClientId(CLIENT_ID);
+        order.setInstrument(symbol.getInstrument());
+        // A buyer that made the market means the taker sold
+        order.setSide(parser.isBuyerMaker() ? "sell" : "buy");
+        order.setType("market");
+        order.setPrice(null);
+        order.setQuantity(parser.getQuantity());
+        order.setCreatedAt(Instant.now());
+        order.setUpdatedAt(order.getCreatedAt());
+        return order;
     }
 
-    private class Listener implements WebSocket.Listener {
+    /**
+     * One connection attempt.  Frames not yet handed back to the socket
+     * through {@link WebSocket#request} are counted in credits; they are
+     * returned when the batch they ended up in has been processed.
+     */
+    private final class Connection implements WebSocket.Listener {
+        private final StringBuilder frame = new StringBuilder(512);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private List<Order> batch = new ArrayList<>(batchSize);
+        private long credits;
+        private ScheduledFuture<?> linger;
+        private ScheduledFuture<?> watchdog;
+        private volatile WebSocket webSocket;
+        private volatile long lastMessageNanos = System.nanoTime();
+
         @Override
         public void onOpen(WebSocket webSocket) {
+            this.webSocket = webSocket;
             LOGGER.info("Connected to Binance WebSocket");
-            WebSocket.Listener.super.onOpen(webSocket);
+            if (idleTimeoutMillis > 0) {
+                watchdog = scheduler.scheduleWithFixedDelay(this::checkIdle, idleTimeoutMillis, idleTimeoutMillis / 2 + 1, TimeUnit.MILLISECONDS);
+            }
+            webSocket.request(maxInFlight);
         }
+
         @Override
         public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            long now = System.nanoTime();
+            lastMessageNanos = now;
+            synchronized (BinanceWebSocketClient.this) {
+                if (credits++ == 0 && lingerMillis > 0) {
+                    linger = scheduler.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+                }
+                if (last && frame.length() == 0) {
+                    accept(now, data);
+                } else {
+                    frame.append(data);
+                    if (last) {
+                        accept(now, frame);
+                        frame.setLength(0);
+                    }
+                }
+                if (batch.size() >= batchSize || credits >= maxInFlight || lingerMillis == 0) flush();
+            }
+            // The frame is copied or consumed, so the socket may reuse it
+            return null;
+        }
+
+        private void accept(long nanoTime, CharSequence message) {
+            messages.increment();
+            record(nanoTime, message);
+            if (attempts.get() != 0) attempts.set(0);
+            if (parser.parse(message)) batch.add(toOrder());
+        }
+
+        private void record(long nanoTime, CharSequence message) {
+            FeedCapture.Writer w = capture;
+            if (w == null) return;
             try {
-                JsonNode json = objectMapper.readTree(data.toString());
-                // Extract symbol, price and quantity.  Binance trade stream JSON
-                // fields: "s" (symbol), "p" (price), "q" (quantity), "m" (is maker seller).
-                String symbol = json.path("s").asText();
-                String priceStr = json.path("p").asText();
-                String qtyStr = json.path("q").asText();
-                boolean sellerIsMaker = json.path("m").asBoolean();
-                if (symbol.isEmpty() || qtyStr.isEmpty()) {
-                    return WebSocket.Listener.super.onText(webSocket, data, last);
+                w.write(nanoTime, message);
+            } catch (IOException e) {
+                capture = null;
+                LOGGER.warn("Feed capture to {} stopped: {}", captureFile, e.getMessage());
+            }
+        }
+
+        private void flush() {
+            List<Order> orders;
+            long n;
+            synchronized (BinanceWebSocketClient.this) {
+                if (linger != null) {
+                    linger.cancel(false);
+                    linger = null;
                 }
-                BigDecimal quantity = new BigDecimal(qtyStr);
-                // Determine side: if sellerIsMaker is true, the incoming trade
-                // implies the taker side is buying, so we create a buy market order; otherwise sell.
-                String side = sellerIsMaker ? "buy" : "sell";
-                // Map Binance symbol to instrument format: e.g., BTCUSDT -> BTC-USD
-                String instrument = mapInstrument(symbol);
-                Order order = new Order();
-                order.setOrderId(UUID.randomUUID());
-                order.setClientId("binance-stream");
-                order.setInstrument(instrument);
-                order.setSide(side);
-                order.setType("market");
-                // For market orders, price is null; quantity from stream.
-                order.setPrice(null);
-                order.setQuantity(quantity);
-                order.setCreatedAt(Instant.now());
-                order.setUpdatedAt(order.getCreatedAt());
-                // Submit into matching engine asynchronously.  Idempotency key is null.
-                matchingEngine.submitOrder(order, null);
-            } catch (Exception e) {
-                LOGGER.warn("Failed to process WebSocket message: {}", e.getMessage());
+                if (credits == 0 && batch.isEmpty()) return;
+                orders = batch;
+                n = credits;
+                batch = new ArrayList<>(batchSize);
+                credits = 0;
             }
-            return WebSocket.Listener.super.onText(webSocket, data, last);
+            WebSocket ws = webSocket;
+            if (orders.isEmpty()) {
+                if (!closed.get() && n > 0) ws.request(n);
+                return;
+            }
+            matchingEngine.submitOrders(orders).whenComplete((v, error) -> {
+                if (error != null) LOGGER.warn("Failed to submit {} Binance orders: {}", orders.size(), error.getMessage());
+                if (!closed.get() && n > 0) ws.request(n);
+            });
+        }
+
+        private void checkIdle() {
+            long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastMessageNanos);
+            if (idleMillis < idleTimeoutMillis) return;
+            LOGGER.warn("No Binance WebSocket message for {} ms; reconnecting", idleMillis);
+            WebSocket ws = webSocket;
+            if (ws != null) ws.abort();
+            closed();
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            LOGGER.info("Binance WebSocket closed: {} {}", statusCode, reason);
+            closed();
+            return null;
         }
+
         @Override
         public void onError(WebSocket webSocket, Throwable error) {
             LOGGER.error("WebSocket error", error);
-            WebSocket.Listener.super.onError(webSocket, error);
+            closed();
         }
-    }
 
-    /**
-     * Convert Binance symbol (e.g. BTCUSDT) to instrument format used by
-     * this service.  The default implementation returns the base asset
-     * joined with the quote asset separated by a dash.  For example
-     * BTCUSDT -> BTC-USD.  Override or adjust as needed if quoting
-     * currency differs from USD.
-     */
-    private String mapInstrument(String symbol) {
-        if (symbol.length() >= 6) {
-            String base = symbol.substring(0, symbol.length() - 4);
-            String quote = symbol.substring(symbol.length() - 4);
-            if (quote.equalsIgnoreCase("USDT")) {
-                quote = "USD";
+        /** Submit what was received, drop a partial message and reconnect, once. */
+        void closed() {
+            if (!closed.compareAndSet(false, true)) return;
+            if (watchdog != null) watchdog.cancel(false);
+            synchronized (BinanceWebSocketClient.this) {
+                frame.setLength(0);
             }
-            return base + "-" + quote;
+            flush();
+            scheduleReconnect();
+        }
+
+        /** Close for shutdown, without reconnecting. */
+        void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            if (watchdog != null) watchdog.cancel(false);
+            flush();
+            WebSocket ws = webSocket;
+            if (ws != null) ws.sendClose(WebSocket.NORMAL_CLOSURE, "shutdown");
         }
-        return symbol;
     }
-}
\ No newline at end of file
+}
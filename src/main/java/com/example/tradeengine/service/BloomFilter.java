@@ -0,0 +1,73 @@
+package com.example.tradeengine.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock‑free Bloom filter over strings, for answering "certainly never
+ * seen" without a remote lookup.  Bits are set with CAS on an
+ * {@link AtomicLongArray}, so concurrent adds never lose each other's
+ * bits and a key is visible to {@link #mightContain} once
+ * {@link #add} returns.  Probes use double hashing of two independent
+ * 64‑bit mixes of the key's characters.
+ */
+final class BloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashes;
+
+    /**
+     * @param expectedKeys keys the filter should hold at the target rate
+     * @param falsePositiveRate target probability that an absent key is reported present
+     */
+    BloomFilter(long expectedKeys, double falsePositiveRate) {
+        long n = Math.max(1, expectedKeys);
+        double p = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashes = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    void add(String key) {
+        long h1 = mix(key, 0x9E3779B97F4A7C15L);
+        long h2 = mix(key, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) break;
+            }
+        }
+    }
+
+    boolean mightContain(String key) {
+        long h1 = mix(key, 0x9E3779B97F4A7C15L);
+        long h2 = mix(key, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    int getHashes() { return hashes; }
+    long getBitCount() { return bitCount; }
+
+    private static long mix(String key, long seed) {
+        long h = seed ^ key.length();
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+            h = Long.rotateLeft(h, 27);
+        }
+        // Murmur3 finalizer
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC5L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
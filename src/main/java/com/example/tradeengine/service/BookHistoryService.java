@@ -0,0 +1,269 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.OrderBook;
+import com.example.tradeengine.model.EventRecord;
+import com.example.tradeengine.model.Order;
+import com.example.tradeengine.model.OrderBookSnapshot;
+import com.example.tradeengine.repository.EventRecordRepository;
+import com.example.tradeengine.repository.OrderBookSnapshotRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BookHistoryService answers "what did the book look like at time T"
+ * without touching live state.  It rebuilds a detached
+ * {@link OrderBook} from the closest known state at or before T – the
+ * nearest snapshot or a checkpoint – and applies the instrument's
+ * events up to T.
+ *
+ * <p>Checkpoints are copies of a rebuilt book taken every
+ * `book-history.checkpoint-interval-events` events while rolling
+ * forward, kept in a sparse in‑memory index per instrument of at most
+ * `book-history.max-checkpoints` entries.  Once a stretch of history
+ * has been visited, any point in it is rebuilt from at most one
+ * checkpoint interval of events; the first visit reads at most the
+ * events between two snapshots.  Those are the live snapshot chain and
+ * the historical full snapshots compaction retains every
+ * `snapshot.history.retain-interval-millis`, which persist across
+ * restarts, so a rebuild never has to start from the beginning of the
+ * log unless the time asked for precedes every snapshot.  A rebuild
+ * that would still have to apply more than
+ * `book-history.max-roll-forward-events` events is refused before any
+ * is read.  Results for times in the past are
+ * kept in an LRU cache of `book-history.cache-size` books, so scrubbing
+ * back and forth is served from memory.
+ */
+@Service
+public class BookHistoryService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookHistoryService.class);
+    private static final int CHUNK_SIZE = 1000;
+    private final OrderBookSnapshotRepository snapshotRepo;
+    private final EventRecordRepository eventRepo;
+    private final SnapshotService snapshotService;
+    private final ObjectMapper objectMapper;
+    private final int checkpointInterval;
+    private final int maxCheckpoints;
+    private final long maxRollForwardEvents;
+    private final Map<String, TreeMap<Instant, Checkpoint>> checkpoints = new ConcurrentHashMap<>();
+    private final Map<String, BookAtTime> cache;
+
+    @Autowired
+    public BookHistoryService(OrderBookSnapshotRepository snapshotRepo,
+                              EventRecordRepository eventRepo,
+                              SnapshotService snapshotService,
+                              ObjectMapper objectMapper,
+                              @Value("${book-history.checkpoint-interval-events:5000}") int checkpointInterval,
+                              @Value("${book-history.max-checkpoints:200}") int maxCheckpoints,
+                              @Value("${book-history.cache-size:32}") int cacheSize,
+                              @Value("${book-history.max-roll-forward-events:1000000}") long maxRollForwardEvents) {
+        this.snapshotRepo = snapshotRepo;
+        this.eventRepo = eventRepo;
+        this.snapshotService = snapshotService;
+        this.objectMapper = objectMapper;
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+        this.maxCheckpoints = Math.max(1, maxCheckpoints);
+        this.maxRollForwardEvents = maxRollForwardEvents;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BookAtTime> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /** A reconstructed book, as returned by `GET /admin/orderbook/at`. */
+    public static class BookAtTime {
+        public String instrument;
+        public Instant at;
+        /** snapshot, checkpoint or empty: the state the rebuild started from. */
+        public String source;
+        public Instant sourceTimestamp;
+        public long eventsApplied;
+        public long lastEventId;
+        /** Checksum of the rebuilt book, comparable with {@link OrderBook#checksum()}. */
+        public long checksum;
+        /** Applied events whose recorded book checksum the rebuilt book did not match. */
+        public long checksumMismatches;
+        public List<Order> bids;
+        public List<Order> asks;
+    }
+
+    /** Book state after a given event, stored as copies the rebuilt book never mutates. */
+    private static class Checkpoint {
+        final long eventId;
+        final Instant timestamp;
+        final List<Order> orders;
+        volatile long lastUsed = System.nanoTime();
+        Checkpoint(long eventId, Instant timestamp, List<Order> orders) {
+            this.eventId = eventId;
+            this.timestamp = timestamp;
+            this.orders = orders;
+        }
+    }
+
+    /**
+     * Rebuild an instrument's order book as of the given time.
+     *
+     * @return the book, or null if the snapshot it would start from cannot be read
+     * @throws IllegalArgumentException if more than `book-history.max-roll-forward-events`
+     *     events lie between the nearest start point and the given time
+     */
+    public BookAtTime rebuild(String instrument, Instant at) {
+        String key = instrument + '@' + at;
+        // Only the past is immutable; a book for now or later may still change
+        boolean cacheable = at.isBefore(Instant.now().minusSeconds(1));
+        if (cacheable) {
+            synchronized (cache) {
+                BookAtTime hit = cache.get(key);
+                if (hit != null) return hit;
+            }
+        }
+        long start = System.nanoTime();
+        BookAtTime result = new BookAtTime();
+        result.instrument = instrument;
+        result.at = at;
+        OrderBook book = new OrderBook();
+        long afterId = 0L;
+        Instant from = Instant.EPOCH;
+        Checkpoint cp = floorCheckpoint(instrument, at);
+        Optional<OrderBookSnapshot> snapshot = snapshotRepo.findTopByInstrumentAndTimestampLessThanEqualOrderByTimestampDesc(instrument, at);
+        if (cp != null && (snapshot.isEmpty() || !cp.timestamp.isBefore(snapshot.get().getTimestamp()))) {
+            load(book, copies(cp.orders));
+            afterId = cp.eventId;
+            result.source = "checkpoint";
+            result.sourceTimestamp = cp.timestamp;
+        } else if (snapshot.isPresent()) {
+            List<Order> orders = snapshotService.readOpenOrders(snapshot.get());
+            if (orders == null) return null;
+            load(book, orders);
+            if (snapshot.get().getLastEventId() != null) {
+                afterId = snapshot.get().getLastEventId();
+            } else {
+                from = snapshot.get().getTimestamp();
+            }
+            result.source = "snapshot";
+            result.sourceTimestamp = snapshot.get().getTimestamp();
+        } else {
+            result.source = "empty";
+        }
+        long window = eventRepo.countRange(instrument, afterId, from, at);
+        if (window > maxRollForwardEvents) {
+            throw new IllegalArgumentException("Rebuilding " + instrument + " at " + at + " from " + result.source
+                + " would apply " + window + " events, more than the limit of " + maxRollForwardEvents);
+        }
+        result.lastEventId = afterId;
+        rollForward(instrument, book, afterId, from, at, result);
+        result.checksum = book.checksum();
+        result.bids = copies(book.getBids());
+        result.asks = copies(book.getAsks());
+        LOGGER.info("Rebuilt {} at {} from {} with {} events in {} ms", instrument, at, result.source,
+            result.eventsApplied, (System.nanoTime() - start) / 1_000_000);
+        if (cacheable) {
+            synchronized (cache) {
+                cache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Apply the instrument's events after the start point up to the
+     * target time, checkpointing every interval.
+     */
+    private void rollForward(String instrument, OrderBook book, long afterId, Instant from, Instant to, BookAtTime result) {
+        Pageable page = PageRequest.of(0, CHUNK_SIZE);
+        ReplayBatch batch = new ReplayBatch(objectMapper, i -> book);
+        long sinceCheckpoint = 0;
+        while (true) {
+            List<EventRecord> events = eventRepo.findRange(instrument, afterId, from, to, page);
+            batch.clear();
+            for (EventRecord ev : events) {
+                batch.apply(ev);
+                afterId = ev.getId();
+                if (++sinceCheckpoint >= checkpointInterval) {
+                    addCheckpoint(instrument, new Checkpoint(afterId, ev.getTimestamp(), copies(book.getAllOrders())));
+                    sinceCheckpoint = 0;
+                }
+            }
+            result.eventsApplied += events.size();
+            result.checksumMismatches += batch.checksumMismatches();
+            result.lastEventId = afterId;
+            if (events.size() < CHUNK_SIZE) return;
+        }
+    }
+
+    private Checkpoint floorCheckpoint(String instrument, Instant at) {
+        TreeMap<Instant, Checkpoint> index = checkpoints.get(instrument);
+        if (index == null) return null;
+        synchronized (index) {
+            Map.Entry<Instant, Checkpoint> e = index.floorEntry(at);
+            if (e == null) return null;
+            e.getValue().lastUsed = System.nanoTime();
+            return e.getValue();
+        }
+    }
+
+    private void addCheckpoint(String instrument, Checkpoint cp) {
+        TreeMap<Instant, Checkpoint> index = checkpoints.computeIfAbsent(instrument, k -> new TreeMap<>());
+        synchronized (index) {
+            index.put(cp.timestamp, cp);
+            if (index.size() > maxCheckpoints) {
+                // Drop the checkpoint used least recently
+                Instant victim = null;
+                long oldest = Long.MAX_VALUE;
+                for (Checkpoint c : index.values()) {
+                    if (c.lastUsed < oldest) {
+                        oldest = c.lastUsed;
+                        victim = c.timestamp;
+                    }
+                }
+                index.remove(victim);
+            }
+        }
+    }
+
+    private static void load(OrderBook book, List<Order> orders) {
+        List<Order> bids = new ArrayList<>();
+        List<Order> asks = new ArrayList<>();
+        for (Order o : orders) {
+            ("buy".equalsIgnoreCase(o.getSide()) ? bids : asks).add(o);
+        }
+        book.loadSorted(bids, asks);
+    }
+
+    private static List<Order> copies(List<Order> orders) {
+        List<Order> copies = new ArrayList<>(orders.size());
+        for (Order o : orders) {
+            Order c = new Order();
+            c.setOrderId(o.getOrderId());
+            c.setClientId(o.getClientId());
+            c.setInstrument(o.getInstrument());
+            c.setSide(o.getSide());
+            c.setType(o.getType());
+            c.setPrice(o.getPrice());
+            c.setQuantity(o.getQuantity());
+            c.setFilledQuantity(o.getFilledQuantity());
+            c.setStatus(o.getStatus());
+            c.setCreatedAt(o.getCreatedAt());
+            c.setUpdatedAt(o.getUpdatedAt());
+            c.setVersion(o.getVersion());
+            copies.add(c);
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,476 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MarketDataListener;
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.model.Candle;
+import com.example.tradeengine.model.Trade;
+import com.example.tradeengine.repository.CandleJdbcRepository;
+import com.example.tradeengine.repository.CandleRepository;
+import com.example.tradeengine.repository.TradeJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OHLCV candles per instrument at 1s, 1m, 5m, 1h and 1d.
+ *
+ * <p>Executed trades are handed over by the matching engine and applied
+ * by a single aggregator thread.  Trades only update the open 1s bar;
+ * each closed bar is merged into the open bar of the next interval, so
+ * every interval above 1s is a rollup of the one below.  Bars close
+ * when a later trade arrives or, at the latest, on the aggregator's
+ * one‑second tick once `candles.grace-ms` have passed since their end,
+ * so a trade still on its way when its second ends lands in its own
+ * bar.  Closed bars above 1s are written to the candles table in
+ * batches every `candles.flush-interval-ms`.
+ *
+ * <p>A trade that arrives after its bar has closed anyway is added to
+ * that bar's high, low, volume and count at every interval, leaving its
+ * open and close alone: closed bars still in memory are amended and
+ * written again, and those no longer in memory are corrected in the
+ * table with {@link CandleJdbcRepository#merge}, which folds the trade
+ * into the stored bar instead of replacing it.
+ *
+ * <p>The last `candles.memory-bars` closed bars of each instrument and
+ * interval stay in memory, and {@link #candles} serves them together
+ * with the open bar, reading only older bars from the table; raw
+ * trades are never read to answer a query.  After a restart, today's
+ * open bars are rebuilt from the stored 1m bars and the trades
+ * executed after the last of them.
+ */
+@Service
+public class CandleService implements MarketDataListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CandleService.class);
+    public static final List<String> INTERVALS = List.of("1s", "1m", "5m", "1h", "1d");
+    private static final long[] INTERVAL_MILLIS = {1_000L, 60_000L, 300_000L, 3_600_000L, 86_400_000L};
+    private static final int LEVELS = INTERVAL_MILLIS.length;
+    private static final int FLUSH_BATCH = 500;
+
+    private final MatchingEngine matchingEngine;
+    private final CandleRepository candleRepo;
+    private final CandleJdbcRepository candleJdbcRepo;
+    private final TradeJdbcRepository tradeJdbcRepo;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int memoryBars;
+    private final long flushIntervalMillis;
+    private final int maxQueryBars;
+    private final long graceMillis;
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final BlockingQueue<Trade> incoming = new LinkedBlockingQueue<>();
+    /** Closed bars not written yet; only touched by the aggregator. */
+    private final List<Candle> unflushed = new ArrayList<>();
+    /** Late trades to fold into bars no longer in memory, as one‑trade bars; only touched by the aggregator. */
+    private final List<Candle> corrections = new ArrayList<>();
+    private final Thread aggregator;
+    private final Counter barsWritten;
+    private final Counter lateTrades;
+    /** Trades before this are rebuilt from the database; live ones before it are ignored. */
+    private volatile Instant liveFrom = Instant.MIN;
+
+    @Autowired
+    public CandleService(MatchingEngine matchingEngine,
+                         CandleRepository candleRepo,
+                         CandleJdbcRepository candleJdbcRepo,
+                         TradeJdbcRepository tradeJdbcRepo,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry,
+                         @Value("${candles.memory-bars:1440}") int memoryBars,
+                         @Value("${candles.flush-interval-ms:5000}") long flushIntervalMillis,
+                         @Value("${candles.max-query-bars:5000}") int maxQueryBars,
+                         @Value("${candles.grace-ms:2000}") long graceMillis) {
+        this.matchingEngine = matchingEngine;
+        this.candleRepo = candleRepo;
+        this.candleJdbcRepo = candleJdbcRepo;
+        this.tradeJdbcRepo = tradeJdbcRepo;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.memoryBars = Math.max(1, memoryBars);
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.maxQueryBars = Math.max(1, maxQueryBars);
+        this.graceMillis = Math.max(0, graceMillis);
+        this.barsWritten = meterRegistry.counter("candles_written_total");
+        this.lateTrades = meterRegistry.counter("candles_late_trades_total");
+        this.aggregator = new Thread(this::aggregateLoop, "candle-aggregator");
+        this.aggregator.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        matchingEngine.addListener(this);
+        liveFrom = Instant.now();
+        aggregator.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        aggregator.interrupt();
+    }
+
+    /**
+     * Index of an interval name in {@link #INTERVALS}.
+     *
+     * @throws IllegalArgumentException if it is not one of them
+     */
+    public static int level(String interval) {
+        int k = INTERVALS.indexOf(interval);
+        if (k < 0) throw new IllegalArgumentException("interval must be one of " + String.join(", ", INTERVALS));
+        return k;
+    }
+
+    /** Length of an interval in milliseconds, by its index in {@link #INTERVALS}. */
+    public static long intervalMillis(int level) {
+        return INTERVAL_MILLIS[level];
+    }
+
+    public int getMaxQueryBars() {
+        return maxQueryBars;
+    }
+
+    /** Open and recent closed bars of one instrument; guarded by itself. */
+    private static final class Series {
+        final String instrument;
+        final Candle[] open = new Candle[LEVELS];
+        @SuppressWarnings("unchecked")
+        final ArrayDeque<Candle>[] recent = new ArrayDeque[LEVELS];
+        /** End of the latest closed bar of each interval; trades before it are late. */
+        final long[] closedUntil = new long[LEVELS];
+
+        Series(String instrument) {
+            this.instrument = instrument;
+            for (int k = 0; k < LEVELS; k++) recent[k] = new ArrayDeque<>();
+            Arrays.fill(closedUntil, Long.MIN_VALUE);
+        }
+    }
+
+    private Series series(String instrument) {
+        return series.computeIfAbsent(instrument, Series::new);
+    }
+
+    @Override
+    public void onTrade(String instrument, Trade trade) {
+        if (trade.getTimestamp().isBefore(liveFrom)) return;
+        incoming.add(trade);
+    }
+
+    private void aggregateLoop() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to rebuild open candles: {}", e.getMessage());
+        }
+        List<Trade> batch = new ArrayList<>();
+        long nextFlush = System.currentTimeMillis() + flushIntervalMillis;
+        while (true) {
+            long now = System.currentTimeMillis();
+            try {
+                Trade t = incoming.poll(1_000L - now % 1_000L, TimeUnit.MILLISECONDS);
+                if (t != null) {
+                    batch.add(t);
+                    incoming.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                flush();
+                return;
+            }
+            for (Trade t : batch) apply(t);
+            batch.clear();
+            now = System.currentTimeMillis();
+            tick(now);
+            if (now >= nextFlush) {
+                flush();
+                nextFlush = now + flushIntervalMillis;
+            }
+        }
+    }
+
+    /** Add a trade to the open 1s bar of its instrument, closing the bars it ends. */
+    void apply(Trade t) {
+        Series s = series(t.getInstrument());
+        long ts = t.getTimestamp().toEpochMilli();
+        synchronized (s) {
+            if (ts < s.closedUntil[0] || (s.open[0] != null && ts < s.open[0].getOpenTime().toEpochMilli())) {
+                late(s, t, ts);
+                return;
+            }
+            closeUpTo(s, ts);
+            Candle bar = s.open[0];
+            if (bar == null) bar = s.open[0] = new Candle(s.instrument, INTERVALS.get(0), floor(ts, 0));
+            addTrade(bar, t.getPrice(), t.getQuantity());
+        }
+    }
+
+    /** Close every open bar whose interval ended at least the grace period before the given time. */
+    void tick(long nowMillis) {
+        for (Series s : series.values()) {
+            synchronized (s) {
+                closeUpTo(s, nowMillis - graceMillis);
+            }
+        }
+    }
+
+    /**
+     * Add a trade whose 1s bar has already closed.  Going up the
+     * intervals, each closed bar covering it is amended in memory and
+     * written again, or, once out of memory, corrected in the table;
+     * the first open bar covering it takes the trade and rolls it up
+     * the rest of the way when it closes.
+     */
+    private void late(Series s, Trade t, long ts) {
+        lateTrades.increment();
+        for (int k = 0; k < LEVELS; k++) {
+            Instant openTime = floor(ts, k);
+            Candle open = s.open[k];
+            if (k > 0 && open != null && open.getOpenTime().equals(openTime)) {
+                addLateTrade(open, t.getPrice(), t.getQuantity());
+                return;
+            }
+            if (k > 0 && open == null && ts >= s.closedUntil[k]) {
+                addTrade(s.open[k] = new Candle(s.instrument, INTERVALS.get(k), openTime), t.getPrice(), t.getQuantity());
+                return;
+            }
+            Candle closed = findRecent(s, k, openTime);
+            if (closed != null) {
+                addLateTrade(closed, t.getPrice(), t.getQuantity());
+                if (k > 0) unflushed.add(closed);
+            } else if (k > 0) {
+                Candle correction = new Candle(s.instrument, INTERVALS.get(k), openTime);
+                addTrade(correction, t.getPrice(), t.getQuantity());
+                corrections.add(correction);
+            }
+        }
+    }
+
+    private static Candle findRecent(Series s, int k, Instant openTime) {
+        for (Iterator<Candle> it = s.recent[k].descendingIterator(); it.hasNext(); ) {
+            Candle c = it.next();
+            if (c.getOpenTime().equals(openTime)) return c;
+            if (c.getOpenTime().isBefore(openTime)) return null;
+        }
+        return null;
+    }
+
+    private void closeUpTo(Series s, long nowMillis) {
+        for (int k = 0; k < LEVELS; k++) {
+            Candle bar = s.open[k];
+            if (bar != null && end(bar, k) <= nowMillis) {
+                s.open[k] = null;
+                closed(s, k, bar, true);
+            }
+        }
+    }
+
+    /**
+     * Keep a closed bar, queue it for writing if asked to and roll it
+     * up into the next interval, closing that interval's open bar first
+     * if the closed one is past it.
+     */
+    private void closed(Series s, int k, Candle bar, boolean write) {
+        ArrayDeque<Candle> recent = s.recent[k];
+        recent.addLast(bar);
+        s.closedUntil[k] = Math.max(s.closedUntil[k], end(bar, k));
+        if (recent.size() > memoryBars) recent.removeFirst();
+        if (write && k > 0) unflushed.add(bar);
+        if (k + 1 >= LEVELS) return;
+        Candle up = s.open[k + 1];
+        long openMillis = bar.getOpenTime().toEpochMilli();
+        if (up != null && openMillis >= end(up, k + 1)) {
+            s.open[k + 1] = null;
+            closed(s, k + 1, up, true);
+            up = null;
+        }
+        if (up == null) up = s.open[k + 1] = new Candle(s.instrument, INTERVALS.get(k + 1), floor(openMillis, k + 1));
+        merge(up, bar);
+    }
+
+    private void flush() {
+        while (!unflushed.isEmpty()) {
+            List<Candle> batch = unflushed.subList(0, Math.min(FLUSH_BATCH, unflushed.size()));
+            try {
+                candleJdbcRepo.upsert(batch);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to write {} candles, will retry: {}", unflushed.size(), e.getMessage());
+                return;
+            }
+            barsWritten.increment(batch.size());
+            batch.clear();
+        }
+        // Only after the bars they correct have been written
+        while (!corrections.isEmpty()) {
+            List<Candle> batch = corrections.subList(0, Math.min(FLUSH_BATCH, corrections.size()));
+            try {
+                candleJdbcRepo.merge(batch);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to correct {} candles with late trades, will retry: {}", corrections.size(), e.getMessage());
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Rebuild the open bars from today's stored 1m bars and the trades
+     * executed from the end of the oldest instrument's last stored bar
+     * up to {@link #liveFrom}; trades an instrument's stored bars
+     * already include are skipped.
+     */
+    private void rebuild() {
+        Instant until = liveFrom;
+        Instant dayStart = floor(until.toEpochMilli(), LEVELS - 1);
+        List<Candle> minutes = readOnlyTransaction.execute(status ->
+            candleRepo.findByIntervalAndOpenTimeGreaterThanEqualOrderByInstrumentAscOpenTimeAsc(INTERVALS.get(1), dayStart));
+        Map<String, Instant> storedUntil = new HashMap<>();
+        if (minutes != null) {
+            for (Candle c : minutes) {
+                Series s = series(c.getInstrument());
+                synchronized (s) {
+                    closed(s, 1, c, false);
+                }
+                storedUntil.put(c.getInstrument(), c.getOpenTime().plusMillis(INTERVAL_MILLIS[1]));
+            }
+        }
+        Instant from = storedUntil.values().stream().min(Instant::compareTo).orElse(dayStart);
+        Long trades = readOnlyTransaction.execute(status -> tradeJdbcRepo.forEachTradeBetween(from, until, t -> {
+            Instant stored = storedUntil.get(t.getInstrument());
+            if (stored == null || !t.getTimestamp().isBefore(stored)) apply(t);
+        }));
+        LOGGER.info("Rebuilt open candles from {} stored 1m bars and {} trades",
+            minutes == null ? 0 : minutes.size(), trades);
+    }
+
+    /**
+     * Bars of an instrument and interval opened in [from, to), oldest
+     * first and at most `limit` of them.  The last may still be open.
+     * Bars older than those held in memory are read from the candles
+     * table; 1s bars are only held in memory.
+     */
+    public List<Candle> candles(String instrument, String interval, Instant from, Instant to, int limit) {
+        int k = level(interval);
+        int max = Math.max(1, Math.min(limit, maxQueryBars));
+        List<Candle> memory = new ArrayList<>();
+        Instant memoryFrom = to;
+        Series s = series.get(instrument);
+        if (s != null) {
+            synchronized (s) {
+                if (!s.recent[k].isEmpty()) memoryFrom = s.recent[k].peekFirst().getOpenTime();
+                for (Candle c : s.recent[k]) {
+                    if (!c.getOpenTime().isBefore(from) && c.getOpenTime().isBefore(to)) memory.add(c);
+                }
+                for (Candle c : liveBars(s, k)) {
+                    if (c.getOpenTime().isBefore(memoryFrom)) memoryFrom = c.getOpenTime();
+                    if (!c.getOpenTime().isBefore(from) && c.getOpenTime().isBefore(to)) memory.add(c);
+                }
+            }
+        }
+        List<Candle> result = new ArrayList<>();
+        if (k > 0 && from.isBefore(memoryFrom)) {
+            result.addAll(candleRepo.findByInstrumentAndIntervalAndOpenTimeGreaterThanEqualAndOpenTimeLessThanOrderByOpenTime(
+                instrument, interval, from, memoryFrom, PageRequest.of(0, max)));
+        }
+        for (Candle c : memory) {
+            if (result.size() >= max) break;
+            result.add(c);
+        }
+        return result;
+    }
+
+    /**
+     * The open bar of an interval as it stands, merged with the open
+     * bars below it.  Usually one bar; two if the interval ended and
+     * its bar has not been closed by the tick yet.
+     */
+    private static List<Candle> liveBars(Series s, int k) {
+        List<Candle> bars = new ArrayList<>(2);
+        Candle current = s.open[k] == null ? null : copy(s.open[k]);
+        for (int j = k - 1; j >= 0; j--) {
+            Candle lower = s.open[j];
+            if (lower == null) continue;
+            Instant period = floor(lower.getOpenTime().toEpochMilli(), k);
+            if (current != null && !current.getOpenTime().equals(period)) {
+                bars.add(current);
+                current = null;
+            }
+            if (current == null) current = new Candle(s.instrument, INTERVALS.get(k), period);
+            merge(current, lower);
+        }
+        if (current != null) bars.add(current);
+        return bars;
+    }
+
+    private static long end(Candle bar, int k) {
+        return bar.getOpenTime().toEpochMilli() + INTERVAL_MILLIS[k];
+    }
+
+    private static Instant floor(long epochMillis, int k) {
+        return Instant.ofEpochMilli(Math.floorDiv(epochMillis, INTERVAL_MILLIS[k]) * INTERVAL_MILLIS[k]);
+    }
+
+    private static void addTrade(Candle bar, BigDecimal price, BigDecimal quantity) {
+        if (bar.getTradeCount() == 0) {
+            bar.setOpen(price);
+            bar.setHigh(price);
+            bar.setLow(price);
+        } else {
+            bar.setHigh(bar.getHigh().max(price));
+            bar.setLow(bar.getLow().min(price));
+        }
+        bar.setClose(price);
+        bar.setVolume(bar.getVolume().add(quantity));
+        bar.setTradeCount(bar.getTradeCount() + 1);
+    }
+
+    /** Add a trade older than the bar's close, which it keeps. */
+    private static void addLateTrade(Candle bar, BigDecimal price, BigDecimal quantity) {
+        if (bar.getTradeCount() == 0) {
+            addTrade(bar, price, quantity);
+            return;
+        }
+        bar.setHigh(bar.getHigh().max(price));
+        bar.setLow(bar.getLow().min(price));
+        bar.setVolume(bar.getVolume().add(quantity));
+        bar.setTradeCount(bar.getTradeCount() + 1);
+    }
+
+    /** Fold a later bar into a longer one. */
+    private static void merge(Candle into, Candle later) {
+        if (into.getTradeCount() == 0) {
+            into.setOpen(later.getOpen());
+            into.setHigh(later.getHigh());
+            into.setLow(later.getLow());
+        } else {
+            into.setHigh(into.getHigh().max(later.getHigh()));
+            into.setLow(into.getLow().min(later.getLow()));
+        }
+        into.setClose(later.getClose());
+        into.setVolume(into.getVolume().add(later.getVolume()));
+        into.setTradeCount(into.getTradeCount() + later.getTradeCount());
+    }
+
+    private static Candle copy(Candle c) {
+        Candle copy = new Candle(c.getInstrument(), c.getInterval(), c.getOpenTime());
+        merge(copy, c);
+        return copy;
+    }
+}
@@ -2,21 +2,36 @@ package com.example.tradeengine.service;
 
 import com.example.tradeengine.engine.MatchingEngine;
 import com.example.tradeengine.model.EventRecord;
-import com.example.tradeengine.model.Order;
-import com.example.tradeengine.model.Trade;
 import com.example.tradeengine.repository.EventRecordRepository;
+import com.example.tradeengine.repository.OrderJdbcRepository;
 import com.example.tradeengine.repository.OrderRepository;
 import com.example.tradeengine.repository.TradeRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
 
 /**
  * EventReplayService can rebuild application state by replaying all
@@ -26,6 +41,23 @@ import java.util.List;
  * should be invoked in rare recovery scenarios; normal operation
  * persists both the event log and relational tables, so recovery
  * typically only requires loading orders from the DB.
+ *
+ * <p>A full replay runs as an asynchronous {@link ReplayJob}.  Events
+ * are read with keyset paging in chunks of `replay.chunk-size` and
+ * each chunk is applied and committed in its own transaction, so
+ * memory use is bounded by the chunk rather than the log.  Instruments
+ * have independent event streams and are replayed in parallel on a
+ * fork‑join pool of `replay.parallelism` workers; events recorded
+ * before events carried an instrument are replayed first, in order.
+ * Rebuilt books are verified against the book checksums recorded in
+ * the log; mismatches are counted in
+ * `orderbook_checksum_mismatch_total{stage="replay"}`.
+ *
+ * <p>For the life of the job the matching engine is held in
+ * maintenance, answering submissions and cancels with 503, so no
+ * order is matched against a book that is being rebuilt or written to
+ * tables that are being replaced.  Pending stops are not rebuilt from
+ * events; they are reloaded from the replayed orders table at the end.
  */
 @Service
 public class EventReplayService {
@@ -33,82 +65,201 @@ public class EventReplayService {
     private final EventRecordRepository eventRepo;
     private final OrderRepository orderRepo;
     private final TradeRepository tradeRepo;
+    private final OrderJdbcRepository orderJdbcRepo;
+    private final TransactionTemplate chunkTransaction;
     private final MatchingEngine matchingEngine;
+    private final ObjectProvider<RecoveryCoordinator> recoveryCoordinator;
     private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final int chunkSize;
+    private final ForkJoinPool replayPool;
+    private final ExecutorService jobRunner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "event-replay");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, ReplayJob> jobs = new ConcurrentHashMap<>();
+    private volatile ReplayJob currentJob;
 
     @Autowired
     public EventReplayService(EventRecordRepository eventRepo,
                               OrderRepository orderRepo,
                               TradeRepository tradeRepo,
+                              OrderJdbcRepository orderJdbcRepo,
+                              PlatformTransactionManager transactionManager,
                               MatchingEngine matchingEngine,
-                              ObjectMapper objectMapper) {
+                              ObjectProvider<RecoveryCoordinator> recoveryCoordinator,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${replay.chunk-size:1000}") int chunkSize,
+                              @Value("${replay.parallelism:0}") int parallelism) {
         this.eventRepo = eventRepo;
         this.orderRepo = orderRepo;
         this.tradeRepo = tradeRepo;
+        this.orderJdbcRepo = orderJdbcRepo;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
         this.matchingEngine = matchingEngine;
+        this.recoveryCoordinator = recoveryCoordinator;
         this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.replayPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
     }
 
     /**
-     * Replay all events from the event log, discarding existing order
-     * and trade rows and rebuilding state.  This method is
-     * transactional and should be called from an administrative
-     * endpoint.
+     * Start a full replay in the background, discarding existing order
+     * and trade rows and rebuilding state.  Only one replay runs at a
+     * time.
+     *
+     * @return the new job, whose progress can be polled with {@link #getJob(String)}
+     * @throws IllegalStateException if a replay is already running or the engine is a standby
      */
-    @Transactional
-    public void replay() {
-        LOGGER.warn("Replaying events from scratch. Dropping existing orders and trades.");
-        orderRepo.deleteAll();
-        tradeRepo.deleteAll();
-        // Clear in‑memory order books by clearing instrument engines' books.
-        matchingEngine.resetOrderBooks();
-        List<EventRecord> events = eventRepo.findAll(Sort.by("id"));
-        for (EventRecord ev : events) {
-            String type = ev.getEventType();
-            String aggId = ev.getAggregateId();
-            String payload = ev.getPayload();
-            try {
-                switch (type) {
-                    case "ORDER_CREATED":
-                        Order order = objectMapper.readValue(payload, Order.class);
-                        orderRepo.save(order);
-                        // Only open/partial orders belong in order book
-                        if ("open".equals(order.getStatus()) || "partially_filled".equals(order.getStatus())) {
-                            matchingEngine.getOrderBook(order.getInstrument()).addLimitOrder(order);
-                        }
-                        break;
-                    case "ORDER_UPDATED":
-                        Order updated = objectMapper.readValue(payload, Order.class);
-                        orderRepo.save(updated);
-                        // Adjust order book: if filled/cancelled remove; else add or update
-                        if ("open".equals(updated.getStatus()) || "partially_filled".equals(updated.getStatus())) {
-                            matchingEngine.getOrderBook(updated.getInstrument()).addLimitOrder(updated);
-                        } else {
-                            matchingEngine.getOrderBook(updated.getInstrument()).cancelOrder(updated);
-                        }
-                        break;
-                    case "ORDER_CANCELLED":
-                        Order cancelled = objectMapper.readValue(payload, Order.class);
-                        orderRepo.save(cancelled);
-                        matchingEngine.getOrderBook(cancelled.getInstrument()).cancelOrder(cancelled);
-                        break;
-                    case "TRADE_EXECUTED":
-                        Trade trade = objectMapper.readValue(payload, Trade.class);
-                        tradeRepo.save(trade);
-                        break;
-                    default:
-                        LOGGER.warn("Unknown event type {} in replay", type);
-                }
-            } catch (JsonProcessingException e) {
-                LOGGER.warn("Failed to deserialize payload for event {} id {}: {}", type, aggId, e.getMessage());
+    public synchronized ReplayJob startReplay() {
+        if (matchingEngine.isStandby()) {
+            throw new IllegalStateException("Engine is in standby mode");
+        }
+        ReplayJob running = getRunningJob();
+        if (running != null) {
+            throw new IllegalStateException("Replay " + running.getId() + " is already running");
+        }
+        ReplayJob job = new ReplayJob(UUID.randomUUID().toString(), eventRepo.count());
+        jobs.put(job.getId(), job);
+        currentJob = job;
+        jobRunner.execute(() -> runReplay(job));
+        return job;
+    }
+
+    /** The replay currently in progress, or null. */
+    public ReplayJob getRunningJob() {
+        ReplayJob job = currentJob;
+        return job != null && job.getStatus() == ReplayJob.Status.RUNNING ? job : null;
+    }
+
+    public ReplayJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Ask a running replay to stop.  Chunks already committed stay
+     * committed, so a cancelled replay leaves partially rebuilt state
+     * and should be followed by another replay.
+     *
+     * @return the job, or null if unknown
+     */
+    public ReplayJob cancel(String id) {
+        ReplayJob job = jobs.get(id);
+        if (job != null) job.requestCancel();
+        return job;
+    }
+
+    private void runReplay(ReplayJob job) {
+        LOGGER.warn("Replaying {} events from scratch (job {}). Dropping existing orders and trades.", job.getTotalEvents(), job.getId());
+        matchingEngine.beginMaintenance();
+        try {
+            chunkTransaction.executeWithoutResult(status -> {
+                tradeRepo.deleteAllInBatch();
+                orderRepo.deleteAllInBatch();
+            });
+            // Clear in‑memory order books and stop books of every instrument engine.
+            matchingEngine.resetOrderBooks();
+            replayStream(job, (lastId, page) -> eventRepo.findByInstrumentIsNullAndIdGreaterThanOrderById(lastId, page));
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (String instrument : eventRepo.findDistinctInstruments()) {
+                tasks.add(replayPool.submit(() -> replayStream(job,
+                    (lastId, page) -> eventRepo.findByInstrumentAndIdGreaterThanOrderById(instrument, lastId, page))));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
             }
+            // Partially rebuilt books too; the image must match whatever is in memory
+            for (String instrument : matchingEngine.getInstrumentNames()) {
+                syncImage(instrument);
+            }
+            // Stops pending as of the replayed orders table
+            recoveryCoordinator.getObject().reloadStops();
+            // Rebuilt books and stops bypassed the risk checks; recount exposures from them
+            matchingEngine.rebuildExposure();
+            ReplayJob.Status outcome = job.isCancelRequested() ? ReplayJob.Status.CANCELLED : ReplayJob.Status.COMPLETED;
+            job.finish(outcome, null);
+            LOGGER.info("Replay {} {}: {} events processed at {} events/s", job.getId(), outcome,
+                job.getProcessedEvents(), Math.round(job.getEventsPerSecond()));
+        } catch (Exception e) {
+            job.requestCancel();
+            job.finish(ReplayJob.Status.FAILED, e.getMessage());
+            LOGGER.error("Replay {} failed after {} events: {}", job.getId(), job.getProcessedEvents(), e.getMessage());
+        } finally {
+            matchingEngine.endMaintenance();
         }
-        LOGGER.info("Replay complete: {} events processed", events.size());
+    }
+
+    /**
+     * Replay one ordered event stream chunk by chunk until it is
+     * exhausted or the job is cancelled.  Each chunk is read, applied
+     * and written in one transaction.
+     */
+    private void replayStream(ReplayJob job, BiFunction<Long, Pageable, List<EventRecord>> nextChunk) {
+        Pageable page = PageRequest.of(0, chunkSize);
+        ReplayBatch batch = new ReplayBatch(objectMapper, matchingEngine::getOrderBook);
+        long lastId = 0L;
+        while (!job.isCancelRequested()) {
+            long after = lastId;
+            Integer read = chunkTransaction.execute(status -> {
+                List<EventRecord> events = nextChunk.apply(after, page);
+                batch.clear();
+                for (EventRecord ev : events) {
+                    batch.apply(ev);
+                }
+                flush(batch);
+                return events.size();
+            });
+            if (read == null || read == 0) break;
+            job.addProcessed(read);
+            job.addChecksumMismatches(reportMismatches(batch, "replay"));
+            lastId = batch.lastEventId();
+            if (read < chunkSize) break;
+        }
+    }
+
+    private int reportMismatches(ReplayBatch batch, String stage) {
+        int mismatches = batch.checksumMismatches();
+        if (mismatches > 0) {
+            meterRegistry.counter("orderbook_checksum_mismatch_total", "stage", stage).increment(mismatches);
+            LOGGER.error("{} replayed events did not match the recorded book checksum, first at event {}",
+                mismatches, batch.firstMismatchEventId());
+        }
+        return mismatches;
+    }
+
+    private void flush(ReplayBatch batch) {
+        orderJdbcRepo.upsertChanged(new ArrayList<>(batch.orders()));
+        tradeRepo.saveAll(batch.trades());
+        // Only the books this batch changed; other instruments may be mid-replay on other workers
+        for (String instrument : batch.instruments()) {
+            matchingEngine.publishDepth(instrument);
+        }
+    }
+
+    /**
+     * Rewrite an instrument's book image from its rebuilt book, stamped
+     * with the instrument's latest event ID, so a restart after a replay
+     * or restore does not map the image of the book as it was before.
+     */
+    public void syncImage(String instrument) {
+        Long maxId = eventRepo.findMaxIdByInstrument(instrument);
+        matchingEngine.syncImage(instrument, maxId == null ? 0L : maxId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ReplayJob job = currentJob;
+        if (job != null) job.requestCancel();
+        jobRunner.shutdownNow();
+        replayPool.shutdownNow();
     }
 
     /**
      * Apply events that occurred after the given timestamp to the current
-     * state.  Unlike {@link #replay()}, this does not clear existing
+     * state.  Unlike a full replay, this does not clear existing
      * orders or trades.  It assumes a snapshot has already restored
      * state up to the provided time and only merges newer events.
      *
@@ -117,44 +268,67 @@ public class EventReplayService {
     @Transactional
     public void replayAfter(Instant timestamp) {
         List<EventRecord> events = eventRepo.findByTimestampAfterOrderById(timestamp);
+        ReplayBatch batch = new ReplayBatch(objectMapper, matchingEngine::getOrderBook);
         for (EventRecord ev : events) {
-            String type = ev.getEventType();
-            String aggId = ev.getAggregateId();
-            String payload = ev.getPayload();
-            try {
-                switch (type) {
-                    case "ORDER_CREATED":
-                        Order order = objectMapper.readValue(payload, Order.class);
-                        orderRepo.save(order);
-                        if ("open".equals(order.getStatus()) || "partially_filled".equals(order.getStatus())) {
-                            matchingEngine.getOrderBook(order.getInstrument()).addLimitOrder(order);
-                        }
-                        break;
-                    case "ORDER_UPDATED":
-                        Order updated = objectMapper.readValue(payload, Order.class);
-                        orderRepo.save(updated);
-                        if ("open".equals(updated.getStatus()) || "partially_filled".equals(updated.getStatus())) {
-                            matchingEngine.getOrderBook(updated.getInstrument()).addLimitOrder(updated);
-                        } else {
-                            matchingEngine.getOrderBook(updated.getInstrument()).cancelOrder(updated);
-                        }
-                        break;
-                    case "ORDER_CANCELLED":
-                        Order cancelled = objectMapper.readValue(payload, Order.class);
-                        orderRepo.save(cancelled);
-                        matchingEngine.getOrderBook(cancelled.getInstrument()).cancelOrder(cancelled);
-                        break;
-                    case "TRADE_EXECUTED":
-                        Trade trade = objectMapper.readValue(payload, Trade.class);
-                        tradeRepo.save(trade);
-                        break;
-                    default:
-                        LOGGER.warn("Unknown event type {} in replayAfter", type);
-                }
-            } catch (JsonProcessingException e) {
-                LOGGER.warn("Failed to deserialize payload for event {} id {} during replayAfter: {}", type, aggId, e.getMessage());
-            }
+            batch.apply(ev);
         }
+        flush(batch);
+        reportMismatches(batch, "restore");
         LOGGER.info("ReplayAfter complete: {} events processed after {}", events.size(), timestamp);
     }
-}
\ No newline at end of file
+
+    /**
+     * Apply one instrument's events that occurred after the given
+     * timestamp.  Used after restoring that instrument from a snapshot
+     * so other instruments' events are neither read nor re‑applied.
+     *
+     * @param instrument instrument whose events are replayed
+     * @param timestamp  lower bound timestamp (exclusive)
+     * @return number of events applied
+     */
+    @Transactional
+    public int replayAfter(String instrument, Instant timestamp) {
+        List<EventRecord> events = eventRepo.findByInstrumentAndTimestampAfterOrderById(instrument, timestamp);
+        ReplayBatch batch = new ReplayBatch(objectMapper, matchingEngine::getOrderBook);
+        for (EventRecord ev : events) {
+            batch.apply(ev);
+        }
+        flush(batch);
+        reportMismatches(batch, "restore");
+        LOGGER.info("ReplayAfter complete: {} events processed for {} after {}", events.size(), instrument, timestamp);
+        return events.size();
+    }
+
+    /**
+     * Apply one instrument's events recorded after the given event ID,
+     * read in chunks of `replay.chunk-size`.  Used after restoring that
+     * instrument from a snapshot that records the last event its book
+     * reflected.
+     *
+     * @param instrument  instrument whose events are replayed
+     * @param lastEventId last event already reflected in the book (exclusive)
+     * @return number of events applied
+     */
+    @Transactional
+    public int replayAfterEvent(String instrument, long lastEventId) {
+        Pageable page = PageRequest.of(0, chunkSize);
+        ReplayBatch batch = new ReplayBatch(objectMapper, matchingEngine::getOrderBook);
+        long lastId = lastEventId;
+        int applied = 0;
+        while (true) {
+            List<EventRecord> events = eventRepo.findByInstrumentAndIdGreaterThanOrderById(instrument, lastId, page);
+            if (events.isEmpty()) break;
+            batch.clear();
+            for (EventRecord ev : events) {
+                batch.apply(ev);
+            }
+            flush(batch);
+            reportMismatches(batch, "restore");
+            applied += events.size();
+            lastId = batch.lastEventId();
+            if (events.size() < chunkSize) break;
+        }
+        LOGGER.info("ReplayAfterEvent complete: {} events processed for {} after event {}", applied, instrument, lastEventId);
+        return applied;
+    }
+}
@@ -36,9 +36,21 @@ public class EventService {
      *
      * @param eventType   type of event (e.g. ORDER_CREATED, TRADE_EXECUTED)
      * @param aggregateId ID of the aggregate (order or trade) this event relates to
+     * @param instrument  instrument whose order book the event belongs to
      * @param payload     optional object representing additional event data
+     * @return the persisted event record, carrying its log sequence ID
      */
-    public void recordEvent(String eventType, String aggregateId, Object payload) {
+    public EventRecord recordEvent(String eventType, String aggregateId, String instrument, Object payload) {
+        return recordEvent(eventType, aggregateId, instrument, payload, null);
+    }
+
+    /**
+     * Persist a domain event that closes a command, together with the
+     * checksum of the instrument's order book after the command.
+     *
+     * @param bookChecksum {@link com.example.tradeengine.engine.OrderBook#checksum()} after the command, or null
+     */
+    public EventRecord recordEvent(String eventType, String aggregateId, String instrument, Object payload, Long bookChecksum) {
         String payloadJson = null;
         if (payload != null) {
             try {
@@ -47,7 +59,8 @@ public class EventService {
                 LOGGER.warn("Failed to serialize event payload for {}: {}", eventType, e.getMessage());
             }
         }
-        EventRecord record = new EventRecord(eventType, aggregateId, payloadJson);
-        eventRepo.save(record);
+        EventRecord record = new EventRecord(eventType, aggregateId, instrument, payloadJson);
+        record.setBookChecksum(bookChecksum);
+        return eventRepo.save(record);
     }
 }
\ No newline at end of file
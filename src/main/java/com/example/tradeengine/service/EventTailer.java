@@ -0,0 +1,176 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.OrderBook;
+import com.example.tradeengine.model.EventRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Follows the committed event log and applies it to order books without
+ * matching or writing anything, which is how a standby keeps its books
+ * warm.
+ *
+ * <p>Event IDs are assigned at insert but become visible at commit, so
+ * across instruments a lower ID can appear after a higher one.  The
+ * read cursor therefore only moves past a gap in the IDs once the
+ * event after the gap was first seen here longer than the gap timeout
+ * ago; until then the window is read again.  The wait is measured on
+ * this process's clock from when the event was first read, not from
+ * the timestamp the primary gave it, so a primary clock that runs
+ * behind, or an event that took long to commit, cannot make a gap
+ * look settled before the event that fills it had time to appear.  Each instrument's events are written by a
+ * single matching thread, one transaction after another, so they do
+ * commit in ID order, and re‑read events are skipped per instrument.
+ * Book checksums recorded with the events are verified as they are
+ * applied, from {@link #verifyAfter(long)} on.
+ * Not thread safe; one thread polls.
+ */
+class EventTailer {
+    /** Reads committed events with an ID greater than the given one, in ID order. */
+    interface EventSource {
+        List<EventRecord> after(long id, int limit);
+    }
+
+    private final EventSource source;
+    private final ReplayBatch batch;
+    private final int batchSize;
+    private final long gapTimeoutMillis;
+    private final Clock clock;
+    private final Map<String, Long> lastAppliedByInstrument = new HashMap<>();
+    /** When each event directly after a gap in the IDs was first read, by event ID. */
+    private final TreeMap<Long, Long> gapFirstSeen = new TreeMap<>();
+    private long cursor;
+    private long appliedEvents;
+    private volatile long checksumMismatches;
+    private volatile long firstMismatchEventId;
+    private volatile long lastAppliedId;
+    private volatile Instant lastAppliedTimestamp;
+    private volatile boolean caughtUp;
+
+    EventTailer(EventSource source, Function<String, OrderBook> books, ObjectMapper objectMapper,
+                int batchSize, long gapTimeoutMillis, long startAfterId, Clock clock) {
+        this.source = source;
+        this.batch = new ReplayBatch(objectMapper, books);
+        this.batchSize = batchSize;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.batch.verifyAfter(startAfterId);
+        this.cursor = startAfterId;
+        this.lastAppliedId = startAfterId;
+        this.clock = clock;
+    }
+
+    /**
+     * Read the next window of events and apply those not yet applied.
+     * While the cursor is held back by a gap, the windows after it are
+     * read too, so every event is applied as soon as it is visible and
+     * every later gap starts its timeout when it is first seen rather
+     * than when the cursor reaches it.
+     *
+     * @return number of events applied
+     */
+    int poll() {
+        long now = clock.millis();
+        long readAfter = cursor;
+        boolean contiguous = true;
+        int applied = 0;
+        int read;
+        do {
+            List<EventRecord> events = source.after(readAfter, batchSize);
+            read = events.size();
+            batch.clear();
+            for (EventRecord ev : events) {
+                long id = ev.getId();
+                if (id != readAfter + 1) gapFirstSeen.putIfAbsent(id, now);
+                readAfter = id;
+                if (contiguous) {
+                    if (id == cursor + 1 || gapSettled(id, now)) {
+                        cursor = id;
+                    } else {
+                        contiguous = false;
+                    }
+                }
+                String key = ev.getInstrument() == null ? "" : ev.getInstrument();
+                Long last = lastAppliedByInstrument.get(key);
+                if (last != null && id <= last) continue;
+                batch.apply(ev);
+                lastAppliedByInstrument.put(key, id);
+                lastAppliedId = Math.max(lastAppliedId, id);
+                lastAppliedTimestamp = ev.getTimestamp();
+                applied++;
+            }
+            if (batch.checksumMismatches() > 0) {
+                if (checksumMismatches == 0) firstMismatchEventId = batch.firstMismatchEventId();
+                checksumMismatches += batch.checksumMismatches();
+            }
+        } while (!contiguous && read >= batchSize);
+        gapFirstSeen.headMap(cursor, true).clear();
+        appliedEvents += applied;
+        caughtUp = contiguous && read < batchSize;
+        return applied;
+    }
+
+    /**
+     * Whether the gap before an event has been open for the gap timeout,
+     * counting from the first time the event was read.
+     */
+    private boolean gapSettled(long id, long now) {
+        Long seen = gapFirstSeen.get(id);
+        return seen != null && now - seen >= gapTimeoutMillis;
+    }
+
+    /**
+     * Poll until nothing is left to read, waiting for any gap in the
+     * IDs to settle, but no longer than the timeout.  Used when
+     * promoting, after the primary has stopped writing.
+     *
+     * @return number of events applied
+     */
+    long catchUp(long timeoutMillis, long pauseMillis) throws InterruptedException {
+        long deadline = clock.millis() + timeoutMillis;
+        long total = 0;
+        while (true) {
+            int applied = poll();
+            total += applied;
+            if (applied > 0) continue;
+            if (caughtUp || clock.millis() >= deadline) return total;
+            Thread.sleep(pauseMillis);
+        }
+    }
+
+    /**
+     * Only verify book checksums of events after the given ID.  Events
+     * re‑applied to books that already reflect later ones would not
+     * match the checksum recorded with them.
+     */
+    void verifyAfter(long eventId) { batch.verifyAfter(eventId); }
+
+    boolean isCaughtUp() { return caughtUp; }
+
+    /** Highest ID below which every event has been applied or is known not to exist. */
+    long getCursor() { return cursor; }
+    long getLastAppliedId() { return lastAppliedId; }
+    long getAppliedEvents() { return appliedEvents; }
+    /** Applied events whose recorded book checksum the replica's book did not match. */
+    long getChecksumMismatches() { return checksumMismatches; }
+    long getFirstMismatchEventId() { return firstMismatchEventId; }
+
+    /** The last applied event of each instrument, for stamping book images. */
+    Map<String, Long> getLastAppliedByInstrument() { return lastAppliedByInstrument; }
+
+    /**
+     * Seconds between now and the last applied event, or 0 when the
+     * last poll found nothing further to read.
+     */
+    double getLagSeconds() {
+        Instant ts = lastAppliedTimestamp;
+        if (caughtUp || ts == null) return 0.0;
+        return Math.max(0, clock.millis() - ts.toEpochMilli()) / 1000.0;
+    }
+}
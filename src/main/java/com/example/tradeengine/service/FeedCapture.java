@@ -0,0 +1,245 @@
+package com.example.tradeengine.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Capture file of raw feed messages, for replaying real order flow
+ * offline.  The {@link Writer} records each message as
+ * {@link BinanceWebSocketClient} received it, with the nanoseconds
+ * since the previous one; {@link #replay} sends them back at the
+ * original pace, N times faster or as fast as the receiver takes them.
+ *
+ * <p>Layout: a {@value #HEADER_SIZE}-byte header (magic, format version,
+ * capture start as epoch nanoseconds) followed by one record per
+ * message: the delta from the previous message in nanoseconds and the
+ * message length, both as unsigned LEB128 varints, then the message in
+ * UTF‑8.  A typical trade message costs its JSON plus four or five
+ * bytes.  A record cut short by a crash ends the capture.
+ */
+public final class FeedCapture {
+    static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x54454346;
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Waits shorter than this are spun rather than parked, for pacing accuracy. */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private FeedCapture() {}
+
+    /** Receives replayed messages; may block to slow the replay down. */
+    @FunctionalInterface
+    public interface Sink {
+        void send(String message) throws IOException;
+    }
+
+    /**
+     * Appends messages to a new capture file.  Thread safe; messages
+     * are buffered and reach the file when the buffer fills, on
+     * {@link #flush()} and on {@link #close()}.
+     */
+    public static final class Writer implements Closeable {
+        private final OutputStream out;
+        private byte[] scratch = new byte[1024];
+        private long lastNanos;
+        private long messages;
+
+        private Writer(OutputStream out, long startNanos) {
+            this.out = out;
+            this.lastNanos = startNanos;
+        }
+
+        /** Create or truncate a capture file, stamped with the current time. */
+        public static Writer create(Path file) throws IOException {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), BUFFER_SIZE);
+            long startNanos = System.nanoTime();
+            Instant now = Instant.now();
+            byte[] header = new byte[HEADER_SIZE];
+            putInt(header, 0, MAGIC);
+            putInt(header, 4, FORMAT_VERSION);
+            putLong(header, 8, now.getEpochSecond() * 1_000_000_000L + now.getNano());
+            out.write(header);
+            return new Writer(out, startNanos);
+        }
+
+        /**
+         * Append one message received at the given {@link System#nanoTime()}.
+         * ASCII is copied without an encoder; anything else goes through UTF‑8.
+         */
+        public synchronized void write(long nanoTime, CharSequence message) throws IOException {
+            int n = message.length();
+            byte[] bytes = ensure(n);
+            int len = 0;
+            for (; len < n; len++) {
+                char c = message.charAt(len);
+                if (c >= 0x80) break;
+                bytes[len] = (byte) c;
+            }
+            if (len < n) {
+                bytes = message.toString().getBytes(StandardCharsets.UTF_8);
+                len = bytes.length;
+            }
+            writeVarLong(Math.max(0, nanoTime - lastNanos));
+            writeVarLong(len);
+            out.write(bytes, 0, len);
+            lastNanos = Math.max(lastNanos, nanoTime);
+            messages++;
+        }
+
+        public synchronized long getMessages() {
+            return messages;
+        }
+
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+
+        private byte[] ensure(int n) {
+            if (scratch.length < n) scratch = Arrays.copyOf(scratch, Math.max(n, scratch.length * 2));
+            return scratch;
+        }
+
+        private void writeVarLong(long v) throws IOException {
+            while ((v & ~0x7FL) != 0) {
+                out.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.write((int) v);
+        }
+    }
+
+    /** Reads a capture file message by message. */
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final long startEpochNanos;
+        private long offsetNanos;
+        private String message;
+
+        private Reader(DataInputStream in, long startEpochNanos) {
+            this.in = in;
+            this.startEpochNanos = startEpochNanos;
+        }
+
+        public static Reader open(Path file) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC) throw new IOException(file + " is not a feed capture");
+                int version = in.readInt();
+                if (version != FORMAT_VERSION) throw new IOException("Unsupported feed capture version " + version);
+                return new Reader(in, in.readLong());
+            } catch (EOFException e) {
+                in.close();
+                throw new IOException(file + " is not a feed capture", e);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /** When the capture was started, in nanoseconds since the epoch. */
+        public long getStartEpochNanos() { return startEpochNanos; }
+        /** Nanoseconds from the start of the capture to the current message. */
+        public long getOffsetNanos() { return offsetNanos; }
+        public String getMessage() { return message; }
+
+        /**
+         * Advance to the next message.
+         *
+         * @return false at the end of the capture, including a truncated last record
+         */
+        public boolean next() throws IOException {
+            try {
+                long delta = readVarLong();
+                if (delta < 0) return false;
+                long len = readVarLong();
+                if (len < 0 || len > Integer.MAX_VALUE) return false;
+                byte[] bytes = new byte[(int) len];
+                in.readFully(bytes);
+                offsetNanos += delta;
+                message = new String(bytes, StandardCharsets.UTF_8);
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /** An unsigned varint, or -1 at the end of the file. */
+        private long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.read();
+                if (b < 0) return -1;
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Malformed varint in feed capture");
+        }
+    }
+
+    /**
+     * Send every message of a capture to a sink, keeping the recorded
+     * gaps between messages divided by speed.  A speed of zero or less,
+     * or infinity, sends without pausing.  Stops early if the thread is
+     * interrupted.
+     *
+     * @return the number of messages sent
+     */
+    public static long replay(Path file, double speed, Sink sink) throws IOException {
+        boolean paced = speed > 0 && !Double.isInfinite(speed);
+        long sent = 0;
+        try (Reader reader = Reader.open(file)) {
+            long start = System.nanoTime();
+            while (reader.next()) {
+                if (Thread.currentThread().isInterrupted()) break;
+                if (paced) awaitNanos(start + (long) (reader.getOffsetNanos() / speed));
+                sink.send(reader.getMessage());
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    private static void awaitNanos(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) LockSupport.parkNanos(remaining - SPIN_NANOS);
+            else Thread.onSpinWait();
+            if (Thread.currentThread().isInterrupted()) return;
+        }
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        for (int i = 0; i < 4; i++) b[off + i] = (byte) (v >>> (24 - 8 * i));
+    }
+
+    private static void putLong(byte[] b, int off, long v) {
+        for (int i = 0; i < 8; i++) b[off + i] = (byte) (v >>> (56 - 8 * i));
+    }
+}
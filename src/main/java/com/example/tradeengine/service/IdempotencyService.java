@@ -0,0 +1,369 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.exception.IdempotencyUnavailableException;
+import com.example.tradeengine.model.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates order submissions by idempotency key before they reach
+ * the matching engine, so the matching threads never wait on Redis.
+ * A key is resolved, in order, by:
+ * <ol>
+ *   <li>a bounded near‑cache of recent results (`idempotency.near-cache-size`),</li>
+ *   <li>the in‑flight map: a request whose key is already being
+ *       executed is attached to the first request's future instead of
+ *       running again, which also closes the race where two concurrent
+ *       submissions both missed and both executed,</li>
+ *   <li>a Bloom filter of every key seen within the TTL: a key it has
+ *       never seen is new without asking Redis,</li>
+ *   <li>and only then a Redis lookup, on the submitting thread.</li>
+ * </ol>
+ * If that lookup fails, the submission fails with
+ * {@link IdempotencyUnavailableException} rather than risk executing a
+ * duplicate; keys the filter rules out are still accepted while Redis
+ * is down.  Keys enter the filter once their execution has succeeded,
+ * so a failed submission can be retried even then.
+ * Results are written to Redis with `idempotency.ttl` by a background
+ * writer that pipelines whatever has queued up, so keys expire instead
+ * of accumulating.  Keys are stored under the `idem:` prefix.
+ *
+ * <p>The Bloom filter is local to the process, so at startup it is
+ * seeded by scanning the keys in Redis; until that completes every
+ * miss is checked in Redis.  A promoted standby's filter lacks the keys
+ * the primary stored since the standby started, so promotion seeds it
+ * again through {@link #reseedFilter()}.  It is kept as two
+ * generations, rotated every TTL, so keys older than two TTLs stop
+ * occupying it.
+ */
+@Service
+public class IdempotencyService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyService.class);
+    static final String KEY_PREFIX = "idem:";
+    private static final int WRITE_BATCH = 512;
+    private static final int NEAR_CACHE_SEGMENTS = 16;
+
+    private final RedisTemplate<String, Order> redisTemplate;
+    private final Duration ttl;
+    private final long ttlNanos;
+    private final NearCache nearCache;
+    private final Map<String, CompletableFuture<Order>> inFlight = new ConcurrentHashMap<>();
+    private final long bloomExpectedKeys;
+    private final double bloomFalsePositiveRate;
+    private final BlockingQueue<Write> writes = new LinkedBlockingQueue<>();
+    private final Counter nearCacheHits;
+    private final Counter inFlightHits;
+    private final Counter filtered;
+    private final Counter redisHits;
+    private final Counter redisMisses;
+    private final Counter redisErrors;
+    private final Counter writeFailures;
+    private final Thread writer;
+    private volatile BloomFilter currentKeys;
+    private volatile BloomFilter previousKeys;
+    private volatile long rotatedAtNanos = System.nanoTime();
+    private volatile boolean filterReady;
+    /** Incremented per seeding; only the latest one may mark the filter ready. */
+    private final AtomicInteger seeds = new AtomicInteger();
+    private volatile boolean running = true;
+
+    private static final class Write {
+        final String key;
+        final Order order;
+
+        Write(String key, Order order) {
+            this.key = key;
+            this.order = order;
+        }
+    }
+
+    @Autowired
+    public IdempotencyService(RedisTemplate<String, Order> redisTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${idempotency.ttl:24h}") String ttl,
+                              @Value("${idempotency.near-cache-size:100000}") int nearCacheSize,
+                              @Value("${idempotency.bloom.expected-keys:1000000}") long bloomExpectedKeys,
+                              @Value("${idempotency.bloom.false-positive-rate:0.01}") double bloomFalsePositiveRate) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = VwapService.parseDuration(ttl);
+        this.ttlNanos = this.ttl.toNanos();
+        this.nearCache = new NearCache(Math.max(NEAR_CACHE_SEGMENTS, nearCacheSize), ttlNanos);
+        this.bloomExpectedKeys = bloomExpectedKeys;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.currentKeys = new BloomFilter(bloomExpectedKeys, bloomFalsePositiveRate);
+        this.nearCacheHits = meterRegistry.counter("idempotency_lookups_total", "result", "near_cache");
+        this.inFlightHits = meterRegistry.counter("idempotency_lookups_total", "result", "in_flight");
+        this.filtered = meterRegistry.counter("idempotency_lookups_total", "result", "filtered");
+        this.redisHits = meterRegistry.counter("idempotency_lookups_total", "result", "redis_hit");
+        this.redisMisses = meterRegistry.counter("idempotency_lookups_total", "result", "redis_miss");
+        this.redisErrors = meterRegistry.counter("idempotency_lookups_total", "result", "redis_error");
+        this.writeFailures = meterRegistry.counter("idempotency_write_failures_total");
+        this.writer = new Thread(this::writeLoop, "idempotency-writer");
+        this.writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+        startSeeding();
+    }
+
+    /**
+     * Stop trusting the filter and seed it again from Redis in the
+     * background; meanwhile every miss is checked in Redis.  Called
+     * when a standby is promoted, since keys the primary stored after
+     * the standby's own seeding are missing from its filter.
+     */
+    public void reseedFilter() {
+        filterReady = false;
+        startSeeding();
+    }
+
+    private void startSeeding() {
+        int seed = seeds.incrementAndGet();
+        Thread seeder = new Thread(() -> seedFilter(seed), "idempotency-seed");
+        seeder.setDaemon(true);
+        seeder.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Run a keyed submission at most once.  Returns the earlier result
+     * if the key has one, the pending future if the key is being
+     * executed right now, and otherwise the future of executing it.
+     * A failed execution is not remembered, so it may be retried.  The
+     * future fails with {@link IdempotencyUnavailableException} if the
+     * key may have been used but Redis cannot say.
+     */
+    public CompletableFuture<Order> submit(String key, Supplier<CompletableFuture<Order>> execute) {
+        Order cached = nearCache.get(key, System.nanoTime());
+        if (cached != null) {
+            nearCacheHits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Order> promise = new CompletableFuture<>();
+        CompletableFuture<Order> pending = inFlight.putIfAbsent(key, promise);
+        if (pending != null) {
+            inFlightHits.increment();
+            return pending;
+        }
+        try {
+            // The first request may have finished between the near-cache miss and the claim
+            cached = nearCache.get(key, System.nanoTime());
+            if (cached == null) cached = lookup(key);
+            if (cached != null) {
+                nearCache.put(key, cached, System.nanoTime());
+                inFlight.remove(key, promise);
+                promise.complete(cached);
+                return promise;
+            }
+            execute.get().whenComplete((order, error) -> {
+                if (error == null && order != null) {
+                    nearCache.put(key, order, System.nanoTime());
+                    remember(key);
+                    writes.add(new Write(key, order));
+                }
+                inFlight.remove(key, promise);
+                if (error != null) promise.completeExceptionally(error);
+                else promise.complete(order);
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+        return promise;
+    }
+
+    /**
+     * Result of a key from Redis, unless the filter proves it was never stored.
+     *
+     * @throws IdempotencyUnavailableException if Redis has to be asked and cannot answer
+     */
+    private Order lookup(String key) {
+        if (filterReady && !mightHaveSeen(key)) {
+            filtered.increment();
+            return null;
+        }
+        try {
+            Order order = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+            if (order != null) redisHits.increment();
+            else redisMisses.increment();
+            return order;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Idempotency lookup of {} failed, refusing the submission: {}", key, e.getMessage());
+            redisErrors.increment();
+            throw new IdempotencyUnavailableException("Idempotency key " + key + " cannot be checked, retry later", e);
+        }
+    }
+
+    /** Trust the filter without seeding it, as if Redis held no keys. */
+    void markFilterReady() {
+        filterReady = true;
+    }
+
+    private boolean mightHaveSeen(String key) {
+        BloomFilter previous = previousKeys;
+        return currentKeys.mightContain(key) || (previous != null && previous.mightContain(key));
+    }
+
+    private void remember(String key) {
+        if (System.nanoTime() - rotatedAtNanos > ttlNanos) rotate();
+        currentKeys.add(key);
+    }
+
+    /** Start a new generation; the previous one still answers for keys up to one TTL old. */
+    private synchronized void rotate() {
+        long now = System.nanoTime();
+        if (now - rotatedAtNanos <= ttlNanos) return;
+        previousKeys = currentKeys;
+        currentKeys = new BloomFilter(bloomExpectedKeys, bloomFalsePositiveRate);
+        rotatedAtNanos = now;
+    }
+
+    /** Add the keys already in Redis to the filter, then start trusting it unless a later seeding began. */
+    private void seedFilter(int seed) {
+        long keys = 0;
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build())) {
+            while (cursor.hasNext()) {
+                currentKeys.add(cursor.next().substring(KEY_PREFIX.length()));
+                keys++;
+            }
+            if (seed != seeds.get()) return;
+            filterReady = true;
+            LOGGER.info("Idempotency filter seeded with {} keys from Redis", keys);
+        } catch (Exception e) {
+            LOGGER.warn("Could not seed idempotency filter after {} keys, every new key will be checked in Redis: {}", keys, e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        List<Write> batch = new ArrayList<>(WRITE_BATCH);
+        while (running || !writes.isEmpty()) {
+            try {
+                Write first = writes.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                writes.drainTo(batch, WRITE_BATCH - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Write a batch of results in one pipelined round trip. */
+    @SuppressWarnings("unchecked")
+    private void writeBatch(List<Write> batch) {
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, Order> ops = (RedisOperations<String, Order>) operations;
+                    for (Write w : batch) {
+                        ops.opsForValue().set(KEY_PREFIX + w.key, w.order, ttl);
+                    }
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            writeFailures.increment(batch.size());
+            LOGGER.warn("Failed to write {} idempotency keys to Redis; they are only held locally: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Bounded LRU of recent results with expiry, split into segments
+     * with their own locks so concurrent submissions rarely meet.
+     */
+    static final class NearCache {
+        private final Segment[] segments = new Segment[NEAR_CACHE_SEGMENTS];
+        private final long ttlNanos;
+
+        NearCache(int capacity, long ttlNanos) {
+            for (int i = 0; i < segments.length; i++) segments[i] = new Segment(capacity / segments.length);
+            this.ttlNanos = ttlNanos;
+        }
+
+        Order get(String key, long now) {
+            Segment s = segment(key);
+            synchronized (s) {
+                Entry e = s.get(key);
+                if (e == null) return null;
+                if (now - e.expiresAt >= 0) {
+                    s.remove(key);
+                    return null;
+                }
+                return e.order;
+            }
+        }
+
+        void put(String key, Order order, long now) {
+            Segment s = segment(key);
+            synchronized (s) {
+                s.put(key, new Entry(order, now + ttlNanos));
+            }
+        }
+
+        private Segment segment(String key) {
+            int h = key.hashCode();
+            return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+        }
+
+        private static final class Entry {
+            final Order order;
+            final long expiresAt;
+
+            Entry(Order order, long expiresAt) {
+                this.order = order;
+                this.expiresAt = expiresAt;
+            }
+        }
+
+        private static final class Segment extends LinkedHashMap<String, Entry> {
+            private final int capacity;
+
+            Segment(int capacity) {
+                super(16, 0.75f, true);
+                this.capacity = Math.max(1, capacity);
+            }
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        }
+    }
+}
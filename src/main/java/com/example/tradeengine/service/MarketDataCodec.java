@@ -0,0 +1,262 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.DepthSnapshot;
+import com.example.tradeengine.model.Trade;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Binary encoding of the `/ws/marketdata` feed.  Every message is one
+ * WebSocket binary frame, big endian:
+ *
+ * <pre>
+ * u8     message type: 1 snapshot, 2 level delta, 3 trade
+ * u8     instrument length n, then n bytes of ASCII instrument
+ * i64    sequence number, per instrument and connection stream
+ * snapshot: i64 book checksum, u16 bid count, u16 ask count, then levels
+ * delta:    u16 change count, then per change u8 side (0 bid, 1 ask) and a level
+ * trade:    decimal price, decimal quantity, i64 epoch microseconds
+ * level:    decimal price, decimal quantity (0 removes the level), i32 orders
+ * decimal:  i8 scale, i64 unscaled value
+ * </pre>
+ *
+ * A snapshot carries the sequence of the last message it includes;
+ * every later message of the instrument increments it by one.  A level
+ * delta carries only the levels that changed, so a typical book update
+ * is a few dozen bytes where a JSON depth poll is several kilobytes.
+ */
+public final class MarketDataCodec {
+    public static final byte SNAPSHOT = 1;
+    public static final byte DELTA = 2;
+    public static final byte TRADE = 3;
+    private static final int DECIMAL_BYTES = 9;
+    private static final int LEVEL_BYTES = 2 * DECIMAL_BYTES + 4;
+
+    private MarketDataCodec() {}
+
+    /** One price level, or a change to one; a zero quantity means the level is gone. */
+    public static final class Level {
+        private final boolean bid;
+        private final BigDecimal price;
+        private final BigDecimal quantity;
+        private final int orders;
+
+        public Level(boolean bid, BigDecimal price, BigDecimal quantity, int orders) {
+            this.bid = bid;
+            this.price = price;
+            this.quantity = quantity;
+            this.orders = orders;
+        }
+
+        public boolean isBid() { return bid; }
+        public BigDecimal getPrice() { return price; }
+        public BigDecimal getQuantity() { return quantity; }
+        public int getOrders() { return orders; }
+    }
+
+    /** A decoded message; fields that do not apply to its type are null or empty. */
+    public static final class Message {
+        private final byte type;
+        private final String instrument;
+        private final long sequence;
+        private final long checksum;
+        private final List<Level> levels;
+        private final BigDecimal price;
+        private final BigDecimal quantity;
+        private final Instant timestamp;
+
+        Message(byte type, String instrument, long sequence, long checksum, List<Level> levels,
+                BigDecimal price, BigDecimal quantity, Instant timestamp) {
+            this.type = type;
+            this.instrument = instrument;
+            this.sequence = sequence;
+            this.checksum = checksum;
+            this.levels = levels;
+            this.price = price;
+            this.quantity = quantity;
+            this.timestamp = timestamp;
+        }
+
+        public byte getType() { return type; }
+        public String getInstrument() { return instrument; }
+        public long getSequence() { return sequence; }
+        /** Book checksum of a snapshot. */
+        public long getChecksum() { return checksum; }
+        /** Levels of a snapshot, bids then asks, or the changes of a delta. */
+        public List<Level> getLevels() { return levels; }
+        public BigDecimal getPrice() { return price; }
+        public BigDecimal getQuantity() { return quantity; }
+        public Instant getTimestamp() { return timestamp; }
+    }
+
+    static byte[] snapshot(String instrument, long sequence, DepthSnapshot depth) {
+        List<DepthSnapshot.Level> bids = depth.getBids();
+        List<DepthSnapshot.Level> asks = depth.getAsks();
+        ByteBuffer buf = header(SNAPSHOT, instrument, sequence, 12 + (bids.size() + asks.size()) * LEVEL_BYTES);
+        buf.putLong(depth.getChecksum());
+        buf.putShort((short) bids.size());
+        buf.putShort((short) asks.size());
+        for (DepthSnapshot.Level l : bids) putLevel(buf, l.getPrice(), l.getQuantity(), l.getOrders());
+        for (DepthSnapshot.Level l : asks) putLevel(buf, l.getPrice(), l.getQuantity(), l.getOrders());
+        return buf.array();
+    }
+
+    static byte[] delta(String instrument, long sequence, List<Level> changes) {
+        ByteBuffer buf = header(DELTA, instrument, sequence, 2 + changes.size() * (1 + LEVEL_BYTES));
+        buf.putShort((short) changes.size());
+        for (Level l : changes) {
+            buf.put((byte) (l.bid ? 0 : 1));
+            putLevel(buf, l.price, l.quantity, l.orders);
+        }
+        return buf.array();
+    }
+
+    static byte[] trade(String instrument, long sequence, Trade trade) {
+        ByteBuffer buf = header(TRADE, instrument, sequence, 2 * DECIMAL_BYTES + 8);
+        putDecimal(buf, trade.getPrice());
+        putDecimal(buf, trade.getQuantity());
+        Instant ts = trade.getTimestamp();
+        buf.putLong(ts == null ? 0L : ts.getEpochSecond() * 1_000_000L + ts.getNano() / 1_000);
+        return buf.array();
+    }
+
+    /**
+     * The level changes that turn one depth into another: levels that
+     * are new or differ in quantity or order count, and removals of
+     * levels that are gone.  Levels that fall out of the top of the
+     * book are removals too, so a client holds the same levels as the
+     * server's depth.
+     */
+    static List<Level> diff(DepthSnapshot from, DepthSnapshot to) {
+        List<Level> changes = new ArrayList<>();
+        diff(true, from.getBids(), to.getBids(), changes);
+        diff(false, from.getAsks(), to.getAsks(), changes);
+        return changes;
+    }
+
+    private static void diff(boolean bid, List<DepthSnapshot.Level> from, List<DepthSnapshot.Level> to, List<Level> out) {
+        // Keyed by numeric value: 10.0 and 10.00 are the same level
+        TreeMap<BigDecimal, DepthSnapshot.Level> old = new TreeMap<>();
+        for (DepthSnapshot.Level l : from) old.put(l.getPrice(), l);
+        for (DepthSnapshot.Level l : to) {
+            DepthSnapshot.Level prev = old.remove(l.getPrice());
+            if (prev == null || prev.getQuantity().compareTo(l.getQuantity()) != 0 || prev.getOrders() != l.getOrders()) {
+                out.add(new Level(bid, l.getPrice(), l.getQuantity(), l.getOrders()));
+            }
+        }
+        for (BigDecimal price : old.keySet()) out.add(new Level(bid, price, BigDecimal.ZERO, 0));
+    }
+
+    /**
+     * Decode one message.
+     *
+     * @throws IllegalArgumentException if the message type is unknown
+     */
+    public static Message decode(ByteBuffer buf) {
+        byte type = buf.get();
+        byte[] name = new byte[buf.get() & 0xff];
+        buf.get(name);
+        String instrument = new String(name, StandardCharsets.US_ASCII);
+        long sequence = buf.getLong();
+        switch (type) {
+            case SNAPSHOT: {
+                long checksum = buf.getLong();
+                int bids = buf.getShort() & 0xffff;
+                int asks = buf.getShort() & 0xffff;
+                List<Level> levels = new ArrayList<>(bids + asks);
+                for (int i = 0; i < bids + asks; i++) levels.add(getLevel(buf, i < bids));
+                return new Message(type, instrument, sequence, checksum, levels, null, null, null);
+            }
+            case DELTA: {
+                int n = buf.getShort() & 0xffff;
+                List<Level> levels = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) levels.add(getLevel(buf, buf.get() == 0));
+                return new Message(type, instrument, sequence, 0L, levels, null, null, null);
+            }
+            case TRADE: {
+                BigDecimal price = getDecimal(buf);
+                BigDecimal quantity = getDecimal(buf);
+                long micros = buf.getLong();
+                Instant ts = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+                return new Message(type, instrument, sequence, 0L, Collections.emptyList(), price, quantity, ts);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown market data message type " + type);
+        }
+    }
+
+    /**
+     * Apply a decoded snapshot or delta to bid and ask books keyed by
+     * price, as a client would.  Books should be created with
+     * {@link #bidBook()} and {@link #askBook()}.
+     */
+    public static void apply(Message m, TreeMap<BigDecimal, Level> bids, TreeMap<BigDecimal, Level> asks) {
+        if (m.type == SNAPSHOT) {
+            bids.clear();
+            asks.clear();
+        }
+        for (Level l : m.levels) {
+            TreeMap<BigDecimal, Level> side = l.bid ? bids : asks;
+            if (l.quantity.signum() == 0) side.remove(l.price);
+            else side.put(l.price, l);
+        }
+    }
+
+    public static TreeMap<BigDecimal, Level> bidBook() {
+        return new TreeMap<>(Comparator.reverseOrder());
+    }
+
+    public static TreeMap<BigDecimal, Level> askBook() {
+        return new TreeMap<>();
+    }
+
+    private static ByteBuffer header(byte type, String instrument, long sequence, int bodyBytes) {
+        byte[] name = instrument.getBytes(StandardCharsets.US_ASCII);
+        if (name.length > 255) throw new IllegalArgumentException("Instrument name too long: " + instrument);
+        ByteBuffer buf = ByteBuffer.allocate(1 + 1 + name.length + 8 + bodyBytes);
+        buf.put(type);
+        buf.put((byte) name.length);
+        buf.put(name);
+        buf.putLong(sequence);
+        return buf;
+    }
+
+    private static void putLevel(ByteBuffer buf, BigDecimal price, BigDecimal quantity, int orders) {
+        putDecimal(buf, price);
+        putDecimal(buf, quantity);
+        buf.putInt(orders);
+    }
+
+    private static Level getLevel(ByteBuffer buf, boolean bid) {
+        BigDecimal price = getDecimal(buf);
+        BigDecimal quantity = getDecimal(buf);
+        return new Level(bid, price, quantity, buf.getInt());
+    }
+
+    /**
+     * @throws ArithmeticException if the value needs more than 64 bits
+     *                             unscaled or a scale beyond a byte
+     */
+    private static void putDecimal(ByteBuffer buf, BigDecimal value) {
+        BigDecimal v = value.scale() > Byte.MAX_VALUE || value.scale() < Byte.MIN_VALUE ? value.stripTrailingZeros() : value;
+        if (v.scale() > Byte.MAX_VALUE || v.scale() < Byte.MIN_VALUE) {
+            throw new ArithmeticException("Scale out of range: " + value);
+        }
+        buf.put((byte) v.scale());
+        buf.putLong(v.unscaledValue().longValueExact());
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer buf) {
+        int scale = buf.get();
+        return new BigDecimal(BigInteger.valueOf(buf.getLong()), scale);
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.DepthSnapshot;
+import com.example.tradeengine.engine.MarketDataListener;
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.model.Trade;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Binary market‑data feed behind `/ws/marketdata`.  A subscriber gets a
+ * depth snapshot of each of its instruments, then that instrument's
+ * trades and level deltas, encoded by {@link MarketDataCodec}.  Every
+ * message of an instrument carries the next sequence number, so a
+ * client that sees a gap – for instance because its session dropped
+ * messages it could not keep up with – asks for a resync and receives
+ * a fresh snapshot.
+ *
+ * <p>The matching engine only hands depth publications and trades
+ * over; a single feed thread diffs consecutive depths, encodes each
+ * message once and writes it to every subscriber.  With
+ * `marketdata.batch-interval-ms` above zero the feed thread runs at
+ * that interval instead of on every change, and the depth changes in
+ * between are sent as one delta.
+ */
+@Service
+public class MarketDataService implements MarketDataListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MarketDataService.class);
+
+    private final MatchingEngine matchingEngine;
+    private final long batchIntervalMillis;
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    /** Sessions subscribed to every instrument, including ones not traded yet. */
+    private final Set<WebSocketSession> allInstruments = ConcurrentHashMap.newKeySet();
+    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<Channel> changed = new LinkedBlockingQueue<>();
+    private final Thread feed;
+    private final Counter messagesSent;
+    private final Counter bytesSent;
+    private final Counter resyncs;
+
+    @Autowired
+    public MarketDataService(MatchingEngine matchingEngine,
+                             MeterRegistry meterRegistry,
+                             @Value("${marketdata.batch-interval-ms:0}") long batchIntervalMillis) {
+        this.matchingEngine = matchingEngine;
+        this.batchIntervalMillis = Math.max(0, batchIntervalMillis);
+        this.messagesSent = meterRegistry.counter("marketdata_messages_sent_total");
+        this.bytesSent = meterRegistry.counter("marketdata_bytes_sent_total");
+        this.resyncs = meterRegistry.counter("marketdata_resyncs_total");
+        Gauge.builder("marketdata_sessions", sessions, Set::size).register(meterRegistry);
+        this.feed = new Thread(this::feedLoop, "marketdata-feed");
+        this.feed.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        matchingEngine.addListener(this);
+        feed.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        feed.interrupt();
+    }
+
+    /**
+     * The feed state of one instrument.  The feed thread and
+     * subscribing sessions synchronize on it, so a snapshot and the
+     * sequence it carries always match the deltas that follow.
+     */
+    private static final class Channel {
+        final String instrument;
+        final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+        final Queue<Trade> trades = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean queued = new AtomicBoolean();
+        volatile DepthSnapshot latest;
+        /** The depth subscribers hold once they have applied every message sent. */
+        DepthSnapshot sent;
+        long sequence;
+
+        Channel(DepthSnapshot depth) {
+            this.instrument = depth.getInstrument();
+            this.latest = depth;
+            this.sent = depth;
+        }
+    }
+
+    private Channel channel(String instrument) {
+        return channels.computeIfAbsent(instrument, k -> new Channel(matchingEngine.getDepth(k)));
+    }
+
+    @Override
+    public void onDepth(DepthSnapshot depth) {
+        Channel c = channel(depth.getInstrument());
+        c.latest = depth;
+        markChanged(c);
+    }
+
+    @Override
+    public void onTrade(String instrument, Trade trade) {
+        Channel c = channel(instrument);
+        c.trades.add(trade);
+        markChanged(c);
+    }
+
+    private void markChanged(Channel c) {
+        if (c.queued.compareAndSet(false, true)) changed.add(c);
+    }
+
+    /**
+     * Subscribe a session to some instruments, or to all of them if
+     * none are given, sending a snapshot of each.  The session should
+     * tolerate concurrent sends and bound its buffer, since the feed
+     * thread writes to every session in turn.
+     */
+    public void subscribe(WebSocketSession session, Collection<String> instruments) {
+        sessions.add(session);
+        if (instruments == null || instruments.isEmpty()) {
+            allInstruments.add(session);
+            for (Channel c : channels.values()) join(c, session);
+        } else {
+            for (String instrument : instruments) join(channel(instrument), session);
+        }
+    }
+
+    /** Send a fresh snapshot of an instrument the session is subscribed to. */
+    public void resync(WebSocketSession session, String instrument) {
+        Channel c = channels.get(instrument);
+        if (c == null || !c.sessions.contains(session)) return;
+        resyncs.increment();
+        synchronized (c) {
+            send(session, MarketDataCodec.snapshot(c.instrument, c.sequence, c.sent));
+        }
+    }
+
+    public void unsubscribe(WebSocketSession session) {
+        sessions.remove(session);
+        allInstruments.remove(session);
+        for (Channel c : channels.values()) c.sessions.remove(session);
+    }
+
+    private void join(Channel c, WebSocketSession session) {
+        synchronized (c) {
+            if (c.sessions.add(session)) send(session, MarketDataCodec.snapshot(c.instrument, c.sequence, c.sent));
+        }
+    }
+
+    private void feedLoop() {
+        List<Channel> batch = new ArrayList<>();
+        while (true) {
+            try {
+                if (batchIntervalMillis > 0) {
+                    TimeUnit.MILLISECONDS.sleep(batchIntervalMillis);
+                } else {
+                    batch.add(changed.take());
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            changed.drainTo(batch);
+            for (Channel c : batch) {
+                c.queued.set(false);
+                try {
+                    flush(c);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to publish market data for {}: {}", c.instrument, e.getMessage());
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Send a channel's trades and the delta from the last sent depth to
+     * the latest one.  Without subscribers nothing is encoded and the
+     * sequence stays put; the next subscriber's snapshot starts there.
+     */
+    private void flush(Channel c) {
+        synchronized (c) {
+            for (WebSocketSession s : allInstruments) {
+                if (c.sessions.add(s)) send(s, MarketDataCodec.snapshot(c.instrument, c.sequence, c.sent));
+            }
+            DepthSnapshot latest = c.latest;
+            if (c.sessions.isEmpty()) {
+                c.trades.clear();
+                c.sent = latest;
+                return;
+            }
+            Trade trade;
+            while ((trade = c.trades.poll()) != null) {
+                broadcast(c, MarketDataCodec.trade(c.instrument, ++c.sequence, trade));
+            }
+            if (latest != c.sent) {
+                List<MarketDataCodec.Level> changes = MarketDataCodec.diff(c.sent, latest);
+                c.sent = latest;
+                if (!changes.isEmpty()) broadcast(c, MarketDataCodec.delta(c.instrument, ++c.sequence, changes));
+            }
+        }
+    }
+
+    private void broadcast(Channel c, byte[] message) {
+        for (WebSocketSession s : c.sessions) send(s, message);
+    }
+
+    private void send(WebSocketSession session, byte[] message) {
+        if (!session.isOpen()) {
+            unsubscribe(session);
+            return;
+        }
+        try {
+            session.sendMessage(new BinaryMessage(message));
+            messagesSent.increment();
+            bytesSent.increment(message.length);
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.debug("Closing market data session {}: {}", session.getId(), e.getMessage());
+            unsubscribe(session);
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException ignored) {
+                // Already gone
+            }
+        }
+    }
+}
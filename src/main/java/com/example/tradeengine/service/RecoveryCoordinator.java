@@ -0,0 +1,220 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.model.Order;
+import com.example.tradeengine.model.OrderBookSnapshot;
+import com.example.tradeengine.repository.EventRecordRepository;
+import com.example.tradeengine.repository.OrderBookSnapshotRepository;
+import com.example.tradeengine.repository.OrderJdbcRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RecoveryCoordinator rebuilds every instrument's order book once at
+ * startup.  For each instrument that has a snapshot or open orders it
+ * picks the cheapest available strategy:
+ * <ul>
+ *   <li>book image – map the instrument's memory‑mapped book image
+ *   (`bookimage.enabled`) if it is complete and was committed at the
+ *   instrument's latest event ID, so nothing needs to be read from the
+ *   database;</li>
+ *   <li>snapshot plus tail – restore the latest snapshot and replay the
+ *   instrument's events recorded since, used when the tail is no longer
+ *   than `recovery.max-tail-events`;</li>
+ *   <li>open orders – stream the instrument's open and partially filled
+ *   orders through the (status, instrument) index with a server‑side
+ *   cursor.</li>
+ * </ul>
+ * A standby shares the primary's database and must not write to it, so
+ * it never takes the snapshot path, which rewrites order rows and
+ * re‑inserts the tail's trades; its books are built from images and
+ * the orders table only.
+ * Whatever the strategy, the instrument's pending stop orders are then
+ * loaded from the orders table, since snapshots and images hold only
+ * resting orders.
+ * Instruments are independent, so they are recovered in parallel on
+ * `recovery.parallelism` threads.  Startup cost therefore depends on
+ * the size of the live books rather than on all‑time order count.
+ *
+ * <p>Recovery runs as an {@link ApplicationRunner}.  Spring Boot only
+ * marks the application as accepting traffic after all runners have
+ * returned, so `/actuator/health/readiness` stays OUT_OF_SERVICE until
+ * every book is loaded.  Runners start after the web server, though, so
+ * the matching engine is put in its recovering state as soon as this
+ * bean is created and rejects submissions and cancels until
+ * {@link #recoverAll()} returns; the Binance feed only starts once the
+ * application is ready.  Duration and rows read are exported as
+ * `recovery_duration_seconds` and `recovery_rows_read_total{mode}`.
+ */
+@Component
+public class RecoveryCoordinator implements ApplicationRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecoveryCoordinator.class);
+    private final MatchingEngine matchingEngine;
+    private final SnapshotService snapshotService;
+    private final OrderBookSnapshotRepository snapshotRepo;
+    private final EventRecordRepository eventRepo;
+    private final OrderJdbcRepository orderJdbcRepo;
+    private final TransactionTemplate readOnlyTransaction;
+    private final MeterRegistry meterRegistry;
+    private final Timer recoveryDuration;
+    private final int parallelism;
+    private final long maxTailEvents;
+
+    @Autowired
+    public RecoveryCoordinator(MatchingEngine matchingEngine,
+                               SnapshotService snapshotService,
+                               OrderBookSnapshotRepository snapshotRepo,
+                               EventRecordRepository eventRepo,
+                               OrderJdbcRepository orderJdbcRepo,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${recovery.parallelism:4}") int parallelism,
+                               @Value("${recovery.max-tail-events:100000}") long maxTailEvents) {
+        this.matchingEngine = matchingEngine;
+        this.snapshotService = snapshotService;
+        this.snapshotRepo = snapshotRepo;
+        this.eventRepo = eventRepo;
+        this.orderJdbcRepo = orderJdbcRepo;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.meterRegistry = meterRegistry;
+        this.recoveryDuration = meterRegistry.timer("recovery_duration_seconds");
+        this.parallelism = Math.max(1, parallelism);
+        this.maxTailEvents = maxTailEvents;
+    }
+
+    /**
+     * Hold orders before the web server starts; recovery itself only
+     * runs after it.
+     */
+    @PostConstruct
+    public void holdOrders() {
+        matchingEngine.setRecovering(true);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        recoverAll();
+    }
+
+    /**
+     * Recover every instrument that has a snapshot or open orders and
+     * block until all of them are done, then let the matching engine
+     * accept orders.  Failures are logged per instrument and do not
+     * stop the others.
+     */
+    public void recoverAll() {
+        try {
+            recoverInstruments();
+        } finally {
+            matchingEngine.setRecovering(false);
+        }
+    }
+
+    private void recoverInstruments() {
+        long start = System.nanoTime();
+        Set<String> instruments = new TreeSet<>(snapshotRepo.findDistinctInstruments());
+        instruments.addAll(orderJdbcRepo.findOpenInstruments());
+        instruments.addAll(matchingEngine.getImageInstruments());
+        if (instruments.isEmpty()) {
+            LOGGER.info("No instruments to recover");
+            recoveryDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return;
+        }
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, instruments.size()),
+            r -> new Thread(r, "recovery-" + threadIds.incrementAndGet()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String instrument : instruments) {
+                futures.add(pool.submit(() -> recover(instrument)));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (Exception e) {
+                    LOGGER.error("Recovery task failed: {}", e.getMessage());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        // Recovered books bypassed the risk checks; count their orders now
+        matchingEngine.rebuildExposure();
+        long elapsed = System.nanoTime() - start;
+        recoveryDuration.record(elapsed, TimeUnit.NANOSECONDS);
+        LOGGER.info("Recovered {} instruments in {} ms", instruments.size(), elapsed / 1_000_000);
+    }
+
+    /**
+     * Reload the pending stops of every instrument from the orders
+     * table.  Used on promotion of a standby, whose stops were loaded at
+     * startup and have since been triggered or added by the primary.
+     */
+    public void reloadStops() {
+        Set<String> instruments = new TreeSet<>(matchingEngine.getInstrumentNames());
+        instruments.addAll(orderJdbcRepo.findOpenInstruments());
+        for (String instrument : instruments) {
+            loadStops(instrument);
+        }
+    }
+
+    /** Load one instrument's pending stops; returns the number of rows read. */
+    private long loadStops(String instrument) {
+        List<Order> stops = new ArrayList<>();
+        Long read = readOnlyTransaction.execute(status -> orderJdbcRepo.forEachPendingStop(instrument, stops::add));
+        matchingEngine.loadStops(instrument, stops);
+        return read == null ? 0 : read;
+    }
+
+    private void recover(String instrument) {
+        long start = System.nanoTime();
+        Optional<OrderBookSnapshot> snapshot = snapshotRepo.findTopByInstrumentOrderByTimestampDesc(instrument);
+        Long maxId = eventRepo.findMaxIdByInstrument(instrument);
+        long highWater = maxId == null ? 0L : maxId;
+        String mode;
+        long rows;
+        int imaged = matchingEngine.isBookImageEnabled() ? matchingEngine.restoreFromImage(instrument, highWater) : -1;
+        if (imaged >= 0) {
+            mode = "image";
+            rows = 0;
+        } else if (!matchingEngine.isStandby() && snapshot.isPresent()
+                && snapshotService.countEventsAfter(snapshot.get()) <= maxTailEvents) {
+            mode = "snapshot";
+            rows = snapshotService.restoreSnapshot(snapshot.get());
+        } else {
+            mode = "open_orders";
+            List<Order> orders = new ArrayList<>();
+            Long read = readOnlyTransaction.execute(status -> orderJdbcRepo.forEachOpenOrder(instrument, orders::add));
+            matchingEngine.loadOpenOrders(instrument, orders);
+            rows = read == null ? 0 : read;
+        }
+        if (imaged < 0) {
+            matchingEngine.syncImage(instrument, highWater);
+        }
+        rows += loadStops(instrument);
+        meterRegistry.counter("recovery_rows_read_total", "mode", mode).increment(rows);
+        LOGGER.info("Recovered {} via {} ({} rows) in {} ms", instrument, mode, rows, (System.nanoTime() - start) / 1_000_000);
+    }
+}
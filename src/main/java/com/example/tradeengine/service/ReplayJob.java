@@ -0,0 +1,79 @@
+package com.example.tradeengine.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of an asynchronous full event replay, as reported by
+ * `GET /admin/replay/{id}`.  Counters are updated by the replay tasks
+ * after every committed chunk; cancellation is cooperative and takes
+ * effect at the next chunk boundary.
+ */
+public class ReplayJob {
+    public enum Status { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final String id;
+    private final long totalEvents;
+    private final Instant startedAt = Instant.now();
+    private final AtomicLong processedEvents = new AtomicLong();
+    private final AtomicLong checksumMismatches = new AtomicLong();
+    private volatile Status status = Status.RUNNING;
+    private volatile boolean cancelRequested;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    ReplayJob(String id, long totalEvents) {
+        this.id = id;
+        this.totalEvents = totalEvents;
+    }
+
+    public String getId() { return id; }
+    public Status getStatus() { return status; }
+    public long getTotalEvents() { return totalEvents; }
+    public long getProcessedEvents() { return processedEvents.get(); }
+    /** Replayed events whose recorded book checksum the rebuilt book did not match. */
+    public long getChecksumMismatches() { return checksumMismatches.get(); }
+    public Instant getStartedAt() { return startedAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+    public String getError() { return error; }
+    public boolean isCancelRequested() { return cancelRequested; }
+
+    public double getPercentComplete() {
+        return totalEvents == 0 ? 100.0 : Math.min(100.0, 100.0 * getProcessedEvents() / totalEvents);
+    }
+
+    public double getEventsPerSecond() {
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        double seconds = Duration.between(startedAt, end).toNanos() / 1e9;
+        return seconds <= 0 ? 0.0 : getProcessedEvents() / seconds;
+    }
+
+    /**
+     * Estimated seconds until completion at the average rate so far, or
+     * null while no rate is known or once the job has finished.
+     */
+    public Long getEtaSeconds() {
+        double rate = getEventsPerSecond();
+        if (status != Status.RUNNING || rate <= 0) return null;
+        return (long) Math.ceil(Math.max(0, totalEvents - getProcessedEvents()) / rate);
+    }
+
+    void addProcessed(long events) {
+        processedEvents.addAndGet(events);
+    }
+
+    void addChecksumMismatches(long mismatches) {
+        checksumMismatches.addAndGet(mismatches);
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    void finish(Status status, String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.exception.OrderRejectedException;
+import com.example.tradeengine.model.Order;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pre‑trade risk checks, run on the submitting thread before an order
+ * is queued for matching: a maximum order quantity, a price band
+ * around the instrument's reference price, and a maximum open notional
+ * per client.  Nothing here touches the database or Redis; a check
+ * costs a map lookup, a few {@link BigDecimal} operations and a
+ * {@link LongAdder} update.
+ *
+ * <p>A client's open notional is the notional of its orders that are
+ * queued, resting or waiting for their stop price, each valued at its
+ * own limit price (stop orders at their stop price, market orders at
+ * the reference price while they are queued).  It is kept per client
+ * in a {@link LongAdder}, in millionths, so concurrent submissions and
+ * the matching threads update it without contending.  An order's
+ * notional is reserved when it passes the checks, and the matching
+ * engine releases it as the order fills, is cancelled or ends without
+ * resting.  Reserving before comparing with the limit means two
+ * concurrent orders can never both slip under it; at worst one of them
+ * is rejected that would have fitted.
+ *
+ * <p>Limits come from `risk.max-order-quantity`, `risk.max-open-notional`
+ * and `risk.price-band`; `risk.client-limits: mm-1:5000/50000000`
+ * overrides the quantity and notional limits of a client.
+ */
+@Service
+public class RiskService {
+    /** Notional is accumulated in millionths of the quote currency. */
+    static final int NOTIONAL_SCALE = 6;
+
+    private final boolean enabled;
+    private final Limits defaultLimits;
+    private final Map<String, Limits> clientLimits;
+    private final BigDecimal bandBelow;
+    private final BigDecimal bandAbove;
+    private final ConcurrentHashMap<String, LongAdder> exposures = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RiskService(@Value("${risk.enabled:true}") boolean enabled,
+                       @Value("${risk.max-order-quantity:1000}") BigDecimal maxOrderQuantity,
+                       @Value("${risk.max-open-notional:10000000}") BigDecimal maxOpenNotional,
+                       @Value("${risk.price-band:0.1}") BigDecimal priceBand,
+                       @Value("${risk.client-limits:}") String clientLimits) {
+        this.enabled = enabled;
+        this.defaultLimits = new Limits(maxOrderQuantity, maxOpenNotional);
+        this.clientLimits = new HashMap<>();
+        for (String entry : clientLimits.split(",")) {
+            if (entry.isBlank()) continue;
+            int colon = entry.lastIndexOf(':');
+            int slash = entry.indexOf('/', colon + 1);
+            if (colon < 0 || slash < 0) throw new IllegalArgumentException("Not a client:quantity/notional limit: " + entry);
+            try {
+                this.clientLimits.put(entry.substring(0, colon).trim(), new Limits(
+                    new BigDecimal(entry.substring(colon + 1, slash).trim()), new BigDecimal(entry.substring(slash + 1).trim())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a client:quantity/notional limit: " + entry);
+            }
+        }
+        this.bandBelow = priceBand.signum() > 0 ? BigDecimal.ONE.subtract(priceBand) : null;
+        this.bandAbove = priceBand.signum() > 0 ? BigDecimal.ONE.add(priceBand) : null;
+    }
+
+    /** Quantity and open notional limits of a client. */
+    static final class Limits {
+        final BigDecimal maxOrderQuantity;
+        final long maxOpenNotional;
+
+        Limits(BigDecimal maxOrderQuantity, BigDecimal maxOpenNotional) {
+            this.maxOrderQuantity = maxOrderQuantity;
+            this.maxOpenNotional = maxOpenNotional.movePointRight(NOTIONAL_SCALE).longValue();
+        }
+    }
+
+    /**
+     * Check an order against its client's limits and reserve its notional.
+     *
+     * @param reference the instrument's reference price, or null if it has none yet
+     * @return the notional reserved, to be passed back through {@link #release}
+     * @throws OrderRejectedException if a limit would be exceeded; nothing is reserved then
+     */
+    public long check(Order order, BigDecimal reference) {
+        if (!enabled) return reserve(order, reference);
+        Limits limits = limitsOf(order.getClientId());
+        if (order.getQuantity().compareTo(limits.maxOrderQuantity) > 0) {
+            throw new OrderRejectedException("Order quantity " + order.getQuantity().toPlainString()
+                + " exceeds the limit of " + limits.maxOrderQuantity.toPlainString());
+        }
+        if (order.getType().equalsIgnoreCase("limit") && reference != null && bandAbove != null) {
+            // Only the aggressive direction is banded: a buy far below or a
+            // sell far above the market merely rests.
+            boolean buy = order.getSide().equalsIgnoreCase("buy");
+            if (buy ? order.getPrice().compareTo(reference.multiply(bandAbove)) > 0
+                    : order.getPrice().compareTo(reference.multiply(bandBelow)) < 0) {
+                throw new OrderRejectedException("Price " + order.getPrice().toPlainString()
+                    + " is outside the band around the reference price " + reference.toPlainString());
+            }
+        }
+        long notional = notional(valuationPrice(order, reference), order.getQuantity());
+        LongAdder exposure = exposureOf(order.getClientId());
+        exposure.add(notional);
+        if (exposure.sum() > limits.maxOpenNotional) {
+            exposure.add(-notional);
+            throw new OrderRejectedException("Open notional of client " + order.getClientId()
+                + " would exceed the limit of " + BigDecimal.valueOf(limits.maxOpenNotional, NOTIONAL_SCALE).stripTrailingZeros().toPlainString());
+        }
+        return notional;
+    }
+
+    /**
+     * Reserve an order's notional without checking it, for orders that
+     * bypass the checks but later release their notional like any other.
+     *
+     * @return the notional reserved
+     */
+    public long reserve(Order order, BigDecimal reference) {
+        long notional = notional(valuationPrice(order, reference), order.getQuantity());
+        exposureOf(order.getClientId()).add(notional);
+        return notional;
+    }
+
+    /** Give back notional reserved for a client. */
+    public void release(String clientId, long notional) {
+        if (notional != 0) exposureOf(clientId).add(-notional);
+    }
+
+    /** Give back the notional of part of a resting or pending order, valued as it was reserved. */
+    public void release(Order order, BigDecimal quantity) {
+        release(order.getClientId(), notional(valuationPrice(order, null), quantity));
+    }
+
+    /**
+     * Forget every exposure and count only the given resting and pending orders.
+     * Used after recovery and promotion, which rebuild books without
+     * going through the checks.  Submissions must not run meanwhile.
+     */
+    public void reset(Iterable<Order> resting) {
+        exposures.clear();
+        for (Order o : resting) {
+            exposureOf(o.getClientId()).add(notional(valuationPrice(o, null), o.getQuantity().subtract(o.getFilledQuantity())));
+        }
+    }
+
+    /** A client's open notional. */
+    public BigDecimal getOpenNotional(String clientId) {
+        LongAdder exposure = exposures.get(key(clientId));
+        return BigDecimal.valueOf(exposure == null ? 0 : exposure.sum(), NOTIONAL_SCALE);
+    }
+
+    /** Price times quantity in millionths; zero without a price. */
+    public static long notional(BigDecimal price, BigDecimal quantity) {
+        if (price == null || quantity == null) return 0;
+        return price.multiply(quantity).movePointRight(NOTIONAL_SCALE).longValue();
+    }
+
+    private Limits limitsOf(String clientId) {
+        Limits limits = clientLimits.get(key(clientId));
+        return limits != null ? limits : defaultLimits;
+    }
+
+    private LongAdder exposureOf(String clientId) {
+        String key = key(clientId);
+        LongAdder exposure = exposures.get(key);
+        return exposure != null ? exposure : exposures.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    private static String key(String clientId) {
+        return clientId == null ? "" : clientId;
+    }
+
+    /**
+     * Price an order's notional is counted at: the limit price of limit
+     * and stop_limit orders, the stop price of stop orders and the
+     * reference price of market orders.
+     */
+    public static BigDecimal valuationPrice(Order order, BigDecimal reference) {
+        String type = order.getType();
+        if (type.equalsIgnoreCase("limit") || type.equalsIgnoreCase("stop_limit")) return order.getPrice();
+        if (type.equalsIgnoreCase("stop")) return order.getStopPrice();
+        return reference;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.tradeengine.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a settlement run for one business day, as reported by
+ * `GET /admin/settlement/{id}`.  Counters are updated as each
+ * instrument's positions are committed; instruments settled by an
+ * earlier run of the same day are counted as skipped.
+ */
+public class SettlementJob {
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final LocalDate businessDate;
+    private final Instant startedAt = Instant.now();
+    private final AtomicInteger instrumentsSettled = new AtomicInteger();
+    private final AtomicInteger instrumentsSkipped = new AtomicInteger();
+    private final AtomicLong trades = new AtomicLong();
+    private final AtomicLong positions = new AtomicLong();
+    private final AtomicLong unresolvedLegs = new AtomicLong();
+    private volatile int instrumentsTotal;
+    private volatile Status status = Status.RUNNING;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    SettlementJob(String id, LocalDate businessDate) {
+        this.id = id;
+        this.businessDate = businessDate;
+    }
+
+    public String getId() { return id; }
+    public LocalDate getBusinessDate() { return businessDate; }
+    public Status getStatus() { return status; }
+    public int getInstrumentsTotal() { return instrumentsTotal; }
+    public int getInstrumentsSettled() { return instrumentsSettled.get(); }
+    /** Instruments already checkpointed by an earlier run of the same day. */
+    public int getInstrumentsSkipped() { return instrumentsSkipped.get(); }
+    public long getTrades() { return trades.get(); }
+    public long getPositions() { return positions.get(); }
+    /** Trade legs whose order no longer exists, so no client could be charged. */
+    public long getUnresolvedLegs() { return unresolvedLegs.get(); }
+    public Instant getStartedAt() { return startedAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+    public String getError() { return error; }
+
+    public double getTradesPerSecond() {
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        double seconds = Duration.between(startedAt, end).toNanos() / 1e9;
+        return seconds <= 0 ? 0.0 : getTrades() / seconds;
+    }
+
+    void setInstrumentsTotal(int instrumentsTotal) {
+        this.instrumentsTotal = instrumentsTotal;
+    }
+
+    void instrumentSkipped() {
+        instrumentsSkipped.incrementAndGet();
+    }
+
+    void instrumentSettled(long trades, int positions, long unresolvedLegs) {
+        this.trades.addAndGet(trades);
+        this.positions.addAndGet(positions);
+        this.unresolvedLegs.addAndGet(unresolvedLegs);
+        instrumentsSettled.incrementAndGet();
+    }
+
+    void finish(Status status, String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+}
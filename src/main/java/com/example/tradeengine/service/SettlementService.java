@@ -0,0 +1,348 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.model.SettlementCheckpoint;
+import com.example.tradeengine.model.SettlementPosition;
+import com.example.tradeengine.model.Trade;
+import com.example.tradeengine.repository.OrderJdbcRepository;
+import com.example.tradeengine.repository.SettlementCheckpointRepository;
+import com.example.tradeengine.repository.SettlementJdbcRepository;
+import com.example.tradeengine.repository.TradeJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+/**
+ * End‑of‑day netting.  For a business day (UTC) each client's trades
+ * in each instrument are netted into one {@link SettlementPosition}:
+ * quantity bought and sold, the notional paid and received, and fees
+ * at the flat `settlement.fee-rate` on the notional of every leg.
+ *
+ * <p>A run settles the day's instruments in parallel on a fork‑join
+ * pool of `settlement.parallelism` workers.  Each instrument's day is
+ * split into `settlement.slices-per-instrument` time slices whose
+ * trades are streamed by their own cursor and netted independently;
+ * the partial nettings are then merged and the instrument's positions
+ * written in batches together with a {@link SettlementCheckpoint}, in
+ * one transaction.  Instruments that already have a checkpoint for the
+ * day are skipped, so a run that failed part way is resumed by
+ * starting it again.  Memory is bounded by the number of clients per
+ * slice, not the number of trades.
+ *
+ * <p>Runs on `settlement.cron` (UTC) for the previous day, and on
+ * demand through `POST /admin/settlement`.  A standby shares the
+ * primary's database and never writes to it, so it settles nothing
+ * until it is promoted.
+ */
+@Service
+public class SettlementService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SettlementService.class);
+    /** Legacy trades whose clients are looked up per query. */
+    private static final int CLIENT_LOOKUP_BATCH = 1000;
+
+    private final TradeJdbcRepository tradeJdbcRepo;
+    private final OrderJdbcRepository orderJdbcRepo;
+    private final SettlementJdbcRepository settlementJdbcRepo;
+    private final SettlementCheckpointRepository checkpointRepo;
+    private final TransactionTemplate readOnlyTransaction;
+    private final MatchingEngine matchingEngine;
+    private final TransactionTemplate writeTransaction;
+    private final BigDecimal feeRate;
+    private final int slicesPerInstrument;
+    private final ForkJoinPool settlementPool;
+    private final ExecutorService jobRunner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "settlement");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, SettlementJob> jobs = new ConcurrentHashMap<>();
+    private volatile SettlementJob currentJob;
+
+    @Autowired
+    public SettlementService(TradeJdbcRepository tradeJdbcRepo,
+                             OrderJdbcRepository orderJdbcRepo,
+                             SettlementJdbcRepository settlementJdbcRepo,
+                             SettlementCheckpointRepository checkpointRepo,
+                             PlatformTransactionManager transactionManager,
+                             MatchingEngine matchingEngine,
+                             @Value("${settlement.fee-rate:0.001}") BigDecimal feeRate,
+                             @Value("${settlement.slices-per-instrument:24}") int slicesPerInstrument,
+                             @Value("${settlement.parallelism:0}") int parallelism) {
+        this.tradeJdbcRepo = tradeJdbcRepo;
+        this.orderJdbcRepo = orderJdbcRepo;
+        this.settlementJdbcRepo = settlementJdbcRepo;
+        this.checkpointRepo = checkpointRepo;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.matchingEngine = matchingEngine;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.feeRate = feeRate;
+        this.slicesPerInstrument = Math.max(1, slicesPerInstrument);
+        this.settlementPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Settle the previous UTC day.  Skipped on a standby and while a run
+     * is in progress; set `settlement.cron` to `-` to disable.
+     */
+    @Scheduled(cron = "${settlement.cron:0 15 0 * * *}", zone = "UTC")
+    public void settlePreviousDay() {
+        if (matchingEngine.isStandby()) return;
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).minusDays(1);
+        try {
+            startSettlement(day);
+        } catch (IllegalStateException e) {
+            LOGGER.warn("Scheduled settlement of {} skipped: {}", day, e.getMessage());
+        }
+    }
+
+    /**
+     * Start settling a business day in the background.  Only one run
+     * is in progress at a time.
+     *
+     * @return the new job, whose progress can be polled with {@link #getJob(String)}
+     * @throws IllegalStateException if a settlement is already running or the engine is a standby
+     */
+    public synchronized SettlementJob startSettlement(LocalDate businessDate) {
+        if (matchingEngine.isStandby()) {
+            throw new IllegalStateException("Engine is in standby mode");
+        }
+        SettlementJob running = getRunningJob();
+        if (running != null) {
+            throw new IllegalStateException("Settlement " + running.getId() + " of " + running.getBusinessDate() + " is already running");
+        }
+        SettlementJob job = new SettlementJob(UUID.randomUUID().toString(), businessDate);
+        jobs.put(job.getId(), job);
+        currentJob = job;
+        jobRunner.execute(() -> runSettlement(job));
+        return job;
+    }
+
+    /** The settlement currently in progress, or null. */
+    public SettlementJob getRunningJob() {
+        SettlementJob job = currentJob;
+        return job != null && job.getStatus() == SettlementJob.Status.RUNNING ? job : null;
+    }
+
+    public SettlementJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    private void runSettlement(SettlementJob job) {
+        LocalDate date = job.getBusinessDate();
+        Instant from = date.atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant to = date.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        try {
+            List<String> instruments = readOnlyTransaction.execute(status -> tradeJdbcRepo.findInstrumentsBetween(from, to));
+            Set<String> settled = checkpointRepo.findByBusinessDate(date).stream()
+                .map(SettlementCheckpoint::getInstrument)
+                .collect(Collectors.toSet());
+            job.setInstrumentsTotal(instruments.size());
+            LOGGER.info("Settling {} (job {}): {} instruments, {} already settled", date, job.getId(), instruments.size(), settled.size());
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (String instrument : instruments) {
+                if (settled.contains(instrument)) {
+                    job.instrumentSkipped();
+                    continue;
+                }
+                tasks.add(settlementPool.submit(() -> settleInstrument(job, instrument, from, to)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+            job.finish(SettlementJob.Status.COMPLETED, null);
+            LOGGER.info("Settlement {} of {} completed: {} trades netted into {} positions at {} trades/s", job.getId(), date,
+                job.getTrades(), job.getPositions(), Math.round(job.getTradesPerSecond()));
+        } catch (Exception e) {
+            job.finish(SettlementJob.Status.FAILED, e.getMessage());
+            LOGGER.error("Settlement {} of {} failed after {} instruments: {}", job.getId(), date,
+                job.getInstrumentsSettled(), e.getMessage());
+        }
+    }
+
+    private void settleInstrument(SettlementJob job, String instrument, Instant from, Instant to) {
+        Netting netting = new SliceTask(instrument, from, to, slicesPerInstrument).invoke();
+        List<SettlementPosition> positions = netting.positions(job.getBusinessDate(), instrument);
+        writeTransaction.executeWithoutResult(status -> {
+            settlementJdbcRepo.replacePositions(job.getBusinessDate(), instrument, positions);
+            settlementJdbcRepo.insertCheckpoint(job.getBusinessDate(), instrument, netting.getTrades(), positions.size());
+        });
+        job.instrumentSettled(netting.getTrades(), positions.size(), netting.getUnresolvedLegs());
+    }
+
+    /**
+     * Nets the trades of [from, to), halving the range until it is one
+     * slice.  Each slice streams its own cursor in a read‑only
+     * transaction on the worker that runs it.
+     */
+    private final class SliceTask extends RecursiveTask<Netting> {
+        private final String instrument;
+        private final Instant from;
+        private final Instant to;
+        private final int slices;
+
+        SliceTask(String instrument, Instant from, Instant to, int slices) {
+            this.instrument = instrument;
+            this.from = from;
+            this.to = to;
+            this.slices = slices;
+        }
+
+        @Override
+        protected Netting compute() {
+            if (slices > 1) {
+                int left = slices / 2;
+                Instant split = from.plusMillis((to.toEpochMilli() - from.toEpochMilli()) * left / slices);
+                SliceTask head = new SliceTask(instrument, from, split, left);
+                SliceTask tail = new SliceTask(instrument, split, to, slices - left);
+                head.fork();
+                Netting netting = tail.compute();
+                return netting.merge(head.join());
+            }
+            Netting netting = new Netting(feeRate);
+            List<Trade> unattributed = new ArrayList<>();
+            readOnlyTransaction.executeWithoutResult(status -> tradeJdbcRepo.forEachTradeBetween(instrument, from, to, t -> {
+                if (t.getBuyClientId() == null || t.getSellClientId() == null) unattributed.add(t);
+                else netting.add(t);
+            }));
+            resolveClients(unattributed, netting);
+            return netting;
+        }
+    }
+
+    /**
+     * Look up the clients of trades recorded before trades carried
+     * them, from their orders, and net those trades too.
+     */
+    private void resolveClients(List<Trade> trades, Netting netting) {
+        for (int i = 0; i < trades.size(); i += CLIENT_LOOKUP_BATCH) {
+            List<Trade> batch = trades.subList(i, Math.min(trades.size(), i + CLIENT_LOOKUP_BATCH));
+            Set<UUID> orderIds = new HashSet<>();
+            for (Trade t : batch) {
+                if (t.getBuyClientId() == null) orderIds.add(t.getBuyOrderId());
+                if (t.getSellClientId() == null) orderIds.add(t.getSellOrderId());
+            }
+            Map<UUID, String> clients = readOnlyTransaction.execute(status -> orderJdbcRepo.findClientIds(orderIds));
+            for (Trade t : batch) {
+                if (t.getBuyClientId() == null) t.setBuyClientId(clients.get(t.getBuyOrderId()));
+                if (t.getSellClientId() == null) t.setSellClientId(clients.get(t.getSellOrderId()));
+                netting.add(t);
+            }
+        }
+    }
+
+    /**
+     * Per‑client legs of the trades of one instrument.  Not thread
+     * safe: each slice nets into its own and the results are merged.
+     */
+    static final class Netting {
+        private final BigDecimal feeRate;
+        private final Map<String, Legs> clients = new HashMap<>();
+        private long trades;
+        private long unresolvedLegs;
+
+        Netting(BigDecimal feeRate) {
+            this.feeRate = feeRate;
+        }
+
+        long getTrades() { return trades; }
+        long getUnresolvedLegs() { return unresolvedLegs; }
+
+        /** Net a trade; a leg without a client is counted but not charged to anyone. */
+        void add(Trade t) {
+            BigDecimal notional = t.getPrice().multiply(t.getQuantity());
+            BigDecimal fee = notional.multiply(feeRate);
+            trades++;
+            if (t.getBuyClientId() != null) clients.computeIfAbsent(t.getBuyClientId(), c -> new Legs()).buy(t.getQuantity(), notional, fee);
+            else unresolvedLegs++;
+            if (t.getSellClientId() != null) clients.computeIfAbsent(t.getSellClientId(), c -> new Legs()).sell(t.getQuantity(), notional, fee);
+            else unresolvedLegs++;
+        }
+
+        /** Fold another netting of the same instrument into this one. */
+        Netting merge(Netting other) {
+            trades += other.trades;
+            unresolvedLegs += other.unresolvedLegs;
+            other.clients.forEach((client, legs) -> clients.merge(client, legs, Legs::merge));
+            return this;
+        }
+
+        /** One position per client, in client order. */
+        List<SettlementPosition> positions(LocalDate businessDate, String instrument) {
+            List<SettlementPosition> positions = new ArrayList<>(clients.size());
+            for (Map.Entry<String, Legs> e : clients.entrySet()) {
+                Legs legs = e.getValue();
+                SettlementPosition p = new SettlementPosition(businessDate, e.getKey(), instrument);
+                p.setBoughtQuantity(legs.boughtQuantity);
+                p.setSoldQuantity(legs.soldQuantity);
+                p.setNetQuantity(legs.boughtQuantity.subtract(legs.soldQuantity));
+                p.setBoughtNotional(legs.boughtNotional);
+                p.setSoldNotional(legs.soldNotional);
+                p.setNetNotional(legs.soldNotional.subtract(legs.boughtNotional));
+                p.setFees(legs.fees);
+                p.setTradeCount(legs.count);
+                positions.add(p);
+            }
+            positions.sort(Comparator.comparing(SettlementPosition::getClientId));
+            return positions;
+        }
+    }
+
+    private static final class Legs {
+        BigDecimal boughtQuantity = BigDecimal.ZERO;
+        BigDecimal soldQuantity = BigDecimal.ZERO;
+        BigDecimal boughtNotional = BigDecimal.ZERO;
+        BigDecimal soldNotional = BigDecimal.ZERO;
+        BigDecimal fees = BigDecimal.ZERO;
+        long count;
+
+        void buy(BigDecimal quantity, BigDecimal notional, BigDecimal fee) {
+            boughtQuantity = boughtQuantity.add(quantity);
+            boughtNotional = boughtNotional.add(notional);
+            fees = fees.add(fee);
+            count++;
+        }
+
+        void sell(BigDecimal quantity, BigDecimal notional, BigDecimal fee) {
+            soldQuantity = soldQuantity.add(quantity);
+            soldNotional = soldNotional.add(notional);
+            fees = fees.add(fee);
+            count++;
+        }
+
+        Legs merge(Legs other) {
+            boughtQuantity = boughtQuantity.add(other.boughtQuantity);
+            soldQuantity = soldQuantity.add(other.soldQuantity);
+            boughtNotional = boughtNotional.add(other.boughtNotional);
+            soldNotional = soldNotional.add(other.soldNotional);
+            fees = fees.add(other.fees);
+            count += other.count;
+            return this;
+        }
+    }
+}
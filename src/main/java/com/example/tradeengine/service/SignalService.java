@@ -0,0 +1,66 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MarketDataListener;
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.engine.Signals;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Publishes the book signals the matching engine maintains: as the
+ * `signals` SSE event type, which subscribers must ask for by name,
+ * and as per‑instrument gauges.  The gauges read the engine's latest
+ * {@link Signals}, so a scrape costs a volatile read per gauge and
+ * nothing is computed for instruments nobody looks at.
+ */
+@Service
+public class SignalService implements MarketDataListener {
+    private final MatchingEngine matchingEngine;
+    private final StreamService streamService;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> instruments = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public SignalService(MatchingEngine matchingEngine, StreamService streamService, MeterRegistry meterRegistry) {
+        this.matchingEngine = matchingEngine;
+        this.streamService = streamService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        matchingEngine.addListener(this);
+    }
+
+    @Override
+    public void onSignals(Signals signals) {
+        if (instruments.add(signals.getInstrument())) registerGauges(signals.getInstrument());
+        streamService.sendEvent(signals.getInstrument(), signals);
+    }
+
+    private void registerGauges(String instrument) {
+        Map<String, Function<Signals, BigDecimal>> gauges = Map.of(
+            "book_spread", Signals::getSpread,
+            "book_mid", Signals::getMid,
+            "book_microprice", Signals::getMicroprice,
+            "book_depth_weighted_mid", Signals::getDepthWeightedMid,
+            "book_imbalance", Signals::getImbalance,
+            "book_depth_imbalance", Signals::getDepthImbalance,
+            "book_order_flow_imbalance", Signals::getOrderFlowImbalance);
+        gauges.forEach((name, value) -> Gauge.builder(name, matchingEngine, engine -> {
+                BigDecimal v = value.apply(engine.getSignals(instrument));
+                return v == null ? Double.NaN : v.doubleValue();
+            })
+            .tag("instrument", instrument)
+            .register(meterRegistry));
+    }
+}
@@ -1,35 +1,169 @@
 package com.example.tradeengine.service;
 
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.engine.OrderBook;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * SnapshotScheduler periodically triggers snapshot creation for all
- * instruments.  The interval is configured via
- * `snapshot.interval.millis` in application.yml.  Scheduling can be
- * disabled by setting `snapshot.enabled=false`.
+ * SnapshotScheduler decides when each instrument should be snapshotted.
+ * Rather than snapshotting every instrument on a fixed delay, it polls
+ * every `snapshot.adaptive.poll-millis` and estimates how long the
+ * instrument would take to recover right now: loading its book from
+ * the latest snapshot plus replaying the events recorded since.  When
+ * the replay tail pushes that estimate above
+ * `snapshot.adaptive.target-recovery-seconds`, the instrument is
+ * snapshotted.  Idle instruments are never snapshotted, and busy ones
+ * are snapshotted no less often than `snapshot.interval.millis`.
+ * Snapshot writes are rate limited globally to
+ * `snapshot.adaptive.max-snapshots-per-second`, worst instruments first.
+ * The current estimate per instrument is exported as the
+ * `snapshot_estimated_recovery_seconds` gauge.  The tail counts events
+ * recorded by earlier runs of the process too: when an instrument is
+ * first seen, its state starts from the events recorded after its
+ * latest snapshot, so a tail replayed at startup is snapshotted rather
+ * than carried over to the next restart.  Setting
+ * `snapshot.adaptive.enabled=false` restores the fixed interval
+ * behaviour.  Scheduling can be disabled entirely by setting
+ * `snapshot.enabled=false`.  A second job merges long delta snapshot
+ * chains back into full snapshots every
+ * `snapshot.compaction.interval.millis`.
  */
 @Component
 @ConditionalOnProperty(prefix = "snapshot", name = "enabled", havingValue = "true", matchIfMissing = true)
 public class SnapshotScheduler {
     private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotScheduler.class);
     private final SnapshotService snapshotService;
+    private final MatchingEngine matchingEngine;
+    private final MeterRegistry meterRegistry;
+    private final boolean adaptive;
+    private final double targetRecoverySeconds;
+    private final double replayEventsPerSecond;
+    private final double restoreOrdersPerSecond;
+    private final double maxSnapshotsPerSecond;
+    private final long maxIntervalMillis;
+    private final Map<String, InstrumentState> states = new ConcurrentHashMap<>();
+    private double permits = 1.0;
+    private long lastRefillNanos = System.nanoTime();
 
     @Autowired
-    public SnapshotScheduler(SnapshotService snapshotService) {
+    public SnapshotScheduler(SnapshotService snapshotService,
+                             MatchingEngine matchingEngine,
+                             MeterRegistry meterRegistry,
+                             @Value("${snapshot.adaptive.enabled:true}") boolean adaptive,
+                             @Value("${snapshot.adaptive.target-recovery-seconds:2}") double targetRecoverySeconds,
+                             @Value("${snapshot.adaptive.replay-events-per-second:5000}") double replayEventsPerSecond,
+                             @Value("${snapshot.adaptive.restore-orders-per-second:50000}") double restoreOrdersPerSecond,
+                             @Value("${snapshot.adaptive.max-snapshots-per-second:2}") double maxSnapshotsPerSecond,
+                             @Value("${snapshot.interval.millis:300000}") long maxIntervalMillis) {
         this.snapshotService = snapshotService;
+        this.matchingEngine = matchingEngine;
+        this.meterRegistry = meterRegistry;
+        this.adaptive = adaptive;
+        this.targetRecoverySeconds = targetRecoverySeconds;
+        this.replayEventsPerSecond = replayEventsPerSecond;
+        this.restoreOrdersPerSecond = restoreOrdersPerSecond;
+        this.maxSnapshotsPerSecond = maxSnapshotsPerSecond;
+        this.maxIntervalMillis = maxIntervalMillis;
+    }
+
+    /**
+     * Per‑instrument bookkeeping: the engine event count and wall clock
+     * time at the last snapshot, and the latest recovery estimate read
+     * by the gauge.  The engine count starts at 0 on every start, so
+     * before the first snapshot of this run eventsAtSnapshot is negative
+     * by the events recorded since the latest stored snapshot.
+     */
+    private static class InstrumentState {
+        long eventsAtSnapshot;
+        long lastSnapshotMillis = System.currentTimeMillis();
+        volatile double estimatedRecoverySeconds;
     }
 
-    @Scheduled(fixedDelayString = "${snapshot.interval.millis:300000}")
+    @Scheduled(fixedDelayString = "${snapshot.adaptive.poll-millis:1000}")
     public void runSnapshotJob() {
+        // A standby's books mirror the primary's, which snapshots them itself.
+        if (matchingEngine.isStandby()) return;
         try {
-            snapshotService.createSnapshotsForAllInstruments();
+            long now = System.currentTimeMillis();
+            List<String> due = new ArrayList<>();
+            for (String instrument : matchingEngine.getInstrumentNames()) {
+                InstrumentState state = states.computeIfAbsent(instrument, this::register);
+                long eventsSince = matchingEngine.getEventCount(instrument) - state.eventsAtSnapshot;
+                OrderBook book = matchingEngine.getOrderBook(instrument);
+                double loadSeconds = (book.getBids().size() + book.getAsks().size()) / restoreOrdersPerSecond;
+                double tailSeconds = eventsSince / replayEventsPerSecond;
+                state.estimatedRecoverySeconds = loadSeconds + tailSeconds;
+                if (eventsSince == 0) continue;
+                boolean overdue = now - state.lastSnapshotMillis >= maxIntervalMillis;
+                // Snapshotting only shortens the replay tail, so compare the tail
+                // against whatever part of the target the book load leaves over.
+                double tailBudget = Math.max(targetRecoverySeconds - loadSeconds, targetRecoverySeconds / 10);
+                if (overdue || (adaptive && tailSeconds > tailBudget)) {
+                    due.add(instrument);
+                }
+            }
+            due.sort(Comparator.comparingDouble((String i) -> states.get(i).estimatedRecoverySeconds).reversed());
+            for (String instrument : due) {
+                if (adaptive && !tryAcquirePermit()) {
+                    LOGGER.debug("Snapshot rate limit reached; {} instruments deferred", due.size() - due.indexOf(instrument));
+                    break;
+                }
+                InstrumentState state = states.get(instrument);
+                long events = matchingEngine.getEventCount(instrument);
+                snapshotService.createSnapshot(instrument);
+                state.eventsAtSnapshot = events;
+                state.lastSnapshotMillis = now;
+            }
         } catch (Exception e) {
             LOGGER.error("Snapshot scheduler encountered an exception: {}", e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @Scheduled(fixedDelayString = "${snapshot.compaction.interval.millis:60000}")
+    public void runCompactionJob() {
+        if (matchingEngine.isStandby()) return;
+        try {
+            snapshotService.compactSnapshotChains();
+        } catch (Exception e) {
+            LOGGER.error("Snapshot compaction encountered an exception: {}", e.getMessage());
+        }
+    }
+
+    private InstrumentState register(String instrument) {
+        InstrumentState state = new InstrumentState();
+        state.eventsAtSnapshot = matchingEngine.getEventCount(instrument)
+                - snapshotService.countEventsSinceLatestSnapshot(instrument);
+        Gauge.builder("snapshot_estimated_recovery_seconds", state, s -> s.estimatedRecoverySeconds)
+            .tag("instrument", instrument)
+            .register(meterRegistry);
+        return state;
+    }
+
+    /**
+     * Token bucket shared by all instruments.  Only the scheduler
+     * thread calls this, so no synchronisation is needed.
+     */
+    private boolean tryAcquirePermit() {
+        long nowNanos = System.nanoTime();
+        permits = Math.min(Math.max(1.0, maxSnapshotsPerSecond),
+                permits + (nowNanos - lastRefillNanos) / 1e9 * maxSnapshotsPerSecond);
+        lastRefillNanos = nowNanos;
+        if (permits < 1.0) return false;
+        permits -= 1.0;
+        return true;
+    }
+}
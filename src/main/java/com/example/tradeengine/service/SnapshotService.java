@@ -1,25 +1,37 @@
 package com.example.tradeengine.service;
 
+import com.example.tradeengine.engine.BookCapture;
 import com.example.tradeengine.engine.MatchingEngine;
 import com.example.tradeengine.engine.OrderBook;
 import com.example.tradeengine.model.Order;
 import com.example.tradeengine.model.OrderBookSnapshot;
+import com.example.tradeengine.repository.EventRecordRepository;
 import com.example.tradeengine.repository.OrderBookSnapshotRepository;
-import com.example.tradeengine.repository.OrderRepository;
+import com.example.tradeengine.repository.OrderJdbcRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * SnapshotService handles creation and restoration of order book
@@ -27,30 +39,85 @@ import java.util.*;
  * instrument and can be merged with subsequent events to quickly
  * reconstruct state after a crash.  Snapshots may be created on
  * demand via an admin endpoint or periodically by a scheduler.
+ *
+ * <p>To keep snapshot I/O proportional to activity rather than book
+ * size, the service remembers what it last wrote for each instrument
+ * and, once a full snapshot exists, writes only delta snapshots
+ * containing the orders added, changed or removed since then.  A
+ * restore merges the full snapshot with its chain of deltas, and
+ * {@link #compactSnapshotChains()} periodically folds long chains
+ * back into a single full snapshot.
+ *
+ * <p>Every snapshot stores the {@link OrderBook#checksum()} of the book
+ * it describes.  A restore compares the rebuilt book against it and
+ * counts mismatches in `orderbook_checksum_mismatch_total{stage="snapshot"}`.
+ *
+ * <p>The book is read on the instrument's matching thread, between
+ * commands, as a {@link BookCapture}, never by walking the live book
+ * from the snapshot thread.  Each snapshot records the ID of the last
+ * event that capture reflects, and a restore replays exactly the
+ * events after it.
  */
 @Service
 public class SnapshotService {
     private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotService.class);
+    private static final long CAPTURE_TIMEOUT_SECONDS = 10;
+    private static final Comparator<OrderSnapshot> BOOK_ORDER =
+            Comparator.comparing(o -> o.price, Comparator.nullsLast(Comparator.naturalOrder()));
     private final OrderBookSnapshotRepository snapshotRepo;
-    private final OrderRepository orderRepo;
+    private final EventRecordRepository eventRepo;
+    private final OrderJdbcRepository orderJdbcRepo;
+    private final TransactionTemplate transactionTemplate;
     private final MatchingEngine matchingEngine;
     private final EventReplayService replayService;
     private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
     private final long snapshotIntervalMillis;
+    private final boolean deltaEnabled;
+    private final int maxChainLength;
+    private final int restoreChunkSize;
+    private final long historyRetainMillis;
+    private final ConcurrentMap<String, ChainState> chains = new ConcurrentHashMap<>();
 
     @Autowired
     public SnapshotService(OrderBookSnapshotRepository snapshotRepo,
-                           OrderRepository orderRepo,
+                           EventRecordRepository eventRepo,
+                           OrderJdbcRepository orderJdbcRepo,
+                           PlatformTransactionManager transactionManager,
                            MatchingEngine matchingEngine,
                            EventReplayService replayService,
                            ObjectMapper objectMapper,
-                           @Value("${snapshot.interval.millis:300000}") long snapshotIntervalMillis) {
+                           MeterRegistry meterRegistry,
+                           @Value("${snapshot.interval.millis:300000}") long snapshotIntervalMillis,
+                           @Value("${snapshot.delta.enabled:true}") boolean deltaEnabled,
+                           @Value("${snapshot.delta.max-chain-length:12}") int maxChainLength,
+                           @Value("${snapshot.restore.chunk-size:5000}") int restoreChunkSize,
+                           @Value("${snapshot.history.retain-interval-millis:3600000}") long historyRetainMillis) {
         this.snapshotRepo = snapshotRepo;
-        this.orderRepo = orderRepo;
+        this.eventRepo = eventRepo;
+        this.orderJdbcRepo = orderJdbcRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.matchingEngine = matchingEngine;
         this.replayService = replayService;
         this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
         this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.deltaEnabled = deltaEnabled;
+        this.maxChainLength = Math.max(1, maxChainLength);
+        this.restoreChunkSize = Math.max(1, restoreChunkSize);
+        this.historyRetainMillis = historyRetainMillis;
+    }
+
+    /**
+     * Tracks the snapshot chain currently being extended for an
+     * instrument: the full snapshot it starts from, how many deltas
+     * follow it and the order state as of the last snapshot written.
+     * Instances double as the per‑instrument lock for snapshot writes.
+     */
+    private static class ChainState {
+        UUID baseSnapshotId;
+        int length;
+        Map<UUID, OrderSnapshot> lastState = new HashMap<>();
     }
 
     /**
@@ -80,41 +147,167 @@ public class SnapshotService {
         public List<OrderSnapshot> asks;
     }
 
+    /**
+     * Changes to an order book since the previous snapshot in a chain.
+     * Upserts carry the full state of added or changed orders; removed
+     * lists the IDs of orders that left the book.
+     */
+    public static class OrderBookDelta {
+        public List<OrderSnapshot> upserts;
+        public List<UUID> removed;
+    }
+
     /**
      * Create and persist a snapshot for the specified instrument.  The
-     * snapshot captures the current order book state and can be
-     * restored later.  Returns the created snapshot or null if no
-     * orders are present.
+     * first snapshot of an instrument (and every snapshot when deltas
+     * are disabled) is a full snapshot; later ones are deltas against
+     * the previous snapshot in the chain.  Returns the created snapshot
+     * or null if there was nothing to write or the book could not be
+     * captured.
      */
     @Transactional
     public OrderBookSnapshot createSnapshot(String instrument) {
-        OrderBook book = matchingEngine.getOrderBook(instrument);
-        List<Order> bids = book.getBids();
-        List<Order> asks = book.getAsks();
-        if (bids.isEmpty() && asks.isEmpty()) {
-            LOGGER.info("No orders present for instrument {} – skipping snapshot", instrument);
+        ChainState chain = chains.computeIfAbsent(instrument, k -> new ChainState());
+        synchronized (chain) {
+            BookCapture capture = capture(instrument);
+            if (capture == null) return null;
+            // A chain that compaction failed to merge is restarted from the live book
+            boolean full = !deltaEnabled || chain.baseSnapshotId == null || chain.length >= 2 * maxChainLength;
+            if (full) {
+                if (capture.getBids().isEmpty() && capture.getAsks().isEmpty()) {
+                    LOGGER.info("No orders present for instrument {} – skipping snapshot", instrument);
+                    return null;
+                }
+                return writeFullSnapshot(capture, chain);
+            }
+            return writeDeltaSnapshot(capture, chain);
+        }
+    }
+
+    /**
+     * Copy the instrument's book on its matching thread, or null if the
+     * instrument is unknown or its matching thread did not answer within
+     * {@value #CAPTURE_TIMEOUT_SECONDS} s.
+     */
+    private BookCapture capture(String instrument) {
+        CompletableFuture<BookCapture> fut = matchingEngine.captureBook(instrument);
+        if (fut == null) return null;
+        try {
+            return fut.get(CAPTURE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.warn("Failed to capture the order book of {} for a snapshot: {}", instrument, e.toString());
             return null;
         }
+    }
+
+    private OrderBookSnapshot writeFullSnapshot(BookCapture capture, ChainState chain) {
+        String instrument = capture.getInstrument();
+        List<Order> bids = capture.getBids();
+        List<Order> asks = capture.getAsks();
         OrderBookData data = new OrderBookData();
         data.bids = new ArrayList<>();
         data.asks = new ArrayList<>();
+        Map<UUID, OrderSnapshot> state = new HashMap<>();
         for (Order o : bids) {
-            data.bids.add(toSnapshot(o));
+            OrderSnapshot snap = toSnapshot(o);
+            data.bids.add(snap);
+            state.put(snap.orderId, snap);
         }
         for (Order o : asks) {
-            data.asks.add(toSnapshot(o));
+            OrderSnapshot snap = toSnapshot(o);
+            data.asks.add(snap);
+            state.put(snap.orderId, snap);
         }
-        String json;
+        String json = serialize(instrument, data);
+        if (json == null) return null;
+        OrderBookSnapshot snapshot = new OrderBookSnapshot(instrument, capture.getTimestamp(), json);
+        snapshot.setChecksum(checksumOf(state.values()));
+        snapshot.setLastEventId(capture.getLastEventId());
+        snapshotRepo.save(snapshot);
+        chain.baseSnapshotId = snapshot.getSnapshotId();
+        chain.length = 0;
+        chain.lastState = state;
+        LOGGER.info("Created snapshot {} for instrument {} with {} bids and {} asks", snapshot.getSnapshotId(), instrument, bids.size(), asks.size());
+        return snapshot;
+    }
+
+    /**
+     * Write a delta holding only the orders that differ from the state
+     * captured by the previous snapshot in the chain.  Unchanged orders
+     * are carried over into the new chain state without being copied.
+     */
+    private OrderBookSnapshot writeDeltaSnapshot(BookCapture capture, ChainState chain) {
+        String instrument = capture.getInstrument();
+        Map<UUID, OrderSnapshot> previous = chain.lastState;
+        Map<UUID, OrderSnapshot> state = new HashMap<>(Math.max(16, previous.size() * 4 / 3));
+        OrderBookDelta delta = new OrderBookDelta();
+        delta.upserts = new ArrayList<>();
+        delta.removed = new ArrayList<>();
+        for (List<Order> side : List.of(capture.getBids(), capture.getAsks())) {
+            for (Order o : side) {
+                OrderSnapshot prev = previous.get(o.getOrderId());
+                if (prev != null && !hasChanged(prev, o)) {
+                    state.put(prev.orderId, prev);
+                    continue;
+                }
+                OrderSnapshot snap = toSnapshot(o);
+                delta.upserts.add(snap);
+                state.put(snap.orderId, snap);
+            }
+        }
+        for (UUID id : previous.keySet()) {
+            if (!state.containsKey(id)) delta.removed.add(id);
+        }
+        if (delta.upserts.isEmpty() && delta.removed.isEmpty()) {
+            LOGGER.debug("No changes for instrument {} since last snapshot – skipping delta", instrument);
+            return null;
+        }
+        String json = serialize(instrument, delta);
+        if (json == null) return null;
+        OrderBookSnapshot snapshot = new OrderBookSnapshot(instrument, capture.getTimestamp(), json,
+                OrderBookSnapshot.KIND_DELTA, chain.baseSnapshotId);
+        snapshot.setChecksum(checksumOf(state.values()));
+        snapshot.setLastEventId(capture.getLastEventId());
+        snapshotRepo.save(snapshot);
+        chain.length++;
+        chain.lastState = state;
+        LOGGER.info("Created delta snapshot {} for instrument {} with {} upserts and {} removals (chain length {})",
+                snapshot.getSnapshotId(), instrument, delta.upserts.size(), delta.removed.size(), chain.length);
+        return snapshot;
+    }
+
+    /**
+     * Checksum of the book holding the resting orders among the given
+     * snapshot orders, computed from what is stored rather than from the
+     * live book, which may have moved on.
+     */
+    private static long checksumOf(Collection<OrderSnapshot> orders) {
+        long sum = 0;
+        for (OrderSnapshot o : orders) {
+            if (!"open".equals(o.status) && !"partially_filled".equals(o.status)) continue;
+            BigDecimal filled = o.filledQuantity == null ? BigDecimal.ZERO : o.filledQuantity;
+            sum += OrderBook.orderHash(o.orderId, o.price, o.quantity.subtract(filled), o.side);
+        }
+        return sum;
+    }
+
+    private boolean hasChanged(OrderSnapshot prev, Order order) {
+        return !Objects.equals(prev.status, order.getStatus())
+                || prev.filledQuantity == null
+                || order.getFilledQuantity() == null
+                || prev.filledQuantity.compareTo(order.getFilledQuantity()) != 0;
+    }
+
+    private String serialize(String instrument, Object data) {
         try {
-            json = objectMapper.writeValueAsString(data);
+            return objectMapper.writeValueAsString(data);
         } catch (JsonProcessingException e) {
             LOGGER.error("Failed to serialize snapshot for {}: {}", instrument, e.getMessage());
             return null;
         }
-        OrderBookSnapshot snapshot = new OrderBookSnapshot(instrument, Instant.now(), json);
-        snapshotRepo.save(snapshot);
-        LOGGER.info("Created snapshot {} for instrument {} with {} bids and {} asks", snapshot.getSnapshotId(), instrument, bids.size(), asks.size());
-        return snapshot;
     }
 
     /**
@@ -155,73 +348,279 @@ public class SnapshotService {
      * Restore state from the latest snapshot of the given instrument and
      * apply any subsequent events.  If no snapshot exists, this method
      * does nothing.  Existing orders in the DB and order book for this
-     * instrument will be overwritten.
+     * instrument will be overwritten, and the instrument's book image is
+     * rewritten from the restored book.  The matching engine is held in
+     * maintenance meanwhile, and client exposures are recounted from the
+     * rebuilt books afterwards.
+     *
+     * @return number of snapshot orders and events read
      */
-    @Transactional
-    public void restoreLatestSnapshot(String instrument) {
+    public long restoreLatestSnapshot(String instrument) {
+        matchingEngine.beginMaintenance();
+        try {
+            long read = restoreLatest(instrument);
+            matchingEngine.rebuildExposure();
+            return read;
+        } finally {
+            matchingEngine.endMaintenance();
+        }
+    }
+
+    private long restoreLatest(String instrument) {
         Optional<OrderBookSnapshot> optionalSnapshot = snapshotRepo.findTopByInstrumentOrderByTimestampDesc(instrument);
         if (optionalSnapshot.isEmpty()) {
             LOGGER.info("No snapshot found for {}", instrument);
-            return;
+            return 0;
         }
         OrderBookSnapshot snapshot = optionalSnapshot.get();
-        restoreSnapshot(snapshot);
+        long read = restoreSnapshot(snapshot);
+        replayService.syncImage(instrument);
+        return read;
     }
 
     /**
-     * Restore state from the provided snapshot and apply events that
-     * occurred after the snapshot timestamp.  Clears the in‑memory
-     * order book for the instrument and overwrites existing orders in
-     * the database with those in the snapshot.  Trades are not
-     * affected during snapshot restoration; they are updated when
-     * replaying events.
+     * Restore state from the provided snapshot and apply the events
+     * recorded after the last event it reflects.  A delta snapshot is
+     * resolved by merging its full base snapshot with every delta of
+     * the chain up to and including it.  The in‑memory order book is
+     * rebuilt in one linear pass from the snapshot's sorted sides, and
+     * only database rows that differ from the snapshot are written, in
+     * chunks of `snapshot.restore.chunk-size` orders that each commit
+     * separately.  Trades are not affected during snapshot restoration;
+     * they are updated when replaying the instrument's events.
+     *
+     * @return number of snapshot orders and events read
      */
-    @Transactional
-    public void restoreSnapshot(OrderBookSnapshot snapshot) {
+    public long restoreSnapshot(OrderBookSnapshot snapshot) {
+        long start = System.nanoTime();
         String instrument = snapshot.getInstrument();
-        // Clear current order book for this instrument
-        matchingEngine.getOrderBook(instrument).clear();
-        // Deserialize snapshot data
-        OrderBookData data;
+        ResolvedChain chainData = resolveChain(snapshot);
+        if (chainData == null) return 0;
+        OrderBookSnapshot base = chainData.base;
+        List<OrderBookSnapshot> deltas = chainData.deltas;
+        Map<UUID, OrderSnapshot> merged = chainData.merged;
+        List<Order> bids = new ArrayList<>();
+        List<Order> asks = new ArrayList<>();
+        List<Order> all = new ArrayList<>(merged.size());
+        for (OrderSnapshot snap : merged.values()) {
+            Order order = toOrderEntity(snap);
+            all.add(order);
+            if ("open".equals(order.getStatus()) || "partially_filled".equals(order.getStatus())) {
+                ("buy".equalsIgnoreCase(order.getSide()) ? bids : asks).add(order);
+            }
+        }
+        int written = 0;
+        for (int from = 0; from < all.size(); from += restoreChunkSize) {
+            List<Order> chunk = all.subList(from, Math.min(all.size(), from + restoreChunkSize));
+            Integer n = transactionTemplate.execute(status -> orderJdbcRepo.upsertChanged(chunk));
+            written += n == null ? 0 : n;
+        }
+        // Build the book only after every chunk is stored so entity versions match the rows
+        OrderBook book = matchingEngine.getOrderBook(instrument);
+        book.loadSorted(bids, asks);
+        if (snapshot.getChecksum() != null && book.checksum() != snapshot.getChecksum()) {
+            meterRegistry.counter("orderbook_checksum_mismatch_total", "stage", "snapshot").increment();
+            LOGGER.error("Order book for {} restored from snapshot {} has checksum {}, snapshot recorded {}", instrument,
+                    snapshot.getSnapshotId(), Long.toHexString(book.checksum()), Long.toHexString(snapshot.getChecksum()));
+        }
+        // Continue the restored chain so the next snapshot can be a delta
+        ChainState chain = chains.computeIfAbsent(instrument, k -> new ChainState());
+        synchronized (chain) {
+            chain.baseSnapshotId = base.getSnapshotId();
+            chain.length = deltas.size();
+            chain.lastState = merged;
+        }
+        // Apply this instrument's events after the snapshot
+        int events = snapshot.getLastEventId() != null
+                ? replayService.replayAfterEvent(instrument, snapshot.getLastEventId())
+                : replayService.replayAfter(instrument, snapshot.getTimestamp());
+        LOGGER.info("Restored order book for {} from snapshot {} ({} deltas, {} orders, {} rows written) in {} ms and merged {} subsequent events",
+                instrument, base.getSnapshotId(), deltas.size(), all.size(), written, (System.nanoTime() - start) / 1_000_000, events);
+        return all.size() + events;
+    }
+
+    /**
+     * Number of the instrument's events a restore from the snapshot
+     * would replay: those after its last event, or for older snapshots
+     * those after its timestamp.
+     */
+    public long countEventsAfter(OrderBookSnapshot snapshot) {
+        return snapshot.getLastEventId() != null
+                ? eventRepo.countByInstrumentAndIdGreaterThan(snapshot.getInstrument(), snapshot.getLastEventId())
+                : eventRepo.countByInstrumentAndTimestampAfter(snapshot.getInstrument(), snapshot.getTimestamp());
+    }
+
+    /**
+     * Number of the instrument's recorded events not covered by its
+     * latest snapshot, i.e. the replay tail a restore would apply now;
+     * all of its events if it has no snapshot.
+     */
+    public long countEventsSinceLatestSnapshot(String instrument) {
+        return snapshotRepo.findTopByInstrumentOrderByTimestampDesc(instrument)
+                .map(this::countEventsAfter)
+                .orElseGet(() -> eventRepo.countByInstrumentAndIdGreaterThan(instrument, 0L));
+    }
+
+    /** A snapshot resolved to its full base, the deltas up to it and the merged order state. */
+    private static class ResolvedChain {
+        final OrderBookSnapshot base;
+        final List<OrderBookSnapshot> deltas;
+        final Map<UUID, OrderSnapshot> merged;
+        ResolvedChain(OrderBookSnapshot base, List<OrderBookSnapshot> deltas, Map<UUID, OrderSnapshot> merged) {
+            this.base = base;
+            this.deltas = deltas;
+            this.merged = merged;
+        }
+    }
+
+    /**
+     * Resolve a full or delta snapshot to the order state it describes,
+     * or null if its chain is broken or unreadable.
+     */
+    private ResolvedChain resolveChain(OrderBookSnapshot snapshot) {
+        OrderBookSnapshot base = snapshot;
+        List<OrderBookSnapshot> deltas = List.of();
+        if (snapshot.isDelta()) {
+            Optional<OrderBookSnapshot> optionalBase = snapshotRepo.findById(snapshot.getBaseSnapshotId());
+            if (optionalBase.isEmpty()) {
+                LOGGER.error("Base snapshot {} of delta {} is missing", snapshot.getBaseSnapshotId(), snapshot.getSnapshotId());
+                return null;
+            }
+            base = optionalBase.get();
+            deltas = new ArrayList<>();
+            for (OrderBookSnapshot d : snapshotRepo.findByBaseSnapshotIdOrderByTimestampAsc(base.getSnapshotId())) {
+                if (d.getTimestamp().isAfter(snapshot.getTimestamp())) break;
+                deltas.add(d);
+            }
+        }
+        Map<UUID, OrderSnapshot> merged = mergeChain(base, deltas);
+        return merged == null ? null : new ResolvedChain(base, deltas, merged);
+    }
+
+    /**
+     * The open and partially filled orders a full or delta snapshot
+     * describes, as new detached entities, without touching the live
+     * book or the database.  Returns null if the snapshot cannot be
+     * read.
+     */
+    public List<Order> readOpenOrders(OrderBookSnapshot snapshot) {
+        ResolvedChain chainData = resolveChain(snapshot);
+        if (chainData == null) return null;
+        List<Order> open = new ArrayList<>();
+        for (OrderSnapshot snap : chainData.merged.values()) {
+            if ("open".equals(snap.status) || "partially_filled".equals(snap.status)) {
+                open.add(toOrderEntity(snap));
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Apply a chain of deltas to a full snapshot and return the merged
+     * order state keyed by order ID, or null if any link of the chain
+     * cannot be read.
+     */
+    private Map<UUID, OrderSnapshot> mergeChain(OrderBookSnapshot base, List<OrderBookSnapshot> deltas) {
+        Map<UUID, OrderSnapshot> merged = new LinkedHashMap<>();
         try {
-            data = objectMapper.readValue(snapshot.getData(), OrderBookData.class);
-        } catch (JsonProcessingException e) {
-            LOGGER.error("Failed to deserialize snapshot {}: {}", snapshot.getSnapshotId(), e.getMessage());
-            return;
-        }
-        // Restore orders from snapshot
-        if (data.bids != null) {
-            for (OrderSnapshot snap : data.bids) {
-                Order order = toOrderEntity(snap);
-                orderRepo.save(order);
-                if ("open".equals(order.getStatus()) || "partially_filled".equals(order.getStatus())) {
-                    matchingEngine.getOrderBook(instrument).addLimitOrder(order);
-                }
+            OrderBookData data = objectMapper.readValue(base.getData(), OrderBookData.class);
+            if (data.bids != null) data.bids.forEach(o -> merged.put(o.orderId, o));
+            if (data.asks != null) data.asks.forEach(o -> merged.put(o.orderId, o));
+            for (OrderBookSnapshot d : deltas) {
+                OrderBookDelta delta = objectMapper.readValue(d.getData(), OrderBookDelta.class);
+                if (delta.removed != null) delta.removed.forEach(merged::remove);
+                if (delta.upserts != null) delta.upserts.forEach(o -> merged.put(o.orderId, o));
             }
+        } catch (JsonProcessingException e) {
+            LOGGER.error("Failed to deserialize snapshot chain starting at {}: {}", base.getSnapshotId(), e.getMessage());
+            return null;
         }
-        if (data.asks != null) {
-            for (OrderSnapshot snap : data.asks) {
-                Order order = toOrderEntity(snap);
-                orderRepo.save(order);
-                if ("open".equals(order.getStatus()) || "partially_filled".equals(order.getStatus())) {
-                    matchingEngine.getOrderBook(instrument).addLimitOrder(order);
+        return merged;
+    }
+
+    /**
+     * Merge every delta chain that has reached the configured maximum
+     * length into a new full snapshot built from the stored chain, and
+     * delete the merged snapshots.  The live order book is not read, so
+     * compaction never competes with matching.
+     *
+     * <p>A merged chain's full snapshot is kept, without its deltas, if
+     * the previous full snapshot of the instrument is at least
+     * `snapshot.history.retain-interval-millis` older.  These retained
+     * snapshots are the persistent checkpoints that
+     * {@link BookHistoryService} starts point‑in‑time rebuilds from; 0
+     * keeps none.
+     */
+    @Transactional
+    public void compactSnapshotChains() {
+        for (String instrument : snapshotRepo.findDistinctInstruments()) {
+            ChainState chain = chains.computeIfAbsent(instrument, k -> new ChainState());
+            synchronized (chain) {
+                Optional<OrderBookSnapshot> latest = snapshotRepo.findTopByInstrumentOrderByTimestampDesc(instrument);
+                if (latest.isEmpty() || !latest.get().isDelta()) continue;
+                UUID baseId = latest.get().getBaseSnapshotId();
+                List<OrderBookSnapshot> deltas = snapshotRepo.findByBaseSnapshotIdOrderByTimestampAsc(baseId);
+                if (deltas.size() < maxChainLength) continue;
+                Optional<OrderBookSnapshot> base = snapshotRepo.findById(baseId);
+                if (base.isEmpty()) continue;
+                Map<UUID, OrderSnapshot> merged = mergeChain(base.get(), deltas);
+                if (merged == null) continue;
+                OrderBookData data = new OrderBookData();
+                data.bids = new ArrayList<>();
+                data.asks = new ArrayList<>();
+                for (OrderSnapshot o : merged.values()) {
+                    ("buy".equalsIgnoreCase(o.side) ? data.bids : data.asks).add(o);
+                }
+                data.bids.sort(BOOK_ORDER.reversed().thenComparing(o -> o.createdAt, Comparator.nullsLast(Comparator.naturalOrder())));
+                data.asks.sort(BOOK_ORDER.thenComparing(o -> o.createdAt, Comparator.nullsLast(Comparator.naturalOrder())));
+                String json = serialize(instrument, data);
+                if (json == null) continue;
+                OrderBookSnapshot last = deltas.get(deltas.size() - 1);
+                OrderBookSnapshot full = new OrderBookSnapshot(instrument, last.getTimestamp(), json);
+                full.setChecksum(checksumOf(merged.values()));
+                full.setLastEventId(last.getLastEventId());
+                snapshotRepo.save(full);
+                if (retainAsHistory(base.get())) {
+                    snapshotRepo.deleteDeltas(baseId);
+                } else {
+                    snapshotRepo.deleteChain(baseId);
+                }
+                if (baseId.equals(chain.baseSnapshotId) && chain.length == deltas.size()) {
+                    chain.baseSnapshotId = full.getSnapshotId();
+                    chain.length = 0;
+                } else {
+                    // Our view of the chain is stale; start over with a full snapshot
+                    chain.baseSnapshotId = null;
                 }
+                LOGGER.info("Compacted {} delta snapshots for {} into full snapshot {}", deltas.size(), instrument, full.getSnapshotId());
             }
         }
-        // Apply events after the snapshot
-        replayService.replayAfter(snapshot.getTimestamp());
-        LOGGER.info("Restored order book for {} from snapshot {} and merged subsequent events", instrument, snapshot.getSnapshotId());
+    }
+
+    /** Whether a full snapshot falls in a retention interval that has no full snapshot yet. */
+    private boolean retainAsHistory(OrderBookSnapshot base) {
+        if (historyRetainMillis <= 0) return false;
+        Optional<OrderBookSnapshot> previous = snapshotRepo.findTopByInstrumentAndKindAndTimestampLessThanOrderByTimestampDesc(
+                base.getInstrument(), OrderBookSnapshot.KIND_FULL, base.getTimestamp());
+        return previous.isEmpty()
+                || Duration.between(previous.get().getTimestamp(), base.getTimestamp()).toMillis() >= historyRetainMillis;
     }
 
     /**
      * Restore all instruments that have snapshots.  Iterates over
-     * distinct instruments in the snapshot repository and calls
-     * restoreLatestSnapshot() for each.
+     * distinct instruments in the snapshot repository and restores the
+     * latest snapshot of each, in one maintenance window, then recounts
+     * client exposures once.
      */
-    @Transactional
     public void restoreAllLatestSnapshots() {
-        for (String instrument : snapshotRepo.findDistinctInstruments()) {
-            restoreLatestSnapshot(instrument);
+        matchingEngine.beginMaintenance();
+        try {
+            for (String instrument : snapshotRepo.findDistinctInstruments()) {
+                restoreLatest(instrument);
+            }
+            matchingEngine.rebuildExposure();
+        } finally {
+            matchingEngine.endMaintenance();
         }
     }
 
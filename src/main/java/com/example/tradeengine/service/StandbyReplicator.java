@@ -0,0 +1,198 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.repository.EventRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StandbyReplicator keeps a standby process's order books warm by
+ * tailing the primary's committed events from the events table and
+ * applying them without matching or writing.  It is active only when
+ * `standby.enabled=true`, in which case the matching engine rejects
+ * orders until {@link #promote()} is called through
+ * `POST /admin/promote`.
+ *
+ * <p>The standby recovers its books at startup from book images and
+ * the orders table, never from snapshots, since restoring a snapshot
+ * writes to the database it shares with the primary.
+ * Tailing starts from the highest event ID seen before that recovery,
+ * so events committed while recovering are applied again; events carry
+ * full order state, so re‑applying them converges on the same book.
+ * Replication lag is exported as `standby_replication_lag_seconds` and
+ * `standby_replication_lag_events`.  Book checksums recorded by the
+ * primary are verified for events committed after startup recovery;
+ * mismatches are counted in
+ * `orderbook_checksum_mismatch_total{stage="standby"}`.
+ */
+@Component
+@ConditionalOnProperty(prefix = "standby", name = "enabled", havingValue = "true")
+public class StandbyReplicator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StandbyReplicator.class);
+    private final EventRecordRepository eventRepo;
+    private final MatchingEngine matchingEngine;
+    private final RecoveryCoordinator recoveryCoordinator;
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final long pollMillis;
+    private final int batchSize;
+    private final long gapTimeoutMillis;
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "standby-replicator");
+        t.setDaemon(true);
+        return t;
+    });
+    private Counter eventsApplied;
+    private Counter checksumMismatches;
+    private long mismatchesReported;
+    private EventTailer tailer;
+    private volatile long primaryHighWater;
+
+    @Autowired
+    public StandbyReplicator(EventRecordRepository eventRepo,
+                             MatchingEngine matchingEngine,
+                             RecoveryCoordinator recoveryCoordinator,
+                             IdempotencyService idempotencyService,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${standby.poll-millis:50}") long pollMillis,
+                             @Value("${standby.batch-size:1000}") int batchSize,
+                             @Value("${standby.gap-timeout-millis:500}") long gapTimeoutMillis) {
+        this.eventRepo = eventRepo;
+        this.matchingEngine = matchingEngine;
+        this.recoveryCoordinator = recoveryCoordinator;
+        this.idempotencyService = idempotencyService;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.pollMillis = pollMillis;
+        this.batchSize = Math.max(1, batchSize);
+        this.gapTimeoutMillis = gapTimeoutMillis;
+    }
+
+    /**
+     * Capture the tailing start point before startup recovery runs.
+     */
+    @PostConstruct
+    public void init() {
+        Long maxId = eventRepo.findMaxId();
+        long start = maxId == null ? 0L : maxId;
+        primaryHighWater = start;
+        tailer = new EventTailer(
+            (after, limit) -> eventRepo.findByIdGreaterThanOrderById(after, PageRequest.of(0, limit)),
+            matchingEngine::getOrderBook, objectMapper, batchSize, gapTimeoutMillis, start, Clock.systemUTC());
+        eventsApplied = meterRegistry.counter("standby_events_applied_total");
+        checksumMismatches = meterRegistry.counter("orderbook_checksum_mismatch_total", "stage", "standby");
+        Gauge.builder("standby_replication_lag_seconds", this, r -> r.tailer.getLagSeconds()).register(meterRegistry);
+        Gauge.builder("standby_replication_lag_events", this,
+            r -> Math.max(0, r.primaryHighWater - r.tailer.getCursor())).register(meterRegistry);
+    }
+
+    /**
+     * Start tailing once startup recovery has finished.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        Long verifyAfter = eventRepo.findMaxId();
+        if (verifyAfter != null) tailer.verifyAfter(verifyAfter);
+        LOGGER.info("Standby tailing events after id {}", tailer.getCursor());
+        poller.scheduleWithFixedDelay(this::pollSafely, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void pollSafely() {
+        if (!matchingEngine.isStandby()) return;
+        try {
+            Long maxId = eventRepo.findMaxId();
+            if (maxId != null) primaryHighWater = maxId;
+            int applied;
+            do {
+                applied = tailer.poll();
+                eventsApplied.increment(applied);
+            } while (applied >= batchSize);
+            matchingEngine.publishDepth();
+            reportMismatches();
+        } catch (Exception e) {
+            LOGGER.error("Standby poll failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stop tailing, apply whatever the primary committed last and let
+     * the matching engine accept orders.  Book images, if enabled, are
+     * rewritten so a later restart of this process starts from them,
+     * and the idempotency filter is seeded again from Redis.
+     *
+     * @return milliseconds taken
+     */
+    public synchronized long promote() {
+        long start = System.nanoTime();
+        poller.shutdownNow();
+        if (matchingEngine.isStandby()) {
+            try {
+                eventsApplied.increment(tailer.catchUp(gapTimeoutMillis, 10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while catching up", e);
+            } catch (Exception e) {
+                // The primary's database is unreachable; promote with what was applied.
+                LOGGER.error("Standby catch-up failed, promoting at event {}: {}", tailer.getLastAppliedId(), e.getMessage());
+            }
+            reportMismatches();
+            // Events do not carry stop books; take the primary's pending stops from the orders table
+            try {
+                recoveryCoordinator.reloadStops();
+            } catch (Exception e) {
+                LOGGER.error("Could not reload pending stops on promotion: {}", e.getMessage());
+            }
+            // The idempotency filter was seeded at startup; the primary has stored keys since
+            idempotencyService.reseedFilter();
+            matchingEngine.publishDepth();
+            for (Map.Entry<String, Long> e : tailer.getLastAppliedByInstrument().entrySet()) {
+                if (!e.getKey().isEmpty()) matchingEngine.syncImage(e.getKey(), e.getValue());
+            }
+            matchingEngine.promote();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        LOGGER.warn("Promoted to primary at event {} in {} ms", tailer.getLastAppliedId(), millis);
+        return millis;
+    }
+
+    private void reportMismatches() {
+        long total = tailer.getChecksumMismatches();
+        if (total > mismatchesReported) {
+            checksumMismatches.increment(total - mismatchesReported);
+            LOGGER.error("Standby books diverged from the primary: {} checksum mismatches, first at event {}",
+                total, tailer.getFirstMismatchEventId());
+            mismatchesReported = total;
+        }
+    }
+
+    public long getLastAppliedId() { return tailer.getLastAppliedId(); }
+    public double getLagSeconds() { return tailer.getLagSeconds(); }
+    public long getLagEvents() { return Math.max(0, primaryHighWater - tailer.getCursor()); }
+    public long getChecksumMismatches() { return tailer.getChecksumMismatches(); }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.tradeengine.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+/**
+ * An event on its way to stream subscribers, serialized at most once
+ * and shared by every subscriber's buffer and the replay ring of its
+ * instrument.  Events with a conflation key describe the latest state
+ * of something, such as an order, so a newer event with the same key
+ * may replace an older one still waiting to be sent.
+ *
+ * <p>The event id is the id of the event log record the event reports
+ * and is sent to clients as the SSE id, so a reconnecting client can
+ * name the last event it saw.  The sequence is assigned by the
+ * dispatcher and orders events as they were dispatched; event ids of
+ * different instruments may be dispatched out of order, since they are
+ * allocated before their transactions commit.
+ */
+public final class StreamEvent {
+    private final long sequence;
+    private final Long eventId;
+    private final String type;
+    private final String instrument;
+    private final List<String> clientIds;
+    private final Object conflationKey;
+    private final Object payload;
+    private final long publishedNanos;
+    private volatile String json;
+
+    StreamEvent(long sequence, Long eventId, String type, String instrument, List<String> clientIds,
+                Object conflationKey, Object payload, String json, long publishedNanos) {
+        this.sequence = sequence;
+        this.eventId = eventId;
+        this.type = type;
+        this.instrument = instrument;
+        this.clientIds = clientIds;
+        this.conflationKey = conflationKey;
+        this.payload = payload;
+        this.json = json;
+        this.publishedNanos = publishedNanos;
+    }
+
+    /** Dispatch order, or 0 for events read back from the event log. */
+    public long getSequence() { return sequence; }
+    /** Id of the event log record, or null if the event was not recorded. */
+    public Long getEventId() { return eventId; }
+    public String getType() { return type; }
+    public String getInstrument() { return instrument; }
+    public List<String> getClientIds() { return clientIds; }
+    /** Key of the state this event supersedes, or null if it cannot be conflated. */
+    public Object getConflationKey() { return conflationKey; }
+    /** {@link System#nanoTime()} when the event was published. */
+    public long getPublishedNanos() { return publishedNanos; }
+
+    /**
+     * The JSON sent to clients, rendered on first use.  Returns null if
+     * the payload cannot be serialized.
+     */
+    String json(ObjectMapper objectMapper) throws JsonProcessingException {
+        String s = json;
+        if (s == null && payload != null) {
+            s = objectMapper.writeValueAsString(payload);
+            json = s;
+        }
+        return s;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.tradeengine.service;
+
+import java.util.List;
+
+/**
+ * Bounded buffer of the most recent stream events of one instrument,
+ * in dispatch order.  Appended to by the stream dispatcher and read by
+ * reconnecting subscribers.
+ */
+final class StreamRing {
+    private final StreamEvent[] events;
+    /** Events appended so far; the next one goes to {@code appended % capacity}. */
+    private long appended;
+    /** Sequence of the newest event overwritten, or 0 if none has been. */
+    private long evictedThrough;
+
+    StreamRing(int capacity) {
+        this.events = new StreamEvent[Math.max(1, capacity)];
+    }
+
+    synchronized void add(StreamEvent ev) {
+        int slot = (int) (appended % events.length);
+        StreamEvent old = events[slot];
+        if (old != null) evictedThrough = old.getSequence();
+        events[slot] = ev;
+        appended++;
+    }
+
+    /** Dispatch sequence of the event with the given log id, or -1 if the ring does not hold it. */
+    synchronized long sequenceOf(long eventId) {
+        int held = (int) Math.min(appended, events.length);
+        for (int i = 1; i <= held; i++) {
+            StreamEvent ev = events[(int) ((appended - i) % events.length)];
+            Long id = ev.getEventId();
+            if (id != null && id == eventId) return ev.getSequence();
+        }
+        return -1;
+    }
+
+    /**
+     * Append the held events dispatched after the given sequence to
+     * {@code out}, oldest first.  Returns false, appending nothing, if
+     * some of them have already been overwritten.
+     */
+    synchronized boolean collectAfter(long sequence, StreamService.Filter filter, List<StreamEvent> out) {
+        if (evictedThrough > sequence) return false;
+        int held = (int) Math.min(appended, events.length);
+        for (long i = appended - held; i < appended; i++) {
+            StreamEvent ev = events[(int) (i % events.length)];
+            if (ev.getSequence() > sequence && filter.matches(ev)) out.add(ev);
+        }
+        return true;
+    }
+}
@@ -1,34 +1,738 @@
 package com.example.tradeengine.service;
 
+import com.example.tradeengine.model.EventRecord;
+import com.example.tradeengine.model.Order;
+import com.example.tradeengine.repository.EventRecordRepository;
+import com.example.tradeengine.repository.OrderRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages a collection of SSE emitters and dispatches events to
  * subscribed clients.
+ *
+ * <p>{@link #sendEvent(Long, String, Object, String...)} only enqueues
+ * the event, so publishing costs the matching thread the same whatever
+ * the number or speed of subscribers.  A dispatcher thread serializes
+ * each event once and appends it to every subscriber's bounded buffer;
+ * a small pool of sender threads writes buffers to their emitters.
+ * When a buffer is full, a subscriber with the `conflate` policy has
+ * pending order updates replaced by newer states of the same order, and
+ * is disconnected only if the buffer is full of events that cannot be
+ * conflated; one with the `disconnect` policy is disconnected at once.
+ * Publish‑to‑deliver latency is exported as
+ * `stream_publish_to_deliver_seconds` and lost events as
+ * `stream_events_dropped_total`.
+ *
+ * <p>Subscribers may restrict their stream to some instruments, one
+ * client and some event types.  Subscriptions are indexed by topic –
+ * by client if they name one, else by instrument – so dispatching an
+ * event only visits subscribers of its instrument, its clients and
+ * those without a filter, and an event nobody wants is never
+ * serialized.  Subscriber counts are exported as
+ * `stream_topic_subscribers`, per instrument and in total for client
+ * and unfiltered subscriptions.  An instrument topic and its gauge
+ * exist only while the instrument has subscribers, so clients naming
+ * arbitrary instruments cannot grow either without bound.
+ *
+ * <p>Events are sent with the id of the event log record they report
+ * as their SSE id.  The dispatcher keeps the last
+ * `stream.replay-ring-size` events of each instrument, whether or not
+ * anyone subscribed to them, so a client reconnecting with
+ * `Last-Event-ID` first receives the events it missed and then the
+ * live stream.  Missed events are taken from the rings in dispatch
+ * order if they still hold the last event the client saw and
+ * everything after it; otherwise they are read back from the event
+ * log, up to `stream.max-resume-events` logged events.  A gap larger
+ * than that, or than the subscriber's buffer, is answered with a
+ * `reset` event telling the client to reload its state instead.
+ * Resumes are counted in `stream_resumes_total` by source.
+ *
+ * <p>Book signals are transient: they are only sent to subscribers that
+ * ask for the `signals` type by name, are kept out of the replay rings
+ * and conflate to the latest signals of their instrument.
  */
 @Service
 public class StreamService {
-    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamService.class);
+    /** Most events one sender task writes before yielding to other subscribers. */
+    private static final int MAX_SEND_BATCH = 64;
+    /** Event log records read per query when resuming from the log. */
+    private static final int LOG_PAGE_SIZE = 500;
+    /** Sent instead of missed events that can no longer be replayed. */
+    private static final StreamEvent RESET = new StreamEvent(0L, null, "reset", null, List.of(), null, null, "{}", 0L);
+    /** Types only sent to subscribers that name them, and never replayed. */
+    private static final Set<String> OPT_IN_TYPES = Set.of("signals");
+
+    /** What to do when a subscriber's buffer is full. */
+    public enum OverflowPolicy { CONFLATE, DISCONNECT }
+
+    private final ObjectMapper objectMapper;
+    private final EventRecordRepository eventRepo;
+    private final OrderRepository orderRepo;
+    private final int bufferSize;
+    private final int replayRingSize;
+    private final int maxResumeEvents;
+    private final OverflowPolicy defaultPolicy;
+    private final BlockingQueue<Published> published;
+    private final MeterRegistry meterRegistry;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Set<Subscriber> unfiltered = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<Subscriber>> byInstrument = new ConcurrentHashMap<>();
+    /** Subscriber gauge of each instrument topic; changed only inside byInstrument's compute calls. */
+    private final Map<String, Gauge> topicGauges = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscriber>> byClient = new ConcurrentHashMap<>();
+    private final AtomicInteger clientSubscribers = new AtomicInteger();
+    private final Map<String, StreamRing> rings = new ConcurrentHashMap<>();
+    /** Last dispatch sequence assigned; only touched by the dispatcher. */
+    private long dispatched;
+    private final Thread dispatcher;
+    private final ExecutorService senders;
+    private final Timer deliverLatency;
+    private final Counter conflated;
+    private final Counter overflowed;
+    private final Counter dispatchDropped;
+    private final Counter ringResumes;
+    private final Counter logResumes;
+    private final Counter resets;
+
+    @Autowired
+    public StreamService(ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         EventRecordRepository eventRepo,
+                         OrderRepository orderRepo,
+                         @Value("${stream.buffer-size:1024}") int bufferSize,
+                         @Value("${stream.overflow-policy:conflate}") String overflowPolicy,
+                         @Value("${stream.dispatch-queue-size:65536}") int dispatchQueueSize,
+                         @Value("${stream.sender-threads:4}") int senderThreads,
+                         @Value("${stream.replay-ring-size:4096}") int replayRingSize,
+                         @Value("${stream.max-resume-events:10000}") int maxResumeEvents) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.eventRepo = eventRepo;
+        this.orderRepo = orderRepo;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.replayRingSize = Math.max(1, replayRingSize);
+        this.maxResumeEvents = Math.max(0, maxResumeEvents);
+        this.defaultPolicy = parsePolicy(overflowPolicy);
+        this.published = new ArrayBlockingQueue<>(Math.max(1, dispatchQueueSize));
+        AtomicInteger senderIds = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "stream-sender-" + senderIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.deliverLatency = Timer.builder("stream_publish_to_deliver_seconds")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.conflated = meterRegistry.counter("stream_events_dropped_total", "reason", "conflated");
+        this.overflowed = meterRegistry.counter("stream_events_dropped_total", "reason", "overflow");
+        this.dispatchDropped = meterRegistry.counter("stream_events_dropped_total", "reason", "dispatch_queue_full");
+        this.ringResumes = meterRegistry.counter("stream_resumes_total", "source", "ring");
+        this.logResumes = meterRegistry.counter("stream_resumes_total", "source", "log");
+        this.resets = meterRegistry.counter("stream_resumes_total", "source", "reset");
+        Gauge.builder("stream_subscribers", subscribers, Set::size).register(meterRegistry);
+        Gauge.builder("stream_topic_subscribers", unfiltered, Set::size).tag("topic", "all").register(meterRegistry);
+        Gauge.builder("stream_topic_subscribers", clientSubscribers, AtomicInteger::get).tag("topic", "client").register(meterRegistry);
+        Gauge.builder("stream_dispatch_queue_size", published, BlockingQueue::size).register(meterRegistry);
+        this.dispatcher = new Thread(this::dispatchLoop, "stream-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Parse an overflow policy name, case insensitively.
+     *
+     * @throws IllegalArgumentException if the name is not a policy
+     */
+    public static OverflowPolicy parsePolicy(String name) {
+        return OverflowPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * What a subscriber wants to receive.  A null field matches
+     * anything; instruments and types match any of their values.
+     */
+    public static final class Filter {
+        public static final Filter ALL = new Filter(null, null, null);
+        final Set<String> instruments;
+        final String clientId;
+        final Set<String> types;
+
+        private Filter(Set<String> instruments, String clientId, Set<String> types) {
+            this.instruments = instruments;
+            this.clientId = clientId;
+            this.types = types;
+        }
+
+        /**
+         * Build a filter from request parameters; null or empty means
+         * no restriction.  Types are event type names such as order or
+         * trade, case insensitive.
+         */
+        public static Filter of(Collection<String> instruments, String clientId, Collection<String> types) {
+            return new Filter(normalise(instruments, false), clientId == null || clientId.isBlank() ? null : clientId,
+                normalise(types, true));
+        }
+
+        private static Set<String> normalise(Collection<String> values, boolean lowerCase) {
+            if (values == null) return null;
+            Set<String> set = new HashSet<>();
+            for (String v : values) {
+                if (v == null || v.isBlank()) continue;
+                set.add(lowerCase ? v.trim().toLowerCase(Locale.ROOT) : v.trim());
+            }
+            return set.isEmpty() ? null : set;
+        }
+
+        boolean matches(StreamEvent ev) {
+            if (types == null ? OPT_IN_TYPES.contains(ev.getType()) : !types.contains(ev.getType())) return false;
+            if (instruments != null && !instruments.contains(ev.getInstrument())) return false;
+            return clientId == null || ev.getClientIds().contains(clientId);
+        }
+    }
+
+    /** An event as handed over by the publisher, with the topics it belongs to. */
+    private static final class Published {
+        final Long eventId;
+        final Object event;
+        final String type;
+        final String instrument;
+        final List<String> clientIds;
+        final long nanos;
+        Published(Long eventId, Object event, String instrument, List<String> clientIds, long nanos) {
+            this.eventId = eventId;
+            this.event = event;
+            this.type = event.getClass().getSimpleName().toLowerCase(Locale.ROOT);
+            this.instrument = instrument;
+            this.clientIds = clientIds;
+            this.nanos = nanos;
+        }
+    }
+
     public SseEmitter addEmitter() {
-        SseEmitter emitter = new SseEmitter(Long.MAX_VALUE);
-        emitters.add(emitter);
-        emitter.onCompletion(() -> emitters.remove(emitter));
-        emitter.onTimeout(() -> emitters.remove(emitter));
+        return addEmitter(Filter.ALL, defaultPolicy);
+    }
+
+    public SseEmitter addEmitter(Filter filter, OverflowPolicy policy) {
+        return addEmitter(filter, policy, null);
+    }
+
+    /**
+     * Subscribe, first replaying the events after the one with the
+     * given id if it is not null.
+     */
+    public SseEmitter addEmitter(Filter filter, OverflowPolicy policy, Long lastEventId) {
+        return addEmitter(new SseEmitter(Long.MAX_VALUE), filter, policy == null ? defaultPolicy : policy, lastEventId);
+    }
+
+    SseEmitter addEmitter(SseEmitter emitter, Filter filter, OverflowPolicy policy) {
+        return addEmitter(emitter, filter, policy, null);
+    }
+
+    SseEmitter addEmitter(SseEmitter emitter, Filter filter, OverflowPolicy policy, Long lastEventId) {
+        // A resuming subscriber buffers live events until the missed ones are in front of them
+        Subscriber subscriber = new Subscriber(emitter, filter, policy, lastEventId != null);
+        subscribers.add(subscriber);
+        if (filter.clientId != null) {
+            byClient.compute(filter.clientId, (k, set) -> {
+                Set<Subscriber> s = set == null ? ConcurrentHashMap.newKeySet() : set;
+                s.add(subscriber);
+                return s;
+            });
+            clientSubscribers.incrementAndGet();
+        } else if (filter.instruments != null) {
+            for (String instrument : filter.instruments) subscribeTopic(instrument, subscriber);
+        } else {
+            unfiltered.add(subscriber);
+        }
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        if (lastEventId != null) resume(subscriber, lastEventId);
         return emitter;
     }
-    public void sendEvent(Object event) {
-        for (Iterator<SseEmitter> it = emitters.iterator(); it.hasNext();) {
-            SseEmitter emitter = it.next();
+
+    /**
+     * Queue the events a reconnecting subscriber missed.  It was
+     * registered before looking for them, so every event is either
+     * found here or offered to it live, or both; duplicates are dropped
+     * when the two are merged.
+     */
+    private void resume(Subscriber subscriber, long lastEventId) {
+        List<StreamEvent> missed = replayFromRings(subscriber.filter, lastEventId);
+        if (missed != null && subscriber.resume(missed, true)) {
+            ringResumes.increment();
+            return;
+        }
+        if (missed == null) {
+            try {
+                missed = replayFromLog(subscriber.filter, lastEventId);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to read events after {} to resume a stream: {}", lastEventId, e.getMessage());
+            }
+            if (missed != null && subscriber.resume(missed, false)) {
+                logResumes.increment();
+                return;
+            }
+        }
+        resets.increment();
+        subscriber.resume(List.of(RESET), false);
+    }
+
+    /**
+     * The subscriber's events dispatched after the one with the given
+     * id, or null if the rings no longer hold all of them.
+     */
+    private List<StreamEvent> replayFromRings(Filter filter, long lastEventId) {
+        List<StreamRing> topics = new ArrayList<>();
+        if (filter.instruments == null) {
+            topics.addAll(rings.values());
+        } else {
+            for (String instrument : filter.instruments) {
+                StreamRing ring = rings.get(instrument);
+                if (ring != null) topics.add(ring);
+            }
+        }
+        long sequence = -1;
+        for (StreamRing ring : topics) {
+            sequence = ring.sequenceOf(lastEventId);
+            if (sequence >= 0) break;
+        }
+        if (sequence < 0) return null;
+        List<StreamEvent> missed = new ArrayList<>();
+        for (StreamRing ring : topics) {
+            if (!ring.collectAfter(sequence, filter, missed)) return null;
+        }
+        missed.sort(Comparator.comparingLong(StreamEvent::getSequence));
+        return missed;
+    }
+
+    /**
+     * The subscriber's logged events after the given id, in id order,
+     * or null if more than `stream.max-resume-events` records would have
+     * to be read.  Live events of an instrument are dispatched in id
+     * order, but those of different instruments are not, so this may
+     * repeat events the client already had; it never skips one.
+     */
+    private List<StreamEvent> replayFromLog(Filter filter, long lastEventId) {
+        List<StreamEvent> missed = new ArrayList<>();
+        if (filter.instruments == null) {
+            if (!readLog(filter, null, lastEventId, missed)) return null;
+        } else {
+            for (String instrument : filter.instruments) {
+                if (!readLog(filter, instrument, lastEventId, missed)) return null;
+            }
+            missed.sort(Comparator.comparing(StreamEvent::getEventId));
+        }
+        return missed;
+    }
+
+    private boolean readLog(Filter filter, String instrument, long after, List<StreamEvent> out) {
+        long read = 0;
+        while (true) {
+            PageRequest page = PageRequest.of(0, LOG_PAGE_SIZE);
+            List<EventRecord> records = instrument == null
+                ? eventRepo.findByIdGreaterThanOrderById(after, page)
+                : eventRepo.findByInstrumentAndIdGreaterThanOrderById(instrument, after, page);
+            read += records.size();
+            if (read > maxResumeEvents) return false;
+            for (EventRecord r : records) {
+                after = r.getId();
+                StreamEvent ev = fromLog(r, filter.clientId != null);
+                if (ev != null && filter.matches(ev)) out.add(ev);
+            }
+            if (records.size() < LOG_PAGE_SIZE) return true;
+        }
+    }
+
+    /**
+     * The stream event a logged event was sent as, or null if it is of
+     * a kind that is not streamed.  Logged trades do not name their
+     * clients, so they are looked up through their orders when a
+     * client filter needs them.
+     */
+    private StreamEvent fromLog(EventRecord r, boolean needClients) {
+        String type;
+        switch (r.getEventType()) {
+            case "TRADE_EXECUTED":
+                type = "trade";
+                break;
+            case "ORDER_UPDATED":
+            case "ORDER_CANCELLED":
+                type = "order";
+                break;
+            default:
+                // ORDER_CREATED is always followed by the order's update
+                return null;
+        }
+        if (r.getPayload() == null) return null;
+        try {
+            JsonNode node = objectMapper.readTree(r.getPayload());
+            List<String> clientIds;
+            Object key = null;
+            if ("order".equals(type)) {
+                key = UUID.fromString(node.path("orderId").asText());
+                clientIds = Collections.singletonList(node.path("clientId").textValue());
+            } else if (needClients) {
+                clientIds = new ArrayList<>(2);
+                for (String field : new String[] {"buyOrderId", "sellOrderId"}) {
+                    orderRepo.findById(UUID.fromString(node.path(field).asText()))
+                        .ifPresent(o -> clientIds.add(o.getClientId()));
+                }
+            } else {
+                clientIds = List.of();
+            }
+            return new StreamEvent(0L, r.getId(), type, r.getInstrument(), clientIds, key, null, r.getPayload(), System.nanoTime());
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            LOGGER.warn("Skipping unreadable event {} while resuming a stream: {}", r.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Add a subscriber to an instrument topic, creating the topic and
+     * its gauge if it has none.  Instruments come from clients, so a
+     * topic lives only while it has subscribers; see {@link #unsubscribeTopic}.
+     */
+    private void subscribeTopic(String instrument, Subscriber subscriber) {
+        byInstrument.compute(instrument, (k, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+                topicGauges.put(k, Gauge.builder("stream_topic_subscribers", set, Set::size)
+                    .tag("topic", "instrument:" + k).register(meterRegistry));
+            }
+            set.add(subscriber);
+            return set;
+        });
+    }
+
+    /** Remove a subscriber from an instrument topic, dropping the topic and its gauge once empty. */
+    private void unsubscribeTopic(String instrument, Subscriber subscriber) {
+        byInstrument.computeIfPresent(instrument, (k, set) -> {
+            set.remove(subscriber);
+            if (!set.isEmpty()) return set;
+            Gauge gauge = topicGauges.remove(k);
+            if (gauge != null) meterRegistry.remove(gauge);
+            return null;
+        });
+    }
+
+    /** Instruments that currently have a topic. */
+    Set<String> getInstrumentTopics() {
+        return byInstrument.keySet();
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) return;
+        Filter filter = subscriber.filter;
+        if (filter.clientId != null) {
+            byClient.computeIfPresent(filter.clientId, (k, set) -> {
+                set.remove(subscriber);
+                return set.isEmpty() ? null : set;
+            });
+            clientSubscribers.decrementAndGet();
+        } else if (filter.instruments != null) {
+            for (String instrument : filter.instruments) unsubscribeTopic(instrument, subscriber);
+        } else {
+            unfiltered.remove(subscriber);
+        }
+    }
+
+    /**
+     * Publish an order update to subscribers of its instrument and
+     * client.  The order is copied, since it is serialized later and
+     * the matching engine keeps changing the instance.
+     */
+    public void sendEvent(Order order) {
+        sendEvent(order, null);
+    }
+
+    /** As {@link #sendEvent(Order)}, for the order update logged with the given id. */
+    public void sendEvent(Order order, Long eventId) {
+        sendEvent(eventId, order.getInstrument(), copyOf(order), order.getClientId());
+    }
+
+    /**
+     * Publish an event to subscribers of its instrument and of any of
+     * the given clients.  The event must not change after publishing.
+     * Never blocks; if the dispatcher has fallen so far behind that its
+     * queue is full, the event is dropped and counted.
+     */
+    public void sendEvent(String instrument, Object event, String... clientIds) {
+        sendEvent(null, instrument, event, clientIds);
+    }
+
+    /**
+     * As {@link #sendEvent(String, Object, String...)}, for the event
+     * logged with the given id, which becomes its SSE id.  Events are
+     * dispatched even without subscribers, to keep the replay rings
+     * complete.
+     */
+    public void sendEvent(Long eventId, String instrument, Object event, String... clientIds) {
+        Published p = new Published(eventId, event, instrument, Arrays.asList(clientIds), System.nanoTime());
+        if (!published.offer(p)) {
+            dispatchDropped.increment();
+        }
+    }
+
+    private static Order copyOf(Order o) {
+        Order c = new Order();
+        c.setOrderId(o.getOrderId());
+        c.setClientId(o.getClientId());
+        c.setInstrument(o.getInstrument());
+        c.setSide(o.getSide());
+        c.setType(o.getType());
+        c.setPrice(o.getPrice());
+        c.setQuantity(o.getQuantity());
+        c.setFilledQuantity(o.getFilledQuantity());
+        c.setStatus(o.getStatus());
+        c.setCreatedAt(o.getCreatedAt());
+        c.setUpdatedAt(o.getUpdatedAt());
+        c.setVersion(o.getVersion());
+        return c;
+    }
+
+    private void dispatchLoop() {
+        List<Published> batch = new ArrayList<>();
+        List<Subscriber> targets = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(published.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            published.drainTo(batch);
+            for (Published p : batch) {
+                boolean transientType = OPT_IN_TYPES.contains(p.type);
+                Object key = p.event instanceof Order ? ((Order) p.event).getOrderId()
+                    : transientType ? p.type + ':' + p.instrument : null;
+                StreamEvent ev = new StreamEvent(++dispatched, p.eventId, p.type, p.instrument, p.clientIds, key,
+                    p.event, null, p.nanos);
+                // Into the ring before looking for subscribers, so a resuming
+                // subscriber registered too late to be a target finds it there
+                if (!transientType) {
+                    rings.computeIfAbsent(p.instrument == null ? "" : p.instrument, k -> new StreamRing(replayRingSize)).add(ev);
+                }
+                collect(targets, unfiltered, ev);
+                if (p.instrument != null) collect(targets, byInstrument.get(p.instrument), ev);
+                for (int i = 0; i < p.clientIds.size(); i++) {
+                    String clientId = p.clientIds.get(i);
+                    if (clientId != null && p.clientIds.indexOf(clientId) == i) collect(targets, byClient.get(clientId), ev);
+                }
+                if (targets.isEmpty()) continue;
+                if (serialize(ev) != null) {
+                    for (Subscriber s : targets) {
+                        s.offer(ev);
+                    }
+                }
+                targets.clear();
+            }
+            batch.clear();
+        }
+    }
+
+    private static void collect(List<Subscriber> targets, Set<Subscriber> topic, StreamEvent ev) {
+        if (topic == null) return;
+        for (Subscriber s : topic) {
+            if (s.filter.matches(ev)) targets.add(s);
+        }
+    }
+
+    private String serialize(StreamEvent ev) {
+        try {
+            return ev.json(objectMapper);
+        } catch (JsonProcessingException e) {
+            LOGGER.error("Failed to serialize stream event {}: {}", ev.getType(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * One connected client: its emitter and the events not yet written
+     * to it, in order.  Pending events are keyed by their conflation key
+     * when conflating, otherwise by themselves.  A resuming subscriber
+     * is paused, buffering live events without sending them, until the
+     * events it missed have been put in front of them.
+     */
+    private final class Subscriber implements Runnable {
+        final SseEmitter emitter;
+        final Filter filter;
+        final OverflowPolicy policy;
+        final LinkedHashMap<Object, StreamEvent> pending = new LinkedHashMap<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        boolean closed;
+        boolean paused;
+        /** Events dispatched up to here were replayed and are left out of the delivery latency. */
+        volatile long replayedThrough;
+
+        Subscriber(SseEmitter emitter, Filter filter, OverflowPolicy policy, boolean paused) {
+            this.emitter = emitter;
+            this.filter = filter;
+            this.policy = policy;
+            this.paused = paused;
+        }
+
+        private Object keyOf(StreamEvent ev) {
+            return policy == OverflowPolicy.CONFLATE && ev.getConflationKey() != null ? ev.getConflationKey() : ev;
+        }
+
+        /**
+         * Put the missed events in front of the live events buffered
+         * meanwhile, dropping live events that were also found by
+         * sequence, or by event id if the missed events came from the
+         * log, and unpause.  Returns false, leaving the subscriber
+         * paused, if the result does not fit the buffer.
+         */
+        boolean resume(List<StreamEvent> missed, boolean bySequence) {
+            synchronized (this) {
+                if (closed) return true;
+                Set<Object> found = new HashSet<>();
+                LinkedHashMap<Object, StreamEvent> merged = new LinkedHashMap<>();
+                for (StreamEvent ev : missed) {
+                    Object id = bySequence ? (Object) ev.getSequence() : ev.getEventId();
+                    if (id != null) found.add(id);
+                    Object key = keyOf(ev);
+                    merged.remove(key);
+                    merged.put(key, ev);
+                    replayedThrough = Math.max(replayedThrough, ev.getSequence());
+                }
+                for (StreamEvent ev : pending.values()) {
+                    Object id = bySequence ? (Object) ev.getSequence() : ev.getEventId();
+                    if (id != null && found.contains(id)) continue;
+                    Object key = keyOf(ev);
+                    merged.remove(key);
+                    merged.put(key, ev);
+                }
+                if (merged.size() > bufferSize && (missed.isEmpty() || missed.get(0) != RESET)) return false;
+                pending.clear();
+                pending.putAll(merged);
+                paused = false;
+                if (pending.isEmpty()) return true;
+            }
+            schedule();
+            return true;
+        }
+
+        /** Called by the dispatcher. */
+        void offer(StreamEvent ev) {
+            int lost = 0;
+            synchronized (this) {
+                if (closed) return;
+                Object key = keyOf(ev);
+                // A newer state replaces the pending one and moves behind the events before it
+                if (pending.remove(key) != null) {
+                    conflated.increment();
+                } else if (pending.size() >= bufferSize) {
+                    lost = pending.size() + 1;
+                    closed = true;
+                    pending.clear();
+                }
+                if (lost == 0) pending.put(key, ev);
+                if (paused) return;
+            }
+            if (lost > 0) {
+                overflowed.increment(lost);
+                unsubscribe(this);
+                emitter.complete();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            try {
+                senders.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+            }
+        }
+
+        private synchronized StreamEvent poll() {
+            Iterator<StreamEvent> it = pending.values().iterator();
+            if (!it.hasNext()) return null;
+            StreamEvent ev = it.next();
+            it.remove();
+            return ev;
+        }
+
+        private synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        /** Write up to a batch of pending events on a sender thread. */
+        @Override
+        public void run() {
             try {
-                emitter.send(event);
-            } catch (IOException e) {
-                it.remove();
+                StreamEvent ev;
+                for (int i = 0; i < MAX_SEND_BATCH && (ev = poll()) != null; i++) {
+                    SseEmitter.SseEventBuilder event = SseEmitter.event();
+                    if (ev == RESET) event.name(RESET.getType());
+                    if (ev.getEventId() != null) event.id(ev.getEventId().toString());
+                    emitter.send(event.data(ev.json(objectMapper), MediaType.APPLICATION_JSON));
+                    if (ev.getSequence() > replayedThrough) {
+                        deliverLatency.record(System.nanoTime() - ev.getPublishedNanos(), TimeUnit.NANOSECONDS);
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+                return;
             }
+            scheduled.set(false);
+            if (hasPending()) schedule();
         }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+            }
+            unsubscribe(this);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.interrupt();
+        senders.shutdownNow();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,577 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MarketDataListener;
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.model.Trade;
+import com.example.tradeengine.repository.TradeJdbcRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Columnar in‑memory copy of recent trades for ad‑hoc analytics.
+ *
+ * <p>Trades are appended to chunks of {@value #CHUNK_SIZE} rows holding
+ * one primitive array per column: execution time in epoch
+ * microseconds, price and quantity as longs fixed at
+ * `analytics.store.scale` decimal places, and instrument and order ids
+ * as int codes.  Instruments share one dictionary; each chunk keeps its
+ * own dictionary of order ids, so it is dropped with the chunk.  Once
+ * the store holds `analytics.store.max-trades` rows the oldest chunk is
+ * dropped.  Trades are taken from the matching engine as they execute;
+ * at startup the last `analytics.store.preload` of the trades table is
+ * loaded.
+ *
+ * <p>A {@link Query} filters on time, instrument, order and quantity and
+ * sums count, volume and notional per group.  Chunks are scanned in
+ * parallel on a fork‑join pool of `analytics.query.parallelism` workers
+ * and chunks outside the time range are skipped without being read.
+ * Notional and VWAP are accumulated in double precision.
+ */
+@Service
+public class TradeColumnStore implements MarketDataListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TradeColumnStore.class);
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private final MatchingEngine matchingEngine;
+    private final TradeJdbcRepository tradeJdbcRepo;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int maxChunks;
+    private final Duration preload;
+    private final int scale;
+    private final double unit;
+    private final ForkJoinPool queryPool;
+    private final Dictionary<String> instruments = new Dictionary<>();
+    /** Oldest first; replaced, never modified, when a chunk is added or dropped. */
+    private volatile Chunk[] chunks = new Chunk[0];
+    /** Trades before this were loaded from the database; live ones before it are ignored. */
+    private volatile Instant liveFrom = Instant.MIN;
+    private long skipped;
+
+    @Autowired
+    public TradeColumnStore(MatchingEngine matchingEngine,
+                            TradeJdbcRepository tradeJdbcRepo,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${analytics.store.max-trades:10000000}") long maxTrades,
+                            @Value("${analytics.store.preload:24h}") String preload,
+                            @Value("${analytics.store.scale:8}") int scale,
+                            @Value("${analytics.query.parallelism:0}") int parallelism) {
+        this.matchingEngine = matchingEngine;
+        this.tradeJdbcRepo = tradeJdbcRepo;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxChunks = (int) Math.max(1, (maxTrades + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        this.preload = VwapService.parseDuration(preload);
+        this.scale = scale;
+        this.unit = Math.pow(10, scale);
+        this.queryPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PostConstruct
+    public void start() {
+        matchingEngine.addListener(this);
+        Instant now = Instant.now();
+        liveFrom = now;
+        long startNanos = System.nanoTime();
+        Long rows = readOnlyTransaction.execute(status -> tradeJdbcRepo.forEachTradeBetween(now.minus(preload), now, this::append));
+        LOGGER.info("Loaded {} trades into the column store in {} ms", rows,
+            Duration.ofNanos(System.nanoTime() - startNanos).toMillis());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        queryPool.shutdown();
+    }
+
+    @Override
+    public void onTrade(String instrument, Trade trade) {
+        if (trade.getTimestamp().isBefore(liveFrom)) return;
+        append(trade);
+    }
+
+    /**
+     * Append a trade.  Trades whose price or quantity does not fit a
+     * long at the store's scale are skipped.
+     */
+    synchronized void append(Trade t) {
+        if (t.getInstrument() == null) return;
+        long price;
+        long quantity;
+        try {
+            price = toFixed(t.getPrice());
+            quantity = toFixed(t.getQuantity());
+        } catch (ArithmeticException e) {
+            if (skipped++ == 0) LOGGER.warn("Trade {} does not fit the column store: {}", t.getTradeId(), e.getMessage());
+            return;
+        }
+        Chunk[] current = chunks;
+        Chunk chunk = current.length == 0 ? null : current[current.length - 1];
+        if (chunk == null || chunk.size == CHUNK_SIZE) {
+            if (chunk != null) chunk.orders.seal();
+            int keep = Math.min(current.length, maxChunks - 1);
+            Chunk[] next = Arrays.copyOfRange(current, current.length - keep, current.length + 1);
+            chunk = next[keep] = new Chunk();
+            chunks = next;
+        }
+        Instant ts = t.getTimestamp();
+        chunk.add(ts.getEpochSecond() * 1_000_000L + ts.getNano() / 1_000, price, quantity,
+            instruments.code(t.getInstrument()), t.getBuyOrderId(), t.getSellOrderId());
+    }
+
+    /** Number of trades held. */
+    public long size() {
+        long n = 0;
+        for (Chunk c : chunks) n += c.size;
+        return n;
+    }
+
+    private long toFixed(BigDecimal v) {
+        return v.setScale(scale, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    private BigDecimal fromFixed(long v) {
+        return BigDecimal.valueOf(v, scale);
+    }
+
+    /**
+     * One chunk of rows.  Written only under the store's lock; a reader
+     * reads {@link #size} first and then only the rows below it, which
+     * the volatile write of size has published.
+     */
+    private static final class Chunk {
+        final long[] time = new long[CHUNK_SIZE];
+        final long[] price = new long[CHUNK_SIZE];
+        final long[] quantity = new long[CHUNK_SIZE];
+        final int[] instrument = new int[CHUNK_SIZE];
+        final int[] buyOrder = new int[CHUNK_SIZE];
+        final int[] sellOrder = new int[CHUNK_SIZE];
+        final OrderDictionary orders = new OrderDictionary();
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        volatile int size;
+
+        void add(long t, long p, long q, int inst, UUID buy, UUID sell) {
+            int i = size;
+            time[i] = t;
+            price[i] = p;
+            quantity[i] = q;
+            instrument[i] = inst;
+            buyOrder[i] = orders.code(buy);
+            sellOrder[i] = orders.code(sell);
+            if (t < minTime) minTime = t;
+            if (t > maxTime) maxTime = t;
+            size = i + 1;
+        }
+    }
+
+    /** Codes for values in order of first appearance. */
+    private static final class Dictionary<K> {
+        private final Map<K, Integer> codes = new ConcurrentHashMap<>();
+        private final List<K> values = new ArrayList<>();
+
+        synchronized int code(K value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        /** Code of a value, or -1 if it has none. */
+        int codeOf(K value) {
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        synchronized K value(int code) {
+            return values.get(code);
+        }
+
+        synchronized int size() {
+            return values.size();
+        }
+    }
+
+    /**
+     * Order ids of one chunk as two long arrays.  The hash index used
+     * while the chunk is appended to is dropped when it fills up, after
+     * which lookups, only needed to filter by order, scan the arrays.
+     */
+    private static final class OrderDictionary {
+        private long[] high = new long[1024];
+        private long[] low = new long[1024];
+        private volatile int size;
+        private volatile Map<UUID, Integer> index = new ConcurrentHashMap<>();
+
+        int code(UUID id) {
+            Integer code = index.get(id);
+            if (code != null) return code;
+            int n = size;
+            if (n == high.length) {
+                high = Arrays.copyOf(high, n * 2);
+                low = Arrays.copyOf(low, n * 2);
+            }
+            high[n] = id.getMostSignificantBits();
+            low[n] = id.getLeastSignificantBits();
+            index.put(id, n);
+            size = n + 1;
+            return n;
+        }
+
+        void seal() {
+            high = Arrays.copyOf(high, size);
+            low = Arrays.copyOf(low, size);
+            index = null;
+        }
+
+        /** Code of an order id, or -1 if the chunk has none of its trades. */
+        int codeOf(UUID id) {
+            Map<UUID, Integer> open = index;
+            if (open != null) {
+                Integer code = open.get(id);
+                return code == null ? -1 : code;
+            }
+            long hi = id.getMostSignificantBits();
+            long lo = id.getLeastSignificantBits();
+            for (int i = 0; i < size; i++) {
+                if (high[i] == hi && low[i] == lo) return i;
+            }
+            return -1;
+        }
+    }
+
+    public enum GroupBy { NONE, INSTRUMENT, TIME, SIZE }
+
+    /** Filters and grouping of one query; null filters match everything. */
+    public static final class Query {
+        private Instant from;
+        private Instant to;
+        private String instrument;
+        private UUID orderId;
+        private BigDecimal minQuantity;
+        private BigDecimal maxQuantity;
+        private GroupBy groupBy = GroupBy.NONE;
+        private Duration timeBucket = Duration.ofMinutes(1);
+        private BigDecimal sizeBucket = BigDecimal.ONE;
+        private int limit = Integer.MAX_VALUE;
+
+        public Query from(Instant from) { this.from = from; return this; }
+        public Query to(Instant to) { this.to = to; return this; }
+        public Query instrument(String instrument) { this.instrument = instrument; return this; }
+        public Query orderId(UUID orderId) { this.orderId = orderId; return this; }
+        public Query minQuantity(BigDecimal minQuantity) { this.minQuantity = minQuantity; return this; }
+        public Query maxQuantity(BigDecimal maxQuantity) { this.maxQuantity = maxQuantity; return this; }
+        public Query groupBy(GroupBy groupBy) { this.groupBy = groupBy; return this; }
+        /** Width of a group when grouping by time. */
+        public Query timeBucket(Duration timeBucket) { this.timeBucket = timeBucket; return this; }
+        /** Width of a group when grouping by quantity. */
+        public Query sizeBucket(BigDecimal sizeBucket) { this.sizeBucket = sizeBucket; return this; }
+        /** Groups to return: the largest by volume when grouping by instrument, else the first. */
+        public Query limit(int limit) { this.limit = limit; return this; }
+    }
+
+    /** Aggregates of one group. */
+    public static final class Row {
+        private final Object key;
+        private final long count;
+        private final BigDecimal volume;
+        private final BigDecimal notional;
+        private final BigDecimal vwap;
+        private final BigDecimal minPrice;
+        private final BigDecimal maxPrice;
+
+        Row(Object key, long count, BigDecimal volume, BigDecimal notional, BigDecimal vwap,
+            BigDecimal minPrice, BigDecimal maxPrice) {
+            this.key = key;
+            this.count = count;
+            this.volume = volume;
+            this.notional = notional;
+            this.vwap = vwap;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+        }
+
+        /** Instrument, bucket start time or lower quantity bound; null without grouping. */
+        public Object getKey() { return key; }
+        public long getCount() { return count; }
+        public BigDecimal getVolume() { return volume; }
+        public BigDecimal getNotional() { return notional; }
+        public BigDecimal getVwap() { return vwap; }
+        public BigDecimal getMinPrice() { return minPrice; }
+        public BigDecimal getMaxPrice() { return maxPrice; }
+    }
+
+    public static final class Result {
+        private final long scanned;
+        private final long matched;
+        private final long elapsedMicros;
+        private final List<Row> rows;
+
+        Result(long scanned, long matched, long elapsedMicros, List<Row> rows) {
+            this.scanned = scanned;
+            this.matched = matched;
+            this.elapsedMicros = elapsedMicros;
+            this.rows = rows;
+        }
+
+        /** Rows read, excluding those of chunks skipped by time range. */
+        public long getScanned() { return scanned; }
+        public long getMatched() { return matched; }
+        public long getElapsedMicros() { return elapsedMicros; }
+        public List<Row> getRows() { return rows; }
+    }
+
+    /** Query resolved against the store's encoding. */
+    private static final class Plan {
+        long fromMicros = Long.MIN_VALUE;
+        long toMicros = Long.MAX_VALUE;
+        /** Instrument code, -1 for any, -2 for one the store has never seen. */
+        int instrument = -1;
+        UUID orderId;
+        long minQuantity = Long.MIN_VALUE;
+        long maxQuantity = Long.MAX_VALUE;
+        GroupBy groupBy;
+        long bucket;
+        int instruments;
+    }
+
+    /**
+     * Run a query over the trades held.
+     *
+     * @throws IllegalArgumentException if a bucket width is not positive
+     */
+    public Result query(Query q) {
+        long startNanos = System.nanoTime();
+        Plan plan = new Plan();
+        if (q.from != null) plan.fromMicros = q.from.getEpochSecond() * 1_000_000L + q.from.getNano() / 1_000;
+        if (q.to != null) plan.toMicros = q.to.getEpochSecond() * 1_000_000L + q.to.getNano() / 1_000;
+        if (q.instrument != null) plan.instrument = instruments.codeOf(q.instrument) < 0 ? -2 : instruments.codeOf(q.instrument);
+        plan.orderId = q.orderId;
+        if (q.minQuantity != null) plan.minQuantity = q.minQuantity.movePointRight(scale).setScale(0, RoundingMode.CEILING).longValue();
+        if (q.maxQuantity != null) plan.maxQuantity = q.maxQuantity.movePointRight(scale).setScale(0, RoundingMode.FLOOR).longValue();
+        plan.groupBy = q.groupBy;
+        if (q.groupBy == GroupBy.TIME) {
+            plan.bucket = q.timeBucket.toNanos() / 1_000;
+            if (plan.bucket <= 0) throw new IllegalArgumentException("time bucket must be positive");
+        } else if (q.groupBy == GroupBy.SIZE) {
+            if (q.sizeBucket.signum() <= 0) throw new IllegalArgumentException("size bucket must be positive");
+            plan.bucket = Math.max(1, toFixed(q.sizeBucket));
+        }
+        plan.instruments = instruments.size();
+        Chunk[] snapshot = chunks;
+        Partial total = snapshot.length == 0 || plan.instrument == -2
+            ? new Partial(plan) : queryPool.invoke(new ScanTask(snapshot, 0, snapshot.length, plan));
+        return new Result(total.scanned, total.matched, (System.nanoTime() - startNanos) / 1_000, rows(total, q));
+    }
+
+    private List<Row> rows(Partial p, Query q) {
+        List<Row> rows = new ArrayList<>();
+        if (p.dense != null) {
+            for (int code = 0; code < p.dense.length; code++) {
+                Acc a = p.dense[code];
+                if (a == null) continue;
+                rows.add(row(q.groupBy == GroupBy.INSTRUMENT ? instruments.value(code) : null, a));
+            }
+        } else {
+            List<Long> keys = new ArrayList<>(p.groups.keySet());
+            keys.sort(null);
+            for (Long key : keys) {
+                Object k = q.groupBy == GroupBy.TIME
+                    ? Instant.ofEpochSecond(Math.floorDiv(key * p.plan.bucket, 1_000_000L),
+                        Math.floorMod(key * p.plan.bucket, 1_000_000L) * 1_000L)
+                    : fromFixed(key * p.plan.bucket);
+                rows.add(row(k, p.groups.get(key)));
+            }
+        }
+        if (q.groupBy == GroupBy.INSTRUMENT) rows.sort(Comparator.comparing(Row::getVolume).reversed());
+        return rows.size() > q.limit ? new ArrayList<>(rows.subList(0, Math.max(0, q.limit))) : rows;
+    }
+
+    private Row row(Object key, Acc a) {
+        double notional = a.notional / unit / unit;
+        BigDecimal vwap = a.volume > 0 ? BigDecimal.valueOf(a.notional / a.volume / unit).round(MathContext.DECIMAL64) : BigDecimal.ZERO;
+        return new Row(key, a.count, fromFixed(a.volume), BigDecimal.valueOf(notional).round(MathContext.DECIMAL64), vwap,
+            fromFixed(a.minPrice), fromFixed(a.maxPrice));
+    }
+
+    /** Running aggregates of one group. */
+    private static final class Acc {
+        long count;
+        long volume;
+        double notional;
+        long minPrice = Long.MAX_VALUE;
+        long maxPrice = Long.MIN_VALUE;
+
+        void add(long price, long quantity) {
+            count++;
+            volume += quantity;
+            notional += (double) price * quantity;
+            if (price < minPrice) minPrice = price;
+            if (price > maxPrice) maxPrice = price;
+        }
+
+        void merge(Acc o) {
+            count += o.count;
+            volume += o.volume;
+            notional += o.notional;
+            minPrice = Math.min(minPrice, o.minPrice);
+            maxPrice = Math.max(maxPrice, o.maxPrice);
+        }
+    }
+
+    /**
+     * Groups of part of a scan.  Without grouping or by instrument the
+     * groups sit in an array indexed by code; by time or size in a map,
+     * with the last group used kept at hand since neighbouring rows
+     * usually share it.
+     */
+    private static final class Partial {
+        final Plan plan;
+        final Acc[] dense;
+        final Map<Long, Acc> groups;
+        long lastKey;
+        Acc last;
+        long scanned;
+        long matched;
+
+        Partial(Plan plan) {
+            this.plan = plan;
+            switch (plan.groupBy) {
+                case NONE: dense = new Acc[1]; groups = null; break;
+                case INSTRUMENT: dense = new Acc[plan.instruments]; groups = null; break;
+                default: dense = null; groups = new HashMap<>();
+            }
+        }
+
+        Acc acc(long key) {
+            if (last != null && key == lastKey) return last;
+            Acc a = groups.computeIfAbsent(key, k -> new Acc());
+            lastKey = key;
+            last = a;
+            return a;
+        }
+
+        Partial merge(Partial o) {
+            scanned += o.scanned;
+            matched += o.matched;
+            if (dense != null) {
+                for (int i = 0; i < dense.length; i++) {
+                    if (o.dense[i] == null) continue;
+                    if (dense[i] == null) dense[i] = o.dense[i];
+                    else dense[i].merge(o.dense[i]);
+                }
+            } else {
+                o.groups.forEach((k, a) -> groups.merge(k, a, (x, y) -> { x.merge(y); return x; }));
+            }
+            return this;
+        }
+    }
+
+    /** Scans a range of chunks, splitting it in halves down to one chunk. */
+    private static final class ScanTask extends RecursiveTask<Partial> {
+        private final Chunk[] chunks;
+        private final int lo;
+        private final int hi;
+        private final Plan plan;
+
+        ScanTask(Chunk[] chunks, int lo, int hi, Plan plan) {
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+            this.plan = plan;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (hi - lo == 1) return scan(chunks[lo], plan);
+            int mid = (lo + hi) >>> 1;
+            ScanTask left = new ScanTask(chunks, lo, mid, plan);
+            left.fork();
+            Partial right = new ScanTask(chunks, mid, hi, plan).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    private static Partial scan(Chunk c, Plan plan) {
+        Partial p = new Partial(plan);
+        int n = c.size;
+        if (n == 0 || c.maxTime < plan.fromMicros || c.minTime >= plan.toMicros) return p;
+        int order = -1;
+        if (plan.orderId != null) {
+            order = c.orders.codeOf(plan.orderId);
+            if (order < 0) return p;
+        }
+        long[] time = c.time;
+        long[] price = c.price;
+        long[] quantity = c.quantity;
+        int[] instrument = c.instrument;
+        int[] buy = c.buyOrder;
+        int[] sell = c.sellOrder;
+        long from = plan.fromMicros;
+        long to = plan.toMicros;
+        int inst = plan.instrument;
+        long minQ = plan.minQuantity;
+        long maxQ = plan.maxQuantity;
+        GroupBy groupBy = plan.groupBy;
+        long bucket = plan.bucket;
+        Acc[] dense = p.dense;
+        long matched = 0;
+        for (int i = 0; i < n; i++) {
+            long t = time[i];
+            if (t < from || t >= to) continue;
+            if (inst >= 0 && instrument[i] != inst) continue;
+            long q = quantity[i];
+            if (q < minQ || q > maxQ) continue;
+            if (order >= 0 && buy[i] != order && sell[i] != order) continue;
+            Acc a;
+            switch (groupBy) {
+                case NONE:
+                    a = dense[0];
+                    if (a == null) a = dense[0] = new Acc();
+                    break;
+                case INSTRUMENT: {
+                    int code = instrument[i];
+                    // Instruments first seen after the query started
+                    if (code >= dense.length) continue;
+                    a = dense[code];
+                    if (a == null) a = dense[code] = new Acc();
+                    break;
+                }
+                case TIME:
+                    a = p.acc(Math.floorDiv(t, bucket));
+                    break;
+                default:
+                    a = p.acc(Math.floorDiv(q, bucket));
+            }
+            a.add(price[i], q);
+            matched++;
+        }
+        p.scanned = n;
+        p.matched = matched;
+        return p;
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MarketDataListener;
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.model.Trade;
+import com.example.tradeengine.repository.TradeJdbcRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rolling volume‑weighted average price per instrument over the
+ * windows in `vwap.windows` (default 1m, 5m, 1h and 24h).
+ *
+ * <p>Each window is split into `vwap.buckets-per-window` time buckets
+ * held in a ring; a trade adds its price×quantity and quantity to the
+ * current bucket of every window, and a query sums the buckets still
+ * inside the window, so both cost the same whatever the trade history.
+ * The window therefore slides in steps of one bucket: a 5m window with
+ * 60 buckets covers the last 295 to 300 seconds.  Trades are taken
+ * from the matching engine as they execute; at startup the longest
+ * window is rebuilt from the trades table.
+ */
+@Service
+public class VwapService implements MarketDataListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VwapService.class);
+
+    private final MatchingEngine matchingEngine;
+    private final TradeJdbcRepository tradeJdbcRepo;
+    private final TransactionTemplate readOnlyTransaction;
+    private final List<Window> windows;
+    private final int bucketsPerWindow;
+    private final Map<String, InstrumentVwap> instruments = new ConcurrentHashMap<>();
+    /** Trades before this were loaded from the database; live ones before it are ignored. */
+    private volatile Instant liveFrom = Instant.MIN;
+
+    @Autowired
+    public VwapService(MatchingEngine matchingEngine,
+                       TradeJdbcRepository tradeJdbcRepo,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${vwap.windows:1m,5m,1h,24h}") String windows,
+                       @Value("${vwap.buckets-per-window:60}") int bucketsPerWindow) {
+        this.matchingEngine = matchingEngine;
+        this.tradeJdbcRepo = tradeJdbcRepo;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.bucketsPerWindow = Math.max(1, bucketsPerWindow);
+        List<Window> parsed = new ArrayList<>();
+        for (String name : windows.split(",")) {
+            if (!name.isBlank()) parsed.add(new Window(name.trim(), parseDuration(name), this.bucketsPerWindow));
+        }
+        this.windows = Collections.unmodifiableList(parsed);
+    }
+
+    /**
+     * Parse a duration such as 30s, 5m, 1h or 1d.
+     *
+     * @throws IllegalArgumentException if the text is not of that form
+     */
+    public static Duration parseDuration(String text) {
+        String t = text.trim().toLowerCase(Locale.ROOT);
+        if (t.length() < 2) throw new IllegalArgumentException("Not a duration: " + text);
+        long n;
+        try {
+            n = Long.parseLong(t.substring(0, t.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a duration: " + text);
+        }
+        if (n <= 0) throw new IllegalArgumentException("Not a positive duration: " + text);
+        switch (t.charAt(t.length() - 1)) {
+            case 's': return Duration.ofSeconds(n);
+            case 'm': return Duration.ofMinutes(n);
+            case 'h': return Duration.ofHours(n);
+            case 'd': return Duration.ofDays(n);
+            default: throw new IllegalArgumentException("Not a duration: " + text);
+        }
+    }
+
+    /**
+     * Start following trades, then load the trades of the longest
+     * window executed before that moment.
+     */
+    @PostConstruct
+    public void start() {
+        matchingEngine.addListener(this);
+        Instant now = Instant.now();
+        liveFrom = now;
+        Duration longest = Duration.ZERO;
+        for (Window w : windows) {
+            if (w.length.compareTo(longest) > 0) longest = w.length;
+        }
+        Instant from = now.minus(longest);
+        long startNanos = System.nanoTime();
+        Long rows = readOnlyTransaction.execute(status -> tradeJdbcRepo.forEachTradeBetween(from, now, this::add));
+        LOGGER.info("Rebuilt VWAP windows from {} trades in {} ms", rows,
+            Duration.ofNanos(System.nanoTime() - startNanos).toMillis());
+    }
+
+    public List<Window> getWindows() {
+        return windows;
+    }
+
+    /** The configured window with the given name or length, or null. */
+    public Window findWindow(String name) {
+        Duration length = parseDuration(name);
+        for (Window w : windows) {
+            if (w.length.equals(length)) return w;
+        }
+        return null;
+    }
+
+    @Override
+    public void onTrade(String instrument, Trade trade) {
+        if (trade.getTimestamp().isBefore(liveFrom)) return;
+        add(trade);
+    }
+
+    private void add(Trade trade) {
+        instruments.computeIfAbsent(trade.getInstrument(), k -> new InstrumentVwap(windows))
+            .add(trade.getTimestamp().toEpochMilli(), trade.getPrice().multiply(trade.getQuantity()), trade.getQuantity());
+    }
+
+    /** VWAP of an instrument over a window ending now. */
+    public Result vwap(String instrument, Window window) {
+        InstrumentVwap v = instruments.get(instrument);
+        if (v == null) return new Result(window.name, BigDecimal.ZERO, BigDecimal.ZERO, 0);
+        return v.get(windows.indexOf(window), System.currentTimeMillis());
+    }
+
+    /** A configured window and the width of its buckets. */
+    public static final class Window {
+        private final String name;
+        private final Duration length;
+        private final long bucketMillis;
+        private final int buckets;
+
+        Window(String name, Duration length, int buckets) {
+            this.name = name;
+            this.length = length;
+            this.bucketMillis = Math.max(1, length.toMillis() / buckets);
+            this.buckets = (int) Math.max(1, length.toMillis() / bucketMillis);
+        }
+
+        public String getName() { return name; }
+        public Duration getLength() { return length; }
+    }
+
+    public static final class Result {
+        private final String window;
+        private final BigDecimal vwap;
+        private final BigDecimal totalVolume;
+        private final long tradeCount;
+
+        Result(String window, BigDecimal vwap, BigDecimal totalVolume, long tradeCount) {
+            this.window = window;
+            this.vwap = vwap;
+            this.totalVolume = totalVolume;
+            this.tradeCount = tradeCount;
+        }
+
+        public String getWindow() { return window; }
+        /** Zero when the window holds no trades. */
+        public BigDecimal getVwap() { return vwap; }
+        public BigDecimal getTotalVolume() { return totalVolume; }
+        public long getTradeCount() { return tradeCount; }
+    }
+
+    /**
+     * Bucket rings of one instrument, one per window.  Written by the
+     * instrument's matching thread and read by request threads.
+     */
+    private static final class InstrumentVwap {
+        final List<Window> windows;
+        final long[][] bucketIds;
+        final BigDecimal[][] priceVolume;
+        final BigDecimal[][] volume;
+        final long[][] trades;
+
+        InstrumentVwap(List<Window> windows) {
+            this.windows = windows;
+            int n = windows.size();
+            bucketIds = new long[n][];
+            priceVolume = new BigDecimal[n][];
+            volume = new BigDecimal[n][];
+            trades = new long[n][];
+            for (int w = 0; w < n; w++) {
+                int size = windows.get(w).buckets;
+                bucketIds[w] = new long[size];
+                Arrays.fill(bucketIds[w], Long.MIN_VALUE);
+                priceVolume[w] = new BigDecimal[size];
+                volume[w] = new BigDecimal[size];
+                trades[w] = new long[size];
+            }
+        }
+
+        synchronized void add(long epochMillis, BigDecimal pv, BigDecimal qty) {
+            for (int w = 0; w < windows.size(); w++) {
+                long id = Math.floorDiv(epochMillis, windows.get(w).bucketMillis);
+                long[] ids = bucketIds[w];
+                int slot = (int) Math.floorMod(id, (long) ids.length);
+                if (ids[slot] != id) {
+                    // A trade older than the bucket now in its slot is outside the window
+                    if (ids[slot] > id) continue;
+                    ids[slot] = id;
+                    priceVolume[w][slot] = BigDecimal.ZERO;
+                    volume[w][slot] = BigDecimal.ZERO;
+                    trades[w][slot] = 0;
+                }
+                priceVolume[w][slot] = priceVolume[w][slot].add(pv);
+                volume[w][slot] = volume[w][slot].add(qty);
+                trades[w][slot]++;
+            }
+        }
+
+        synchronized Result get(int w, long nowMillis) {
+            Window window = windows.get(w);
+            long[] ids = bucketIds[w];
+            long newest = Math.floorDiv(nowMillis, window.bucketMillis);
+            long oldest = newest - ids.length + 1;
+            BigDecimal pv = BigDecimal.ZERO;
+            BigDecimal qty = BigDecimal.ZERO;
+            long count = 0;
+            for (int slot = 0; slot < ids.length; slot++) {
+                if (ids[slot] < oldest || ids[slot] > newest) continue;
+                pv = pv.add(priceVolume[w][slot]);
+                qty = qty.add(volume[w][slot]);
+                count += trades[w][slot];
+            }
+            BigDecimal vwap = qty.signum() > 0 ? pv.divide(qty, MathContext.DECIMAL64) : BigDecimal.ZERO;
+            return new Result(window.name, vwap, qty, count);
+        }
+    }
+}
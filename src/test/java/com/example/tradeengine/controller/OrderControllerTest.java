@@ -2,6 +2,7 @@ package com.example.tradeengine.controller;
 
 import com.example.tradeengine.dto.CreateOrderRequest;
 import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.exception.OrderRejectedException;
 import com.example.tradeengine.model.Order;
 import com.example.tradeengine.repository.OrderRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -70,6 +71,23 @@ public class OrderControllerTest {
                 .andExpect(jsonPath("$.status").value("open"));
     }
 
+    @Test
+    public void testCreateOrderRejectedByRisk() throws Exception {
+        CreateOrderRequest req = new CreateOrderRequest();
+        req.setClientId("client-A");
+        req.setInstrument("BTC-USD");
+        req.setSide("buy");
+        req.setType("limit");
+        req.setPrice(new BigDecimal("100.0"));
+        req.setQuantity(new BigDecimal("5000"));
+        when(matchingEngine.submitOrder(any(Order.class), eq(null)))
+            .thenReturn(CompletableFuture.failedFuture(new OrderRejectedException("Order quantity 5000 exceeds the limit of 1000")));
+        mockMvc.perform(post("/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
     @Test
     public void testCreateOrderInvalidMissingFields() throws Exception {
         // Missing price for limit order
@@ -80,6 +98,31 @@ public class OrderControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void testCreateOrderRejectsClientHeaderOfAnotherClient() throws Exception {
+        // Rate limited as client-B, so it may not submit for client-A
+        String body = "{\"clientId\":\"client-A\",\"instrument\":\"BTC-USD\",\"side\":\"buy\",\"type\":\"limit\",\"price\":100,\"quantity\":1}";
+        mockMvc.perform(post("/orders")
+                .header("X-Client-Id", "client-B")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void testOrdersAreRefusedWhileRecovering() throws Exception {
+        when(matchingEngine.isRecovering()).thenReturn(true);
+        String body = "{\"clientId\":\"client-A\",\"instrument\":\"BTC-USD\",\"side\":\"buy\",\"type\":\"limit\",\"price\":100,\"quantity\":1}";
+        mockMvc.perform(post("/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isServiceUnavailable());
+        mockMvc.perform(post("/orders/" + UUID.randomUUID() + "/cancel"))
+                .andExpect(status().isServiceUnavailable());
+        Mockito.verify(matchingEngine, Mockito.never()).submitOrder(any(Order.class), any());
+        Mockito.verify(matchingEngine, Mockito.never()).cancelOrder(any(UUID.class));
+    }
+
     @Test
     public void testGetOrderFound() throws Exception {
         UUID id = UUID.randomUUID();
@@ -0,0 +1,63 @@
+package com.example.tradeengine.engine;
+
+import com.example.tradeengine.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link BookImage}: resting orders read back from an
+ * image are the orders that were written, type and stop price included.
+ */
+public class BookImageTest {
+    private static Order resting(String type, String price, String stopPrice) {
+        Order o = new Order();
+        o.setOrderId(UUID.randomUUID());
+        o.setClientId("client");
+        o.setInstrument("BTC-USD");
+        o.setSide("buy");
+        o.setType(type);
+        o.setPrice(new BigDecimal(price));
+        o.setStopPrice(stopPrice == null ? null : new BigDecimal(stopPrice));
+        o.setQuantity(new BigDecimal("2"));
+        o.setFilledQuantity(new BigDecimal("0.5"));
+        o.setStatus("partially_filled");
+        o.setCreatedAt(Instant.now());
+        return o;
+    }
+
+    @Test
+    public void testTriggeredStopLimitKeepsItsTypeAndStopPrice() throws Exception {
+        Path dir = Files.createTempDirectory("book-image");
+        Order limit = resting("limit", "100.5", null);
+        Order stopLimit = resting("stop_limit", "101", "100.25");
+        try (BookImage image = BookImage.open(dir, "BTC-USD")) {
+            image.begin();
+            image.put(limit);
+            image.put(stopLimit);
+            image.commit(7);
+        }
+        try (BookImage image = BookImage.open(dir, "BTC-USD")) {
+            assertEquals(7, image.sequence());
+            List<Order> orders = image.load();
+            assertNotNull(orders);
+            assertEquals(2, orders.size());
+            Order a = orders.get(0).getOrderId().equals(limit.getOrderId()) ? orders.get(0) : orders.get(1);
+            Order b = a == orders.get(0) ? orders.get(1) : orders.get(0);
+            assertEquals("limit", a.getType());
+            assertNull(a.getStopPrice());
+            assertEquals(stopLimit.getOrderId(), b.getOrderId());
+            assertEquals("stop_limit", b.getType());
+            assertEquals(0, new BigDecimal("100.25").compareTo(b.getStopPrice()));
+            assertEquals(0, new BigDecimal("101").compareTo(b.getPrice()));
+            assertEquals("partially_filled", b.getStatus());
+        }
+    }
+}
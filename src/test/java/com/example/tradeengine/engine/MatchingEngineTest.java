@@ -110,4 +110,47 @@ public class MatchingEngineTest {
         assertEquals(first.getOrderId(), second.getOrderId());
         assertEquals(1, orderRepository.count());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStopOrderTriggersAfterTrade() throws Exception {
+        tradeRepository.deleteAll();
+        orderRepository.deleteAll();
+        for (String price : new String[] {"200", "210"}) {
+            Order ask = new Order();
+            ask.setOrderId(UUID.randomUUID());
+            ask.setClientId("seller");
+            ask.setInstrument("ETH-USD");
+            ask.setSide("sell");
+            ask.setType("limit");
+            ask.setPrice(new BigDecimal(price));
+            ask.setQuantity(new BigDecimal("1"));
+            matchingEngine.submitOrder(ask, null).get(2, TimeUnit.SECONDS);
+        }
+        // A buy stop at 200 waits until the market trades there
+        Order stop = new Order();
+        stop.setOrderId(UUID.randomUUID());
+        stop.setClientId("stopper");
+        stop.setInstrument("ETH-USD");
+        stop.setSide("buy");
+        stop.setType("stop");
+        stop.setStopPrice(new BigDecimal("200"));
+        stop.setQuantity(new BigDecimal("1"));
+        Order pending = matchingEngine.submitOrder(stop, null).get(2, TimeUnit.SECONDS);
+        assertEquals("pending", pending.getStatus());
+        assertEquals(1, matchingEngine.getStopCount("ETH-USD"));
+        assertEquals(0, tradeRepository.count());
+        Order buy = new Order();
+        buy.setOrderId(UUID.randomUUID());
+        buy.setClientId("buyer");
+        buy.setInstrument("ETH-USD");
+        buy.setSide("buy");
+        buy.setType("market");
+        buy.setQuantity(new BigDecimal("1"));
+        assertEquals("filled", matchingEngine.submitOrder(buy, null).get(2, TimeUnit.SECONDS).getStatus());
+        // The trade at 200 triggered the stop within the same event, which bought the ask at 210
+        assertEquals(0, matchingEngine.getStopCount("ETH-USD"));
+        assertEquals(2, tradeRepository.count());
+        Order triggered = orderRepository.findById(pending.getOrderId()).orElseThrow();
+        assertEquals("filled", triggered.getStatus());
+    }
+}
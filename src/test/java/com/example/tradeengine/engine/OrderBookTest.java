@@ -5,7 +5,10 @@ import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -77,9 +80,167 @@ public class OrderBookTest {
         book.addLimitOrder(o2);
         assertTrue(book.getBids().contains(o1));
         assertTrue(book.getAsks().contains(o2));
-        assertTrue(book.cancelOrder(o1));
+        assertSame(o1, book.cancelOrder(o1));
         assertFalse(book.getBids().contains(o1));
-        assertTrue(book.cancelOrder(o2));
+        assertSame(o2, book.cancelOrder(o2));
         assertFalse(book.getAsks().contains(o2));
+        assertNull(book.cancelOrder(o2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLoadSortedKeepsPriorityAndSortsUnorderedInput() {
+        OrderBook book = new OrderBook();
+        Order b1 = createOrder("buy", 101.0, 1000);
+        Order b2 = createOrder("buy", 100.0, 500);
+        Order a1 = createOrder("sell", 102.0, 2000);
+        Order a2 = createOrder("sell", 102.0, 1000);
+        book.addLimitOrder(createOrder("buy", 50.0, 0));
+        // Bids already sorted, asks out of time priority
+        book.loadSorted(List.of(b1, b2), List.of(a1, a2));
+        assertEquals(List.of(b1, b2), book.getBids());
+        assertEquals(List.of(a2, a1), book.getAsks());
+    }
+
+    @Test
+    public void testChecksumIndependentOfOrderAndRestoredAfterFillAndCancel() {
+        Order b1 = createOrder("buy", 100.0, 1000);
+        Order b2 = createOrder("buy", 99.5, 2000);
+        Order a1 = createOrder("sell", 101.0, 1500);
+        OrderBook book = new OrderBook();
+        book.addLimitOrder(b1);
+        book.addLimitOrder(b2);
+        book.addLimitOrder(a1);
+        OrderBook reversed = new OrderBook();
+        reversed.addLimitOrder(a1);
+        reversed.addLimitOrder(b2);
+        reversed.addLimitOrder(b1);
+        long before = book.checksum();
+        assertEquals(before, reversed.checksum());
+        assertEquals(before, book.recomputeChecksum());
+
+        book.applyFill(a1, new BigDecimal("0.4"));
+        assertNotEquals(before, book.checksum());
+        assertEquals(book.recomputeChecksum(), book.checksum());
+
+        Order extra = createOrder("buy", 98.0, 3000);
+        book.addLimitOrder(extra);
+        book.cancelOrder(extra);
+        a1.setFilledQuantity(BigDecimal.ZERO);
+        book.applyState(a1);
+        assertEquals(before, book.checksum());
+
+        book.loadSorted(List.of(b1, b2), List.of(a1));
+        assertEquals(before, book.checksum());
+        book.clear();
+        assertEquals(0L, book.checksum());
+    }
+
+    @Test
+    public void testPriceLevelsAggregateRemainingQuantity() {
+        OrderBook book = new OrderBook();
+        Order b1 = createOrder("buy", 100.0, 1000);
+        Order b2 = createOrder("buy", 100.0, 2000);
+        Order b3 = createOrder("buy", 101.0, 3000);
+        Order a1 = createOrder("sell", 102.0, 1000);
+        book.addLimitOrder(b1);
+        book.addLimitOrder(b2);
+        book.addLimitOrder(b3);
+        book.addLimitOrder(a1);
+        assertEquals(List.of(new BigDecimal("101.0"), new BigDecimal("100.0")), List.copyOf(book.getBidLevels().keySet()));
+        OrderBook.PriceLevel level = book.getBidLevels().get(new BigDecimal("100"));
+        assertEquals(0, level.getQuantity().compareTo(new BigDecimal("2")));
+        assertEquals(2, level.getOrders());
+
+        long version = book.levelsVersion();
+        book.applyFill(b1, new BigDecimal("0.25"));
+        assertTrue(book.levelsVersion() > version);
+        assertEquals(0, level.getQuantity().compareTo(new BigDecimal("1.75")));
+        book.cancelOrder(b2);
+        assertEquals(0, book.getBidLevels().get(new BigDecimal("100")).getQuantity().compareTo(new BigDecimal("0.75")));
+        book.cancelOrder(b1);
+        assertNull(book.getBidLevels().get(new BigDecimal("100")));
+        assertEquals(1, book.getAskLevels().size());
+
+        DepthSnapshot depth = DepthSnapshot.of("BTC-USD", 1L, book, 10);
+        assertEquals(1, depth.getBids().size());
+        assertEquals(0, depth.getBids().get(0).getPrice().compareTo(new BigDecimal("101")));
+        assertEquals(depth.etag(5), DepthSnapshot.of("BTC-USD", 2L, book, 10).etag(5));
+    }
+
+    /** Quantity and price×quantity of the first n levels, walking them. */
+    private static BigDecimal[] walk(Map<BigDecimal, OrderBook.PriceLevel> levels, int n) {
+        BigDecimal quantity = BigDecimal.ZERO;
+        BigDecimal notional = BigDecimal.ZERO;
+        int i = 0;
+        for (Map.Entry<BigDecimal, OrderBook.PriceLevel> e : levels.entrySet()) {
+            if (i++ >= n) break;
+            quantity = quantity.add(e.getValue().getQuantity());
+            notional = notional.add(e.getKey().multiply(e.getValue().getQuantity()));
+        }
+        return new BigDecimal[] {quantity, notional};
+    }
+
+    @Test
+    public void testSignalTotalsTrackTheBestLevels() {
+        OrderBook book = new OrderBook(3);
+        Random random = new Random(42);
+        List<Order> resting = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int op = random.nextInt(3);
+            if (op == 0 || resting.isEmpty()) {
+                boolean buy = random.nextBoolean();
+                Order o = createOrder(buy ? "buy" : "sell", buy ? 90 + random.nextInt(10) : 100 + random.nextInt(10), i);
+                book.addLimitOrder(o);
+                resting.add(o);
+            } else if (op == 1) {
+                book.cancelOrder(resting.remove(random.nextInt(resting.size())));
+            } else {
+                Order o = resting.get(random.nextInt(resting.size()));
+                book.applyFill(o, new BigDecimal("0.125"));
+                if (o.getFilledQuantity().compareTo(o.getQuantity()) >= 0) {
+                    book.cancelOrder(o);
+                    resting.remove(o);
+                }
+            }
+            BigDecimal[] bids = walk(book.getBidLevels(), 3);
+            BigDecimal[] asks = walk(book.getAskLevels(), 3);
+            assertEquals(0, bids[0].compareTo(book.getBidTop().getQuantity()), "bid depth after op " + i);
+            assertEquals(0, bids[1].compareTo(book.getBidTop().getNotional()), "bid notional after op " + i);
+            assertEquals(0, asks[0].compareTo(book.getAskTop().getQuantity()), "ask depth after op " + i);
+            assertEquals(0, asks[1].compareTo(book.getAskTop().getNotional()), "ask notional after op " + i);
+        }
+    }
+
+    @Test
+    public void testSignalsOfBook() {
+        OrderBook book = new OrderBook(2);
+        OrderFlow flow = new OrderFlow(10);
+        long now = System.currentTimeMillis();
+        Order bid = createOrder("buy", 99.0, 1000);
+        book.addLimitOrder(bid);
+        book.addLimitOrder(createOrder("buy", 98.0, 1000));
+        book.addLimitOrder(createOrder("buy", 98.0, 1001));
+        book.addLimitOrder(createOrder("sell", 101.0, 1000));
+        book.addLimitOrder(createOrder("sell", 101.0, 1001));
+        book.addLimitOrder(createOrder("sell", 101.0, 1002));
+        flow.update(book, now);
+        // Both quotes arrived: +1 bid, -3 ask
+        assertEquals(0, new BigDecimal("-2").compareTo(flow.total()));
+
+        Signals s = Signals.of("BTC-USD", 1L, book, flow);
+        assertEquals(0, new BigDecimal("2").compareTo(s.getSpread()));
+        assertEquals(0, new BigDecimal("100").compareTo(s.getMid()));
+        // (99 * 3 + 101 * 1) / 4
+        assertEquals(0, new BigDecimal("99.5").compareTo(s.getMicroprice()));
+        assertEquals(0, new BigDecimal("-0.5").compareTo(s.getImbalance()));
+        assertEquals(0, new BigDecimal("3").compareTo(s.getBidDepth()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(s.getDepthImbalance()));
+        assertEquals(0, new BigDecimal("-2").compareTo(s.getOrderFlowImbalance()));
+
+        // The best bid leaves: its size counts against the bid
+        book.cancelOrder(bid);
+        flow.update(book, now);
+        assertEquals(0, new BigDecimal("-3").compareTo(flow.total()));
+        assertNull(Signals.of("BTC-USD", 2L, new OrderBook(), new OrderFlow(10)).getMid());
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.tradeengine.engine;
+
+import com.example.tradeengine.model.Order;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link StopBook}: stops trigger on the right side of
+ * the traded prices, come out in trigger then arrival order, and
+ * checking a trade stays cheap with 100k pending stops.  The benchmark
+ * is tagged `benchmark`, so it only runs with `mvn test -Pbenchmark`.
+ */
+public class StopBookTest {
+    private static Order stop(String side, String stopPrice) {
+        Order o = new Order();
+        o.setOrderId(UUID.randomUUID());
+        o.setClientId("client");
+        o.setInstrument("BTC-USD");
+        o.setSide(side);
+        o.setType("stop");
+        o.setStopPrice(new BigDecimal(stopPrice));
+        o.setQuantity(BigDecimal.ONE);
+        o.setFilledQuantity(BigDecimal.ZERO);
+        o.setStatus("pending");
+        return o;
+    }
+
+    @Test
+    public void testTriggersOnlyStopsThePricesReached() {
+        StopBook book = new StopBook();
+        Order buy101 = stop("buy", "101");
+        Order buy105 = stop("buy", "105");
+        Order sell99 = stop("sell", "99");
+        Order sell95 = stop("sell", "95");
+        List.of(buy101, buy105, sell99, sell95).forEach(book::add);
+        List<Order> out = new ArrayList<>();
+        assertEquals(0, book.popTriggered(new BigDecimal("100"), new BigDecimal("100"), out));
+        // A buy sweeping from 100 to 102 triggers the buy stop at 101 only
+        assertEquals(1, book.popTriggered(new BigDecimal("100"), new BigDecimal("102"), out));
+        assertEquals(List.of(buy101), out);
+        out.clear();
+        // A sell sweeping down to 95 triggers both sell stops, highest first
+        assertEquals(2, book.popTriggered(new BigDecimal("95"), new BigDecimal("100"), out));
+        assertEquals(List.of(sell99, sell95), out);
+        assertEquals(1, book.size());
+        assertSame(buy105, book.getOrder(buy105.getOrderId()));
+    }
+
+    @Test
+    public void testSamePriceKeepsArrivalOrderAndRemoveWorks() {
+        StopBook book = new StopBook();
+        Order first = stop("sell", "90");
+        Order second = stop("sell", "90");
+        Order third = stop("sell", "90");
+        book.add(first);
+        book.add(second);
+        book.add(third);
+        assertSame(second, book.remove(second.getOrderId()));
+        assertNull(book.remove(second.getOrderId()));
+        List<Order> out = new ArrayList<>();
+        book.popTriggered(new BigDecimal("89"), new BigDecimal("89"), out);
+        assertEquals(List.of(first, third), out);
+        assertEquals(0, book.size());
+        assertTrue(StopBook.triggers(stop("buy", "10"), new BigDecimal("10"), new BigDecimal("10")));
+        assertFalse(StopBook.triggers(stop("buy", "10"), null, null));
+    }
+
+    /**
+     * A random walk of trades against 100k pending stops, re‑adding each
+     * triggered stop on the other side of the market so the book stays
+     * full, compared with scanning every stop per trade.
+     */
+    @Test
+    @Tag("benchmark")
+    public void testBenchmarkTradesAgainst100kStops() {
+        int stops = 100_000;
+        Random random = new Random(42);
+        StopBook book = new StopBook();
+        List<Order> all = new ArrayList<>(stops);
+        for (int i = 0; i < stops; i++) {
+            boolean buy = i % 2 == 0;
+            // Buy stops above the market at 30000, sell stops below
+            int offset = 1 + random.nextInt(2000);
+            Order o = stop(buy ? "buy" : "sell", Integer.toString(buy ? 30000 + offset : 30000 - offset));
+            book.add(o);
+            all.add(o);
+        }
+        int trades = 200_000;
+        int price = 30000;
+        long triggered = 0;
+        List<Order> out = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < trades; t++) {
+            price += random.nextInt(3) - 1;
+            BigDecimal p = BigDecimal.valueOf(price);
+            out.clear();
+            triggered += book.popTriggered(p, p, out);
+            for (Order o : out) {
+                boolean buy = random.nextBoolean();
+                int offset = 1 + random.nextInt(2000);
+                o.setSide(buy ? "buy" : "sell");
+                o.setStopPrice(BigDecimal.valueOf(buy ? price + offset : price - offset));
+                book.add(o);
+            }
+        }
+        double nanosPerTrade = (double) (System.nanoTime() - start) / trades;
+        assertEquals(stops, book.size());
+
+        // The same check done by scanning every pending stop
+        BigDecimal p = BigDecimal.valueOf(price);
+        int scans = 200;
+        long scanStart = System.nanoTime();
+        long scanned = 0;
+        for (int t = 0; t < scans; t++) {
+            for (Order o : all) {
+                if (StopBook.triggers(o, p, p)) scanned++;
+            }
+        }
+        double scanNanosPerTrade = (double) (System.nanoTime() - scanStart) / scans;
+        assertTrue(triggered > 0);
+        assertTrue(nanosPerTrade * 10 < scanNanosPerTrade, "indexed " + nanosPerTrade + " ns vs scan " + scanNanosPerTrade
+            + " ns (" + scanned / scans + " triggered per scan)");
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.tradeengine.filter;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link RateLimitFilter}: each client gets its tier's burst
+ * and then its sustained rate, independently of other clients.  The
+ * throughput benchmark is tagged `benchmark`, so it only runs with
+ * `mvn test -Pbenchmark`.
+ */
+public class RateLimitFilterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstThenSustainedRatePerClient() {
+        RateLimitFilter filter = new RateLimitFilter("default:10/5,premium:1000/100", "mm-1:premium", 60_000, 100_000);
+        long now = 1_000 * SECOND;
+        for (int i = 0; i < 5; i++) assertEquals(0, filter.acquire("a", now), "burst request " + i);
+        long wait = filter.acquire("a", now);
+        assertEquals(SECOND / 10, wait);
+        // Another client is unaffected, and a premium client has its own burst
+        assertEquals(0, filter.acquire("b", now));
+        for (int i = 0; i < 100; i++) assertEquals(0, filter.acquire("mm-1", now));
+        assertTrue(filter.acquire("mm-1", now) > 0);
+        // After one emission interval exactly one more request is admitted
+        assertEquals(0, filter.acquire("a", now + wait));
+        assertTrue(filter.acquire("a", now + wait) > 0);
+        // Over a long run the admitted rate converges on the tier's rate
+        int admitted = 0;
+        for (long t = now + SECOND; t < now + 11 * SECOND; t += SECOND / 1000) {
+            if (filter.acquire("a", t) == 0) admitted++;
+        }
+        assertTrue(admitted >= 100 && admitted <= 105, "admitted " + admitted + " in 10 s");
+    }
+
+    @Test
+    public void testEvictsOnlyIdleBuckets() {
+        RateLimitFilter filter = new RateLimitFilter("default:10/5", "", 1_000, 100_000);
+        long now = 1_000 * SECOND;
+        filter.acquire("idle", now);
+        for (int i = 0; i < 5; i++) filter.acquire("busy", now + SECOND);
+        filter.evictIdle(now + 2 * SECOND);
+        assertEquals(1, filter.size());
+        // The evicted client comes back with a full bucket
+        for (int i = 0; i < 5; i++) assertEquals(0, filter.acquire("idle", now + 2 * SECOND));
+    }
+
+    @Test
+    public void testClientsBeyondTheCapShareOneBucket() {
+        RateLimitFilter filter = new RateLimitFilter("default:10/5", "", 60_000, 2);
+        long now = 1_000 * SECOND;
+        assertEquals(0, filter.acquire("a", now));
+        assertEquals(0, filter.acquire("b", now));
+        // Invented ids beyond the cap neither get a bucket each nor a fresh burst
+        for (int i = 0; i < 5; i++) assertEquals(0, filter.acquire("new-" + i, now));
+        assertTrue(filter.acquire("new-5", now) > 0);
+        assertEquals(2, filter.size());
+        // Existing clients keep their own buckets
+        assertEquals(0, filter.acquire("a", now));
+    }
+
+    @Test
+    public void testRejectsMalformedTiers() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimitFilter("premium:10/5", "", 1_000, 100_000));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimitFilter("default:10", "", 1_000, 100_000));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimitFilter("default:10/5", "mm-1:gold", 1_000, 100_000));
+    }
+
+    @Test
+    public void testConcurrentClientsNeverExceedBurst() throws Exception {
+        RateLimitFilter filter = new RateLimitFilter("default:1/50", "", 60_000, 100_000);
+        long now = System.nanoTime();
+        AtomicLong admitted = new AtomicLong();
+        int threads = 8;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    if (filter.acquire("shared", now) == 0) admitted.incrementAndGet();
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(50, admitted.get());
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkNanosPerRequest() throws Exception {
+        int clients = Integer.getInteger("ratelimit.benchmark.clients", 10_000);
+        int requests = Integer.getInteger("ratelimit.benchmark.requests", 2_000_000);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        RateLimitFilter filter = new RateLimitFilter("default:5/10", "", 60_000, 100_000);
+        String[] keys = new String[clients];
+        for (int i = 0; i < clients; i++) keys[i] = "client-" + i;
+        // Warm up on another filter so the measured run starts with full buckets
+        RateLimitFilter warmup = new RateLimitFilter("default:5/10", "", 60_000, 100_000);
+        for (int i = 0; i < 200_000; i++) warmup.acquire(keys[i % clients], System.nanoTime());
+        AtomicLong admitted = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int offset = t * 7919;
+            new Thread(() -> {
+                long ok = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < requests / threads; i++) {
+                    if (filter.acquire(keys[(offset + i) % clients], System.nanoTime()) == 0) ok++;
+                }
+                admitted.addAndGet(ok);
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        double elapsed = System.nanoTime() - begin;
+        assertTrue(admitted.get() > 0);
+        assertTrue(elapsed * threads / requests < 10_000, Math.round(elapsed * threads / requests) + " ns/request per thread");
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.tradeengine.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link BinanceTradeParser}: it must read the same fields
+ * as a JSON tree would, from bare and combined‑stream messages, and
+ * report skipped trade ids.  The throughput benchmark is tagged
+ * `benchmark`, so it only runs with `mvn test -Pbenchmark`.
+ */
+public class BinanceTradeParserTest {
+    private static String trade(String symbol, long id, String quantity, boolean buyerIsMaker) {
+        return "{\"e\":\"trade\",\"E\":1672515782136,\"s\":\"" + symbol + "\",\"t\":" + id
+            + ",\"p\":\"16500.12000000\",\"q\":\"" + quantity + "\",\"T\":1672515782136,\"m\":" + buyerIsMaker + ",\"M\":true}";
+    }
+
+    @Test
+    public void testParsesBareAndCombinedMessages() {
+        BinanceTradeParser parser = new BinanceTradeParser();
+        assertTrue(parser.parse(trade("BTCUSDT", 12345, "0.00123000", true)));
+        assertEquals("BTC-USD", parser.getSymbol().getInstrument());
+        assertEquals(12345, parser.getTradeId());
+        assertEquals(0, new BigDecimal("0.00123").compareTo(parser.getQuantity()));
+        assertEquals(5, parser.getQuantity().scale());
+        assertTrue(parser.isBuyerMaker());
+
+        String combined = "{\"stream\":\"ethusdt@trade\",\"data\": " + trade("ETHUSDT", 7, "100.0", false) + "}";
+        assertTrue(parser.parse(combined));
+        assertEquals("ETH-USD", parser.getSymbol().getInstrument());
+        assertEquals(7, parser.getTradeId());
+        assertEquals(0, new BigDecimal("100").compareTo(parser.getQuantity()));
+        assertFalse(parser.isBuyerMaker());
+
+        // Symbols are resolved once
+        assertTrue(parser.parse(trade("BTCUSDT", 12346, "1", false)));
+        BinanceTradeParser.Symbol btc = parser.getSymbol();
+        assertTrue(parser.parse(trade("BTCUSDT", 12347, "1", false)));
+        assertSame(btc, parser.getSymbol());
+    }
+
+    @Test
+    public void testRejectsNonTradesAndBrokenMessages() {
+        BinanceTradeParser parser = new BinanceTradeParser();
+        assertFalse(parser.parse("{\"result\":null,\"id\":1}"));
+        assertFalse(parser.parse("{\"e\":\"kline\",\"s\":\"BTCUSDT\",\"q\":\"1\"}"));
+        assertFalse(parser.parse(trade("BTCUSDT", 1, "0.000", true)));
+        assertFalse(parser.parse(trade("BTCUSDT", 1, "1e5", true)));
+        assertFalse(parser.parse("{\"e\":\"trade\",\"s\":\"BTCUS"));
+        assertTrue(parser.parse("{\"e\":\"aggTrade\",\"s\":\"BTCUSDT\",\"a\":5,\"q\":\"2\",\"m\":false}"));
+        assertEquals(-1, parser.getTradeId());
+    }
+
+    @Test
+    public void testSymbolsReportSkippedTradeIds() {
+        BinanceTradeParser parser = new BinanceTradeParser();
+        parser.parse(trade("BTCUSDT", 100, "1", true));
+        BinanceTradeParser.Symbol btc = parser.getSymbol();
+        assertEquals(0, btc.advance(100));
+        assertEquals(0, btc.advance(101));
+        assertEquals(3, btc.advance(105));
+        assertEquals(0, btc.advance(104), "late or repeated ids are not gaps");
+        assertEquals(105, btc.getLastTradeId());
+    }
+
+    @Test
+    public void testAgreesWithJsonTree() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Random rnd = new Random(3);
+        BinanceTradeParser parser = new BinanceTradeParser();
+        for (int i = 0; i < 1_000; i++) {
+            String quantity = rnd.nextInt(1000) + "." + String.format("%08d", rnd.nextInt(100_000_000));
+            String message = trade("SOLUSDT", i, quantity, rnd.nextBoolean());
+            JsonNode json = mapper.readTree(message);
+            boolean parsed = parser.parse(message);
+            BigDecimal expected = new BigDecimal(json.path("q").asText());
+            assertEquals(expected.signum() > 0, parsed);
+            if (!parsed) continue;
+            assertEquals(0, expected.compareTo(parser.getQuantity()));
+            assertEquals(json.path("t").asLong(), parser.getTradeId());
+            assertEquals(json.path("m").asBoolean(), parser.isBuyerMaker());
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkMessagesPerSecond() throws Exception {
+        int messages = Integer.getInteger("binance.benchmark.messages", 2_000_000);
+        String[] symbols = {"BTCUSDT", "ETHUSDT", "SOLUSDT", "XRPUSDT", "BNBUSDT", "ADAUSDT", "DOGEUSDT", "AVAXUSDT"};
+        String[] sample = new String[1024];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = "{\"stream\":\"x@trade\",\"data\":" + trade(symbols[i % symbols.length], i, "0.0" + (i + 1) + "000", i % 2 == 0) + "}";
+        }
+        BinanceTradeParser parser = new BinanceTradeParser();
+        ObjectMapper mapper = new ObjectMapper();
+        for (int i = 0; i < 200_000; i++) {
+            parser.parse(sample[i % sample.length]);
+            if (i % 10 == 0) mapper.readTree(sample[i % sample.length]);
+        }
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            if (parser.parse(sample[i % sample.length])) checksum += parser.getTradeId();
+        }
+        double tokenizer = (System.nanoTime() - start) / 1e9;
+        int treeMessages = messages / 4;
+        start = System.nanoTime();
+        for (int i = 0; i < treeMessages; i++) {
+            checksum += mapper.readTree(sample[i % sample.length]).path("data").path("t").asLong();
+        }
+        double tree = (System.nanoTime() - start) / 1e9;
+        assertTrue(checksum > 0);
+        assertTrue(messages / tokenizer > treeMessages / tree, "tokenizer " + Math.round(messages / tokenizer)
+            + " messages/s vs JSON tree " + Math.round(treeMessages / tree) + " messages/s");
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.model.Candle;
+import com.example.tradeengine.model.Trade;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link CandleService}: bars of every interval must match
+ * the trades they cover, whether still open or rolled up from closed
+ * bars below them.
+ */
+public class CandleServiceTest {
+    private static final Instant T0 = Instant.parse("2024-05-01T14:00:00Z");
+
+    private static Trade trade(String price, String quantity, Instant ts) {
+        Trade t = new Trade(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal(price), new BigDecimal(quantity), ts);
+        t.setInstrument("BTC-USD");
+        return t;
+    }
+
+    private static void assertBar(Candle c, Instant openTime, String open, String high, String low, String close,
+                                  String volume, long trades) {
+        assertEquals(openTime, c.getOpenTime());
+        assertEquals(0, new BigDecimal(open).compareTo(c.getOpen()));
+        assertEquals(0, new BigDecimal(high).compareTo(c.getHigh()));
+        assertEquals(0, new BigDecimal(low).compareTo(c.getLow()));
+        assertEquals(0, new BigDecimal(close).compareTo(c.getClose()));
+        assertEquals(0, new BigDecimal(volume).compareTo(c.getVolume()));
+        assertEquals(trades, c.getTradeCount());
+    }
+
+    @Test
+    public void testHigherIntervalsRollUpFromLowerOnes() {
+        CandleService service = new CandleService(null, null, null, null, null, new SimpleMeterRegistry(), 100, 5000, 5000, 0);
+        service.apply(trade("100", "1", T0.plusMillis(100)));
+        service.apply(trade("105", "2", T0.plusMillis(900)));
+        service.apply(trade("98", "1", T0.plusSeconds(30)));
+        service.apply(trade("101", "4", T0.plusSeconds(61)));
+        service.apply(trade("99", "1", T0.plusSeconds(62)));
+        // Closes the 1s bar of 14:01:02 only
+        service.tick(T0.plusSeconds(63).toEpochMilli());
+
+        Instant to = T0.plus(Duration.ofDays(1));
+        List<Candle> seconds = service.candles("BTC-USD", "1s", T0, to, 100);
+        assertEquals(4, seconds.size());
+        assertBar(seconds.get(0), T0, "100", "105", "100", "105", "3", 2);
+        assertBar(seconds.get(3), T0.plusSeconds(62), "99", "99", "99", "99", "1", 1);
+
+        List<Candle> minutes = service.candles("BTC-USD", "1m", T0, to, 100);
+        assertEquals(2, minutes.size());
+        assertBar(minutes.get(0), T0, "100", "105", "98", "98", "4", 3);
+        assertBar(minutes.get(1), T0.plusSeconds(60), "101", "101", "99", "99", "5", 2);
+
+        List<Candle> hours = service.candles("BTC-USD", "1h", T0, to, 100);
+        assertEquals(1, hours.size());
+        assertBar(hours.get(0), T0, "100", "105", "98", "99", "9", 5);
+
+        // A range within memory, and the limit
+        List<Candle> later = service.candles("BTC-USD", "1s", T0.plusSeconds(1), to, 2);
+        assertEquals(2, later.size());
+        assertEquals(T0.plusSeconds(30), later.get(0).getOpenTime());
+
+        assertThrows(IllegalArgumentException.class, () -> service.candles("BTC-USD", "2m", T0, to, 100));
+    }
+
+    @Test
+    public void testTradeArrivingAfterItsBarClosedIsAddedToIt() {
+        CandleService service = new CandleService(null, null, null, null, null, new SimpleMeterRegistry(), 100, 5000, 5000, 0);
+        service.apply(trade("100", "1", T0.plusSeconds(58)));
+        service.apply(trade("101", "1", T0.plusSeconds(59)));
+        // Closes the 1s bar of 14:00:59 and the 1m bar of 14:00
+        service.apply(trade("102", "1", T0.plusSeconds(61)));
+        // A trade of 14:00:59 held up on its way to the aggregator
+        service.apply(trade("90", "2", T0.plusMillis(59_500)));
+        service.tick(T0.plusSeconds(62).toEpochMilli());
+
+        Instant to = T0.plus(Duration.ofDays(1));
+        List<Candle> seconds = service.candles("BTC-USD", "1s", T0, to, 100);
+        assertEquals(3, seconds.size());
+        assertBar(seconds.get(1), T0.plusSeconds(59), "101", "101", "90", "101", "3", 2);
+        List<Candle> minutes = service.candles("BTC-USD", "1m", T0, to, 100);
+        assertEquals(2, minutes.size());
+        assertBar(minutes.get(0), T0, "100", "101", "90", "101", "4", 3);
+        assertBar(minutes.get(1), T0.plusSeconds(60), "102", "102", "102", "102", "1", 1);
+        List<Candle> hours = service.candles("BTC-USD", "1h", T0, to, 100);
+        assertBar(hours.get(0), T0, "100", "102", "90", "102", "5", 4);
+    }
+}
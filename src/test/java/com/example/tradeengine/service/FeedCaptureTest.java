@@ -0,0 +1,89 @@
+package com.example.tradeengine.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link FeedCapture}: messages and their spacing must come
+ * back as recorded, and replay must keep that spacing scaled by speed.
+ */
+public class FeedCaptureTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static Path capture(Path dir, String... messages) throws IOException {
+        Path file = dir.resolve("feed.cap");
+        try (FeedCapture.Writer w = FeedCapture.Writer.create(file)) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < messages.length; i++) {
+                w.write(t0 + i * 20 * MS, messages[i]);
+            }
+            assertEquals(messages.length, w.getMessages());
+        }
+        return file;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("feed-capture");
+        Path file = capture(dir, "{\"s\":\"BTCUSDT\"}", "", "{\"note\":\"größer\"}");
+        try (FeedCapture.Reader r = FeedCapture.Reader.open(file)) {
+            assertTrue(r.getStartEpochNanos() > 0);
+            assertTrue(r.next());
+            assertEquals("{\"s\":\"BTCUSDT\"}", r.getMessage());
+            long first = r.getOffsetNanos();
+            assertTrue(r.next());
+            assertEquals("", r.getMessage());
+            assertEquals(20 * MS, r.getOffsetNanos() - first);
+            assertTrue(r.next());
+            assertEquals("{\"note\":\"größer\"}", r.getMessage());
+            assertEquals(40 * MS, r.getOffsetNanos() - first);
+            assertFalse(r.next());
+        }
+    }
+
+    @Test
+    public void testTruncatedRecordEndsCapture() throws IOException {
+        Path dir = Files.createTempDirectory("feed-capture");
+        Path file = capture(dir, "one", "two");
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 1);
+        }
+        List<String> read = new ArrayList<>();
+        try (FeedCapture.Reader r = FeedCapture.Reader.open(file)) {
+            while (r.next()) read.add(r.getMessage());
+        }
+        assertEquals(List.of("one"), read);
+
+        Path notCapture = dir.resolve("other.cap");
+        Files.writeString(notCapture, "hello world, not a capture");
+        assertThrows(IOException.class, () -> FeedCapture.Reader.open(notCapture));
+    }
+
+    @Test
+    public void testReplayScalesGapsBySpeed() throws IOException {
+        Path dir = Files.createTempDirectory("feed-capture");
+        Path file = capture(dir, "a", "b", "c", "d", "e", "f");
+        // 100 ms of recorded gaps
+        List<String> sent = new ArrayList<>();
+        long start = System.nanoTime();
+        assertEquals(6, FeedCapture.replay(file, 2.0, sent::add));
+        long paced = System.nanoTime() - start;
+        assertEquals(List.of("a", "b", "c", "d", "e", "f"), sent);
+        assertTrue(paced >= 50 * MS, "2x replay of 100 ms took " + paced / MS + " ms");
+
+        start = System.nanoTime();
+        assertEquals(6, FeedCapture.replay(file, 0, m -> {}));
+        long unpaced = System.nanoTime() - start;
+        assertTrue(unpaced < paced, "max speed should not wait");
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.exception.IdempotencyUnavailableException;
+import com.example.tradeengine.model.Order;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link IdempotencyService} and its {@link BloomFilter}.  The
+ * service is not started and its Redis template has no connection, so
+ * every Redis lookup fails.  With the filter trusted, new keys never
+ * reach Redis and what is left to observe is the near‑cache and the
+ * in‑flight coalescing; without it, keyed submissions must fail.
+ */
+public class IdempotencyServiceTest {
+
+    private static IdempotencyService service() {
+        IdempotencyService service = unseededService();
+        service.markFilterReady();
+        return service;
+    }
+
+    private static IdempotencyService unseededService() {
+        return new IdempotencyService(new RedisTemplate<>(), new SimpleMeterRegistry(), "1h", 1000, 10_000, 0.01);
+    }
+
+    private static Order order() {
+        Order order = new Order();
+        order.setOrderId(UUID.randomUUID());
+        return order;
+    }
+
+    @Test
+    public void testDuplicatesWhileInFlightShareTheFirstExecution() throws Exception {
+        IdempotencyService service = service();
+        AtomicInteger executions = new AtomicInteger();
+        CompletableFuture<Order> execution = new CompletableFuture<>();
+        CompletableFuture<Order> first = service.submit("k1", () -> {
+            executions.incrementAndGet();
+            return execution;
+        });
+        CompletableFuture<Order> second = service.submit("k1", () -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture(order());
+        });
+        assertSame(first, second);
+        assertFalse(second.isDone());
+        Order result = order();
+        execution.complete(result);
+        assertSame(result, first.get());
+        assertSame(result, second.get());
+        // Later duplicates are answered from the near-cache
+        Order third = service.submit("k1", () -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture(order());
+        }).get();
+        assertSame(result, third);
+        assertEquals(1, executions.get());
+        service.stop();
+    }
+
+    @Test
+    public void testFailedExecutionIsNotRemembered() throws Exception {
+        IdempotencyService service = service();
+        CompletableFuture<Order> failed = service.submit("k2",
+            () -> CompletableFuture.failedFuture(new IllegalStateException("rejected")));
+        assertTrue(failed.isCompletedExceptionally());
+        Order retried = order();
+        assertSame(retried, service.submit("k2", () -> CompletableFuture.completedFuture(retried)).get());
+        service.stop();
+    }
+
+    @Test
+    public void testKeyThatCannotBeRuledOutFailsWhileRedisIsDown() throws Exception {
+        IdempotencyService service = unseededService();
+        AtomicInteger executions = new AtomicInteger();
+        CompletableFuture<Order> result = service.submit("k3", () -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture(order());
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, result::get);
+        assertInstanceOf(IdempotencyUnavailableException.class, e.getCause());
+        assertEquals(0, executions.get());
+        // Once the filter can rule keys out, new ones are accepted without Redis
+        service.markFilterReady();
+        assertNotNull(service.submit("k3", () -> CompletableFuture.completedFuture(order())).get());
+        service.stop();
+    }
+
+    @Test
+    public void testReseedingStopsTrustingTheFilter() throws Exception {
+        IdempotencyService service = service();
+        assertNotNull(service.submit("k4", () -> CompletableFuture.completedFuture(order())).get());
+        // As on promotion: keys stored by the primary may be missing from the filter
+        service.reseedFilter();
+        ExecutionException e = assertThrows(ExecutionException.class,
+            () -> service.submit("k5", () -> CompletableFuture.completedFuture(order())).get());
+        assertInstanceOf(IdempotencyUnavailableException.class, e.getCause());
+        service.stop();
+    }
+
+    @Test
+    public void testBloomFilterFalsePositiveRate() {
+        int keys = 100_000;
+        BloomFilter filter = new BloomFilter(keys, 0.01);
+        for (int i = 0; i < keys; i++) filter.add("order-" + i);
+        for (int i = 0; i < keys; i++) assertTrue(filter.mightContain("order-" + i));
+        int falsePositives = 0;
+        for (int i = 0; i < keys; i++) {
+            if (filter.mightContain("absent-" + i)) falsePositives++;
+        }
+        double rate = (double) falsePositives / keys;
+        assertTrue(rate < 0.02, "false positive rate " + rate);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.DepthSnapshot;
+import com.example.tradeengine.engine.OrderBook;
+import com.example.tradeengine.model.Order;
+import com.example.tradeengine.model.Trade;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link MarketDataCodec}: a snapshot followed by deltas
+ * must rebuild the server's depth exactly, and a delta must be far
+ * smaller than the JSON depth a polling client would fetch.
+ */
+public class MarketDataCodecTest {
+    private static Order order(String side, String price, String quantity) {
+        Order o = new Order();
+        o.setOrderId(UUID.randomUUID());
+        o.setInstrument("BTC-USD");
+        o.setSide(side);
+        o.setType("limit");
+        o.setPrice(new BigDecimal(price));
+        o.setQuantity(new BigDecimal(quantity));
+        o.setFilledQuantity(BigDecimal.ZERO);
+        o.setStatus("open");
+        o.setCreatedAt(Instant.now());
+        return o;
+    }
+
+    private static void assertSameLevels(List<DepthSnapshot.Level> expected, TreeMap<BigDecimal, MarketDataCodec.Level> actual) {
+        assertEquals(expected.size(), actual.size());
+        int i = 0;
+        for (MarketDataCodec.Level l : actual.values()) {
+            DepthSnapshot.Level e = expected.get(i++);
+            assertEquals(0, e.getPrice().compareTo(l.getPrice()));
+            assertEquals(0, e.getQuantity().compareTo(l.getQuantity()));
+            assertEquals(e.getOrders(), l.getOrders());
+        }
+    }
+
+    @Test
+    public void testSnapshotAndDeltasRebuildTheBook() {
+        OrderBook book = new OrderBook();
+        Order bid = order("buy", "100.5", "2");
+        book.addLimitOrder(bid);
+        book.addLimitOrder(order("buy", "100", "1"));
+        book.addLimitOrder(order("sell", "101", "3"));
+        DepthSnapshot first = DepthSnapshot.of("BTC-USD", 1, book, 2);
+
+        TreeMap<BigDecimal, MarketDataCodec.Level> bids = MarketDataCodec.bidBook();
+        TreeMap<BigDecimal, MarketDataCodec.Level> asks = MarketDataCodec.askBook();
+        MarketDataCodec.Message snapshot = MarketDataCodec.decode(ByteBuffer.wrap(MarketDataCodec.snapshot("BTC-USD", 7, first)));
+        assertEquals(MarketDataCodec.SNAPSHOT, snapshot.getType());
+        assertEquals("BTC-USD", snapshot.getInstrument());
+        assertEquals(7, snapshot.getSequence());
+        assertEquals(first.getChecksum(), snapshot.getChecksum());
+        MarketDataCodec.apply(snapshot, bids, asks);
+        assertSameLevels(first.getBids(), bids);
+        assertSameLevels(first.getAsks(), asks);
+
+        // Fill part of the best bid, take out the ask and push a new bid
+        // in front, which moves 100 out of the top two levels
+        book.applyFill(bid, BigDecimal.ONE);
+        book.cancelOrder(book.getAsks().get(0));
+        book.addLimitOrder(order("buy", "100.75", "4"));
+        book.addLimitOrder(order("sell", "102.250", "1"));
+        DepthSnapshot second = DepthSnapshot.of("BTC-USD", 2, book, 2);
+        List<MarketDataCodec.Level> changes = MarketDataCodec.diff(first, second);
+        MarketDataCodec.Message delta = MarketDataCodec.decode(ByteBuffer.wrap(MarketDataCodec.delta("BTC-USD", 8, changes)));
+        assertEquals(MarketDataCodec.DELTA, delta.getType());
+        assertEquals(8, delta.getSequence());
+        assertEquals(changes.size(), delta.getLevels().size());
+        MarketDataCodec.apply(delta, bids, asks);
+        assertSameLevels(second.getBids(), bids);
+        assertSameLevels(second.getAsks(), asks);
+        assertTrue(MarketDataCodec.diff(second, second).isEmpty());
+    }
+
+    @Test
+    public void testTradeRoundTrip() {
+        Instant ts = Instant.parse("2024-01-02T03:04:05.123456Z");
+        Trade trade = new Trade(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("43123.45"), new BigDecimal("0.0015"), ts);
+        MarketDataCodec.Message m = MarketDataCodec.decode(ByteBuffer.wrap(MarketDataCodec.trade("ETH-USD", 3, trade)));
+        assertEquals(MarketDataCodec.TRADE, m.getType());
+        assertEquals("ETH-USD", m.getInstrument());
+        assertEquals(3, m.getSequence());
+        assertEquals(trade.getPrice(), m.getPrice());
+        assertEquals(trade.getQuantity(), m.getQuantity());
+        assertEquals(ts, m.getTimestamp());
+    }
+
+    @Test
+    public void testDeltaIsAFractionOfJsonDepth() throws Exception {
+        OrderBook book = new OrderBook();
+        for (int i = 0; i < 50; i++) {
+            book.addLimitOrder(order("buy", String.valueOf(1000 - i) + ".25", "1.5"));
+            book.addLimitOrder(order("sell", String.valueOf(1001 + i) + ".75", "2.5"));
+        }
+        DepthSnapshot before = DepthSnapshot.of("BTC-USD", 1, book, 50);
+        Order best = book.getBids().get(0);
+        book.applyFill(best, new BigDecimal("0.5"));
+        DepthSnapshot after = DepthSnapshot.of("BTC-USD", 2, book, 50);
+
+        byte[] delta = MarketDataCodec.delta("BTC-USD", 2, MarketDataCodec.diff(before, after));
+        byte[] json = after.toJson(50, new ObjectMapper());
+        assertTrue(delta.length * 10 < json.length, "delta " + delta.length + " bytes vs JSON " + json.length);
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.OrderBook;
+import com.example.tradeengine.model.EventRecord;
+import com.example.tradeengine.model.Order;
+import com.example.tradeengine.model.Trade;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Throughput benchmark for the in‑memory part of event replay:
+ * deserializing event payloads and applying them to order books in
+ * chunks, one fork‑join task per instrument, as a full replay does.
+ * Database reads and writes are excluded, so the figure is an upper
+ * bound for `POST /admin/replay`.  The number of order cycles per
+ * instrument can be raised with -Dreplay.benchmark.cycles.  Tagged
+ * `benchmark`, so it only runs with `mvn test -Pbenchmark`.
+ */
+@Tag("benchmark")
+public class ReplayBenchmarkTest {
+    private static final int INSTRUMENTS = 4;
+    private static final int CHUNK_SIZE = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private long nextEventId;
+
+    private Order order(String instrument, String side, BigDecimal price, Instant ts) {
+        Order o = new Order();
+        o.setOrderId(UUID.randomUUID());
+        o.setClientId("bench");
+        o.setInstrument(instrument);
+        o.setSide(side);
+        o.setType("limit");
+        o.setPrice(price);
+        o.setQuantity(BigDecimal.ONE);
+        o.setFilledQuantity(BigDecimal.ZERO);
+        o.setStatus("open");
+        o.setCreatedAt(ts);
+        o.setUpdatedAt(ts);
+        return o;
+    }
+
+    private EventRecord event(String type, String instrument, Object payload) throws Exception {
+        EventRecord ev = new EventRecord(type, null, instrument, objectMapper.writeValueAsString(payload));
+        ev.setId(++nextEventId);
+        return ev;
+    }
+
+    /**
+     * Every cycle rests one ask; every other cycle a buy then fills that
+     * ask, producing the event sequence the matching engine records.
+     */
+    private List<EventRecord> generate(String instrument, int cycles) throws Exception {
+        List<EventRecord> events = new ArrayList<>();
+        Instant ts = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < cycles; i++) {
+            Order ask = order(instrument, "sell", BigDecimal.valueOf(100 + i % 50), ts.plusMillis(2L * i));
+            events.add(event("ORDER_CREATED", instrument, ask));
+            events.add(event("ORDER_UPDATED", instrument, ask));
+            if (i % 2 == 1) {
+                Order buy = order(instrument, "buy", ask.getPrice(), ts.plusMillis(2L * i + 1));
+                events.add(event("ORDER_CREATED", instrument, buy));
+                events.add(event("TRADE_EXECUTED", instrument,
+                    new Trade(buy.getOrderId(), ask.getOrderId(), ask.getPrice(), BigDecimal.ONE, buy.getCreatedAt())));
+                ask.setFilledQuantity(BigDecimal.ONE);
+                ask.setStatus("filled");
+                events.add(event("ORDER_UPDATED", instrument, ask));
+                buy.setFilledQuantity(BigDecimal.ONE);
+                buy.setStatus("filled");
+                events.add(event("ORDER_UPDATED", instrument, buy));
+            }
+        }
+        return events;
+    }
+
+    @Test
+    public void benchmarkReplayEventsPerSecond() throws Exception {
+        int cycles = Integer.getInteger("replay.benchmark.cycles", 5_000);
+        Map<String, List<EventRecord>> streams = new ConcurrentHashMap<>();
+        long total = 0;
+        for (int i = 0; i < INSTRUMENTS; i++) {
+            String instrument = "BENCH-" + i;
+            streams.put(instrument, generate(instrument, cycles));
+            total += streams.get(instrument).size();
+        }
+        Map<String, OrderBook> books = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(INSTRUMENTS);
+        long start = System.nanoTime();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (List<EventRecord> stream : streams.values()) {
+            tasks.add(pool.submit(() -> {
+                ReplayBatch batch = new ReplayBatch(objectMapper, i -> books.computeIfAbsent(i, k -> new OrderBook()));
+                for (int from = 0; from < stream.size(); from += CHUNK_SIZE) {
+                    batch.clear();
+                    for (EventRecord ev : stream.subList(from, Math.min(stream.size(), from + CHUNK_SIZE))) {
+                        batch.apply(ev);
+                    }
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        for (OrderBook book : books.values()) {
+            assertEquals(cycles - cycles / 2, book.getAsks().size());
+            assertTrue(book.getBids().isEmpty());
+        }
+        assertTrue(total / seconds > 10_000, "replayed " + Math.round(total / seconds) + " events/s");
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.exception.OrderRejectedException;
+import com.example.tradeengine.model.EventRecord;
+import com.example.tradeengine.model.Order;
+import com.example.tradeengine.model.Trade;
+import com.example.tradeengine.repository.EventRecordRepository;
+import com.example.tradeengine.repository.OrderRepository;
+import com.example.tradeengine.repository.TradeRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link RiskService}: each limit rejects what it should and
+ * nothing else, exposure follows reservations and releases, including
+ * those the matching engine makes, and a check stays in the
+ * microsecond range.  The timing test is tagged `benchmark`, so it only
+ * runs with `mvn test -Pbenchmark`.
+ */
+public class RiskServiceTest {
+
+    private static RiskService service(String clientLimits) {
+        return new RiskService(true, new BigDecimal("10"), new BigDecimal("1000"), new BigDecimal("0.1"), clientLimits);
+    }
+
+    private static Order order(String client, String side, String type, String price, String quantity) {
+        Order order = new Order();
+        order.setClientId(client);
+        order.setSide(side);
+        order.setType(type);
+        order.setPrice(price == null ? null : new BigDecimal(price));
+        order.setQuantity(new BigDecimal(quantity));
+        order.setFilledQuantity(BigDecimal.ZERO);
+        return order;
+    }
+
+    @Test
+    public void testOrderQuantityLimit() {
+        RiskService risk = service("big:100/1000000");
+        assertThrows(OrderRejectedException.class, () -> risk.check(order("c", "buy", "limit", "1", "11"), null));
+        risk.check(order("c", "buy", "limit", "1", "10"), null);
+        risk.check(order("big", "buy", "limit", "1", "50"), null);
+    }
+
+    @Test
+    public void testPriceBandOnlyLimitsAggressivePrices() {
+        RiskService risk = service("");
+        BigDecimal reference = new BigDecimal("100");
+        assertThrows(OrderRejectedException.class, () -> risk.check(order("c", "buy", "limit", "111", "1"), reference));
+        assertThrows(OrderRejectedException.class, () -> risk.check(order("c", "sell", "limit", "89", "1"), reference));
+        risk.check(order("c", "buy", "limit", "110", "1"), reference);
+        risk.check(order("c", "sell", "limit", "90", "1"), reference);
+        // Passive prices far from the market only rest
+        risk.check(order("d", "buy", "limit", "10", "1"), reference);
+        risk.check(order("d", "sell", "limit", "500", "1"), reference);
+    }
+
+    @Test
+    public void testOpenNotionalIsReservedAndReleased() {
+        RiskService risk = service("");
+        Order first = order("c", "buy", "limit", "100", "6");
+        long reserved = risk.check(first, null);
+        assertEquals(0, new BigDecimal("600").compareTo(risk.getOpenNotional("c")));
+        // 600 + 500 exceeds 1000, and the rejected order leaves nothing behind
+        assertThrows(OrderRejectedException.class, () -> risk.check(order("c", "sell", "limit", "100", "5"), null));
+        assertEquals(0, new BigDecimal("600").compareTo(risk.getOpenNotional("c")));
+        // Market orders are valued at the reference price
+        risk.check(order("c", "sell", "market", null, "4"), new BigDecimal("100"));
+        assertEquals(0, new BigDecimal("1000").compareTo(risk.getOpenNotional("c")));
+        risk.release("c", RiskService.notional(new BigDecimal("100"), new BigDecimal("4")));
+        risk.release(first, new BigDecimal("2"));
+        assertEquals(0, new BigDecimal("400").compareTo(risk.getOpenNotional("c")));
+        risk.release("c", reserved - RiskService.notional(first.getPrice(), new BigDecimal("2")));
+        assertEquals(0, risk.getOpenNotional("c").signum());
+        // Recovery recounts from resting orders only
+        Order resting = order("c", "sell", "limit", "50", "3");
+        resting.setFilledQuantity(BigDecimal.ONE);
+        risk.reset(List.of(resting));
+        assertEquals(0, new BigDecimal("100").compareTo(risk.getOpenNotional("c")));
+    }
+
+    private static Order copy(Order o) {
+        Order c = order(o.getClientId(), o.getSide(), o.getType(), null, o.getQuantity().toPlainString());
+        c.setOrderId(o.getOrderId());
+        c.setInstrument(o.getInstrument());
+        c.setPrice(o.getPrice());
+        c.setStopPrice(o.getStopPrice());
+        c.setFilledQuantity(o.getFilledQuantity());
+        c.setStatus(o.getStatus());
+        c.setCreatedAt(o.getCreatedAt());
+        c.setUpdatedAt(o.getUpdatedAt());
+        return c;
+    }
+
+    /**
+     * A matching engine over mocked repositories whose order reads
+     * return the order as first saved, as a cancel that loaded it just
+     * before a fill was saved would see it.  The last state saved of
+     * each order is kept in lastSaved.
+     */
+    private static MatchingEngine engine(RiskService risk, Map<UUID, Order> lastSaved) {
+        ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        Map<UUID, Order> firstSaved = new ConcurrentHashMap<>();
+        OrderRepository orderRepo = mock(OrderRepository.class);
+        when(orderRepo.save(any(Order.class))).thenAnswer(inv -> {
+            Order o = inv.getArgument(0);
+            firstSaved.putIfAbsent(o.getOrderId(), copy(o));
+            lastSaved.put(o.getOrderId(), copy(o));
+            return o;
+        });
+        when(orderRepo.findById(any(UUID.class))).thenAnswer(inv -> Optional.ofNullable(firstSaved.get(inv.getArgument(0))).map(RiskServiceTest::copy));
+        TradeRepository tradeRepo = mock(TradeRepository.class);
+        when(tradeRepo.save(any())).thenAnswer(inv -> {
+            Trade t = inv.getArgument(0);
+            t.setTradeId(UUID.randomUUID());
+            return t;
+        });
+        AtomicLong ids = new AtomicLong();
+        EventRecordRepository events = mock(EventRecordRepository.class);
+        when(events.save(any(EventRecord.class))).thenAnswer(inv -> {
+            EventRecord ev = inv.getArgument(0);
+            ev.setId(ids.incrementAndGet());
+            return ev;
+        });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StreamService streamService = new StreamService(objectMapper, registry, events, orderRepo, 16, "conflate", 1024, 1, 16, 0);
+        return new MatchingEngine(orderRepo, tradeRepo, mock(IdempotencyService.class), risk, registry, streamService,
+            new EventService(events, objectMapper), false, "unused", false, 50, 5, 10);
+    }
+
+    private static Order limit(String client, String side, String price, String quantity) {
+        Order o = order(client, side, "limit", price, quantity);
+        o.setOrderId(UUID.randomUUID());
+        o.setInstrument("BTC-USD");
+        return o;
+    }
+
+    @Test
+    public void testCancelRacingAFillReleasesOnlyWhatWasResting() throws Exception {
+        RiskService risk = new RiskService(false, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ZERO, "");
+        MatchingEngine engine = engine(risk, new ConcurrentHashMap<>());
+        Order filled = limit("maker", "sell", "100", "10");
+        Order partly = limit("maker", "sell", "101", "5");
+        engine.submitOrder(filled, null).get(2, TimeUnit.SECONDS);
+        engine.submitOrder(partly, null).get(2, TimeUnit.SECONDS);
+        assertEquals(0, new BigDecimal("1505").compareTo(risk.getOpenNotional("maker")));
+        // Fills all of the first and 4 of the second after the cancels loaded them
+        engine.submitOrder(limit("taker", "buy", "101", "14"), null).get(2, TimeUnit.SECONDS);
+        assertEquals(0, new BigDecimal("101").compareTo(risk.getOpenNotional("maker")));
+
+        // The cancels carry the orders as loaded, unfilled and open
+        engine.cancelOrder(filled.getOrderId()).get(2, TimeUnit.SECONDS);
+        engine.cancelOrder(partly.getOrderId()).get(2, TimeUnit.SECONDS);
+        assertEquals(0, BigDecimal.ZERO.compareTo(risk.getOpenNotional("maker")));
+        assertEquals(0, BigDecimal.ZERO.compareTo(risk.getOpenNotional("taker")));
+    }
+
+    @Test
+    public void testCancelOfStopThatTriggeredSinceItWasLoadedDoesNothing() throws Exception {
+        RiskService risk = new RiskService(false, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ZERO, "");
+        Map<UUID, Order> lastSaved = new ConcurrentHashMap<>();
+        MatchingEngine engine = engine(risk, lastSaved);
+        engine.submitOrder(limit("maker", "sell", "100", "1"), null).get(2, TimeUnit.SECONDS);
+        engine.submitOrder(limit("maker", "sell", "101", "1"), null).get(2, TimeUnit.SECONDS);
+        Order stop = limit("stopper", "buy", null, "1");
+        stop.setType("stop");
+        stop.setStopPrice(new BigDecimal("100"));
+        assertEquals("pending", engine.submitOrder(stop, null).get(2, TimeUnit.SECONDS).getStatus());
+        // A trade at 100 triggers the stop, which buys the ask at 101
+        engine.submitOrder(limit("taker", "buy", "100", "1"), null).get(2, TimeUnit.SECONDS);
+        assertEquals("filled", lastSaved.get(stop.getOrderId()).getStatus());
+
+        // The cancel carries the stop as loaded, still pending
+        Order answer = engine.cancelOrder(stop.getOrderId()).get(2, TimeUnit.SECONDS);
+        assertNotEquals("cancelled", answer.getStatus());
+        assertEquals("filled", lastSaved.get(stop.getOrderId()).getStatus());
+        assertEquals(0, BigDecimal.ZERO.compareTo(risk.getOpenNotional("stopper")));
+        // An order still resting is cancelled from its live state
+        Order resting = limit("maker", "sell", "105", "2");
+        engine.submitOrder(resting, null).get(2, TimeUnit.SECONDS);
+        assertEquals("cancelled", engine.cancelOrder(resting.getOrderId()).get(2, TimeUnit.SECONDS).getStatus());
+        assertEquals("cancelled", lastSaved.get(resting.getOrderId()).getStatus());
+        assertEquals(0, BigDecimal.ZERO.compareTo(risk.getOpenNotional("maker")));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testCheckCostsMicroseconds() {
+        RiskService risk = new RiskService(true, new BigDecimal("1000"), new BigDecimal("1e15"), new BigDecimal("0.1"), "");
+        BigDecimal reference = new BigDecimal("30000");
+        Order[] orders = new Order[1000];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = order("client-" + (i % 100), i % 2 == 0 ? "buy" : "sell", "limit", Integer.toString(29000 + i), "0.5");
+        }
+        int n = 1_000_000;
+        long start = 0;
+        for (int i = 0; i < 2 * n; i++) {
+            if (i == n) start = System.nanoTime();
+            Order o = orders[i % orders.length];
+            risk.release(o.getClientId(), risk.check(o, reference));
+        }
+        double nanos = (double) (System.nanoTime() - start) / n;
+        assertTrue(nanos < 10_000, "check took " + nanos + " ns");
+    }
+}
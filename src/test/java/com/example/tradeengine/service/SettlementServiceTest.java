@@ -0,0 +1,101 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.model.SettlementPosition;
+import com.example.tradeengine.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the netting of {@link SettlementService}: positions must
+ * be the same however the day's trades are split into slices.
+ */
+public class SettlementServiceTest {
+    private static final BigDecimal FEE_RATE = new BigDecimal("0.001");
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 1);
+
+    private static Trade trade(String buyer, String seller, String price, String quantity) {
+        Trade t = new Trade(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal(price), new BigDecimal(quantity), Instant.now());
+        t.setInstrument("BTC-USD");
+        t.setBuyClientId(buyer);
+        t.setSellClientId(seller);
+        return t;
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), "expected " + expected + " but was " + actual);
+    }
+
+    @Test
+    public void testNetsBuyerAndSellerLegsPerClient() {
+        SettlementService.Netting netting = new SettlementService.Netting(FEE_RATE);
+        netting.add(trade("a", "b", "100", "2"));
+        netting.add(trade("b", "a", "110", "1"));
+        netting.add(trade("c", "a", "105", "1"));
+        netting.add(trade("a", null, "100", "1"));
+
+        List<SettlementPosition> positions = netting.positions(DAY, "BTC-USD");
+        assertEquals(List.of("a", "b", "c"), positions.stream().map(SettlementPosition::getClientId).toList());
+        assertEquals(4, netting.getTrades());
+        assertEquals(1, netting.getUnresolvedLegs());
+
+        SettlementPosition a = positions.get(0);
+        assertAmount("3", a.getBoughtQuantity());
+        assertAmount("2", a.getSoldQuantity());
+        assertAmount("1", a.getNetQuantity());
+        assertAmount("300", a.getBoughtNotional());
+        assertAmount("215", a.getSoldNotional());
+        assertAmount("-85", a.getNetNotional());
+        assertAmount("0.515", a.getFees());
+        assertEquals(4, a.getTradeCount());
+
+        SettlementPosition b = positions.get(1);
+        assertAmount("-1", b.getNetQuantity());
+        assertAmount("90", b.getNetNotional());
+        assertAmount("0.31", b.getFees());
+        assertEquals(DAY, b.getBusinessDate());
+        assertEquals("BTC-USD", b.getInstrument());
+
+        // Every unit bought was sold by someone, less the unattributed leg
+        BigDecimal net = positions.stream().map(SettlementPosition::getNetQuantity).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertAmount("1", net);
+    }
+
+    @Test
+    public void testMergedSlicesEqualOneNetting() {
+        Random rnd = new Random(7);
+        String[] clients = {"a", "b", "c", "d", "e"};
+        SettlementService.Netting whole = new SettlementService.Netting(FEE_RATE);
+        SettlementService.Netting[] slices = new SettlementService.Netting[4];
+        for (int i = 0; i < slices.length; i++) slices[i] = new SettlementService.Netting(FEE_RATE);
+        for (int i = 0; i < 10_000; i++) {
+            Trade t = trade(clients[rnd.nextInt(clients.length)], clients[rnd.nextInt(clients.length)],
+                String.valueOf(90 + rnd.nextInt(20)), String.valueOf(1 + rnd.nextInt(9)));
+            whole.add(t);
+            slices[i * slices.length / 10_000].add(t);
+        }
+        SettlementService.Netting merged = slices[0];
+        for (int i = 1; i < slices.length; i++) merged.merge(slices[i]);
+
+        List<SettlementPosition> expected = whole.positions(DAY, "BTC-USD");
+        List<SettlementPosition> actual = merged.positions(DAY, "BTC-USD");
+        assertEquals(whole.getTrades(), merged.getTrades());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            SettlementPosition e = expected.get(i);
+            SettlementPosition m = actual.get(i);
+            assertEquals(e.getClientId(), m.getClientId());
+            assertEquals(0, e.getNetQuantity().compareTo(m.getNetQuantity()));
+            assertEquals(0, e.getNetNotional().compareTo(m.getNetNotional()));
+            assertEquals(0, e.getFees().compareTo(m.getFees()));
+            assertEquals(e.getTradeCount(), m.getTradeCount());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.engine.OrderBook;
+import com.example.tradeengine.model.EventRecord;
+import com.example.tradeengine.model.Order;
+import com.example.tradeengine.model.Trade;
+import com.example.tradeengine.repository.EventRecordRepository;
+import com.example.tradeengine.repository.OrderRepository;
+import com.example.tradeengine.repository.TradeRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Failover test for the standby.  A primary {@link MatchingEngine}
+ * matches random orders and cancels on two instruments while a standby
+ * {@link MatchingEngine} is kept warm by a {@link StandbyReplicator},
+ * both built as Spring would build them but over an in‑memory events
+ * table they share.  Event IDs are allocated before a short, random
+ * commit delay, so they become visible out of order across
+ * instruments, and some IDs are never committed, as with rolled back
+ * inserts.  The primary is then stopped abruptly: from that moment its
+ * inserts fail, so its matching threads die in the middle of whatever
+ * command they were running and events allocated but not yet committed
+ * are lost.  After promotion the standby's books must equal the books
+ * the committed log describes, every book checksum the primary recorded
+ * must have matched, and the standby must accept orders.
+ */
+public class StandbyFailoverTest {
+    private static final long GAP_TIMEOUT_MILLIS = 50;
+    private static final String[] INSTRUMENTS = {"BTC-USD", "ETH-USD"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ConcurrentSkipListMap<Long, EventRecord> log = new ConcurrentSkipListMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private volatile boolean primaryDown;
+
+    /**
+     * The events table as one process sees it.  The primary's inserts
+     * fail once it is down; allocated IDs are only visible after a
+     * random commit delay and are occasionally skipped.
+     */
+    private EventRecordRepository eventTable(boolean primary) {
+        EventRecordRepository repo = mock(EventRecordRepository.class);
+        when(repo.save(any(EventRecord.class))).thenAnswer(inv -> {
+            EventRecord ev = inv.getArgument(0);
+            if (primary && primaryDown) throw new IllegalStateException("primary is down");
+            Random random = new Random();
+            long id = ids.incrementAndGet();
+            ev.setId(id);
+            ev.setTimestamp(Instant.now());
+            if (random.nextInt(10) == 0) Thread.sleep(1); // commit latency
+            if (primary && primaryDown) throw new IllegalStateException("primary is down");
+            log.put(id, ev);
+            if (random.nextInt(50) == 0) ids.incrementAndGet(); // an insert that rolled back
+            return ev;
+        });
+        when(repo.findMaxId()).thenAnswer(inv -> log.isEmpty() ? null : log.lastKey());
+        when(repo.findByIdGreaterThanOrderById(anyLong(), any(Pageable.class))).thenAnswer(inv -> {
+            long after = inv.getArgument(0);
+            Pageable page = inv.getArgument(1);
+            return log.tailMap(after, false).values().stream().limit(page.getPageSize()).toList();
+        });
+        return repo;
+    }
+
+    private MatchingEngine engine(boolean standby, EventRecordRepository events, Map<UUID, Order> rows) {
+        OrderRepository orderRepo = mock(OrderRepository.class);
+        when(orderRepo.save(any(Order.class))).thenAnswer(inv -> {
+            Order o = inv.getArgument(0);
+            rows.put(o.getOrderId(), o);
+            return o;
+        });
+        when(orderRepo.findById(any(UUID.class))).thenAnswer(inv -> Optional.ofNullable(rows.get(inv.getArgument(0))));
+        TradeRepository tradeRepo = mock(TradeRepository.class);
+        when(tradeRepo.save(any())).thenAnswer(inv -> {
+            Trade t = inv.getArgument(0);
+            t.setTradeId(UUID.randomUUID());
+            return t;
+        });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StreamService streamService = new StreamService(objectMapper, registry, events, orderRepo,
+            16, "conflate", 1024, 1, 16, 0);
+        return new MatchingEngine(orderRepo, tradeRepo, mock(IdempotencyService.class),
+            new RiskService(false, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ZERO, ""), registry, streamService,
+            new EventService(events, objectMapper), false, "unused", standby, 50, 5, 10);
+    }
+
+    private static Order order(String instrument, Random random) {
+        Order o = new Order();
+        o.setOrderId(UUID.randomUUID());
+        o.setClientId("c" + random.nextInt(5));
+        o.setInstrument(instrument);
+        o.setSide(random.nextBoolean() ? "buy" : "sell");
+        o.setType("limit");
+        o.setPrice(BigDecimal.valueOf(95 + random.nextInt(11)));
+        o.setQuantity(BigDecimal.valueOf(1 + random.nextInt(5)));
+        return o;
+    }
+
+    /** Submits and cancels orders on one instrument until the primary stops answering. */
+    private Thread load(MatchingEngine primary, String instrument, long seed) {
+        return new Thread(() -> {
+            Random random = new Random(seed);
+            List<UUID> submitted = new ArrayList<>();
+            try {
+                while (!primaryDown) {
+                    CompletableFuture<Order> fut;
+                    if (!submitted.isEmpty() && random.nextInt(10) == 0) {
+                        fut = primary.cancelOrder(submitted.get(random.nextInt(submitted.size())));
+                    } else {
+                        Order o = order(instrument, random);
+                        submitted.add(o.getOrderId());
+                        fut = primary.submitOrder(o, null);
+                    }
+                    fut.get(1, TimeUnit.SECONDS);
+                }
+            } catch (TimeoutException e) {
+                // The primary died with the command in flight
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, "load-" + instrument);
+    }
+
+    private static void assertSameSide(List<Order> expected, List<Order> actual, String what) {
+        assertEquals(expected.size(), actual.size(), what + " size");
+        for (int i = 0; i < expected.size(); i++) {
+            Order e = expected.get(i);
+            Order a = actual.get(i);
+            assertEquals(e.getOrderId(), a.getOrderId(), what + " order at " + i);
+            assertEquals(0, e.getFilledQuantity().compareTo(a.getFilledQuantity()), what + " filled at " + i);
+            assertEquals(e.getStatus(), a.getStatus(), what + " status at " + i);
+        }
+    }
+
+    @Test
+    public void testStandbyBooksMatchCommittedLogAfterPrimaryIsKilled() throws Exception {
+        MatchingEngine primary = engine(false, eventTable(true), new ConcurrentHashMap<>());
+        EventRecordRepository standbyEvents = eventTable(false);
+        MatchingEngine standby = engine(true, standbyEvents, new ConcurrentHashMap<>());
+        StandbyReplicator replicator = new StandbyReplicator(standbyEvents, standby, mock(RecoveryCoordinator.class), mock(IdempotencyService.class),
+            objectMapper, new SimpleMeterRegistry(), 5, 200, GAP_TIMEOUT_MILLIS);
+        replicator.init();
+        replicator.start();
+        List<Thread> loaders = new ArrayList<>();
+        for (int i = 0; i < INSTRUMENTS.length; i++) {
+            loaders.add(load(primary, INSTRUMENTS[i], i + 1));
+        }
+        loaders.forEach(Thread::start);
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (log.size() < 10_000 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue(log.size() >= 10_000, "primary stalled after " + log.size() + " events");
+        // Kill the primary mid-load and promote the standby.
+        primaryDown = true;
+        for (Thread t : loaders) t.join();
+        replicator.promote();
+
+        assertFalse(standby.isStandby());
+        assertEquals(log.lastKey().longValue(), replicator.getLastAppliedId());
+        assertEquals(0, replicator.getChecksumMismatches());
+        Map<String, OrderBook> committed = new ConcurrentHashMap<>();
+        ReplayBatch reference = new ReplayBatch(objectMapper, i -> committed.computeIfAbsent(i, k -> new OrderBook()));
+        log.values().forEach(reference::apply);
+        for (String instrument : INSTRUMENTS) {
+            OrderBook expected = committed.get(instrument);
+            OrderBook replica = standby.getOrderBook(instrument);
+            assertNotNull(expected, instrument);
+            assertSameSide(expected.getBids(), replica.getBids(), instrument + " bids");
+            assertSameSide(expected.getAsks(), replica.getAsks(), instrument + " asks");
+            assertEquals(expected.checksum(), replica.checksum(), instrument + " checksum");
+        }
+        // The promoted standby matches and records events of its own
+        Order first = standby.submitOrder(order(INSTRUMENTS[0], new Random(3)), null).get(2, TimeUnit.SECONDS);
+        assertTrue(List.of("open", "partially_filled", "filled").contains(first.getStatus()), first.getStatus());
+        assertTrue(log.lastKey() > replicator.getLastAppliedId());
+        replicator.shutdown();
+    }
+
+    private EventTailer tailer() {
+        return new EventTailer((after, limit) -> log.tailMap(after, false).values().stream().limit(limit).toList(),
+            i -> new OrderBook(), objectMapper, 200, GAP_TIMEOUT_MILLIS, 0L, Clock.systemUTC());
+    }
+
+    private static EventRecord event(long id, String instrument, Instant timestamp) {
+        EventRecord ev = new EventRecord("UNKNOWN", "agg", instrument, "{}");
+        ev.setId(id);
+        ev.setTimestamp(timestamp);
+        return ev;
+    }
+
+    @Test
+    public void testCursorWaitsForUncommittedEventBeforeSkippingGap() {
+        EventTailer tailer = tailer();
+        log.put(2L, event(2L, "ETH-USD", Instant.now()));
+        tailer.poll();
+        // Event 1 may still be in flight, so the cursor stays before it.
+        assertEquals(0L, tailer.getCursor());
+        assertEquals(2L, tailer.getLastAppliedId());
+        log.put(1L, event(1L, "BTC-USD", Instant.now()));
+        tailer.poll();
+        assertEquals(2L, tailer.getCursor());
+        assertTrue(tailer.isCaughtUp());
+    }
+
+    @Test
+    public void testGapSettlesOnLocalObservationTimeNotPrimaryTimestamp() throws Exception {
+        EventTailer tailer = tailer();
+        // The primary's clock is far behind, or the event took long to commit
+        log.put(2L, event(2L, "ETH-USD", Instant.now().minusSeconds(3600)));
+        tailer.poll();
+        assertEquals(0L, tailer.getCursor());
+        Thread.sleep(GAP_TIMEOUT_MILLIS + 20);
+        tailer.poll();
+        // Nothing filled the gap within the timeout of first seeing event 2
+        assertEquals(2L, tailer.getCursor());
+        assertTrue(tailer.isCaughtUp());
+    }
+}
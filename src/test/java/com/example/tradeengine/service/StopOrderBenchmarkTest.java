@@ -0,0 +1,143 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.engine.MatchingEngine;
+import com.example.tradeengine.model.EventRecord;
+import com.example.tradeengine.model.Order;
+import com.example.tradeengine.model.Trade;
+import com.example.tradeengine.repository.EventRecordRepository;
+import com.example.tradeengine.repository.OrderRepository;
+import com.example.tradeengine.repository.TradeRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmark of trade processing through the {@link MatchingEngine} with
+ * 100k pending stops, against the same trades with no stops.  The
+ * engine is built as Spring would build it over mocked repositories,
+ * as in {@link StandbyFailoverTest}, so each trade pays for matching,
+ * event serialization and streaming but not for a database.  Trades
+ * stay between the stop prices, so the figure is the cost of checking
+ * a trade against the stop book rather than of executing stops.  Tagged
+ * `benchmark`, so it only runs with `mvn test -Pbenchmark`.
+ */
+@Tag("benchmark")
+public class StopOrderBenchmarkTest {
+    private static final String INSTRUMENT = "BTC-USD";
+    private static final int STOPS = 100_000;
+    private static final int TRADES = 20_000;
+    private static final int BATCH = 1_000;
+
+    private static MatchingEngine engine() {
+        ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        OrderRepository orderRepo = mock(OrderRepository.class);
+        when(orderRepo.save(any(Order.class))).thenAnswer(inv -> inv.getArgument(0));
+        TradeRepository tradeRepo = mock(TradeRepository.class);
+        when(tradeRepo.save(any())).thenAnswer(inv -> {
+            Trade t = inv.getArgument(0);
+            t.setTradeId(UUID.randomUUID());
+            return t;
+        });
+        AtomicLong ids = new AtomicLong();
+        EventRecordRepository events = mock(EventRecordRepository.class);
+        when(events.save(any(EventRecord.class))).thenAnswer(inv -> {
+            EventRecord ev = inv.getArgument(0);
+            ev.setId(ids.incrementAndGet());
+            return ev;
+        });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StreamService streamService = new StreamService(objectMapper, registry, events, orderRepo, 16, "conflate", 1024, 1, 16, 0);
+        return new MatchingEngine(orderRepo, tradeRepo, mock(IdempotencyService.class),
+            new RiskService(false, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ZERO, ""), registry, streamService,
+            new EventService(events, objectMapper), false, "unused", false, 50, 5, 10);
+    }
+
+    private static Order order(String side, String type, BigDecimal price) {
+        Order o = new Order();
+        o.setOrderId(UUID.randomUUID());
+        o.setClientId("bench");
+        o.setInstrument(INSTRUMENT);
+        o.setSide(side);
+        o.setType(type);
+        o.setPrice(price);
+        o.setQuantity(BigDecimal.ONE);
+        o.setFilledQuantity(BigDecimal.ZERO);
+        return o;
+    }
+
+    /** Buy stops 10 to 2009 above 30000 and sell stops as far below, as pending stops are after recovery. */
+    private static List<Order> stops(Random random) {
+        List<Order> stops = new ArrayList<>(STOPS);
+        for (int i = 0; i < STOPS; i++) {
+            boolean buy = i % 2 == 0;
+            int offset = 10 + random.nextInt(2000);
+            Order o = order(buy ? "buy" : "sell", "stop", null);
+            o.setStopPrice(BigDecimal.valueOf(buy ? 30000 + offset : 30000 - offset));
+            o.setStatus("pending");
+            stops.add(o);
+        }
+        return stops;
+    }
+
+    /**
+     * Push trades through the engine, each a resting sell at a price
+     * walking within five ticks of 30000 taken by a market buy.
+     *
+     * @return nanoseconds per trade
+     */
+    private static double nanosPerTrade(MatchingEngine engine, int trades, Random random) throws Exception {
+        int price = 30000;
+        long start = System.nanoTime();
+        for (int done = 0; done < trades; done += BATCH) {
+            List<Order> orders = new ArrayList<>(2 * BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                price = Math.max(29995, Math.min(30005, price + random.nextInt(3) - 1));
+                orders.add(order("sell", "limit", BigDecimal.valueOf(price)));
+                orders.add(order("buy", "market", null));
+            }
+            engine.submitOrders(orders).get(30, TimeUnit.SECONDS);
+        }
+        return (double) (System.nanoTime() - start) / trades;
+    }
+
+    @Test
+    public void benchmarkTradesWith100kPendingStops() throws Exception {
+        Random random = new Random(42);
+        MatchingEngine withStops = engine();
+        withStops.loadStops(INSTRUMENT, stops(random));
+        MatchingEngine withoutStops = engine();
+        // Warm up both engines before timing either
+        nanosPerTrade(withStops, TRADES, random);
+        nanosPerTrade(withoutStops, TRADES, random);
+        double stopped = Double.MAX_VALUE;
+        double plain = Double.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            stopped = Math.min(stopped, nanosPerTrade(withStops, TRADES, random));
+            plain = Math.min(plain, nanosPerTrade(withoutStops, TRADES, random));
+        }
+        assertEquals(STOPS, withStops.getStopCount(INSTRUMENT));
+        assertTrue(withStops.getOrderBook(INSTRUMENT).getAsks().isEmpty());
+        // Checking a trade against the stop book is a few comparisons; the
+        // remaining cost of a trade must not depend on how many stops wait
+        assertTrue(stopped < plain * 1.5 + 1_000, "a trade took " + Math.round(stopped) + " ns with "
+            + STOPS + " pending stops and " + Math.round(plain) + " ns without");
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.model.Order;
+import com.example.tradeengine.model.Trade;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link StreamService} fan‑out: publishing must not depend on
+ * subscribers, overflow policies must apply per subscriber and
+ * subscribers only get the topics they asked for, and reconnecting
+ * subscribers must get what they missed.
+ * Subscribers are plain emitters not attached to a response, which
+ * accept sends; blocking ones are made by stalling the only sender
+ * thread on a first subscriber.
+ */
+public class StreamServiceTest {
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private StreamService service;
+
+    @AfterEach
+    public void tearDown() {
+        if (service != null) service.shutdown();
+    }
+
+    private StreamService service(int bufferSize) {
+        service = new StreamService(objectMapper, new SimpleMeterRegistry(), null, null,
+            bufferSize, "conflate", 1 << 20, 1, 64, 1000);
+        return service;
+    }
+
+    private static Order order(UUID id, BigDecimal filled) {
+        Order o = new Order();
+        o.setOrderId(id);
+        o.setInstrument("BTC-USD");
+        o.setSide("buy");
+        o.setType("limit");
+        o.setPrice(BigDecimal.TEN);
+        o.setQuantity(BigDecimal.TEN);
+        o.setFilledQuantity(filled);
+        o.setStatus("open");
+        return o;
+    }
+
+    /** Records the data and id lines of every event sent to it. */
+    private static class RecordingEmitter extends SseEmitter {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final List<String> ids = new CopyOnWriteArrayList<>();
+        volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            for (ResponseBodyEmitter.DataWithMediaType d : builder.build()) {
+                String data = d.getData().toString();
+                if (MediaType.APPLICATION_JSON.equals(d.getMediaType())) events.add(data);
+                else if (data.startsWith("id:")) ids.add(data.substring(3).trim());
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        boolean awaitEvents(int n, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (events.size() < n) {
+                if (System.currentTimeMillis() > deadline) return false;
+                Thread.sleep(5);
+            }
+            return true;
+        }
+    }
+
+    /** Holds the sender thread that writes to it until released. */
+    private static class BlockingEmitter extends SseEmitter {
+        final CountDownLatch stalled;
+        final CountDownLatch release;
+
+        BlockingEmitter(CountDownLatch stalled, CountDownLatch release) {
+            this.stalled = stalled;
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            stalled.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /** Lets the test end the connection as Spring would when the client goes away. */
+    private static class ClosableEmitter extends SseEmitter {
+        volatile Runnable onCompletion;
+
+        @Override
+        public void onCompletion(Runnable callback) {
+            onCompletion = callback;
+        }
+    }
+
+    @Test
+    public void testPublishingCostDoesNotDependOnSubscribers() {
+        StreamService s = service(16);
+        Trade trade = new Trade(UUID.randomUUID(), UUID.randomUUID(), BigDecimal.ONE, BigDecimal.ONE, Instant.now());
+        long few = timePublish(s, trade, 10);
+        long many = timePublish(s, trade, 10_000);
+        // Publishing only enqueues; allow generous noise but not a per-subscriber cost
+        assertTrue(many < Math.max(few * 20, TimeUnit.MILLISECONDS.toNanos(50)),
+            "publish took " + many + " ns with 10000 subscribers vs " + few + " ns with 10");
+    }
+
+    private long timePublish(StreamService s, Object event, int subscribers) {
+        for (int i = 0; i < subscribers; i++) s.addEmitter(StreamService.Filter.ALL, StreamService.OverflowPolicy.DISCONNECT);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) s.sendEvent("BTC-USD", event);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    @Test
+    public void testConflatingSubscriberReceivesLatestOrderState() throws Exception {
+        StreamService s = service(4);
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        s.addEmitter(new BlockingEmitter(stalled, release), StreamService.Filter.ALL, StreamService.OverflowPolicy.CONFLATE);
+        RecordingEmitter conflating = new RecordingEmitter();
+        s.addEmitter(conflating, StreamService.Filter.ALL, StreamService.OverflowPolicy.CONFLATE);
+        RecordingEmitter strict = new RecordingEmitter();
+        s.addEmitter(strict, StreamService.Filter.ALL, StreamService.OverflowPolicy.DISCONNECT);
+
+        UUID id = UUID.randomUUID();
+        s.sendEvent(order(id, BigDecimal.ZERO));
+        assertTrue(stalled.await(5, TimeUnit.SECONDS));
+        // The only sender thread is stuck: nothing else is delivered meanwhile
+        for (int i = 1; i <= 9; i++) s.sendEvent(order(id, BigDecimal.valueOf(i)));
+        Thread.sleep(200);
+        release.countDown();
+
+        assertTrue(conflating.awaitEvents(1, 5000));
+        Thread.sleep(100);
+        // Ten states of one order fit a buffer of four by replacing each other;
+        // the first may have been written before the sender stalled
+        assertTrue(conflating.events.size() <= 2, conflating.events.toString());
+        assertTrue(conflating.events.get(conflating.events.size() - 1).contains("\"filledQuantity\":9"));
+        assertFalse(conflating.completed);
+        // Without conflation the same burst overflows the buffer
+        assertTrue(strict.completed);
+    }
+
+    @Test
+    public void testSubscribersOnlyReceiveTheirTopics() throws Exception {
+        StreamService s = service(64);
+        RecordingEmitter eth = new RecordingEmitter();
+        s.addEmitter(eth, StreamService.Filter.of(List.of("ETH-USD"), null, null), StreamService.OverflowPolicy.CONFLATE);
+        RecordingEmitter client = new RecordingEmitter();
+        s.addEmitter(client, StreamService.Filter.of(null, "alice", List.of("Trade")), StreamService.OverflowPolicy.CONFLATE);
+        RecordingEmitter all = new RecordingEmitter();
+        s.addEmitter(all, StreamService.Filter.ALL, StreamService.OverflowPolicy.CONFLATE);
+
+        Order btcOrder = order(UUID.randomUUID(), BigDecimal.ZERO);
+        btcOrder.setClientId("alice");
+        s.sendEvent(btcOrder);
+        Trade btcTrade = new Trade(UUID.randomUUID(), UUID.randomUUID(), BigDecimal.ONE, BigDecimal.ONE, Instant.now());
+        s.sendEvent("BTC-USD", btcTrade, "alice", "bob");
+        Trade ethTrade = new Trade(UUID.randomUUID(), UUID.randomUUID(), BigDecimal.TEN, BigDecimal.ONE, Instant.now());
+        s.sendEvent("ETH-USD", ethTrade, "bob", "carol");
+
+        assertTrue(all.awaitEvents(3, 5000));
+        assertTrue(eth.awaitEvents(1, 5000));
+        assertTrue(client.awaitEvents(1, 5000));
+        Thread.sleep(100);
+        assertEquals(1, eth.events.size());
+        assertTrue(eth.events.get(0).contains(ethTrade.getPrice().toString()));
+        // alice's trade only, not her order update or bob's other trade
+        assertEquals(1, client.events.size());
+        assertTrue(client.events.get(0).contains(btcTrade.getBuyOrderId().toString()));
+    }
+
+    @Test
+    public void testReconnectingSubscriberResumesAfterLastEventId() throws Exception {
+        StreamService s = service(64);
+        RecordingEmitter first = new RecordingEmitter();
+        s.addEmitter(first, StreamService.Filter.of(List.of("BTC-USD"), null, null), StreamService.OverflowPolicy.DISCONNECT);
+        for (long id = 1; id <= 5; id++) {
+            s.sendEvent(id, "BTC-USD", new Trade(UUID.randomUUID(), UUID.randomUUID(), BigDecimal.valueOf(id), BigDecimal.ONE, Instant.now()));
+            // Another instrument's events are in between but not for this subscriber
+            s.sendEvent(100 + id, "ETH-USD", new Trade(UUID.randomUUID(), UUID.randomUUID(), BigDecimal.ONE, BigDecimal.ONE, Instant.now()));
+        }
+        assertTrue(first.awaitEvents(5, 5000));
+        assertEquals(List.of("1", "2", "3", "4", "5"), first.ids);
+
+        // The client saw event 2 before its connection dropped
+        RecordingEmitter resumed = new RecordingEmitter();
+        s.addEmitter(resumed, StreamService.Filter.of(List.of("BTC-USD"), null, null), StreamService.OverflowPolicy.DISCONNECT, 2L);
+        s.sendEvent(6L, "BTC-USD", new Trade(UUID.randomUUID(), UUID.randomUUID(), BigDecimal.ONE, BigDecimal.ONE, Instant.now()));
+        assertTrue(resumed.awaitEvents(4, 5000));
+        Thread.sleep(100);
+        assertEquals(List.of("3", "4", "5", "6"), resumed.ids);
+    }
+
+    @Test
+    public void testInstrumentTopicIsRemovedWithItsLastSubscriber() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StreamService s = service = new StreamService(objectMapper, registry, null, null,
+            16, "conflate", 1 << 20, 1, 64, 1000);
+        ClosableEmitter a = new ClosableEmitter();
+        ClosableEmitter b = new ClosableEmitter();
+        s.addEmitter(a, StreamService.Filter.of(List.of("NO-SUCH-1"), null, null), StreamService.OverflowPolicy.DISCONNECT);
+        s.addEmitter(b, StreamService.Filter.of(List.of("NO-SUCH-1", "NO-SUCH-2"), null, null), StreamService.OverflowPolicy.DISCONNECT);
+        assertEquals(Set.of("NO-SUCH-1", "NO-SUCH-2"), s.getInstrumentTopics());
+        assertNotNull(registry.find("stream_topic_subscribers").tag("topic", "instrument:NO-SUCH-2").gauge());
+
+        b.onCompletion.run();
+        assertEquals(Set.of("NO-SUCH-1"), s.getInstrumentTopics());
+        assertNull(registry.find("stream_topic_subscribers").tag("topic", "instrument:NO-SUCH-2").gauge());
+        a.onCompletion.run();
+        assertTrue(s.getInstrumentTopics().isEmpty());
+        assertNull(registry.find("stream_topic_subscribers").tag("topic", "instrument:NO-SUCH-1").gauge());
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.model.Trade;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link TradeColumnStore}: filtered and grouped aggregates
+ * must match the trades appended, across chunk boundaries.  The scan
+ * benchmark is tagged `benchmark`, so it only runs with
+ * `mvn test -Pbenchmark`; its row count can be raised with
+ * -Dcolumnstore.benchmark.trades.
+ */
+public class TradeColumnStoreTest {
+    private static final Instant T0 = Instant.parse("2024-05-01T14:00:00Z");
+
+    private static Trade trade(String instrument, UUID buy, UUID sell, String price, String quantity, Instant ts) {
+        Trade t = new Trade(buy, sell, new BigDecimal(price), new BigDecimal(quantity), ts);
+        t.setInstrument(instrument);
+        return t;
+    }
+
+    @Test
+    public void testFiltersAndGroups() {
+        TradeColumnStore store = new TradeColumnStore(null, null, null, 10 * TradeColumnStore.CHUNK_SIZE, "1h", 8, 2);
+        UUID maker = UUID.randomUUID();
+        // Fill more than one chunk so groups merge across scan tasks
+        int filler = TradeColumnStore.CHUNK_SIZE + 10;
+        for (int i = 0; i < filler; i++) {
+            store.append(trade("ETH-USD", UUID.randomUUID(), UUID.randomUUID(), "10", "0.5", T0.plusMillis(i)));
+        }
+        store.append(trade("BTC-USD", UUID.randomUUID(), maker, "100", "1", T0.plusSeconds(90)));
+        store.append(trade("BTC-USD", UUID.randomUUID(), maker, "110", "3", T0.plusSeconds(95)));
+        store.append(trade("BTC-USD", UUID.randomUUID(), UUID.randomUUID(), "90", "2", T0.plusSeconds(150)));
+        assertEquals(filler + 3, store.size());
+
+        TradeColumnStore.Result all = store.query(new TradeColumnStore.Query().groupBy(TradeColumnStore.GroupBy.INSTRUMENT));
+        assertEquals(filler + 3, all.getMatched());
+        List<TradeColumnStore.Row> byInstrument = all.getRows();
+        assertEquals(2, byInstrument.size());
+        assertEquals("ETH-USD", byInstrument.get(0).getKey());
+        assertEquals(0, new BigDecimal(filler).multiply(new BigDecimal("0.5")).compareTo(byInstrument.get(0).getVolume()));
+        TradeColumnStore.Row btc = byInstrument.get(1);
+        assertEquals(3, btc.getCount());
+        assertEquals(0, new BigDecimal("6").compareTo(btc.getVolume()));
+        assertEquals(0, new BigDecimal("610").compareTo(btc.getNotional()));
+        assertEquals(0, new BigDecimal("90").compareTo(btc.getMinPrice()));
+        assertEquals(0, new BigDecimal("110").compareTo(btc.getMaxPrice()));
+
+        List<TradeColumnStore.Row> byMinute = store.query(new TradeColumnStore.Query()
+            .instrument("BTC-USD").groupBy(TradeColumnStore.GroupBy.TIME).timeBucket(Duration.ofMinutes(1))).getRows();
+        assertEquals(2, byMinute.size());
+        assertEquals(T0.plusSeconds(60), byMinute.get(0).getKey());
+        assertEquals(0, new BigDecimal("107.5").compareTo(byMinute.get(0).getVwap()));
+        assertEquals(T0.plusSeconds(120), byMinute.get(1).getKey());
+
+        TradeColumnStore.Row maker2 = store.query(new TradeColumnStore.Query()
+            .orderId(maker).minQuantity(new BigDecimal("2"))).getRows().get(0);
+        assertEquals(1, maker2.getCount());
+        assertEquals(0, new BigDecimal("110").compareTo(maker2.getMaxPrice()));
+
+        List<TradeColumnStore.Row> bySize = store.query(new TradeColumnStore.Query()
+            .instrument("BTC-USD").from(T0.plusSeconds(60)).groupBy(TradeColumnStore.GroupBy.SIZE).sizeBucket(new BigDecimal("2"))).getRows();
+        assertEquals(2, bySize.size());
+        assertEquals(0, BigDecimal.ZERO.compareTo((BigDecimal) bySize.get(0).getKey()));
+        assertEquals(1, bySize.get(0).getCount());
+        assertEquals(2, bySize.get(1).getCount());
+
+        assertTrue(store.query(new TradeColumnStore.Query().instrument("XRP-USD")).getRows().isEmpty());
+    }
+
+    @Test
+    public void testOldestChunksAreDropped() {
+        TradeColumnStore store = new TradeColumnStore(null, null, null, 2L * TradeColumnStore.CHUNK_SIZE, "1h", 8, 1);
+        for (int i = 0; i < 3 * TradeColumnStore.CHUNK_SIZE; i++) {
+            store.append(trade("BTC-USD", UUID.randomUUID(), UUID.randomUUID(), "1", "1", T0.plusMillis(i)));
+        }
+        assertEquals(2L * TradeColumnStore.CHUNK_SIZE, store.size());
+        assertEquals(0, store.query(new TradeColumnStore.Query().to(T0.plusMillis(TradeColumnStore.CHUNK_SIZE))).getMatched());
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkScanTradesPerSecond() {
+        int trades = Integer.getInteger("columnstore.benchmark.trades", 2_000_000);
+        TradeColumnStore store = new TradeColumnStore(null, null, null, trades, "1h", 8, 0);
+        UUID buy = UUID.randomUUID();
+        UUID sell = UUID.randomUUID();
+        String[] instruments = {"BTC-USD", "ETH-USD", "SOL-USD", "XRP-USD"};
+        for (int i = 0; i < trades; i++) {
+            store.append(trade(instruments[i % instruments.length], buy, sell,
+                String.valueOf(100 + i % 50), "0.25", T0.plusMillis(i)));
+        }
+        TradeColumnStore.Query query = new TradeColumnStore.Query().groupBy(TradeColumnStore.GroupBy.INSTRUMENT);
+        store.query(query);
+        double perSecond = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            TradeColumnStore.Result r = store.query(query);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            assertEquals(trades, r.getMatched());
+            assertEquals(instruments.length, r.getRows().size());
+            perSecond = Math.max(perSecond, r.getScanned() / seconds);
+        }
+        // 100M trades in well under a second: at least 100M/s on one core,
+        // and half a second for 100M once the scan has two cores to split over
+        int cores = Runtime.getRuntime().availableProcessors();
+        double required = 100_000_000.0 * Math.min(cores, 2);
+        assertTrue(perSecond > required, "scanned " + Math.round(perSecond) + " trades/s on " + cores
+            + " cores, need " + Math.round(required));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.tradeengine.service;
+
+import com.example.tradeengine.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link VwapService}: each window must only count the
+ * trades of its own instrument that are still inside it.
+ */
+public class VwapServiceTest {
+    private static Trade trade(String instrument, String price, String quantity, Instant ts) {
+        Trade t = new Trade(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal(price), new BigDecimal(quantity), ts);
+        t.setInstrument(instrument);
+        return t;
+    }
+
+    @Test
+    public void testWindowsCountOnlyTheirOwnTrades() {
+        VwapService service = new VwapService(null, null, null, "1m,5m,1h", 60);
+        Instant now = Instant.now();
+        service.onTrade("BTC-USD", trade("BTC-USD", "100", "1", now));
+        service.onTrade("BTC-USD", trade("BTC-USD", "110", "3", now.minusSeconds(1)));
+        service.onTrade("BTC-USD", trade("BTC-USD", "90", "2", now.minus(Duration.ofMinutes(2))));
+        service.onTrade("BTC-USD", trade("BTC-USD", "50", "10", now.minus(Duration.ofHours(2))));
+        service.onTrade("ETH-USD", trade("ETH-USD", "5", "100", now));
+
+        VwapService.Result minute = service.vwap("BTC-USD", service.findWindow("1m"));
+        assertEquals(2, minute.getTradeCount());
+        assertEquals(0, new BigDecimal("107.5").compareTo(minute.getVwap()));
+        assertEquals(0, new BigDecimal("4").compareTo(minute.getTotalVolume()));
+
+        VwapService.Result five = service.vwap("BTC-USD", service.findWindow("5m"));
+        assertEquals(3, five.getTradeCount());
+        // (100 + 330 + 180) / 6
+        assertEquals(0, new BigDecimal("610").divide(new BigDecimal("6"), MathContext.DECIMAL64).compareTo(five.getVwap()));
+        assertEquals(3, service.vwap("BTC-USD", service.findWindow("60m")).getTradeCount());
+
+        assertEquals(0, service.vwap("XRP-USD", service.findWindow("1h")).getTradeCount());
+        assertNull(service.findWindow("24h"));
+    }
+}